@@ -0,0 +1,293 @@
+package com.example.androidcardashboard;
+
+import android.os.Debug;
+
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Counts allocations of hot paths, per rendered or decoded frame, against
+ * a declared budget. A scope marks the thread's allocation counter before
+ * the work and takes the difference after it.
+ *
+ * On the device the counter is Debug's per-thread allocation count, in
+ * objects; on a JVM, as in unit tests, it is the thread's allocated bytes
+ * from com.sun.management.ThreadMXBean. A budget of 0 means the path must
+ * not allocate, which holds in either unit. Counting is off by default,
+ * begin() and end() then only read one volatile flag.
+ */
+public final class AllocationTracker {
+    /** Budget of a scope that only reports */
+    public static final long NO_BUDGET = -1;
+    
+    private static final Counter counter = createCounter();
+    private static volatile boolean enabled = false;
+    private static final List<Scope> scopes = new ArrayList<>();
+    
+    private AllocationTracker() {
+    }
+    
+    /**
+     * Allocation count of the current thread
+     */
+    private abstract static class Counter {
+        abstract long read();
+        
+        abstract String unit();
+        
+        /**
+         * What read() itself allocates
+         */
+        long cost() {
+            return 0;
+        }
+        
+        void start() {
+        }
+        
+        void stop() {
+        }
+    }
+    
+    private static final class DebugCounter extends Counter {
+        @Override
+        long read() {
+            return Debug.getThreadAllocCount();
+        }
+        
+        @Override
+        String unit() {
+            return "objects";
+        }
+        
+        @Override
+        void start() {
+            Debug.startAllocCounting();
+        }
+        
+        @Override
+        void stop() {
+            Debug.stopAllocCounting();
+        }
+    }
+    
+    /**
+     * Through reflection, java.lang.management isn't in the Android SDK. The
+     * arguments are made once per thread, which leaves the boxed result as
+     * what a read allocates. That cost is calibrated once, as the least a
+     * pair of reads took over many tries, since a single try may include
+     * unrelated allocations.
+     */
+    private static final class JvmCounter extends Counter {
+        private static final int CALIBRATION_SAMPLES = 1000;
+        
+        private final Object bean;
+        private final Method allocatedBytes;
+        private final ThreadLocal<Object[]> arguments = new ThreadLocal<Object[]>() {
+            @Override
+            protected Object[] initialValue() {
+                return new Object[] {Thread.currentThread().getId()};
+            }
+        };
+        private final long cost;
+        
+        JvmCounter(Object bean, Method allocatedBytes) {
+            this.bean = bean;
+            this.allocatedBytes = allocatedBytes;
+            long least = Long.MAX_VALUE;
+            for (int i = 0; i < CALIBRATION_SAMPLES; i++) {
+                long first = read();
+                least = Math.min(least, read() - first);
+            }
+            cost = Math.max(0, least);
+        }
+        
+        @Override
+        long read() {
+            try {
+                return (Long) allocatedBytes.invoke(bean, arguments.get());
+            } catch (Exception e) {
+                return 0;
+            }
+        }
+        
+        @Override
+        String unit() {
+            return "bytes";
+        }
+        
+        @Override
+        long cost() {
+            return cost;
+        }
+    }
+    
+    private static Counter createCounter() {
+        if ("Dalvik".equals(System.getProperty("java.vm.name"))) {
+            return new DebugCounter();
+        }
+        try {
+            Object bean = Class.forName("java.lang.management.ManagementFactory")
+                .getMethod("getThreadMXBean").invoke(null);
+            Method allocatedBytes = Class.forName("com.sun.management.ThreadMXBean")
+                .getMethod("getThreadAllocatedBytes", long.class);
+            return new JvmCounter(bean, allocatedBytes);
+        } catch (Exception e) {
+            // A JVM without per-thread allocation counts, scopes stay empty
+            return null;
+        }
+    }
+    
+    /**
+     * One hot path, such as a view's onDraw. Each scope is entered by one
+     * thread at a time.
+     */
+    public static final class Scope {
+        private final String name;
+        private final long budget;
+        private long frames = 0;
+        private long total = 0;
+        private long max = 0;
+        private long overBudget = 0;
+        private long last = 0;
+        
+        Scope(String name, long budget) {
+            this.name = name;
+            this.budget = budget;
+        }
+        
+        /**
+         * @return the mark to pass to end(), negative when not counting
+         */
+        public long begin() {
+            return enabled ? counter.read() : -1;
+        }
+        
+        public void end(long mark) {
+            if (mark < 0 || !enabled) {
+                return;
+            }
+            record(Math.max(0, counter.read() - mark - counter.cost()));
+        }
+        
+        synchronized void record(long count) {
+            frames++;
+            total += count;
+            last = count;
+            if (count > max) {
+                max = count;
+            }
+            if (budget != NO_BUDGET && count > budget) {
+                overBudget++;
+            }
+        }
+        
+        public String getName() {
+            return name;
+        }
+        
+        public long getBudget() {
+            return budget;
+        }
+        
+        public synchronized long getFrames() {
+            return frames;
+        }
+        
+        public synchronized long getMax() {
+            return max;
+        }
+        
+        public synchronized long getLast() {
+            return last;
+        }
+        
+        /**
+         * Frames that allocated more than the budget
+         */
+        public synchronized long getOverBudgetCount() {
+            return overBudget;
+        }
+        
+        public synchronized double getAverage() {
+            return frames > 0 ? (double) total / frames : 0;
+        }
+        
+        public synchronized void reset() {
+            frames = 0;
+            total = 0;
+            max = 0;
+            overBudget = 0;
+            last = 0;
+        }
+        
+        synchronized void writeJson(JsonWriter json) {
+            json.beginInlineObject()
+                .name("frames").value(frames)
+                .name("avg").value(getAverage(), 1)
+                .name("max").value(max)
+                .name("budget").value(budget)
+                .name("overBudget").value(overBudget)
+                .endObject();
+        }
+    }
+    
+    /**
+     * The scope with this name, made with the budget on first use
+     * @param budget allocations per frame in the counter's unit, 0 for none
+     *               at all or NO_BUDGET
+     */
+    public static Scope scope(String name, long budget) {
+        synchronized (scopes) {
+            for (Scope scope : scopes) {
+                if (scope.name.equals(name)) {
+                    return scope;
+                }
+            }
+            Scope scope = new Scope(name, budget);
+            scopes.add(scope);
+            return scope;
+        }
+    }
+    
+    public static boolean isAvailable() {
+        return counter != null;
+    }
+    
+    public static boolean isEnabled() {
+        return enabled;
+    }
+    
+    public static synchronized void setEnabled(boolean enable) {
+        if (counter == null || enable == enabled) {
+            return;
+        }
+        if (enable) {
+            counter.start();
+        } else {
+            counter.stop();
+        }
+        enabled = enable;
+    }
+    
+    /**
+     * "objects" on the device, "bytes" on a JVM
+     */
+    public static String getUnit() {
+        return counter != null ? counter.unit() : "none";
+    }
+    
+    public static void writeJson(JsonWriter json) {
+        json.beginObject();
+        json.name("enabled").value(enabled);
+        json.name("unit").value(getUnit());
+        synchronized (scopes) {
+            for (Scope scope : scopes) {
+                json.name(scope.name);
+                scope.writeJson(json);
+            }
+        }
+        json.endObject();
+    }
+}
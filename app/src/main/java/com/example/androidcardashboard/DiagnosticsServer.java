@@ -0,0 +1,631 @@
+package com.example.androidcardashboard;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.NetworkInterface;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.Executor;
+
+/**
+ * Small HTTP server for inspecting a running dashboard from a laptop on the
+ * ESP32's Wi-Fi:
+ *
+ *   /telemetry          current telemetry and diagnostics
+ *   /metrics            Metrics snapshot
+ *   /events             a page of the event log, older pages with ?before=<next>,
+ *                       filtered with ?levels=<mask>
+ *   /stream             telemetry as server-sent events, ?hz=<rate> up to 5
+ *
+ * One thread serves all connections with a Selector and blocks while
+ * nothing is due. The telemetry is written on the main thread: the server
+ * posts a request there and is woken when the JSON is ready, so neither
+ * thread waits for the other, and all waiting requests and due streams
+ * share one snapshot. Only connections to loopback or a Wi-Fi interface
+ * are served. A client that sends no request within a few seconds, or
+ * stops reading its response or stream, is closed so it can't hold one of
+ * the few connection slots.
+ */
+public class DiagnosticsServer {
+    private static final String TAG = "DiagnosticsServer";
+    
+    public static final int DEFAULT_PORT = 8080;
+    public static final int DEFAULT_STREAM_HZ = 2;
+    private static final int MAX_STREAM_HZ = 5;
+    private static final int MAX_CONNECTIONS = 8;
+    private static final int MAX_REQUEST_BYTES = 2048;
+    private static final int MAX_PENDING_STREAM_BYTES = 64 * 1024; // Events are dropped for slower clients
+    private static final int EVENTS_PER_PAGE = 100;
+    private static final long TELEMETRY_TIMEOUT_NS = 2000000000L;
+    static final long DEFAULT_REQUEST_TIMEOUT_MS = 5000;
+    private static final long STALL_TIMEOUT_NS = 10000000000L; // Output pending without progress
+    private static final String[] SOURCE_NAMES = {"tcp", "gps", "app"};
+    
+    /**
+     * Writes the telemetry, on the thread of the executor given to the server
+     */
+    public interface TelemetrySource {
+        void writeTelemetry(JsonWriter json);
+    }
+    
+    // Connection states
+    private static final int READING = 0;
+    private static final int WAITING_TELEMETRY = 1;
+    private static final int STREAMING = 2;
+    private static final int CLOSING = 3;
+    
+    private static final class Connection {
+        final SocketChannel channel;
+        final SelectionKey key;
+        final ByteBuffer in = ByteBuffer.allocate(MAX_REQUEST_BYTES);
+        ByteBuffer out = ByteBuffer.allocate(8 * 1024); // Pending bytes between position and limit
+        int state = READING;
+        final long acceptedNs;
+        long stalledSinceNs = -1; // Output pending and the last write made no progress since then
+        long streamIntervalNs;
+        long nextEventNs;
+        boolean eventDue = false;
+        
+        Connection(SocketChannel channel, SelectionKey key, long acceptedNs) {
+            this.channel = channel;
+            this.key = key;
+            this.acceptedNs = acceptedNs;
+            out.flip();
+        }
+    }
+    
+    private final InetAddress bindAddress;
+    private final int port;
+    private final TelemetrySource source;
+    private final Executor sourceExecutor;
+    private final EventLog eventLog;
+    
+    private volatile boolean running = false;
+    private volatile Selector selector;
+    private ServerSocketChannel serverChannel;
+    private Thread thread;
+    private final List<Connection> connections = new ArrayList<>();
+    private volatile long requestTimeoutNs = DEFAULT_REQUEST_TIMEOUT_MS * 1000000L;
+    
+    // Telemetry written on the source's thread, handed over under telemetryLock
+    private final Object telemetryLock = new Object();
+    private final JsonWriter sourceJson = new JsonWriter(false);
+    private ByteBuffer telemetry = ByteBuffer.allocate(16 * 1024);
+    private long telemetryVersion = 0;
+    private final Runnable fetchTelemetry = new Runnable() {
+        @Override
+        public void run() {
+            sourceJson.reset();
+            try {
+                source.writeTelemetry(sourceJson);
+            } catch (RuntimeException e) {
+                Log.w(TAG, "Failed to write telemetry", e);
+                sourceJson.reset().beginObject().name("error").value("Failed to write telemetry").endObject();
+            }
+            synchronized (telemetryLock) {
+                int length = sourceJson.utf8Length();
+                if (telemetry.capacity() < length) {
+                    telemetry = ByteBuffer.allocate(length * 2);
+                }
+                telemetry.clear();
+                sourceJson.writeUtf8(telemetry);
+                telemetry.flip();
+                telemetryVersion++;
+            }
+            Selector current = selector;
+            if (current != null) {
+                current.wakeup();
+            }
+        }
+    };
+    
+    // Server thread only
+    private final JsonWriter json = new JsonWriter(false);
+    private final Metrics.Snapshot metricsSnapshot = new Metrics.Snapshot();
+    private final EventLog.Page page = new EventLog.Page(EVENTS_PER_PAGE);
+    private boolean fetchPending = false;
+    private long fetchStartedNs;
+    private long deliveredVersion = 0;
+    
+    /**
+     * Serve on all interfaces, telemetry written on the main thread
+     * @param eventLog may be null, /events then answers 503
+     */
+    public DiagnosticsServer(int port, TelemetrySource source, EventLog eventLog) {
+        this(null, port, source, mainThreadExecutor(), eventLog);
+    }
+    
+    /**
+     * @param bindAddress null for all interfaces
+     */
+    DiagnosticsServer(InetAddress bindAddress, int port, TelemetrySource source, Executor sourceExecutor,
+                      EventLog eventLog) {
+        this.bindAddress = bindAddress;
+        this.port = port;
+        this.source = source;
+        this.sourceExecutor = sourceExecutor;
+        this.eventLog = eventLog;
+    }
+    
+    private static Executor mainThreadExecutor() {
+        final Handler handler = new Handler(Looper.getMainLooper());
+        return new Executor() {
+            @Override
+            public void execute(Runnable command) {
+                handler.post(command);
+            }
+        };
+    }
+    
+    /**
+     * Bind and start serving
+     */
+    public synchronized void start() throws IOException {
+        if (running) {
+            return;
+        }
+        Selector newSelector = Selector.open();
+        ServerSocketChannel channel = ServerSocketChannel.open();
+        try {
+            channel.socket().setReuseAddress(true);
+            channel.socket().bind(bindAddress != null ? new InetSocketAddress(bindAddress, port) : new InetSocketAddress(port));
+            channel.configureBlocking(false);
+            channel.register(newSelector, SelectionKey.OP_ACCEPT);
+        } catch (IOException e) {
+            channel.close();
+            newSelector.close();
+            throw e;
+        }
+        serverChannel = channel;
+        selector = newSelector;
+        running = true;
+        thread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                serve();
+            }
+        }, "DiagnosticsServer");
+        thread.setPriority(Thread.MIN_PRIORITY);
+        thread.start();
+        Log.i(TAG, "Serving diagnostics on port " + getPort());
+    }
+    
+    public synchronized void stop() {
+        if (!running) {
+            return;
+        }
+        running = false;
+        selector.wakeup();
+        try {
+            thread.join(1000);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        thread = null;
+    }
+    
+    /**
+     * How long a client may take to send its request, shorter in tests
+     */
+    void setRequestTimeoutMs(long timeoutMs) {
+        requestTimeoutNs = timeoutMs * 1000000L;
+    }
+    
+    /**
+     * Bound port, useful when started on port 0
+     */
+    public int getPort() {
+        ServerSocketChannel channel = serverChannel;
+        return channel != null ? channel.socket().getLocalPort() : -1;
+    }
+    
+    private void serve() {
+        try {
+            while (running) {
+                selector.select(selectTimeoutMs(System.nanoTime()));
+                Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+                while (keys.hasNext()) {
+                    SelectionKey key = keys.next();
+                    keys.remove();
+                    if (!key.isValid()) {
+                        continue;
+                    }
+                    if (key.isAcceptable()) {
+                        accept();
+                    } else {
+                        Connection connection = (Connection) key.attachment();
+                        if (key.isReadable()) {
+                            read(connection);
+                        }
+                        if (key.isValid() && key.isWritable()) {
+                            flush(connection);
+                        }
+                    }
+                }
+                long now = System.nanoTime();
+                closeIdle(now);
+                serveTelemetry(now);
+            }
+        } catch (IOException e) {
+            Log.e(TAG, "Diagnostics server failed", e);
+        } finally {
+            for (int i = connections.size() - 1; i >= 0; i--) {
+                close(connections.get(i));
+            }
+            try {
+                serverChannel.close();
+                selector.close();
+            } catch (IOException e) {
+                // Closing anyway
+            }
+            serverChannel = null;
+            selector = null;
+        }
+    }
+    
+    /**
+     * Block until the next stream event, connection or telemetry timeout, 0
+     * for no limit
+     */
+    private long selectTimeoutMs(long now) {
+        long next = Long.MAX_VALUE;
+        for (int i = 0; i < connections.size(); i++) {
+            Connection connection = connections.get(i);
+            if (connection.state == STREAMING && !connection.eventDue) {
+                next = Math.min(next, connection.nextEventNs);
+            }
+            if (connection.state == READING) {
+                next = Math.min(next, connection.acceptedNs + requestTimeoutNs);
+            }
+            if (connection.stalledSinceNs >= 0) {
+                next = Math.min(next, connection.stalledSinceNs + STALL_TIMEOUT_NS);
+            }
+        }
+        if (fetchPending) {
+            next = Math.min(next, fetchStartedNs + TELEMETRY_TIMEOUT_NS);
+        }
+        if (next == Long.MAX_VALUE) {
+            return 0;
+        }
+        return Math.max(1, (next - now + 999999) / 1000000);
+    }
+    
+    /**
+     * Close clients that never sent a request, such as a browser's
+     * preconnect, and clients that stopped reading
+     */
+    private void closeIdle(long now) {
+        for (int i = connections.size() - 1; i >= 0; i--) {
+            Connection connection = connections.get(i);
+            if ((connection.state == READING && now - connection.acceptedNs >= requestTimeoutNs)
+                    || (connection.stalledSinceNs >= 0 && now - connection.stalledSinceNs >= STALL_TIMEOUT_NS)) {
+                close(connection);
+            }
+        }
+    }
+    
+    private void accept() throws IOException {
+        SocketChannel channel = serverChannel.accept();
+        if (channel == null) {
+            return;
+        }
+        if (connections.size() >= MAX_CONNECTIONS || !isServedInterface(channel.socket().getLocalAddress())) {
+            channel.close();
+            return;
+        }
+        channel.configureBlocking(false);
+        channel.socket().setTcpNoDelay(true);
+        SelectionKey key = channel.register(selector, SelectionKey.OP_READ);
+        Connection connection = new Connection(channel, key, System.nanoTime());
+        key.attach(connection);
+        connections.add(connection);
+    }
+    
+    /**
+     * Loopback or Wi-Fi, not e.g. a mobile data interface
+     */
+    static boolean isServedInterface(InetAddress local) {
+        if (local.isLoopbackAddress()) {
+            return true;
+        }
+        try {
+            NetworkInterface networkInterface = NetworkInterface.getByInetAddress(local);
+            return networkInterface != null && networkInterface.getName().startsWith("wlan");
+        } catch (IOException e) {
+            return false;
+        }
+    }
+    
+    private void read(Connection connection) {
+        int read;
+        try {
+            read = connection.channel.read(connection.in);
+        } catch (IOException e) {
+            read = -1;
+        }
+        if (read < 0) {
+            close(connection);
+            return;
+        }
+        if (connection.state != READING) {
+            // Nothing more is expected from a client once it sent its request
+            connection.in.clear();
+            return;
+        }
+        int end = findHeaderEnd(connection.in);
+        if (end < 0) {
+            if (!connection.in.hasRemaining()) {
+                respondError(connection, "431 Request Header Fields Too Large", "request too large");
+            }
+            return;
+        }
+        handleRequest(connection, requestLine(connection.in, end));
+    }
+    
+    private static int findHeaderEnd(ByteBuffer in) {
+        byte[] bytes = in.array();
+        for (int i = 3; i < in.position(); i++) {
+            if (bytes[i] == '\n' && bytes[i - 1] == '\r' && bytes[i - 2] == '\n' && bytes[i - 3] == '\r') {
+                return i;
+            }
+        }
+        return -1;
+    }
+    
+    private static String requestLine(ByteBuffer in, int end) {
+        byte[] bytes = in.array();
+        int length = 0;
+        while (length < end && bytes[length] != '\r') {
+            length++;
+        }
+        char[] chars = new char[length];
+        for (int i = 0; i < length; i++) {
+            chars[i] = (char) (bytes[i] & 0xFF);
+        }
+        return new String(chars);
+    }
+    
+    private void handleRequest(Connection connection, String line) {
+        int methodEnd = line.indexOf(' ');
+        int targetEnd = line.indexOf(' ', methodEnd + 1);
+        if (methodEnd < 0 || targetEnd < 0) {
+            respondError(connection, "400 Bad Request", "bad request");
+            return;
+        }
+        if (!line.substring(0, methodEnd).equals("GET")) {
+            respondError(connection, "405 Method Not Allowed", "only GET");
+            return;
+        }
+        String target = line.substring(methodEnd + 1, targetEnd);
+        int queryStart = target.indexOf('?');
+        String path = queryStart < 0 ? target : target.substring(0, queryStart);
+        String query = queryStart < 0 ? "" : target.substring(queryStart + 1);
+        
+        if (path.equals("/telemetry")) {
+            connection.state = WAITING_TELEMETRY;
+        } else if (path.equals("/stream")) {
+            long hz = Math.max(1, Math.min(MAX_STREAM_HZ, queryLong(query, "hz", DEFAULT_STREAM_HZ)));
+            connection.state = STREAMING;
+            connection.streamIntervalNs = 1000000000L / hz;
+            connection.nextEventNs = System.nanoTime();
+            append(connection, "HTTP/1.1 200 OK\r\nContent-Type: text/event-stream\r\nCache-Control: no-cache\r\n"
+                + "Connection: keep-alive\r\n\r\n");
+            flush(connection);
+        } else if (path.equals("/metrics")) {
+            Metrics.getInstance().snapshot(metricsSnapshot);
+            json.reset().beginObject().name("timestamp").value(metricsSnapshot.timestampMs).name("metrics");
+            metricsSnapshot.writeJson(json);
+            json.endObject();
+            respond(connection, "200 OK", json);
+        } else if (path.equals("/events")) {
+            if (eventLog == null) {
+                respondError(connection, "503 Service Unavailable", "no event log");
+                return;
+            }
+            writeEvents(queryLong(query, "before", EventLog.NEWEST), (int) queryLong(query, "levels", EventLog.ALL_LEVELS));
+            respond(connection, "200 OK", json);
+        } else if (path.equals("/")) {
+            json.reset().beginObject().name("endpoints").beginArray()
+                .value("/telemetry").value("/metrics").value("/events").value("/stream")
+                .endArray().endObject();
+            respond(connection, "200 OK", json);
+        } else {
+            respondError(connection, "404 Not Found", "not found");
+        }
+    }
+    
+    private void writeEvents(long before, int levelMask) {
+        eventLog.readPage(before, levelMask, page);
+        json.reset().beginObject();
+        json.name("next").value(page.next);
+        json.name("events").beginArray();
+        for (int i = 0; i < page.count; i++) {
+            int source = page.sources[i];
+            json.beginObject()
+                .name("time").value(page.timestamps[i])
+                .name("level").value(EventManager.getLevelName(page.levels[i]))
+                .name("source").value(source < SOURCE_NAMES.length ? SOURCE_NAMES[source] : "unknown")
+                .name("message").value(page.messages[i])
+                .endObject();
+        }
+        json.endArray().endObject();
+    }
+    
+    /**
+     * A number from a query such as "hz=5&x=1", defaultValue when absent or malformed
+     */
+    static long queryLong(String query, String key, long defaultValue) {
+        int start = 0;
+        while (start < query.length()) {
+            int end = query.indexOf('&', start);
+            if (end < 0) {
+                end = query.length();
+            }
+            if (query.startsWith(key, start) && start + key.length() < end && query.charAt(start + key.length()) == '=') {
+                try {
+                    return Long.parseLong(query.substring(start + key.length() + 1, end));
+                } catch (NumberFormatException e) {
+                    return defaultValue;
+                }
+            }
+            start = end + 1;
+        }
+        return defaultValue;
+    }
+    
+    /**
+     * Fetch telemetry for waiting requests and due streams, and hand it out
+     */
+    private void serveTelemetry(long now) {
+        boolean wanted = false;
+        for (int i = 0; i < connections.size(); i++) {
+            Connection connection = connections.get(i);
+            if (connection.state == STREAMING && !connection.eventDue && now >= connection.nextEventNs) {
+                connection.eventDue = true;
+            }
+            wanted |= connection.state == WAITING_TELEMETRY || connection.eventDue;
+        }
+        
+        synchronized (telemetryLock) {
+            if (telemetryVersion != deliveredVersion) {
+                deliveredVersion = telemetryVersion;
+                fetchPending = false;
+                deliverTelemetry(now);
+                wanted = false;
+            }
+        }
+        
+        if (fetchPending && now - fetchStartedNs > TELEMETRY_TIMEOUT_NS) {
+            // The main thread is stuck, answer single requests instead of hanging
+            for (int i = connections.size() - 1; i >= 0; i--) {
+                Connection connection = connections.get(i);
+                if (connection.state == WAITING_TELEMETRY) {
+                    respondError(connection, "503 Service Unavailable", "telemetry not available");
+                }
+            }
+            fetchStartedNs = now;
+        }
+        if (wanted && !fetchPending) {
+            fetchPending = true;
+            fetchStartedNs = now;
+            sourceExecutor.execute(fetchTelemetry);
+        }
+    }
+    
+    /**
+     * Called with telemetryLock held
+     */
+    private void deliverTelemetry(long now) {
+        int length = telemetry.remaining();
+        for (int i = connections.size() - 1; i >= 0; i--) {
+            Connection connection = connections.get(i);
+            if (connection.state == WAITING_TELEMETRY) {
+                append(connection, "HTTP/1.1 200 OK\r\nContent-Type: application/json\r\nContent-Length: " + length
+                    + "\r\nConnection: close\r\n\r\n");
+                appendTelemetry(connection);
+                connection.state = CLOSING;
+                flush(connection);
+            } else if (connection.eventDue) {
+                connection.eventDue = false;
+                // On a grid shared by streams of the same rate, so they are served by one snapshot
+                connection.nextEventNs = (now / connection.streamIntervalNs + 1) * connection.streamIntervalNs;
+                if (connection.out.remaining() > MAX_PENDING_STREAM_BYTES) {
+                    continue;
+                }
+                append(connection, "data: ");
+                appendTelemetry(connection);
+                append(connection, "\n\n");
+                flush(connection);
+            }
+        }
+    }
+    
+    private void appendTelemetry(Connection connection) {
+        ByteBuffer out = prepareOut(connection, telemetry.remaining());
+        out.put(telemetry.array(), telemetry.position(), telemetry.remaining());
+        out.flip();
+    }
+    
+    private void respond(Connection connection, String status, JsonWriter body) {
+        int length = body.utf8Length();
+        append(connection, "HTTP/1.1 " + status + "\r\nContent-Type: application/json\r\nContent-Length: " + length
+            + "\r\nConnection: close\r\n\r\n");
+        ByteBuffer out = prepareOut(connection, length);
+        body.writeUtf8(out);
+        out.flip();
+        connection.state = CLOSING;
+        flush(connection);
+    }
+    
+    private void respondError(Connection connection, String status, String message) {
+        json.reset().beginObject().name("error").value(message).endObject();
+        respond(connection, status, json);
+    }
+    
+    private void append(Connection connection, String ascii) {
+        ByteBuffer out = prepareOut(connection, ascii.length());
+        for (int i = 0; i < ascii.length(); i++) {
+            out.put((byte) ascii.charAt(i));
+        }
+        out.flip();
+    }
+    
+    /**
+     * The connection's output buffer in write mode with room for more bytes;
+     * flip it when done
+     */
+    private static ByteBuffer prepareOut(Connection connection, int more) {
+        ByteBuffer out = connection.out;
+        out.compact();
+        if (out.remaining() < more) {
+            ByteBuffer larger = ByteBuffer.allocate(Math.max(out.capacity() * 2, out.position() + more));
+            out.flip();
+            larger.put(out);
+            connection.out = larger;
+            out = larger;
+        }
+        return out;
+    }
+    
+    private void flush(Connection connection) {
+        int written;
+        try {
+            written = connection.channel.write(connection.out);
+        } catch (IOException e) {
+            close(connection);
+            return;
+        }
+        if (connection.out.hasRemaining()) {
+            if (written > 0 || connection.stalledSinceNs < 0) {
+                connection.stalledSinceNs = System.nanoTime();
+            }
+            connection.key.interestOps(SelectionKey.OP_READ | SelectionKey.OP_WRITE);
+        } else if (connection.state == CLOSING) {
+            close(connection);
+        } else {
+            connection.stalledSinceNs = -1;
+            connection.key.interestOps(SelectionKey.OP_READ);
+        }
+    }
+    
+    private void close(Connection connection) {
+        connections.remove(connection);
+        connection.key.cancel();
+        try {
+            connection.channel.close();
+        } catch (IOException e) {
+            // Closed anyway
+        }
+    }
+}
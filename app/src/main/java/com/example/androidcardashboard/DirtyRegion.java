@@ -0,0 +1,60 @@
+package com.example.androidcardashboard;
+
+import android.graphics.Rect;
+
+/**
+ * Helpers for working out which part of a gauge changes between two values,
+ * so views can invalidate a sub-rectangle instead of the whole view.
+ */
+final class DirtyRegion {
+    private static final double QUARTER_TURN = Math.PI / 2;
+    
+    private DirtyRegion() {
+    }
+    
+    /**
+     * Union into out the bounds of the circle sector (center included) swept
+     * between two angles in radians, grown by pad pixels for stroke width.
+     */
+    static void unionSector(Rect out, float centerX, float centerY, float radius,
+                            double fromAngle, double toAngle, float pad) {
+        double start = Math.min(fromAngle, toAngle);
+        double end = Math.max(fromAngle, toAngle);
+        
+        float left = centerX;
+        float top = centerY;
+        float right = centerX;
+        float bottom = centerY;
+        
+        // Both end points of the arc
+        float startX = centerX + (float) (Math.cos(start) * radius);
+        float startY = centerY + (float) (Math.sin(start) * radius);
+        float endX = centerX + (float) (Math.cos(end) * radius);
+        float endY = centerY + (float) (Math.sin(end) * radius);
+        left = Math.min(left, Math.min(startX, endX));
+        right = Math.max(right, Math.max(startX, endX));
+        top = Math.min(top, Math.min(startY, endY));
+        bottom = Math.max(bottom, Math.max(startY, endY));
+        
+        // Axis extremes crossed by the arc
+        for (double angle = Math.ceil(start / QUARTER_TURN) * QUARTER_TURN; angle <= end; angle += QUARTER_TURN) {
+            float x = centerX + (float) (Math.cos(angle) * radius);
+            float y = centerY + (float) (Math.sin(angle) * radius);
+            left = Math.min(left, x);
+            right = Math.max(right, x);
+            top = Math.min(top, y);
+            bottom = Math.max(bottom, y);
+        }
+        
+        out.union((int) Math.floor(left - pad), (int) Math.floor(top - pad),
+                  (int) Math.ceil(right + pad), (int) Math.ceil(bottom + pad));
+    }
+    
+    /**
+     * Set out to the square around a circle of the given radius
+     */
+    static void setCircleBounds(Rect out, float centerX, float centerY, float radius) {
+        out.set((int) Math.floor(centerX - radius), (int) Math.floor(centerY - radius),
+                (int) Math.ceil(centerX + radius), (int) Math.ceil(centerY + radius));
+    }
+}
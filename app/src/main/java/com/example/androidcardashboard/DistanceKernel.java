@@ -0,0 +1,82 @@
+package com.example.androidcardashboard;
+
+/**
+ * Distance between consecutive GPS fixes. Points closer than SMALL_DELTA_DEG
+ * in both axes use an equirectangular projection with cos(latitude) cached
+ * per 0.01 degree latitude band; anything larger, or near the poles, falls
+ * back to haversine.
+ *
+ * Error bound of the fast path against haversine, for |latitude| up to
+ * MAX_FAST_LATITUDE_DEG: relative error below MAX_RELATIVE_ERROR (dominated
+ * by the cached band cosine, tan(lat) * half a band in radians), or an
+ * absolute error below 1 mm for very short hops. Checked by DistanceKernelTest.
+ */
+public class DistanceKernel {
+    public static final double EARTH_RADIUS_KM = 6371.0;
+    
+    // About 1.1 km north-south, several 10 Hz samples even on a highway
+    public static final double SMALL_DELTA_DEG = 0.01;
+    public static final double MAX_FAST_LATITUDE_DEG = 70.0;
+    public static final double MAX_RELATIVE_ERROR = 5e-4;
+    
+    private static final double BAND_DEG = 0.01;
+    private static final double KM_PER_DEG = EARTH_RADIUS_KM * Math.PI / 180.0;
+    
+    // Cached band, consecutive fixes almost always share it
+    private long cachedBand = Long.MIN_VALUE;
+    private double cachedCos;
+    
+    private long fastCount = 0;
+    private long fallbackCount = 0;
+    
+    /**
+     * Distance in kilometres between two points given in degrees
+     */
+    public double distanceKm(double latitude1, double longitude1, double latitude2, double longitude2) {
+        double deltaLat = latitude2 - latitude1;
+        double deltaLon = longitude2 - longitude1;
+        double midLat = (latitude1 + latitude2) * 0.5;
+        
+        if (Math.abs(deltaLat) > SMALL_DELTA_DEG || Math.abs(deltaLon) > SMALL_DELTA_DEG
+                || Math.abs(midLat) > MAX_FAST_LATITUDE_DEG) {
+            fallbackCount++;
+            return haversineKm(latitude1, longitude1, latitude2, longitude2);
+        }
+        
+        long band = (long) Math.floor(midLat / BAND_DEG);
+        if (band != cachedBand) {
+            cachedBand = band;
+            cachedCos = Math.cos(Math.toRadians((band + 0.5) * BAND_DEG));
+        }
+        
+        fastCount++;
+        double x = deltaLon * cachedCos;
+        return KM_PER_DEG * Math.sqrt(x * x + deltaLat * deltaLat);
+    }
+    
+    /**
+     * Haversine formula for calculating distance between two GPS points
+     */
+    public static double haversineKm(double latitude1, double longitude1, double latitude2, double longitude2) {
+        double lat1Rad = Math.toRadians(latitude1);
+        double lat2Rad = Math.toRadians(latitude2);
+        double deltaLatRad = Math.toRadians(latitude2 - latitude1);
+        double deltaLonRad = Math.toRadians(longitude2 - longitude1);
+        
+        double a = Math.sin(deltaLatRad / 2) * Math.sin(deltaLatRad / 2) +
+                   Math.cos(lat1Rad) * Math.cos(lat2Rad) *
+                   Math.sin(deltaLonRad / 2) * Math.sin(deltaLonRad / 2);
+        
+        double c = 2 * Math.atan2(Math.sqrt(a), Math.sqrt(1 - a));
+        
+        return EARTH_RADIUS_KM * c; // Distance in kilometers
+    }
+    
+    public long getFastCount() {
+        return fastCount;
+    }
+    
+    public long getFallbackCount() {
+        return fallbackCount;
+    }
+}
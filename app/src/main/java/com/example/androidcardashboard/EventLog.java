@@ -0,0 +1,1002 @@
+package com.example.androidcardashboard;
+
+import android.util.Log;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Persistent event history in a rotating set of binary segment files.
+ *
+ * An event is a timestamp, level, source, message template and up to two
+ * numeric arguments (the template's %d placeholders). Templates are interned
+ * into a dictionary file, so a record is usually 5-10 bytes:
+ *
+ *   varint length, byte level | source << 4, zigzag varint time delta,
+ *   varint template id (0: inline UTF-8 string follows), byte argument
+ *   count, zigzag varint arguments
+ *
+ * Records are grouped in blocks of BLOCK_RECORDS. The first record of a
+ * block stores the absolute time, the others the delta to the previous one.
+ * Each segment has a sparse index file with one entry per block (time
+ * range, offset, length, level mask), so a page of events is found and
+ * filtered by level without reading the rest of the log. When a segment
+ * is full a new one is started, and the oldest is deleted beyond
+ * maxSegments, which bounds the disk use.
+ *
+ * Any thread may append; events are queued without locking and written in
+ * batches by the log's own thread.
+ */
+public class EventLog {
+    private static final String TAG = "EventLog";
+    
+    public static final int SOURCE_TCP = 0;
+    public static final int SOURCE_GPS = 1;
+    public static final int SOURCE_APP = 2;
+    
+    // Position to read from the newest event, and the level mask of all levels
+    public static final long NEWEST = Long.MAX_VALUE;
+    public static final int ALL_LEVELS = 0xFFFF;
+    
+    public static final int DEFAULT_SEGMENT_BYTES = 256 * 1024;
+    public static final int DEFAULT_MAX_SEGMENTS = 16;
+    static final int BLOCK_RECORDS = 64;
+    private static final int MAX_TEMPLATES = 4096;
+    private static final int MAX_INLINE_BYTES = 512;
+    private static final int MAX_RECORD_BYTES = MAX_INLINE_BYTES + 64;
+    private static final int MAX_QUEUED = 10000;
+    private static final long WRITE_DELAY_MS = 1000;
+    
+    private static final int SEGMENT_MAGIC = 0x45564C31; // "EVL1"
+    private static final int SEGMENT_HEADER_SIZE = 4;
+    private static final int INDEX_ENTRY_SIZE = 28;
+    private static final String DICTIONARY_NAME = "strings.dict";
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+    
+    private final File directory;
+    private final int segmentBytes;
+    private final int maxSegments;
+    
+    private final ConcurrentLinkedQueue<Pending> queue = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger queued = new AtomicInteger();
+    private final AtomicInteger dropped = new AtomicInteger();
+    private final AtomicBoolean writeScheduled = new AtomicBoolean();
+    private final ScheduledExecutorService writer;
+    private final Runnable writeTask = new Runnable() {
+        @Override
+        public void run() {
+            writeScheduled.set(false);
+            writePending();
+        }
+    };
+    
+    // Everything below is guarded by this
+    private final List<String> templates = new ArrayList<>();
+    private final HashMap<String, Integer> templateIds = new HashMap<>();
+    private FileChannel dictionaryChannel;
+    private final ByteBuffer dictionaryBuffer = ByteBuffer.allocate(16 * 1024);
+    
+    private final List<Segment> segments = new ArrayList<>();
+    private Segment active;
+    private FileChannel activeChannel;
+    private FileChannel activeIndexChannel;
+    private final ByteBuffer writeBuffer = ByteBuffer.allocate(32 * 1024);
+    private final ByteBuffer indexBuffer = ByteBuffer.allocate(INDEX_ENTRY_SIZE * 64);
+    private final byte[] record = new byte[MAX_RECORD_BYTES];
+    private long previousTime;
+    
+    // Stats, published after each write so the getters don't wait for the file
+    private volatile long writtenCount = 0;
+    private volatile int segmentCount = 0;
+    private volatile long diskBytes = 0;
+    private volatile int templateCount = 0;
+    
+    // Decoded block for reading
+    private byte[] blockBytes = new byte[8 * 1024];
+    private final Block block = new Block();
+    
+    /**
+     * One segment file and its index, with the index entries in memory
+     */
+    static final class Segment {
+        final long id;
+        final File file;
+        final File indexFile;
+        long bytes;
+        
+        int blocks = 0;
+        long[] firstTimes = new long[16];
+        long[] lastTimes = new long[16];
+        int[] offsets = new int[16];
+        int[] lengths = new int[16];
+        int[] masks = new int[16];
+        int[] counts = new int[16];
+        
+        // Block being written, not in the index file yet
+        int openOffset;
+        int openCount = 0;
+        int openMask = 0;
+        long openFirstTime;
+        long openLastTime;
+        
+        Segment(File directory, long id) {
+            this.id = id;
+            String name = String.format("events-%08d", id);
+            file = new File(directory, name + ".seg");
+            indexFile = new File(directory, name + ".idx");
+        }
+        
+        void addBlock(long firstTime, long lastTime, int offset, int length, int mask, int count) {
+            if (blocks == offsets.length) {
+                int capacity = blocks * 2;
+                firstTimes = Arrays.copyOf(firstTimes, capacity);
+                lastTimes = Arrays.copyOf(lastTimes, capacity);
+                offsets = Arrays.copyOf(offsets, capacity);
+                lengths = Arrays.copyOf(lengths, capacity);
+                masks = Arrays.copyOf(masks, capacity);
+                counts = Arrays.copyOf(counts, capacity);
+            }
+            firstTimes[blocks] = firstTime;
+            lastTimes[blocks] = lastTime;
+            offsets[blocks] = offset;
+            lengths[blocks] = length;
+            masks[blocks] = mask;
+            counts[blocks] = count;
+            blocks++;
+        }
+        
+        int indexedEnd() {
+            return blocks > 0 ? offsets[blocks - 1] + lengths[blocks - 1] : SEGMENT_HEADER_SIZE;
+        }
+    }
+    
+    /**
+     * Queued event, written by the log thread
+     */
+    private static final class Pending {
+        long timestamp;
+        int level;
+        int source;
+        String template;
+        boolean inline; // Never interned
+        int argCount;
+        long arg0;
+        long arg1;
+    }
+    
+    /**
+     * Decoded records of one block
+     */
+    private static final class Block {
+        int count;
+        final int[] offsets = new int[BLOCK_RECORDS];
+        final long[] timestamps = new long[BLOCK_RECORDS];
+        final int[] levels = new int[BLOCK_RECORDS];
+        final int[] sources = new int[BLOCK_RECORDS];
+        final int[] templates = new int[BLOCK_RECORDS];
+        final String[] inline = new String[BLOCK_RECORDS];
+        final int[] argCounts = new int[BLOCK_RECORDS];
+        final long[] args = new long[BLOCK_RECORDS * 2];
+    }
+    
+    /**
+     * Events of one read, newest first
+     */
+    public static class Page {
+        public final long[] timestamps;
+        public final int[] levels;
+        public final int[] sources;
+        public final String[] messages;
+        public final long[] positions;
+        public int count;
+        // Pass as before to read the next older page, -1 when there is none
+        public long next;
+        
+        public Page(int capacity) {
+            timestamps = new long[capacity];
+            levels = new int[capacity];
+            sources = new int[capacity];
+            messages = new String[capacity];
+            positions = new long[capacity];
+        }
+        
+        public int capacity() {
+            return timestamps.length;
+        }
+    }
+    
+    public EventLog(File directory) {
+        this(directory, DEFAULT_SEGMENT_BYTES, DEFAULT_MAX_SEGMENTS);
+    }
+    
+    public EventLog(File directory, int segmentBytes, int maxSegments) {
+        this.directory = directory;
+        this.segmentBytes = segmentBytes;
+        this.maxSegments = Math.max(2, maxSegments);
+        writer = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, "EventLog");
+                thread.setPriority(Thread.MIN_PRIORITY);
+                return thread;
+            }
+        });
+    }
+    
+    /**
+     * Load the dictionary and segment indexes, repairing a torn tail.
+     * Only the index files and the unindexed tail of each segment are read.
+     */
+    public synchronized void open() {
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            Log.e(TAG, "Failed to create " + directory);
+            return;
+        }
+        try {
+            loadDictionary();
+            File[] files = directory.listFiles();
+            long[] ids = new long[files != null ? files.length : 0];
+            int count = 0;
+            for (int i = 0; i < ids.length; i++) {
+                String name = files[i].getName();
+                if (name.startsWith("events-") && name.endsWith(".seg")) {
+                    try {
+                        ids[count++] = Long.parseLong(name.substring(7, name.length() - 4));
+                    } catch (NumberFormatException e) {
+                        // Not one of ours
+                    }
+                }
+            }
+            Arrays.sort(ids, 0, count);
+            for (int i = 0; i < count; i++) {
+                Segment segment = new Segment(directory, ids[i]);
+                loadSegment(segment, i == count - 1);
+                segments.add(segment);
+            }
+            
+            Segment last = segments.isEmpty() ? null : segments.get(segments.size() - 1);
+            if (last != null && last.bytes < segmentBytes - MAX_RECORD_BYTES) {
+                openActive(last);
+            } else {
+                if (last != null && last.openCount > 0) {
+                    closeBlock(last);
+                    rewriteIndex(last);
+                }
+                startSegment(last != null ? last.id + 1 : 0);
+            }
+            Log.i(TAG, "Opened " + segments.size() + " segments, " + templates.size() + " templates");
+        } catch (IOException e) {
+            Log.e(TAG, "Failed to open event log", e);
+        }
+        publishStats();
+    }
+    
+    private void loadDictionary() throws IOException {
+        File file = new File(directory, DICTIONARY_NAME);
+        RandomAccessFile dictionaryFile = new RandomAccessFile(file, "rw");
+        dictionaryChannel = dictionaryFile.getChannel();
+        byte[] bytes = readFully(dictionaryChannel, 0, (int) dictionaryChannel.size());
+        int position = 0;
+        int[] cursor = new int[1];
+        while (position < bytes.length) {
+            cursor[0] = position;
+            int length = readVarint(bytes, cursor, bytes.length);
+            if (length < 0 || cursor[0] + length > bytes.length) {
+                break;
+            }
+            addTemplate(new String(bytes, cursor[0], length, UTF_8));
+            position = cursor[0] + length;
+        }
+        // Drop a torn last entry
+        dictionaryChannel.truncate(position);
+        dictionaryChannel.position(position);
+    }
+    
+    private void loadSegment(Segment segment, boolean last) throws IOException {
+        RandomAccessFile file = new RandomAccessFile(segment.file, "rw");
+        try {
+            FileChannel channel = file.getChannel();
+            segment.bytes = channel.size();
+            if (segment.bytes >= SEGMENT_HEADER_SIZE
+                && ByteBuffer.wrap(readFully(channel, 0, SEGMENT_HEADER_SIZE)).getInt() != SEGMENT_MAGIC) {
+                Log.w(TAG, "Not an event segment: " + segment.file.getName());
+                channel.truncate(0);
+                segment.bytes = 0;
+            }
+            
+            // Index entries, as long as they describe consecutive blocks in the file
+            if (segment.indexFile.exists()) {
+                RandomAccessFile indexFile = new RandomAccessFile(segment.indexFile, "r");
+                try {
+                    int entries = (int) (indexFile.length() / INDEX_ENTRY_SIZE);
+                    ByteBuffer index = ByteBuffer.wrap(readFully(indexFile.getChannel(), 0, entries * INDEX_ENTRY_SIZE));
+                    for (int i = 0; i < entries; i++) {
+                        long firstTime = index.getLong();
+                        long lastTime = index.getLong();
+                        int offset = index.getInt();
+                        int length = index.getInt();
+                        int mask = index.getShort() & 0xFFFF;
+                        int count = index.getShort() & 0xFFFF;
+                        if (offset != segment.indexedEnd() || offset + (long) length > segment.bytes) {
+                            break;
+                        }
+                        segment.addBlock(firstTime, lastTime, offset, length, mask, count);
+                    }
+                } finally {
+                    indexFile.close();
+                }
+            }
+            
+            // Records after the last indexed block, normally only in the last segment
+            int end = segment.indexedEnd();
+            byte[] tail = readFully(channel, end, (int) (segment.bytes - end));
+            segment.openOffset = end;
+            int valid = scanTail(segment, tail, end);
+            if (valid < segment.bytes) {
+                Log.w(TAG, "Dropping " + (segment.bytes - valid) + " torn bytes of " + segment.file.getName());
+                channel.truncate(valid);
+                segment.bytes = valid;
+            }
+            if (segment.bytes < SEGMENT_HEADER_SIZE) {
+                // Empty or torn before the first record
+                ByteBuffer header = ByteBuffer.allocate(SEGMENT_HEADER_SIZE);
+                header.putInt(SEGMENT_MAGIC).flip();
+                channel.write(header, 0);
+                segment.bytes = SEGMENT_HEADER_SIZE;
+                segment.openOffset = SEGMENT_HEADER_SIZE;
+            }
+            if (!last && segment.openCount > 0) {
+                // A finished segment, its last block is short
+                closeBlock(segment);
+            }
+        } finally {
+            file.close();
+        }
+        rewriteIndex(segment);
+    }
+    
+    /**
+     * Index the records of a segment tail in blocks
+     * @return file offset after the last valid record
+     */
+    private int scanTail(Segment segment, byte[] tail, int start) {
+        int[] cursor = new int[1];
+        int position = 0;
+        long previous = 0;
+        while (position < tail.length) {
+            cursor[0] = position;
+            int length = readVarint(tail, cursor, tail.length);
+            int bodyStart = cursor[0];
+            if (length <= 0 || length > MAX_RECORD_BYTES || bodyStart + length > tail.length) {
+                break;
+            }
+            int levelSource = tail[bodyStart] & 0xFF;
+            cursor[0] = bodyStart + 1;
+            long delta = zigzagDecode(readVarLong(tail, cursor, bodyStart + length));
+            if (cursor[0] < 0) {
+                break;
+            }
+            long time = segment.openCount == 0 ? delta : previous + delta;
+            previous = time;
+            addToOpenBlock(segment, start + position, time, levelSource & 0x0F);
+            position = bodyStart + length;
+            if (segment.openCount == BLOCK_RECORDS) {
+                int blockEnd = start + position;
+                segment.addBlock(segment.openFirstTime, segment.openLastTime, segment.openOffset,
+                                 blockEnd - segment.openOffset, segment.openMask, segment.openCount);
+                segment.openOffset = blockEnd;
+                segment.openCount = 0;
+                segment.openMask = 0;
+            }
+        }
+        previousTime = previous;
+        return start + position;
+    }
+    
+    private static void addToOpenBlock(Segment segment, int offset, long time, int level) {
+        if (segment.openCount == 0) {
+            segment.openOffset = offset;
+            segment.openFirstTime = time;
+        }
+        segment.openLastTime = time;
+        segment.openMask |= 1 << level;
+        segment.openCount++;
+    }
+    
+    private static void closeBlock(Segment segment) {
+        int end = (int) segment.bytes;
+        segment.addBlock(segment.openFirstTime, segment.openLastTime, segment.openOffset,
+                         end - segment.openOffset, segment.openMask, segment.openCount);
+        segment.openOffset = end;
+        segment.openCount = 0;
+        segment.openMask = 0;
+    }
+    
+    private void rewriteIndex(Segment segment) throws IOException {
+        long expected = segment.blocks * (long) INDEX_ENTRY_SIZE;
+        if (segment.indexFile.length() == expected) {
+            return;
+        }
+        RandomAccessFile indexFile = new RandomAccessFile(segment.indexFile, "rw");
+        try {
+            FileChannel channel = indexFile.getChannel();
+            channel.truncate(0);
+            ByteBuffer entry = ByteBuffer.allocate(INDEX_ENTRY_SIZE);
+            for (int i = 0; i < segment.blocks; i++) {
+                entry.clear();
+                putIndexEntry(entry, segment, i);
+                entry.flip();
+                channel.write(entry, i * (long) INDEX_ENTRY_SIZE);
+            }
+        } finally {
+            indexFile.close();
+        }
+    }
+    
+    private static void putIndexEntry(ByteBuffer out, Segment segment, int block) {
+        out.putLong(segment.firstTimes[block]).putLong(segment.lastTimes[block])
+            .putInt(segment.offsets[block]).putInt(segment.lengths[block])
+            .putShort((short) segment.masks[block]).putShort((short) segment.counts[block]);
+    }
+    
+    private void openActive(Segment segment) throws IOException {
+        active = segment;
+        activeChannel = new RandomAccessFile(segment.file, "rw").getChannel();
+        activeChannel.position(segment.bytes);
+        activeIndexChannel = new RandomAccessFile(segment.indexFile, "rw").getChannel();
+        activeIndexChannel.position(segment.blocks * (long) INDEX_ENTRY_SIZE);
+    }
+    
+    private void startSegment(long id) throws IOException {
+        Segment segment = new Segment(directory, id);
+        RandomAccessFile file = new RandomAccessFile(segment.file, "rw");
+        file.setLength(0);
+        file.writeInt(SEGMENT_MAGIC);
+        file.close();
+        new RandomAccessFile(segment.indexFile, "rw").setLength(0);
+        segment.bytes = SEGMENT_HEADER_SIZE;
+        segment.openOffset = SEGMENT_HEADER_SIZE;
+        segments.add(segment);
+        openActive(segment);
+        
+        // Bound the disk use
+        while (segments.size() > maxSegments) {
+            Segment oldest = segments.remove(0);
+            oldest.file.delete();
+            oldest.indexFile.delete();
+        }
+    }
+    
+    public void append(long timestamp, int level, int source, String template) {
+        enqueue(timestamp, level, source, template, false, 0, 0, 0);
+    }
+    
+    public void append(long timestamp, int level, int source, String template, long arg) {
+        enqueue(timestamp, level, source, template, false, 1, arg, 0);
+    }
+    
+    public void append(long timestamp, int level, int source, String template, long arg0, long arg1) {
+        enqueue(timestamp, level, source, template, false, 2, arg0, arg1);
+    }
+    
+    /**
+     * Event with text that seldom repeats, such as a stack. It is stored in
+     * its record and never interned, so it can't fill the dictionary; text
+     * beyond 512 bytes is cut.
+     */
+    public void appendText(long timestamp, int level, int source, String text) {
+        enqueue(timestamp, level, source, text, true, 0, 0, 0);
+    }
+    
+    private void enqueue(long timestamp, int level, int source, String template, boolean inline, int argCount,
+            long arg0, long arg1) {
+        if (queued.incrementAndGet() > MAX_QUEUED) {
+            // The writer is stuck, e.g. on a full disk
+            queued.decrementAndGet();
+            dropped.incrementAndGet();
+            return;
+        }
+        Pending event = new Pending();
+        event.timestamp = timestamp;
+        event.level = level;
+        event.source = source;
+        event.template = template;
+        event.inline = inline;
+        event.argCount = argCount;
+        event.arg0 = arg0;
+        event.arg1 = arg1;
+        queue.offer(event);
+        if (writeScheduled.compareAndSet(false, true)) {
+            try {
+                writer.schedule(writeTask, WRITE_DELAY_MS, TimeUnit.MILLISECONDS);
+            } catch (RejectedExecutionException e) {
+                // Closed
+            }
+        }
+    }
+    
+    /**
+     * Write the queued events now and wait for it, at most 2 s
+     */
+    public void flush() {
+        try {
+            Future<?> done = writer.submit(new Runnable() {
+                @Override
+                public void run() {
+                    writePending();
+                }
+            });
+            done.get(2, TimeUnit.SECONDS);
+        } catch (Exception e) {
+            Log.w(TAG, "Event log flush did not finish", e);
+        }
+    }
+    
+    public void close() {
+        flush();
+        writer.shutdown();
+        synchronized (this) {
+            closeChannels();
+        }
+    }
+    
+    private void closeChannels() {
+        try {
+            if (activeChannel != null) {
+                activeChannel.close();
+                activeIndexChannel.close();
+            }
+            if (dictionaryChannel != null) {
+                dictionaryChannel.close();
+            }
+        } catch (IOException e) {
+            Log.e(TAG, "Failed to close event log", e);
+        }
+        activeChannel = null;
+        activeIndexChannel = null;
+        dictionaryChannel = null;
+    }
+    
+    private synchronized void writePending() {
+        if (activeChannel == null) {
+            return;
+        }
+        try {
+            Pending event;
+            while ((event = queue.poll()) != null) {
+                queued.decrementAndGet();
+                writeEvent(event);
+            }
+            writeBuffers();
+        } catch (IOException e) {
+            Log.e(TAG, "Failed to write events", e);
+        }
+        publishStats();
+    }
+    
+    /**
+     * Called with the lock held, after the segments changed
+     */
+    private void publishStats() {
+        long bytes = 0;
+        for (int i = 0; i < segments.size(); i++) {
+            Segment segment = segments.get(i);
+            bytes += segment.bytes + segment.blocks * (long) INDEX_ENTRY_SIZE;
+        }
+        segmentCount = segments.size();
+        diskBytes = bytes;
+    }
+    
+    private void writeEvent(Pending event) throws IOException {
+        int id = event.inline ? 0 : templateId(event.template);
+        
+        // Body after the length prefix, with the time delta unless it starts a block
+        int length = encode(event, id, active.openCount == 0 ? event.timestamp : event.timestamp - previousTime);
+        int total = length + varintSize(length);
+        if (active.bytes + total > segmentBytes && active.bytes > SEGMENT_HEADER_SIZE) {
+            rotate();
+            length = encode(event, id, event.timestamp);
+            total = length + varintSize(length);
+        }
+        
+        int offset = (int) active.bytes;
+        if (writeBuffer.remaining() < total) {
+            writeBuffers();
+        }
+        putVarint(writeBuffer, length);
+        writeBuffer.put(record, 0, length);
+        active.bytes += total;
+        previousTime = event.timestamp;
+        writtenCount++;
+        
+        addToOpenBlock(active, offset, event.timestamp, event.level);
+        if (active.openCount == BLOCK_RECORDS) {
+            closeBlock(active);
+            if (indexBuffer.remaining() < INDEX_ENTRY_SIZE) {
+                writeBuffers();
+            }
+            putIndexEntry(indexBuffer, active, active.blocks - 1);
+        }
+    }
+    
+    private int encode(Pending event, int templateId, long timeValue) {
+        int[] cursor = {0};
+        record[cursor[0]++] = (byte) ((event.level & 0x0F) | (event.source << 4));
+        writeVarLong(record, cursor, zigzagEncode(timeValue));
+        writeVarLong(record, cursor, templateId);
+        if (templateId == 0) {
+            byte[] bytes = event.template.getBytes(UTF_8);
+            int length = Math.min(bytes.length, MAX_INLINE_BYTES);
+            writeVarLong(record, cursor, length);
+            System.arraycopy(bytes, 0, record, cursor[0], length);
+            cursor[0] += length;
+        }
+        record[cursor[0]++] = (byte) event.argCount;
+        if (event.argCount > 0) {
+            writeVarLong(record, cursor, zigzagEncode(event.arg0));
+        }
+        if (event.argCount > 1) {
+            writeVarLong(record, cursor, zigzagEncode(event.arg1));
+        }
+        return cursor[0];
+    }
+    
+    /**
+     * Interned id of a template, 0 when the dictionary is full
+     */
+    private int templateId(String template) throws IOException {
+        Integer id = templateIds.get(template);
+        if (id != null) {
+            return id;
+        }
+        if (templates.size() >= MAX_TEMPLATES) {
+            return 0;
+        }
+        byte[] bytes = template.getBytes(UTF_8);
+        if (bytes.length > MAX_INLINE_BYTES) {
+            return 0;
+        }
+        if (dictionaryBuffer.remaining() < bytes.length + 5) {
+            writeBuffers();
+        }
+        putVarint(dictionaryBuffer, bytes.length);
+        dictionaryBuffer.put(bytes);
+        return addTemplate(template);
+    }
+    
+    private int addTemplate(String template) {
+        templates.add(template);
+        int id = templates.size();
+        templateCount = id;
+        templateIds.put(template, id);
+        return id;
+    }
+    
+    private void rotate() throws IOException {
+        if (active.openCount > 0) {
+            closeBlock(active);
+            putIndexEntry(indexBuffer, active, active.blocks - 1);
+        }
+        writeBuffers();
+        activeChannel.close();
+        activeIndexChannel.close();
+        startSegment(active.id + 1);
+    }
+    
+    /**
+     * Write the dictionary first, so no record refers to a missing template
+     */
+    private void writeBuffers() throws IOException {
+        dictionaryBuffer.flip();
+        while (dictionaryBuffer.hasRemaining()) {
+            dictionaryChannel.write(dictionaryBuffer);
+        }
+        dictionaryBuffer.clear();
+        writeBuffer.flip();
+        while (writeBuffer.hasRemaining()) {
+            activeChannel.write(writeBuffer);
+        }
+        writeBuffer.clear();
+        indexBuffer.flip();
+        while (indexBuffer.hasRemaining()) {
+            activeIndexChannel.write(indexBuffer);
+        }
+        indexBuffer.clear();
+    }
+    
+    /**
+     * Read a page of events older than a position, newest first
+     * @param before NEWEST, or Page.next of the previous page
+     * @param levelMask bit (1 << level) for each level to include
+     */
+    public synchronized void readPage(long before, int levelMask, Page out) {
+        out.count = 0;
+        out.next = -1;
+        if (activeChannel == null) {
+            return;
+        }
+        try {
+            writeBuffers();
+            long beforeSegment = before == NEWEST ? Long.MAX_VALUE : before >>> 32;
+            int beforeOffset = before == NEWEST ? Integer.MAX_VALUE : (int) before;
+            for (int s = segments.size() - 1; s >= 0; s--) {
+                Segment segment = segments.get(s);
+                if (segment.id > beforeSegment) {
+                    continue;
+                }
+                int limit = segment.id == beforeSegment ? beforeOffset : Integer.MAX_VALUE;
+                for (int b = blockCount(segment) - 1; b >= 0; b--) {
+                    if (blockOffset(segment, b) >= limit || (blockMask(segment, b) & levelMask) == 0) {
+                        continue;
+                    }
+                    readBlock(segment, b);
+                    for (int r = block.count - 1; r >= 0; r--) {
+                        if (block.offsets[r] >= limit || (levelMask & (1 << block.levels[r])) == 0) {
+                            continue;
+                        }
+                        int i = out.count++;
+                        out.timestamps[i] = block.timestamps[r];
+                        out.levels[i] = block.levels[r];
+                        out.sources[i] = block.sources[r];
+                        out.messages[i] = formatRecord(r);
+                        out.positions[i] = (segment.id << 32) | block.offsets[r];
+                        if (out.count == out.capacity()) {
+                            out.next = out.positions[i];
+                            return;
+                        }
+                    }
+                }
+            }
+        } catch (IOException e) {
+            Log.e(TAG, "Failed to read events", e);
+        }
+    }
+    
+    /**
+     * Position of the first event at or after a time, to read the events
+     * before it. Uses the block time ranges, so only one block is decoded.
+     */
+    public synchronized long positionAt(long timeMs) {
+        if (activeChannel == null) {
+            return NEWEST;
+        }
+        try {
+            writeBuffers();
+            for (int s = 0; s < segments.size(); s++) {
+                Segment segment = segments.get(s);
+                int blocks = blockCount(segment);
+                if (blocks == 0 || blockLastTime(segment, blocks - 1) < timeMs) {
+                    continue;
+                }
+                // First block that ends at or after the time
+                int low = 0;
+                int high = blocks - 1;
+                while (low < high) {
+                    int mid = (low + high) >>> 1;
+                    if (blockLastTime(segment, mid) < timeMs) {
+                        low = mid + 1;
+                    } else {
+                        high = mid;
+                    }
+                }
+                readBlock(segment, low);
+                for (int r = 0; r < block.count; r++) {
+                    if (block.timestamps[r] >= timeMs) {
+                        return (segment.id << 32) | block.offsets[r];
+                    }
+                }
+            }
+        } catch (IOException e) {
+            Log.e(TAG, "Failed to search events", e);
+        }
+        return NEWEST;
+    }
+    
+    private int blockCount(Segment segment) {
+        return segment.blocks + (segment == active && segment.openCount > 0 ? 1 : 0);
+    }
+    
+    private static int blockOffset(Segment segment, int block) {
+        return block < segment.blocks ? segment.offsets[block] : segment.openOffset;
+    }
+    
+    private static int blockMask(Segment segment, int block) {
+        return block < segment.blocks ? segment.masks[block] : segment.openMask;
+    }
+    
+    private static long blockLastTime(Segment segment, int block) {
+        return block < segment.blocks ? segment.lastTimes[block] : segment.openLastTime;
+    }
+    
+    private void readBlock(Segment segment, int index) throws IOException {
+        int offset = blockOffset(segment, index);
+        int length = index < segment.blocks ? segment.lengths[index] : (int) segment.bytes - segment.openOffset;
+        if (blockBytes.length < length) {
+            blockBytes = new byte[Math.max(length, blockBytes.length * 2)];
+        }
+        if (segment == active) {
+            readFully(activeChannel, offset, blockBytes, length);
+        } else {
+            RandomAccessFile file = new RandomAccessFile(segment.file, "r");
+            try {
+                readFully(file.getChannel(), offset, blockBytes, length);
+            } finally {
+                file.close();
+            }
+        }
+        decodeBlock(blockBytes, length, offset);
+    }
+    
+    private void decodeBlock(byte[] bytes, int length, int fileOffset) {
+        int[] cursor = new int[1];
+        long previous = 0;
+        block.count = 0;
+        while (cursor[0] < length && block.count < BLOCK_RECORDS) {
+            int r = block.count;
+            block.offsets[r] = fileOffset + cursor[0];
+            int bodyLength = readVarint(bytes, cursor, length);
+            int end = cursor[0] + bodyLength;
+            int levelSource = bytes[cursor[0]++] & 0xFF;
+            block.levels[r] = levelSource & 0x0F;
+            block.sources[r] = levelSource >> 4;
+            long delta = zigzagDecode(readVarLong(bytes, cursor, end));
+            previous = r == 0 ? delta : previous + delta;
+            block.timestamps[r] = previous;
+            block.templates[r] = (int) readVarLong(bytes, cursor, end);
+            block.inline[r] = null;
+            if (block.templates[r] == 0) {
+                int textLength = (int) readVarLong(bytes, cursor, end);
+                block.inline[r] = new String(bytes, cursor[0], textLength, UTF_8);
+                cursor[0] += textLength;
+            }
+            int argCount = bytes[cursor[0]++];
+            block.argCounts[r] = argCount;
+            for (int a = 0; a < argCount && a < 2; a++) {
+                block.args[r * 2 + a] = zigzagDecode(readVarLong(bytes, cursor, end));
+            }
+            cursor[0] = end;
+            block.count++;
+        }
+    }
+    
+    private String formatRecord(int r) {
+        String template = block.inline[r];
+        if (template == null) {
+            int id = block.templates[r];
+            template = id > 0 && id <= templates.size() ? templates.get(id - 1) : "?";
+        }
+        return format(template, block.args, r * 2, block.argCounts[r]);
+    }
+    
+    /**
+     * Fill the %d placeholders of a template with the arguments
+     */
+    static String format(String template, long[] args, int first, int count) {
+        if (count == 0) {
+            return template;
+        }
+        StringBuilder text = new StringBuilder(template.length() + 16);
+        int arg = 0;
+        int start = 0;
+        int placeholder;
+        while (arg < count && (placeholder = template.indexOf("%d", start)) >= 0) {
+            text.append(template, start, placeholder).append(args[first + arg++]);
+            start = placeholder + 2;
+        }
+        return text.append(template, start, template.length()).toString();
+    }
+    
+    public int getSegmentCount() {
+        return segmentCount;
+    }
+    
+    /**
+     * Bytes of all segments as of the last write
+     */
+    public long getDiskBytes() {
+        return diskBytes;
+    }
+    
+    public long getWrittenCount() {
+        return writtenCount;
+    }
+    
+    public int getTemplateCount() {
+        return templateCount;
+    }
+    
+    public int getDroppedCount() {
+        return dropped.get();
+    }
+    
+    // Varint helpers, 7 bits per byte, low bits first
+    
+    private static int varintSize(int value) {
+        int size = 1;
+        while ((value >>>= 7) != 0) {
+            size++;
+        }
+        return size;
+    }
+    
+    private static void putVarint(ByteBuffer out, int value) {
+        while ((value & ~0x7F) != 0) {
+            out.put((byte) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        out.put((byte) value);
+    }
+    
+    private static void writeVarLong(byte[] out, int[] cursor, long value) {
+        while ((value & ~0x7FL) != 0) {
+            out[cursor[0]++] = (byte) ((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        out[cursor[0]++] = (byte) value;
+    }
+    
+    /**
+     * @return the value, with cursor[0] set to -1 when it runs past end
+     */
+    private static long readVarLong(byte[] in, int[] cursor, int end) {
+        long value = 0;
+        int shift = 0;
+        int position = cursor[0];
+        while (position < end && shift < 64) {
+            int b = in[position++];
+            value |= (long) (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                cursor[0] = position;
+                return value;
+            }
+            shift += 7;
+        }
+        cursor[0] = -1;
+        return 0;
+    }
+    
+    private static int readVarint(byte[] in, int[] cursor, int end) {
+        long value = readVarLong(in, cursor, end);
+        return cursor[0] < 0 || value > Integer.MAX_VALUE ? -1 : (int) value;
+    }
+    
+    private static long zigzagEncode(long value) {
+        return (value << 1) ^ (value >> 63);
+    }
+    
+    private static long zigzagDecode(long value) {
+        return (value >>> 1) ^ -(value & 1);
+    }
+    
+    private static byte[] readFully(FileChannel channel, long position, int length) throws IOException {
+        byte[] bytes = new byte[Math.max(0, length)];
+        readFully(channel, position, bytes, bytes.length);
+        return bytes;
+    }
+    
+    private static void readFully(FileChannel channel, long position, byte[] bytes, int length) throws IOException {
+        ByteBuffer buffer = ByteBuffer.wrap(bytes, 0, length);
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, position + buffer.position()) < 0) {
+                throw new IOException("Unexpected end of " + channel);
+            }
+        }
+    }
+}
@@ -1,23 +1,37 @@
 package com.example.androidcardashboard;
 
-import android.os.Handler;
-import android.os.Looper;
 import android.util.Log;
+import java.text.SimpleDateFormat;
 import java.util.ArrayList;
+import java.util.Calendar;
 import java.util.List;
+import java.util.Locale;
+import java.util.TimeZone;
 
 public class EventManager {
     private static final String TAG = "EventManager";
     private static EventManager instance;
     
-    private List<GpsEvent> latestGpsEvents;
-    private List<TcpEvent> latestTcpEvents;
-    private Handler mainHandler;
+    // Level codes, the names match the event strings in the resources
+    public static final int LEVEL_INFO = 0;
+    public static final int LEVEL_STATUS = 1;
+    public static final int LEVEL_CONFIG = 2;
+    public static final int LEVEL_TRIP = 3;
+    public static final int LEVEL_DATA = 4;
+    public static final int LEVEL_ERROR = 5;
+    public static final int LEVEL_WARNING = 6;
+    private static final String[] LEVEL_NAMES = {"INFO", "STATUS", "CONFIG", "TRIP", "DATA", "ERROR", "WARNING"};
+    
+    private static final int LATEST_EVENTS = 10;
+    
+    // Written from the TCP threads and read on the UI thread
+    private final EventRing gpsEvents = new EventRing(LATEST_EVENTS);
+    private final EventRing tcpEvents = new EventRing(LATEST_EVENTS);
+    // Full history on disk, null until the activity opens it. Data events
+    // come with every socket read, so they only go to the rings above.
+    private volatile EventLog eventLog;
     
     private EventManager() {
-        latestGpsEvents = new ArrayList<>();
-        latestTcpEvents = new ArrayList<>();
-        mainHandler = new Handler(Looper.getMainLooper());
     }
     
     public static synchronized EventManager getInstance() {
@@ -27,90 +41,226 @@ public class EventManager {
         return instance;
     }
     
-    public void addGpsEvent(String message, String level) {
-        GpsEvent event = new GpsEvent(message, level, System.currentTimeMillis());
-        
-        // Add to beginning of list
-        latestGpsEvents.add(0, event);
-        
-        // Keep only last 10 events
-        if (latestGpsEvents.size() > 10) {
-            latestGpsEvents.remove(latestGpsEvents.size() - 1);
+    public static String getLevelName(int level) {
+        return level >= 0 && level < LEVEL_NAMES.length ? LEVEL_NAMES[level] : "";
+    }
+    
+    /**
+     * Event time in the device's time zone, with the date unless it is today
+     */
+    public static String formatTime(long timestamp) {
+        return formatTime(timestamp, System.currentTimeMillis(), TimeZone.getDefault(), Locale.getDefault());
+    }
+    
+    static String formatTime(long timestamp, long now, TimeZone zone, Locale locale) {
+        Calendar event = Calendar.getInstance(zone, locale);
+        event.setTimeInMillis(timestamp);
+        Calendar today = Calendar.getInstance(zone, locale);
+        today.setTimeInMillis(now);
+        String pattern;
+        if (event.get(Calendar.YEAR) != today.get(Calendar.YEAR)) {
+            pattern = "MMM d yyyy HH:mm";
+        } else if (event.get(Calendar.DAY_OF_YEAR) != today.get(Calendar.DAY_OF_YEAR)) {
+            pattern = "MMM d HH:mm";
+        } else {
+            pattern = "HH:mm";
         }
-        
-        Log.d(TAG, "GPS Event [" + level + "]: " + message);
+        SimpleDateFormat format = new SimpleDateFormat(pattern, locale);
+        format.setTimeZone(zone);
+        return format.format(event.getTime());
     }
     
+    private static boolean isPersisted(int level) {
+        return level != LEVEL_DATA;
+    }
     
-    public void addTcpEvent(String message, String level) {
-        TcpEvent event = new TcpEvent(message, level, System.currentTimeMillis());
-        
-        // Add to beginning of list
-        latestTcpEvents.add(0, event);
-        
-        // Keep only last 10 events
-        if (latestTcpEvents.size() > 10) {
-            latestTcpEvents.remove(latestTcpEvents.size() - 1);
+    public void setEventLog(EventLog eventLog) {
+        this.eventLog = eventLog;
+    }
+    
+    public EventLog getEventLog() {
+        return eventLog;
+    }
+    
+    public void addGpsEvent(String message, int level) {
+        long now = System.currentTimeMillis();
+        gpsEvents.add(now, level, message);
+        EventLog log = eventLog;
+        if (log != null && isPersisted(level)) {
+            log.append(now, level, EventLog.SOURCE_GPS, message);
+        }
+        if (Log.isLoggable(TAG, Log.DEBUG)) {
+            Log.d(TAG, "GPS Event [" + getLevelName(level) + "]: " + message);
         }
-        
-        Log.d(TAG, "TCP Event [" + level + "]: " + message);
     }
     
+    public void addTcpEvent(String message, int level) {
+        long now = System.currentTimeMillis();
+        tcpEvents.add(now, level, message);
+        EventLog log = eventLog;
+        if (log != null && isPersisted(level)) {
+            log.append(now, level, EventLog.SOURCE_TCP, message);
+        }
+        if (Log.isLoggable(TAG, Log.DEBUG)) {
+            Log.d(TAG, "TCP Event [" + getLevelName(level) + "]: " + message);
+        }
+    }
+    
+    /**
+     * Event with a number, e.g. a byte count. The template is stored once
+     * and the number formatted into its %d only when the event is shown.
+     */
+    public void addTcpEvent(String template, long arg, int level) {
+        long now = System.currentTimeMillis();
+        tcpEvents.add(now, level, template, arg);
+        EventLog log = eventLog;
+        if (log != null && isPersisted(level)) {
+            log.append(now, level, EventLog.SOURCE_TCP, template, arg);
+        }
+        if (Log.isLoggable(TAG, Log.DEBUG)) {
+            Log.d(TAG, "TCP Event [" + getLevelName(level) + "]: " + template + " " + arg);
+        }
+    }
+    
+    /**
+     * Event of the app itself, e.g. a main thread stall. Only kept in the
+     * persistent log, the TCP and GPS lists don't show it.
+     */
+    public void addAppEvent(String template, long arg, int level) {
+        EventLog log = eventLog;
+        if (log != null) {
+            log.append(System.currentTimeMillis(), level, EventLog.SOURCE_APP, template, arg);
+        }
+        if (Log.isLoggable(TAG, Log.DEBUG)) {
+            Log.d(TAG, "App Event [" + getLevelName(level) + "]: " + template + " " + arg);
+        }
+    }
+    
+    /**
+     * Free text of the app, e.g. the stack of a stall. Stored as is instead
+     * of interned, for text that seldom repeats.
+     */
+    public void addAppText(String text, int level) {
+        EventLog log = eventLog;
+        if (log != null) {
+            log.appendText(System.currentTimeMillis(), level, EventLog.SOURCE_APP, text);
+        }
+        if (Log.isLoggable(TAG, Log.DEBUG)) {
+            Log.d(TAG, "App Event [" + getLevelName(level) + "]: " + text);
+        }
+    }
+    
+    /**
+     * Latest GPS events, newest first
+     */
     public List<GpsEvent> getLatestGpsEvents() {
-        return new ArrayList<>(latestGpsEvents);
+        long[] timestamps = new long[LATEST_EVENTS];
+        int[] levels = new int[LATEST_EVENTS];
+        String[] messages = new String[LATEST_EVENTS];
+        int count = gpsEvents.snapshot(timestamps, levels, messages);
+        List<GpsEvent> events = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            events.add(new GpsEvent(messages[i], levels[i], timestamps[i]));
+        }
+        return events;
+    }
+    
+    /**
+     * Number of TCP events so far, to ask for the ones after it
+     */
+    public long getTcpSequence() {
+        return tcpEvents.getAddedCount();
     }
     
+    /**
+     * Add the TCP events after a sequence number to a list, oldest first.
+     * Events older than the ring holds are skipped. An event still being
+     * added ends the list, it comes first next time.
+     * @return the sequence number to pass next time
+     */
+    public long getTcpEventsSince(long sequence, List<? super TcpEvent> out) {
+        long end = tcpEvents.firstIncomplete(sequence, tcpEvents.getAddedCount());
+        if (end == sequence) {
+            return sequence;
+        }
+        int capacity = tcpEvents.capacity();
+        long[] timestamps = new long[capacity];
+        int[] levels = new int[capacity];
+        String[] messages = new String[capacity];
+        long[] args = new long[capacity];
+        int count = tcpEvents.snapshot(sequence, end, timestamps, levels, messages, args);
+        for (int i = count - 1; i >= 0; i--) {
+            out.add(new TcpEvent(EventLog.format(messages[i], args, i, 1), levels[i], timestamps[i]));
+        }
+        return end;
+    }
     
+    /**
+     * Latest TCP events, newest first
+     */
     public List<TcpEvent> getLatestTcpEvents() {
-        return new ArrayList<>(latestTcpEvents);
+        long[] timestamps = new long[LATEST_EVENTS];
+        int[] levels = new int[LATEST_EVENTS];
+        String[] messages = new String[LATEST_EVENTS];
+        long[] args = new long[LATEST_EVENTS];
+        int count = tcpEvents.snapshot(timestamps, levels, messages, args);
+        List<TcpEvent> events = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            events.add(new TcpEvent(EventLog.format(messages[i], args, i, 1), levels[i], timestamps[i]));
+        }
+        return events;
     }
     
     public static class GpsEvent {
         private String message;
-        private String level;
+        private int level;
         private long timestamp;
+        private String formattedTime;
         
-        public GpsEvent(String message, String level, long timestamp) {
+        public GpsEvent(String message, int level, long timestamp) {
             this.message = message;
             this.level = level;
             this.timestamp = timestamp;
         }
         
         public String getMessage() { return message; }
-        public String getLevel() { return level; }
+        public int getLevel() { return level; }
+        public String getLevelName() { return EventManager.getLevelName(level); }
         public long getTimestamp() { return timestamp; }
         
         public String getFormattedTime() {
-            long seconds = timestamp / 1000;
-            long minutes = seconds / 60;
-            long hours = minutes / 60;
-            
-            return String.format("%02d:%02d", hours % 24, minutes % 60);
+            // Formatted on the first bind only
+            if (formattedTime == null) {
+                formattedTime = formatTime(timestamp);
+            }
+            return formattedTime;
         }
     }
     
     
     public static class TcpEvent {
         private String message;
-        private String level;
+        private int level;
         private long timestamp;
+        private String formattedTime;
         
-        public TcpEvent(String message, String level, long timestamp) {
+        public TcpEvent(String message, int level, long timestamp) {
             this.message = message;
             this.level = level;
             this.timestamp = timestamp;
         }
         
         public String getMessage() { return message; }
-        public String getLevel() { return level; }
+        public int getLevel() { return level; }
+        public String getLevelName() { return EventManager.getLevelName(level); }
         public long getTimestamp() { return timestamp; }
         
         public String getFormattedTime() {
-            long seconds = timestamp / 1000;
-            long minutes = seconds / 60;
-            long hours = minutes / 60;
-            
-            return String.format("%02d:%02d", hours % 24, minutes % 60);
+            // Formatted on the first bind only
+            if (formattedTime == null) {
+                formattedTime = formatTime(timestamp);
+            }
+            return formattedTime;
         }
     }
 }
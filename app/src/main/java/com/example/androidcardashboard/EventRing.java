@@ -0,0 +1,159 @@
+package com.example.androidcardashboard;
+
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Fixed-capacity ring of the latest events, for any number of writer
+ * threads and readers that never block them.
+ *
+ * A writer takes a ticket from an atomic counter; the ticket picks the slot
+ * and orders the events. Each slot has a stamp that works like a seqlock:
+ * 2t+1 while ticket t is written, 2t+2 once it is complete. A writer only
+ * claims a complete slot with an older stamp and never waits: if a newer
+ * event is already there, its own is simply overwritten; if a writer a
+ * whole lap behind is still in the slot, its event is dropped and counted.
+ * Readers copy a slot and keep it only if the stamp was complete and
+ * unchanged around the copy.
+ */
+public class EventRing {
+    private final int mask;
+    private final AtomicLong nextTicket = new AtomicLong();
+    private final AtomicLong dropped = new AtomicLong();
+    private final AtomicLongArray stamps;
+    private final AtomicLongArray timestamps;
+    private final AtomicIntegerArray levels;
+    private final AtomicReferenceArray<String> messages;
+    private final AtomicLongArray args;
+    
+    /**
+     * @param capacity number of events kept, rounded up to a power of two
+     */
+    public EventRing(int capacity) {
+        int size = Integer.highestOneBit(Math.max(1, capacity - 1)) << 1;
+        mask = size - 1;
+        stamps = new AtomicLongArray(size);
+        timestamps = new AtomicLongArray(size);
+        levels = new AtomicIntegerArray(size);
+        messages = new AtomicReferenceArray<>(size);
+        args = new AtomicLongArray(size);
+    }
+    
+    public void add(long timestamp, int level, String message) {
+        add(timestamp, level, message, 0);
+    }
+    
+    /**
+     * @param message message, or a template with a %d for the argument
+     */
+    public void add(long timestamp, int level, String message, long arg) {
+        long ticket = nextTicket.getAndIncrement();
+        int slot = (int) (ticket & mask);
+        long writing = 2 * ticket + 1;
+        // Retries only when another writer claimed the slot first
+        while (true) {
+            long stamp = stamps.get(slot);
+            if (stamp > writing) {
+                // A newer event already replaced this one
+                return;
+            }
+            if ((stamp & 1) != 0) {
+                // Still held by a writer a lap behind
+                dropped.incrementAndGet();
+                return;
+            }
+            if (stamps.compareAndSet(slot, stamp, writing)) {
+                break;
+            }
+        }
+        timestamps.set(slot, timestamp);
+        levels.set(slot, level);
+        messages.set(slot, message);
+        args.set(slot, arg);
+        stamps.set(slot, writing + 1);
+    }
+    
+    /**
+     * Copy the complete events, newest first, into the caller's arrays.
+     * Events being written or overwritten during the copy are left out.
+     * @return number of events copied
+     */
+    public int snapshot(long[] outTimestamps, int[] outLevels, String[] outMessages) {
+        return snapshot(outTimestamps, outLevels, outMessages, null);
+    }
+    
+    /**
+     * @param outArgs the events' arguments, may be null
+     */
+    public int snapshot(long[] outTimestamps, int[] outLevels, String[] outMessages, long[] outArgs) {
+        return snapshot(0, nextTicket.get(), outTimestamps, outLevels, outMessages, outArgs);
+    }
+    
+    /**
+     * Copy the complete events numbered from first up to end, as counted by
+     * getAddedCount(), newest first and at most as many as the arrays hold
+     */
+    public int snapshot(long first, long end, long[] outTimestamps, int[] outLevels, String[] outMessages, long[] outArgs) {
+        long newest = end - 1;
+        int limit = Math.min(outTimestamps.length, mask + 1);
+        int count = 0;
+        for (long ticket = newest; ticket >= Math.max(0, first) && newest - ticket < limit; ticket--) {
+            int slot = (int) (ticket & mask);
+            long complete = 2 * ticket + 2;
+            if (stamps.get(slot) != complete) {
+                continue;
+            }
+            long timestamp = timestamps.get(slot);
+            int level = levels.get(slot);
+            String message = messages.get(slot);
+            long arg = args.get(slot);
+            if (stamps.get(slot) != complete) {
+                continue;
+            }
+            outTimestamps[count] = timestamp;
+            outLevels[count] = level;
+            outMessages[count] = message;
+            if (outArgs != null) {
+                outArgs[count] = arg;
+            }
+            count++;
+        }
+        return count;
+    }
+    
+    /**
+     * The oldest event from first up to end that a writer took a number for
+     * but hasn't finished, or end when there is none. Overwritten events
+     * don't count. A write that was dropped holds readers at its number
+     * until the ring wraps past it.
+     */
+    public long firstIncomplete(long first, long end) {
+        for (long ticket = Math.max(first, end - (mask + 1)); ticket < end; ticket++) {
+            if (stamps.get((int) (ticket & mask)) < 2 * ticket + 2) {
+                return ticket;
+            }
+        }
+        return end;
+    }
+    
+    public int capacity() {
+        return mask + 1;
+    }
+    
+    /**
+     * Number of events added since the ring was created, also the number of
+     * the next event
+     */
+    public long getAddedCount() {
+        return nextTicket.get();
+    }
+    
+    /**
+     * Events lost to a writer that was a whole lap behind, normally 0
+     */
+    public long getDroppedCount() {
+        return dropped.get();
+    }
+}
@@ -2,23 +2,60 @@ package com.example.androidcardashboard;
 
 import android.content.Context;
 import android.graphics.Typeface;
-import java.util.HashMap;
+import android.util.Log;
+import java.util.Collections;
+import java.util.HashSet;
 import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.ThreadFactory;
 
 /**
- * Font manager for loading and caching custom fonts
+ * Font manager for loading and caching custom fonts.
+ * Fonts can be preloaded on a worker thread so the UI thread only waits
+ * for a face that is still decoding instead of reading the asset itself.
  */
-public class FontManager {
+public class FontManager implements MemoryManager.Cache {
+    private static final String TAG = "FontManager";
+    
+    // Font assets shipped in assets/fonts
+    public static final String FIRA_CODE_REGULAR = "FiraCode-Regular.ttf";
+    public static final String FIRA_CODE_BOLD = "FiraCode-Bold.ttf";
+    public static final String FIRA_CODE_MEDIUM = "FiraCode-Medium.ttf";
+    public static final String FIRA_CODE_LIGHT = "FiraCode-Light.ttf";
+    public static final String FIRA_CODE_SEMI_BOLD = "FiraCode-SemiBold.ttf";
+    
     private static FontManager instance;
     private Context context;
     private Map<String, Typeface> fontCache;
+    private Map<String, Future<Typeface>> pendingFonts;
+    private Map<String, Long> loadTimes;
+    private volatile Set<String> pinnedFonts = Collections.emptySet();
+    private ExecutorService preloadExecutor;
     
     private FontManager(Context context) {
         this.context = context.getApplicationContext();
-        this.fontCache = new HashMap<>();
+        this.fontCache = new ConcurrentHashMap<>();
+        this.pendingFonts = new ConcurrentHashMap<>();
+        this.loadTimes = new ConcurrentHashMap<>();
+        this.preloadExecutor = Executors.newSingleThreadExecutor(new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, "FontPreloader");
+                thread.setPriority(Thread.MIN_PRIORITY);
+                return thread;
+            }
+        });
     }
     
-    public static FontManager getInstance(Context context) {
+    public static synchronized FontManager getInstance(Context context) {
         if (instance == null) {
             instance = new FontManager(context);
         }
@@ -28,19 +65,77 @@ public class FontManager {
     /**
      * Load a font from assets/fonts directory
      * @param fontName The name of the font file (e.g., "FiraCode-Regular.ttf")
-     * @return Typeface object or null if font not found
+     * @return Typeface object, or Typeface.DEFAULT if the font could not be loaded
      */
     public Typeface getFont(String fontName) {
-        if (fontCache.containsKey(fontName)) {
-            return fontCache.get(fontName);
+        Typeface cached = fontCache.get(fontName);
+        if (cached != null) {
+            return cached;
         }
         
+        // Wait for a preload that is already in flight instead of decoding twice
+        Future<Typeface> pending = pendingFonts.get(fontName);
+        if (pending != null) {
+            try {
+                return pending.get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } catch (ExecutionException e) {
+                Log.w(TAG, "Preload failed for " + fontName, e);
+            }
+        }
+        
+        return loadFont(fontName);
+    }
+    
+    /**
+     * Decode the given fonts on the preload thread. Fonts that are already
+     * cached or loading are skipped.
+     */
+    public void preloadFonts(String... fontNames) {
+        for (final String fontName : fontNames) {
+            if (fontCache.containsKey(fontName) || pendingFonts.containsKey(fontName)) {
+                continue;
+            }
+            
+            FutureTask<Typeface> task = new FutureTask<>(new Callable<Typeface>() {
+                @Override
+                public Typeface call() {
+                    try {
+                        return loadFont(fontName);
+                    } finally {
+                        pendingFonts.remove(fontName);
+                    }
+                }
+            });
+            pendingFonts.put(fontName, task);
+            preloadExecutor.execute(task);
+        }
+    }
+    
+    /**
+     * Mark the fonts needed by the active and upcoming themes. Pinned fonts
+     * survive evictUnusedFonts().
+     */
+    public void setPinnedFonts(String... fontNames) {
+        Set<String> pinned = new HashSet<>();
+        Collections.addAll(pinned, fontNames);
+        pinnedFonts = Collections.unmodifiableSet(pinned);
+    }
+    
+    private Typeface loadFont(String fontName) {
+        long startTime = System.nanoTime();
         try {
             Typeface typeface = Typeface.createFromAsset(context.getAssets(), "fonts/" + fontName);
             fontCache.put(fontName, typeface);
+            
+            long loadTimeUs = (System.nanoTime() - startTime) / 1000;
+            loadTimes.put(fontName, loadTimeUs);
+            Log.d(TAG, "Loaded " + fontName + " in " + loadTimeUs + " us on " + Thread.currentThread().getName());
             return typeface;
         } catch (Exception e) {
             // Return default typeface if font loading fails
+            Log.w(TAG, "Failed to load font " + fontName, e);
             return Typeface.DEFAULT;
         }
     }
@@ -49,35 +144,80 @@ public class FontManager {
      * Get Fira Code Regular font
      */
     public Typeface getFiraCodeRegular() {
-        return getFont("FiraCode-Regular.ttf");
+        return getFont(FIRA_CODE_REGULAR);
     }
     
     /**
      * Get Fira Code Bold font
      */
     public Typeface getFiraCodeBold() {
-        return getFont("FiraCode-Bold.ttf");
+        return getFont(FIRA_CODE_BOLD);
     }
     
     /**
      * Get Fira Code Medium font
      */
     public Typeface getFiraCodeMedium() {
-        return getFont("FiraCode-Medium.ttf");
+        return getFont(FIRA_CODE_MEDIUM);
     }
     
     /**
      * Get Fira Code Light font
      */
     public Typeface getFiraCodeLight() {
-        return getFont("FiraCode-Light.ttf");
+        return getFont(FIRA_CODE_LIGHT);
     }
     
     /**
      * Get Fira Code SemiBold font
      */
     public Typeface getFiraCodeSemiBold() {
-        return getFont("FiraCode-SemiBold.ttf");
+        return getFont(FIRA_CODE_SEMI_BOLD);
+    }
+    
+    /**
+     * Load times in microseconds, keyed by font file name
+     */
+    public Map<String, Long> getLoadTimes() {
+        return new TreeMap<>(loadTimes);
+    }
+    
+    public int getCachedFontCount() {
+        return fontCache.size();
+    }
+    
+    /**
+     * Drop cached faces that are not pinned by the active or next theme.
+     * @return number of fonts evicted
+     */
+    public int evictUnusedFonts() {
+        Set<String> pinned = pinnedFonts;
+        int evicted = 0;
+        for (String fontName : fontCache.keySet()) {
+            if (!pinned.contains(fontName)) {
+                fontCache.remove(fontName);
+                evicted++;
+            }
+        }
+        if (evicted > 0) {
+            Log.d(TAG, "Evicted " + evicted + " unused fonts");
+        }
+        return evicted;
+    }
+    
+    /**
+     * Memory pressure: evict the fonts no theme uses. Typefaces don't tell
+     * their size, so nothing is counted as freed.
+     */
+    @Override
+    public long trimCache() {
+        evictUnusedFonts();
+        return 0;
+    }
+    
+    @Override
+    public long getCacheBytes() {
+        return -1;
     }
     
     /**
@@ -0,0 +1,122 @@
+package com.example.androidcardashboard;
+
+import android.util.Log;
+
+/**
+ * Tracks onDraw durations of one view over a sliding window and picks a
+ * rendering quality tier. Steps down as soon as the window average is over
+ * budget, steps back up only after several quiet windows in a row.
+ */
+public class FrameTimeGovernor {
+    private static final String TAG = "FrameTimeGovernor";
+    
+    public enum QualityTier {
+        FULL,     // Everything anti-aliased, all ticks
+        REDUCED,  // Static parts without anti-aliasing, major ticks only
+        CACHED    // Static parts drawn once into a bitmap, only the needle is live
+    }
+    
+    private static final int WINDOW_SIZE = 30; // Frames per window
+    private static final long DEFAULT_BUDGET_NS = 8000000L; // Half a 60 Hz frame, the rest is shared with other views
+    private static final float STEP_UP_RATIO = 0.5f; // Step up only when well under budget
+    private static final int MIN_QUIET_WINDOWS = 2;
+    private static final int MAX_QUIET_WINDOWS = 32;
+    
+    private final String name;
+    private final long[] samples = new long[WINDOW_SIZE];
+    private int sampleCount = 0;
+    private int cursor = 0;
+    private long windowSumNs = 0;
+    private long budgetNs = DEFAULT_BUDGET_NS;
+    
+    private QualityTier tier = QualityTier.FULL;
+    private int quietWindows = 0;
+    private int requiredQuietWindows = MIN_QUIET_WINDOWS;
+    private boolean justSteppedUp = false;
+    private int tierChanges = 0;
+    private final Metrics.Histogram drawTime;
+    
+    public FrameTimeGovernor(String name) {
+        this.name = name;
+        drawTime = Metrics.getInstance().histogram("draw." + name);
+    }
+    
+    /**
+     * Record one onDraw duration.
+     * @return true if the quality tier changed and the view should redraw fully
+     */
+    public boolean recordFrame(long durationNs) {
+        drawTime.recordNanos(durationNs);
+        if (sampleCount == WINDOW_SIZE) {
+            windowSumNs -= samples[cursor];
+        } else {
+            sampleCount++;
+        }
+        samples[cursor] = durationNs;
+        windowSumNs += durationNs;
+        cursor = (cursor + 1) % WINDOW_SIZE;
+        
+        if (sampleCount < WINDOW_SIZE) {
+            return false;
+        }
+        
+        long averageNs = windowSumNs / WINDOW_SIZE;
+        if (averageNs > budgetNs && tier != QualityTier.CACHED) {
+            // Stepping straight back down after a step up means the lower tier was needed,
+            // so wait longer before trying again
+            if (justSteppedUp) {
+                requiredQuietWindows = Math.min(requiredQuietWindows * 2, MAX_QUIET_WINDOWS);
+            }
+            changeTier(QualityTier.values()[tier.ordinal() + 1], averageNs);
+            return true;
+        }
+        
+        // Judge step up once per full window of new frames
+        if (cursor != 0) {
+            return false;
+        }
+        justSteppedUp = false;
+        if (averageNs < budgetNs * STEP_UP_RATIO && tier != QualityTier.FULL) {
+            quietWindows++;
+            if (quietWindows >= requiredQuietWindows) {
+                changeTier(QualityTier.values()[tier.ordinal() - 1], averageNs);
+                justSteppedUp = true;
+                return true;
+            }
+        } else {
+            quietWindows = 0;
+        }
+        return false;
+    }
+    
+    private void changeTier(QualityTier newTier, long averageNs) {
+        Log.i(TAG, name + " quality " + tier + " -> " + newTier + " (avg draw " + (averageNs / 1000) + " us)");
+        tier = newTier;
+        tierChanges++;
+        quietWindows = 0;
+        
+        // Start a fresh window so the new tier is judged on its own frames
+        sampleCount = 0;
+        cursor = 0;
+        windowSumNs = 0;
+    }
+    
+    public QualityTier getTier() {
+        return tier;
+    }
+    
+    public void setBudgetNs(long budgetNs) {
+        this.budgetNs = budgetNs;
+    }
+    
+    /**
+     * Average onDraw time over the current window, in microseconds
+     */
+    public long getAverageDrawUs() {
+        return sampleCount == 0 ? 0 : windowSumNs / sampleCount / 1000;
+    }
+    
+    public int getTierChangeCount() {
+        return tierChanges;
+    }
+}
@@ -1,16 +1,18 @@
 package com.example.androidcardashboard;
 
 import android.content.Context;
+import android.graphics.Bitmap;
 import android.graphics.Canvas;
 import android.graphics.Color;
 import android.graphics.Paint;
 import android.graphics.Path;
+import android.graphics.Rect;
 import android.graphics.RectF;
 import android.graphics.Typeface;
 import android.util.AttributeSet;
 import android.view.View;
 
-public class GaugeView extends View {
+public class GaugeView extends View implements MemoryManager.Cache {
     private Paint backgroundPaint;
     private Paint progressPaint;
     private Paint textPaint;
@@ -28,6 +30,34 @@ public class GaugeView extends View {
     private float radius;
     private RectF progressRect;
     
+    // Dirty regions for partial invalidation
+    private final Rect valueBounds = new Rect();
+    private final Rect dirtyRect = new Rect();
+    
+    // Number of onDraw passes, to verify invalidation savings
+    private int redrawCount = 0;
+    private final AllocationTracker.Scope drawAllocations = AllocationTracker.scope("draw.Gauge", 0);
+    
+    // Analog style paints, reused across frames
+    private Paint bezelPaint;
+    private Paint innerBezelPaint;
+    private Paint tickPaint;
+    private Paint majorTickPaint;
+    private Paint numberPaint;
+    private Paint needlePaint;
+    private Paint hubPaint;
+    
+    // Per-frame drawing state, reused so onDraw doesn't allocate
+    private Paint htopTickPaint;
+    private final Path tickPath = new Path();
+    private final TextBuffer valueText = new TextBuffer(8);
+    private final TextBuffer numberText = new TextBuffer(8);
+    
+    // Rendering quality, stepped down when onDraw gets too slow
+    private final FrameTimeGovernor frameGovernor = new FrameTimeGovernor("Gauge");
+    private Bitmap staticLayer;
+    private boolean staticLayerValid = false;
+    
     // Color scheme - Theme-based colors
     private int normalColor;
     private int warningColor;
@@ -95,6 +125,34 @@ public class GaugeView extends View {
         centerPaint = new Paint(Paint.ANTI_ALIAS_FLAG);
         centerPaint.setColor(themeManager.getContainerColor());
         centerPaint.setStyle(Paint.Style.FILL);
+        
+        // Analog style paints
+        bezelPaint = new Paint(Paint.ANTI_ALIAS_FLAG);
+        bezelPaint.setStyle(Paint.Style.STROKE);
+        bezelPaint.setStrokeWidth(6);
+        
+        innerBezelPaint = new Paint(Paint.ANTI_ALIAS_FLAG);
+        innerBezelPaint.setStyle(Paint.Style.STROKE);
+        innerBezelPaint.setStrokeWidth(3);
+        
+        tickPaint = new Paint(Paint.ANTI_ALIAS_FLAG);
+        tickPaint.setStrokeWidth(2);
+        
+        majorTickPaint = new Paint(Paint.ANTI_ALIAS_FLAG);
+        majorTickPaint.setStrokeWidth(3);
+        
+        numberPaint = new Paint(Paint.ANTI_ALIAS_FLAG);
+        numberPaint.setTextAlign(Paint.Align.CENTER);
+        
+        needlePaint = new Paint(Paint.ANTI_ALIAS_FLAG);
+        needlePaint.setStrokeWidth(6);
+        needlePaint.setStrokeCap(Paint.Cap.ROUND);
+        
+        hubPaint = new Paint(Paint.ANTI_ALIAS_FLAG);
+        hubPaint.setStyle(Paint.Style.FILL);
+        
+        htopTickPaint = new Paint(Paint.ANTI_ALIAS_FLAG);
+        htopTickPaint.setStyle(Paint.Style.FILL);
     }
     
     @Override
@@ -115,11 +173,20 @@ public class GaugeView extends View {
         // Set text sizes based on radius
         textPaint.setTextSize(radius * 0.3f);
         labelPaint.setTextSize(radius * 0.15f);
+        
+        // Value and unit text live inside the center circle
+        DirtyRegion.setCircleBounds(valueBounds, centerX, centerY, radius * 0.5f);
+        
+        staticLayerValid = false;
     }
     
     @Override
     protected void onDraw(Canvas canvas) {
         super.onDraw(canvas);
+        redrawCount++;
+        TraceRecorder.begin("draw.Gauge");
+        long drawStart = System.nanoTime();
+        long allocationMark = drawAllocations.begin();
         
         // Calculate progress and color
         float normalizedValue = (value - minValue) / (maxValue - minValue);
@@ -147,13 +214,27 @@ public class GaugeView extends View {
         
         // Draw value
         textPaint.setColor(progressColor);
-        canvas.drawText(String.valueOf((int) value), centerX, centerY + radius * 0.1f, textPaint);
+        valueText.clear().append((int) value);
+        canvas.drawText(valueText.chars(), 0, valueText.length(), centerX, centerY + radius * 0.1f, textPaint);
         
         // Draw unit
         canvas.drawText(unit, centerX, centerY + radius * 0.3f, labelPaint);
+        
+        drawAllocations.end(allocationMark);
+        TraceRecorder.end();
+        if (frameGovernor.recordFrame(System.nanoTime() - drawStart)) {
+            if (frameGovernor.getTier() != FrameTimeGovernor.QualityTier.CACHED) {
+                releaseStaticLayer();
+            }
+            invalidate();
+        }
     }
     
     private int getProgressColor(float normalizedValue) {
+        return getProgressColor(value, normalizedValue);
+    }
+    
+    private int getProgressColor(float value, float normalizedValue) {
         switch (gaugeType) {
             case TEMPERATURE:
                 // Temperature gauge: Green for optimal (80-100°C), Orange for low/high, Red for extreme
@@ -191,57 +272,147 @@ public class GaugeView extends View {
     }
     
     public void setValue(float value) {
-        this.value = Math.max(minValue, Math.min(maxValue, value));
-        invalidate();
+        float newValue = Math.max(minValue, Math.min(maxValue, value));
+        if (newValue == this.value) {
+            return;
+        }
+        
+        float oldValue = this.value;
+        float oldNormalized = (oldValue - minValue) / (maxValue - minValue);
+        float newNormalized = (newValue - minValue) / (maxValue - minValue);
+        boolean colorChanged = getProgressColor(oldValue, oldNormalized) != getProgressColor(newValue, newNormalized);
+        this.value = newValue;
+        
+        dirtyRect.setEmpty();
+        unionGaugeDirtyRegion(dirtyRect, oldNormalized, newNormalized, colorChanged);
+        
+        // Value text changes with the displayed integer or the color band
+        if (colorChanged || (int) oldValue != (int) newValue) {
+            dirtyRect.union(valueBounds);
+        }
+        invalidateRegion(dirtyRect);
     }
     
     public void setRange(float minValue, float maxValue) {
+        if (minValue == this.minValue && maxValue == this.maxValue) {
+            return;
+        }
         this.minValue = minValue;
         this.maxValue = maxValue;
         invalidate();
     }
     
     public void setUnit(String unit) {
+        if (unit.equals(this.unit)) {
+            return;
+        }
         this.unit = unit;
-        invalidate();
+        invalidateRegion(valueBounds);
     }
     
     public void setLabel(String label) {
+        // The label is not drawn, so no redraw is needed
         this.label = label;
-        invalidate();
     }
     
     public void setGaugeType(GaugeType type) {
+        if (type == gaugeType) {
+            return;
+        }
         this.gaugeType = type;
         invalidate();
     }
     
+    public int getRedrawCount() {
+        return redrawCount;
+    }
+    
+    public FrameTimeGovernor.QualityTier getQualityTier() {
+        return frameGovernor.getTier();
+    }
+    
+    public long getAverageDrawUs() {
+        return frameGovernor.getAverageDrawUs();
+    }
+    
+    private void unionGaugeDirtyRegion(Rect out, float oldNormalized, float newNormalized, boolean colorChanged) {
+        // A color band change repaints the whole active part of the gauge
+        float low = colorChanged ? 0 : Math.min(oldNormalized, newNormalized);
+        float high = Math.max(oldNormalized, newNormalized);
+        
+        switch (gaugeStyle) {
+            case MINIMAL:
+                DirtyRegion.unionSector(out, centerX, centerY, radius,
+                    Math.toRadians(-135 + low * 270), Math.toRadians(-135 + high * 270),
+                    progressPaint.getStrokeWidth());
+                break;
+            case HTOP: {
+                int numTicks = 25;
+                int oldTicks = Math.round(oldNormalized * numTicks);
+                int newTicks = Math.round(newNormalized * numTicks);
+                if (!colorChanged && oldTicks == newTicks) {
+                    break;
+                }
+                int lowTick = colorChanged ? 0 : Math.min(oldTicks, newTicks);
+                int highTick = Math.max(oldTicks, newTicks);
+                DirtyRegion.unionSector(out, centerX, centerY, radius,
+                    -Math.PI * 1.25 + (lowTick / (float) numTicks) * Math.PI * 1.5,
+                    -Math.PI * 1.25 + (highTick / (float) numTicks) * Math.PI * 1.5, 6);
+                break;
+            }
+            case ANALOG: {
+                // Needle sweep plus the counterweight on the opposite side
+                double oldAngle = -Math.PI * 1.25 + oldNormalized * Math.PI * 1.5;
+                double newAngle = -Math.PI * 1.25 + newNormalized * Math.PI * 1.5;
+                DirtyRegion.unionSector(out, centerX, centerY, radius * 0.7f, oldAngle, newAngle, 6);
+                DirtyRegion.unionSector(out, centerX, centerY, radius * 0.2f,
+                    oldAngle + Math.PI, newAngle + Math.PI, 6);
+                break;
+            }
+        }
+    }
+    
+    private void invalidateRegion(Rect region) {
+        if (!region.isEmpty()) {
+            invalidate(region);
+        }
+    }
+    
     public float getValue() {
         return value;
     }
     
+    // Primary and secondary colors are stored for callers but not drawn,
+    // so changing them does not need a redraw
     public void setPrimaryColor(int color) {
         this.primaryColor = color;
-        invalidate();
     }
     
     public void setSecondaryColor(int color) {
         this.secondaryColor = color;
-        invalidate();
     }
     
     public void setThemeColors(int primaryColor, int secondaryColor) {
         this.primaryColor = primaryColor;
         this.secondaryColor = secondaryColor;
-        invalidate();
     }
     
     public void setGaugeStyle(ThemeManager.GaugeStyle style) {
+        if (style == gaugeStyle) {
+            return;
+        }
         this.gaugeStyle = style;
+        if (style != ThemeManager.GaugeStyle.ANALOG) {
+            releaseStaticLayer();
+        }
         invalidate();
     }
     
     public void setFont(Typeface font) {
+        if (font == this.font && textPaint.getTypeface() == themeManager.getBoldFont()
+                && labelPaint.getTypeface() == themeManager.getPrimaryFont()) {
+            return;
+        }
         this.font = font;
         if (textPaint != null) {
             textPaint.setTypeface(themeManager.getBoldFont());
@@ -249,10 +420,23 @@ public class GaugeView extends View {
         if (labelPaint != null) {
             labelPaint.setTypeface(themeManager.getPrimaryFont());
         }
+        staticLayerValid = false;
         invalidate();
     }
     
     public void updateThemeColors() {
+        if (backgroundPaint != null
+                && normalColor == themeManager.getSuccessColor()
+                && warningColor == themeManager.getWarningColor()
+                && dangerColor == themeManager.getDangerColor()
+                && primaryColor == themeManager.getPrimaryAccentColor()
+                && secondaryColor == themeManager.getSecondaryAccentColor()
+                && backgroundPaint.getColor() == themeManager.getInactiveColor()
+                && labelPaint.getColor() == themeManager.getTextSecondaryColor()
+                && centerPaint.getColor() == themeManager.getContainerColor()
+                && backgroundColor == themeManager.getBackgroundColor()) {
+            return;
+        }
         this.normalColor = themeManager.getSuccessColor();
         this.warningColor = themeManager.getWarningColor();
         this.dangerColor = themeManager.getDangerColor();
@@ -269,6 +453,7 @@ public class GaugeView extends View {
         if (centerPaint != null) {
             centerPaint.setColor(themeManager.getContainerColor());
         }
+        staticLayerValid = false;
         invalidate();
     }
     
@@ -277,8 +462,7 @@ public class GaugeView extends View {
         int numTicks = 25; // More ticks with reduced spacing
         int activeTicks = Math.round(normalizedValue * numTicks);
         
-        Paint tickPaint = new Paint(Paint.ANTI_ALIAS_FLAG);
-        tickPaint.setStyle(Paint.Style.FILL);
+        Paint tickPaint = htopTickPaint;
         
         for (int i = 0; i < numTicks; i++) {
             float angle = (float) (-Math.PI * 1.25 + (i / (float) numTicks) * Math.PI * 1.5);
@@ -333,7 +517,8 @@ public class GaugeView extends View {
         float innerWidth2Y = innerY + (float) (Math.sin(perpAngle2) * (tickWidth / 4));
         
         // Create rounded pentagon path (no sharp tip)
-        Path pentagonPath = new Path();
+        Path pentagonPath = tickPath;
+        pentagonPath.reset();
         pentagonPath.moveTo(innerWidth1X, innerWidth1Y); // Inner edge 1 (rounded)
         pentagonPath.lineTo(midWidth1X, midWidth1Y); // First intermediate point
         pentagonPath.lineTo(width1X, width1Y); // Base edge 1
@@ -355,41 +540,82 @@ public class GaugeView extends View {
     
     private void drawAnalogStyleGauge(Canvas canvas, float normalizedValue, int progressColor) {
         // Analog-style gauge with traditional markings and needle
-        
+        FrameTimeGovernor.QualityTier tier = frameGovernor.getTier();
+        if (tier == FrameTimeGovernor.QualityTier.CACHED && getWidth() > 0 && getHeight() > 0) {
+            if (!staticLayerValid) {
+                renderStaticLayer();
+            }
+            canvas.drawBitmap(staticLayer, 0, 0, null);
+        } else {
+            drawAnalogDial(canvas, tier == FrameTimeGovernor.QualityTier.FULL);
+        }
+        drawAnalogNeedle(canvas, normalizedValue, progressColor);
+    }
+    
+    private void renderStaticLayer() {
+        if (staticLayer == null || staticLayer.getWidth() != getWidth() || staticLayer.getHeight() != getHeight()) {
+            releaseStaticLayer();
+            staticLayer = Bitmap.createBitmap(getWidth(), getHeight(), Bitmap.Config.ARGB_8888);
+        } else {
+            staticLayer.eraseColor(Color.TRANSPARENT);
+        }
+        // Drawn once, so the cached dial keeps full quality
+        drawAnalogDial(new Canvas(staticLayer), true);
+        staticLayerValid = true;
+    }
+    
+    /**
+     * Memory pressure: drop the cached dial, the next draw makes it again
+     */
+    @Override
+    public long trimCache() {
+        long bytes = getCacheBytes();
+        releaseStaticLayer();
+        return bytes;
+    }
+    
+    @Override
+    public long getCacheBytes() {
+        return staticLayer != null ? staticLayer.getByteCount() : 0;
+    }
+    
+    private void releaseStaticLayer() {
+        if (staticLayer != null) {
+            staticLayer.recycle();
+            staticLayer = null;
+        }
+        staticLayerValid = false;
+    }
+    
+    private void drawAnalogDial(Canvas canvas, boolean fullQuality) {
         // Draw gauge bezel (outer rim)
-        Paint bezelPaint = new Paint(Paint.ANTI_ALIAS_FLAG);
+        bezelPaint.setAntiAlias(fullQuality);
         bezelPaint.setColor(themeManager.getSecondaryAccentColor()); // Gold bezel
-        bezelPaint.setStyle(Paint.Style.STROKE);
-        bezelPaint.setStrokeWidth(6);
         canvas.drawCircle(centerX, centerY, radius, bezelPaint);
         
         // Draw inner bezel ring
-        Paint innerBezelPaint = new Paint(Paint.ANTI_ALIAS_FLAG);
+        innerBezelPaint.setAntiAlias(fullQuality);
         innerBezelPaint.setColor(themeManager.getPrimaryAccentColor()); // Lighter gold
-        innerBezelPaint.setStyle(Paint.Style.STROKE);
-        innerBezelPaint.setStrokeWidth(3);
         canvas.drawCircle(centerX, centerY, radius - 4, innerBezelPaint);
         
         // Draw gauge face background
         canvas.drawCircle(centerX, centerY, radius - 8, backgroundPaint);
         
         // Draw tick marks (0-100 scale)
-        Paint tickPaint = new Paint(Paint.ANTI_ALIAS_FLAG);
+        tickPaint.setAntiAlias(fullQuality);
         tickPaint.setColor(themeManager.getTextSecondaryColor());
-        tickPaint.setStrokeWidth(2);
         
-        Paint majorTickPaint = new Paint(Paint.ANTI_ALIAS_FLAG);
+        majorTickPaint.setAntiAlias(fullQuality);
         majorTickPaint.setColor(themeManager.getTextPrimaryColor());
-        majorTickPaint.setStrokeWidth(3);
         
-        Paint numberPaint = new Paint(Paint.ANTI_ALIAS_FLAG);
+        numberPaint.setAntiAlias(fullQuality);
         numberPaint.setColor(themeManager.getTextPrimaryColor());
         numberPaint.setTextSize(radius * 0.1f);
-        numberPaint.setTextAlign(Paint.Align.CENTER);
         numberPaint.setTypeface(themeManager.getPrimaryFont());
         
         int numTicks = 20; // 20 major ticks for 0-100
-        for (int i = 0; i <= numTicks; i++) {
+        int tickStep = fullQuality ? 1 : 5; // Reduced quality keeps only the major ticks
+        for (int i = 0; i <= numTicks; i += tickStep) {
             float angle = (float) (-Math.PI * 1.25 + (i / (float) numTicks) * Math.PI * 1.5);
             float tickLength = (i % 5 == 0) ? radius * 0.1f : radius * 0.05f; // Major ticks every 5
             float tickStart = radius - 8 - tickLength;
@@ -408,18 +634,18 @@ public class GaugeView extends View {
                 float numberRadius = radius - 8 - tickLength - 12;
                 float numberX = centerX + (float) (Math.cos(angle) * numberRadius);
                 float numberY = centerY + (float) (Math.sin(angle) * numberRadius) + radius * 0.04f;
-                canvas.drawText(String.valueOf(i * 5), numberX, numberY, numberPaint);
+                numberText.clear().append(i * 5);
+                canvas.drawText(numberText.chars(), 0, numberText.length(), numberX, numberY, numberPaint);
             }
         }
-        
+    }
+    
+    private void drawAnalogNeedle(Canvas canvas, float normalizedValue, int progressColor) {
         // Draw needle with realistic design
         float needleAngle = (float) (-Math.PI * 1.25 + normalizedValue * Math.PI * 1.5);
         
         // Main needle - longer and more visible
-        Paint needlePaint = new Paint(Paint.ANTI_ALIAS_FLAG);
         needlePaint.setColor(progressColor);
-        needlePaint.setStrokeWidth(6);
-        needlePaint.setStrokeCap(Paint.Cap.ROUND);
         
         float needleLength = radius * 0.7f; // Longer needle
         float needleEndX = centerX + (float) (Math.cos(needleAngle) * needleLength);
@@ -428,25 +654,19 @@ public class GaugeView extends View {
         canvas.drawLine(centerX, centerY, needleEndX, needleEndY, needlePaint);
         
         // Needle counterweight (small circle at opposite end)
-        Paint counterweightPaint = new Paint(Paint.ANTI_ALIAS_FLAG);
-        counterweightPaint.setColor(themeManager.getTextSecondaryColor());
-        counterweightPaint.setStyle(Paint.Style.FILL);
+        hubPaint.setColor(themeManager.getTextSecondaryColor());
         
         float counterweightLength = radius * 0.2f; // Longer counterweight
         float counterweightX = centerX + (float) (Math.cos(needleAngle + Math.PI) * counterweightLength);
         float counterweightY = centerY + (float) (Math.sin(needleAngle + Math.PI) * counterweightLength);
-        canvas.drawCircle(counterweightX, counterweightY, 4, counterweightPaint);
+        canvas.drawCircle(counterweightX, counterweightY, 4, hubPaint);
         
         // Draw needle center hub
-        Paint hubPaint = new Paint(Paint.ANTI_ALIAS_FLAG);
         hubPaint.setColor(themeManager.getSecondaryAccentColor()); // Gold hub
-        hubPaint.setStyle(Paint.Style.FILL);
         canvas.drawCircle(centerX, centerY, 6, hubPaint);
         
         // Draw center dot
-        Paint centerDotPaint = new Paint(Paint.ANTI_ALIAS_FLAG);
-        centerDotPaint.setColor(themeManager.getBackgroundColor()); // Dark center
-        centerDotPaint.setStyle(Paint.Style.FILL);
-        canvas.drawCircle(centerX, centerY, 3, centerDotPaint);
+        hubPaint.setColor(themeManager.getBackgroundColor()); // Dark center
+        canvas.drawCircle(centerX, centerY, 3, hubPaint);
     }
 }
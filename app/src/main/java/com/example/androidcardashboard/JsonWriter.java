@@ -0,0 +1,333 @@
+package com.example.androidcardashboard;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Streaming JSON writer into a reusable char buffer. Commas and, when
+ * pretty, line breaks and indentation are added as values are written;
+ * numbers are formatted without String.format, so a writer that is reset
+ * and reused allocates nothing once its buffer is large enough, and
+ * decimals always use a point whatever the locale.
+ *
+ * Inline objects are written on one line, e.g. { "cpu": 1, "wall": 2 }.
+ * Not thread safe, each thread needs its own writer.
+ */
+public class JsonWriter {
+    private static final int MAX_DEPTH = 32;
+    private static final long[] POWERS_OF_TEN = {1, 10, 100, 1000, 10000, 100000, 1000000};
+    private static final char[] HEX = "0123456789abcdef".toCharArray();
+    
+    private final boolean pretty;
+    private char[] buffer = new char[1024];
+    private int length = 0;
+    
+    // Per nesting level: no member written yet, and written on one line
+    private final boolean[] empty = new boolean[MAX_DEPTH];
+    private final boolean[] inline = new boolean[MAX_DEPTH];
+    private int depth = 0;
+    private boolean afterName = false;
+    
+    /**
+     * @param pretty line breaks and two-space indentation, otherwise compact
+     */
+    public JsonWriter(boolean pretty) {
+        this.pretty = pretty;
+    }
+    
+    /**
+     * Start over, keeping the buffer
+     */
+    public JsonWriter reset() {
+        length = 0;
+        depth = 0;
+        afterName = false;
+        return this;
+    }
+    
+    public JsonWriter beginObject() {
+        return open('{', false);
+    }
+    
+    /**
+     * Object on one line, for small groups of values
+     */
+    public JsonWriter beginInlineObject() {
+        return open('{', true);
+    }
+    
+    public JsonWriter endObject() {
+        return close('}');
+    }
+    
+    public JsonWriter beginArray() {
+        return open('[', false);
+    }
+    
+    public JsonWriter endArray() {
+        return close(']');
+    }
+    
+    public JsonWriter name(String name) {
+        separate();
+        appendString(name);
+        append(':');
+        if (pretty) {
+            append(' ');
+        }
+        afterName = true;
+        return this;
+    }
+    
+    public JsonWriter value(long value) {
+        beforeValue();
+        appendLong(value);
+        return this;
+    }
+    
+    public JsonWriter value(boolean value) {
+        beforeValue();
+        appendRaw(value ? "true" : "false");
+        return this;
+    }
+    
+    /**
+     * Number with a fixed count of decimals, at most 6, rounded half up; NaN
+     * and infinities are written as null
+     */
+    public JsonWriter value(double value, int decimals) {
+        beforeValue();
+        if (Double.isNaN(value) || Double.isInfinite(value)) {
+            appendRaw("null");
+            return this;
+        }
+        long scale = POWERS_OF_TEN[decimals];
+        long scaled = Math.round(Math.abs(value) * scale);
+        if (value < 0 && scaled != 0) {
+            append('-');
+        }
+        appendLong(scaled / scale);
+        if (decimals > 0) {
+            append('.');
+            long fraction = scaled % scale;
+            for (long digit = scale / 10; digit > 0; digit /= 10) {
+                append((char) ('0' + fraction / digit % 10));
+            }
+        }
+        return this;
+    }
+    
+    /**
+     * String value, null is written as null
+     */
+    public JsonWriter value(String value) {
+        beforeValue();
+        if (value == null) {
+            appendRaw("null");
+        } else {
+            appendString(value);
+        }
+        return this;
+    }
+    
+    public JsonWriter nullValue() {
+        beforeValue();
+        appendRaw("null");
+        return this;
+    }
+    
+    public int length() {
+        return length;
+    }
+    
+    @Override
+    public String toString() {
+        return new String(buffer, 0, length);
+    }
+    
+    /**
+     * Number of bytes writeUtf8() writes
+     */
+    public int utf8Length() {
+        int bytes = 0;
+        for (int i = 0; i < length; i++) {
+            char c = buffer[i];
+            if (c < 0x80) {
+                bytes++;
+            } else if (c < 0x800) {
+                bytes += 2;
+            } else if (Character.isHighSurrogate(c) && i + 1 < length && Character.isLowSurrogate(buffer[i + 1])) {
+                bytes += 4;
+                i++;
+            } else {
+                bytes += 3;
+            }
+        }
+        return bytes;
+    }
+    
+    /**
+     * Encode the text as UTF-8, out needs utf8Length() bytes remaining
+     */
+    public void writeUtf8(ByteBuffer out) {
+        for (int i = 0; i < length; i++) {
+            char c = buffer[i];
+            if (c < 0x80) {
+                out.put((byte) c);
+            } else if (c < 0x800) {
+                out.put((byte) (0xC0 | c >> 6));
+                out.put((byte) (0x80 | c & 0x3F));
+            } else if (Character.isHighSurrogate(c) && i + 1 < length && Character.isLowSurrogate(buffer[i + 1])) {
+                int codePoint = Character.toCodePoint(c, buffer[++i]);
+                out.put((byte) (0xF0 | codePoint >> 18));
+                out.put((byte) (0x80 | codePoint >> 12 & 0x3F));
+                out.put((byte) (0x80 | codePoint >> 6 & 0x3F));
+                out.put((byte) (0x80 | codePoint & 0x3F));
+            } else {
+                out.put((byte) (0xE0 | c >> 12));
+                out.put((byte) (0x80 | c >> 6 & 0x3F));
+                out.put((byte) (0x80 | c & 0x3F));
+            }
+        }
+    }
+    
+    private JsonWriter open(char bracket, boolean oneLine) {
+        beforeValue();
+        if (depth == MAX_DEPTH) {
+            throw new IllegalStateException("JSON nested deeper than " + MAX_DEPTH);
+        }
+        append(bracket);
+        empty[depth] = true;
+        // Everything inside an inline object is inline too
+        inline[depth] = oneLine || (depth > 0 && inline[depth - 1]);
+        depth++;
+        return this;
+    }
+    
+    private JsonWriter close(char bracket) {
+        depth--;
+        if (pretty && !empty[depth]) {
+            if (inline[depth]) {
+                append(' ');
+            } else {
+                newLine(depth);
+            }
+        }
+        append(bracket);
+        return this;
+    }
+    
+    /**
+     * Comma and line break before a member or array element
+     */
+    private void separate() {
+        if (depth == 0) {
+            return;
+        }
+        int level = depth - 1;
+        if (!empty[level]) {
+            append(',');
+        }
+        if (pretty) {
+            if (inline[level]) {
+                append(' ');
+            } else {
+                newLine(depth);
+            }
+        }
+        empty[level] = false;
+    }
+    
+    private void beforeValue() {
+        if (afterName) {
+            afterName = false;
+        } else {
+            separate();
+        }
+    }
+    
+    private void newLine(int indent) {
+        append('\n');
+        for (int i = 0; i < indent; i++) {
+            append(' ');
+            append(' ');
+        }
+    }
+    
+    private void appendString(String text) {
+        append('"');
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            switch (c) {
+                case '"':
+                    append('\\');
+                    append('"');
+                    break;
+                case '\\':
+                    append('\\');
+                    append('\\');
+                    break;
+                case '\n':
+                    append('\\');
+                    append('n');
+                    break;
+                case '\r':
+                    append('\\');
+                    append('r');
+                    break;
+                case '\t':
+                    append('\\');
+                    append('t');
+                    break;
+                default:
+                    if (c < 0x20) {
+                        appendRaw("\\u00");
+                        append(HEX[c >> 4]);
+                        append(HEX[c & 0xF]);
+                    } else {
+                        append(c);
+                    }
+            }
+        }
+        append('"');
+    }
+    
+    private void appendLong(long value) {
+        if (value == Long.MIN_VALUE) {
+            appendRaw("-9223372036854775808");
+            return;
+        }
+        if (value < 0) {
+            append('-');
+            value = -value;
+        }
+        int digits = 1;
+        for (long rest = value / 10; rest > 0; rest /= 10) {
+            digits++;
+        }
+        ensureCapacity(digits);
+        for (int i = length + digits - 1; i >= length; i--) {
+            buffer[i] = (char) ('0' + value % 10);
+            value /= 10;
+        }
+        length += digits;
+    }
+    
+    private void appendRaw(String text) {
+        ensureCapacity(text.length());
+        text.getChars(0, text.length(), buffer, length);
+        length += text.length();
+    }
+    
+    private void append(char c) {
+        ensureCapacity(1);
+        buffer[length++] = c;
+    }
+    
+    private void ensureCapacity(int more) {
+        if (length + more > buffer.length) {
+            char[] larger = new char[Math.max(buffer.length * 2, length + more)];
+            System.arraycopy(buffer, 0, larger, 0, length);
+            buffer = larger;
+        }
+    }
+}
@@ -0,0 +1,216 @@
+package com.example.androidcardashboard;
+
+/**
+ * Fixed-capacity ring of location samples stored as parallel primitive arrays.
+ * Appending is O(1) and overwrites the oldest sample once the ring is full,
+ * so no per-point objects are allocated and nothing is ever shifted.
+ * The capacity can be changed with resize(), e.g. to give memory back.
+ */
+public class LocationHistory {
+    // Six 8-byte columns
+    public static final int BYTES_PER_SAMPLE = 48;
+    
+    private int capacity;
+    private double[] latitudes;
+    private double[] longitudes;
+    private long[] timestamps;
+    private double[] speeds;
+    private double[] temperatures;
+    private double[] fuelLevels;
+    
+    private int head = 0; // Slot the next sample is written to
+    private int size = 0;
+    private long evictedCount = 0;
+    
+    public LocationHistory(int capacity) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("Capacity must be positive: " + capacity);
+        }
+        this.capacity = capacity;
+        latitudes = new double[capacity];
+        longitudes = new double[capacity];
+        timestamps = new long[capacity];
+        speeds = new double[capacity];
+        temperatures = new double[capacity];
+        fuelLevels = new double[capacity];
+    }
+    
+    public void append(double latitude, double longitude, long timestamp,
+                       double speed, double temperature, double fuelLevel) {
+        latitudes[head] = latitude;
+        longitudes[head] = longitude;
+        timestamps[head] = timestamp;
+        speeds[head] = speed;
+        temperatures[head] = temperature;
+        fuelLevels[head] = fuelLevel;
+        
+        head = (head + 1) % capacity;
+        if (size < capacity) {
+            size++;
+        } else {
+            evictedCount++;
+        }
+    }
+    
+    public void clear() {
+        head = 0;
+        size = 0;
+        evictedCount = 0;
+    }
+    
+    /**
+     * Reallocate for a new capacity, keeping the newest samples that fit;
+     * dropped samples count as evicted. Invalidates cursors.
+     */
+    public void resize(int newCapacity) {
+        if (newCapacity <= 0) {
+            throw new IllegalArgumentException("Capacity must be positive: " + newCapacity);
+        }
+        int kept = Math.min(size, newCapacity);
+        int first = size - kept;
+        double[] newLatitudes = new double[newCapacity];
+        double[] newLongitudes = new double[newCapacity];
+        long[] newTimestamps = new long[newCapacity];
+        double[] newSpeeds = new double[newCapacity];
+        double[] newTemperatures = new double[newCapacity];
+        double[] newFuelLevels = new double[newCapacity];
+        for (int i = 0; i < kept; i++) {
+            int from = slot(first + i);
+            newLatitudes[i] = latitudes[from];
+            newLongitudes[i] = longitudes[from];
+            newTimestamps[i] = timestamps[from];
+            newSpeeds[i] = speeds[from];
+            newTemperatures[i] = temperatures[from];
+            newFuelLevels[i] = fuelLevels[from];
+        }
+        latitudes = newLatitudes;
+        longitudes = newLongitudes;
+        timestamps = newTimestamps;
+        speeds = newSpeeds;
+        temperatures = newTemperatures;
+        fuelLevels = newFuelLevels;
+        evictedCount += size - kept;
+        capacity = newCapacity;
+        size = kept;
+        head = kept % newCapacity;
+    }
+    
+    public int size() {
+        return size;
+    }
+    
+    public boolean isEmpty() {
+        return size == 0;
+    }
+    
+    public int getCapacity() {
+        return capacity;
+    }
+    
+    /**
+     * Number of samples overwritten since the last clear()
+     */
+    public long getEvictedCount() {
+        return evictedCount;
+    }
+    
+    /**
+     * Array slot of the index-th oldest sample
+     */
+    private int slot(int index) {
+        if (index < 0 || index >= size) {
+            throw new IndexOutOfBoundsException("Index " + index + ", size " + size);
+        }
+        int slot = head - size + index;
+        return slot < 0 ? slot + capacity : slot;
+    }
+    
+    // Accessors by age, index 0 is the oldest sample and size() - 1 the newest
+    
+    public double getLatitude(int index) {
+        return latitudes[slot(index)];
+    }
+    
+    public double getLongitude(int index) {
+        return longitudes[slot(index)];
+    }
+    
+    public long getTimestamp(int index) {
+        return timestamps[slot(index)];
+    }
+    
+    public double getSpeed(int index) {
+        return speeds[slot(index)];
+    }
+    
+    public double getTemperature(int index) {
+        return temperatures[slot(index)];
+    }
+    
+    public double getFuelLevel(int index) {
+        return fuelLevels[slot(index)];
+    }
+    
+    /**
+     * Create a cursor positioned before the oldest sample. Cursors can be
+     * reused with moveToPosition(-1) and do not allocate while iterating.
+     */
+    public Cursor newCursor() {
+        return new Cursor();
+    }
+    
+    /**
+     * Forward iterator over the samples from oldest to newest. Appending
+     * while iterating invalidates the position.
+     */
+    public class Cursor {
+        private int position = -1;
+        private int slot = -1;
+        
+        private Cursor() {
+        }
+        
+        public boolean moveToNext() {
+            return moveToPosition(position + 1);
+        }
+        
+        public boolean moveToPosition(int newPosition) {
+            if (newPosition < 0 || newPosition >= size) {
+                position = newPosition < 0 ? -1 : size;
+                slot = -1;
+                return false;
+            }
+            position = newPosition;
+            slot = slot(newPosition);
+            return true;
+        }
+        
+        public int getPosition() {
+            return position;
+        }
+        
+        public double getLatitude() {
+            return latitudes[slot];
+        }
+        
+        public double getLongitude() {
+            return longitudes[slot];
+        }
+        
+        public long getTimestamp() {
+            return timestamps[slot];
+        }
+        
+        public double getSpeed() {
+            return speeds[slot];
+        }
+        
+        public double getTemperature() {
+            return temperatures[slot];
+        }
+        
+        public double getFuelLevel() {
+            return fuelLevels[slot];
+        }
+    }
+}
@@ -2,20 +2,28 @@ package com.example.androidcardashboard;
 
 import android.app.Activity;
 import android.app.Dialog;
+import android.content.SharedPreferences;
 import android.content.pm.PackageManager;
 import android.os.Bundle;
-import android.os.Handler;
-import android.os.Looper;
 import android.os.PowerManager;
+import android.view.Gravity;
 import android.view.View;
 import android.view.WindowManager;
+import android.widget.FrameLayout;
 import android.widget.LinearLayout;
 import android.widget.TextView;
 import android.os.Build;
+import java.io.File;
+import java.io.IOException;
+import java.text.SimpleDateFormat;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.Locale;
 import java.util.Random;
 import java.util.List;
 
-public class MainActivity extends Activity implements TcpService.TcpDataListener, StatusIndicatorView.OnStatusClickListener {
+public class MainActivity extends Activity implements TcpService.TcpDataListener, StatusIndicatorView.OnStatusClickListener,
+        StatusIndicatorView.OnStatusLongClickListener {
     // Dashboard data
     private double speed = 0.0;
     private double rpm = 0.0;
@@ -25,6 +33,7 @@ public class MainActivity extends Activity implements TcpService.TcpDataListener
     private double fuelUsage = 0.0;
     private double avgTemperature = 0.0;
     private double avgSpeed = 0.0;
+    private double rangeKm = Double.NaN;
     private double batteryVoltage = 0.0;
     
     // Status indicators
@@ -53,24 +62,60 @@ public class MainActivity extends Activity implements TcpService.TcpDataListener
     private StatusIndicatorView rightTurnIndicator;
     private TripDetailView distanceDetail;
     private TripDetailView fuelUsageDetail;
+    private TripDetailView rangeDetail;
     private TripDetailView avgTempDetail;
     private TripDetailView avgSpeedDetail;
+    private PerfHudView perfHud; // Created on first use
     
-    private Handler handler = new Handler(Looper.getMainLooper());
     private Random random = new Random();
     private boolean demoMode = false;
+    private long demoStartTime;
+    private static final long DEMO_CYCLE_DURATION = 10000; // 10 seconds for full cycle
     
     // Demo and theme button visibility
     private boolean showDemoButton = false;
     private boolean showThemeButton = false;
-    private Handler buttonHideHandler = new Handler(Looper.getMainLooper());
-    private Runnable hideButtonsRunnable;
+    
+    // Periodic and delayed work, sharing wakeups on the main thread
+    private MainThreadScheduler scheduler;
+    private MainThreadScheduler.Task simulationTask;
+    private MainThreadScheduler.Task demoTask;
+    private MainThreadScheduler.Task hideButtonsTask;
+    private MainThreadScheduler.Task fullscreenTask;
+    private MainThreadScheduler.Task journalTask;
+    private MainThreadScheduler.Task exportStatusTask;
+    private MainThreadScheduler.Task recomputeStatusTask;
+    private MainThreadScheduler.Task memoryTask;
     
     // Services
     private TcpService tcpService;
     private ThemeManager themeManager;
     private PowerManager.WakeLock wakeLock;
     private TripCalculator tripCalculator;
+    private TripJournal tripJournal;
+    private TripCatalog tripCatalog;
+    private EventLog eventLog;
+    private final Metrics.Snapshot metricsSnapshot = new Metrics.Snapshot();
+    private final TripCatalog.Totals last30Days = new TripCatalog.Totals();
+    private final JsonWriter dialogJson = new JsonWriter(true);
+    private TripExporter tripExporter;
+    private TripRecomputeJob recomputeJob;
+    private SharedPreferences preferences;
+    private final TripCalculator.TripMetrics tripMetrics = new TripCalculator.TripMetrics();
+    private final TextBuffer tileText = new TextBuffer(32);
+    private VehicleStateGovernor governor;
+    private MainThreadWatchdog watchdog;
+    private MemoryManager memoryManager;
+    private DiagnosticsServer diagnosticsServer;
+    private boolean destroyed = false;
+    
+    // Tank sizes offered on the fuel tile, in litres
+    private static final double[] TANK_CAPACITIES_L = {35, 40, 45, 50, 55, 60, 70};
+    private static final String PREF_TANK_CAPACITY = "tank_capacity_l";
+    private static final String TRIP_JOURNAL_DIR = "trips";
+    private static final String EVENT_LOG_DIR = "events";
+    private static final String METRICS_FILE = "metrics.json";
+    private static final long METRICS_DUMP_MS = 60000;
     
     @Override
     protected void onCreate(Bundle savedInstanceState) {
@@ -82,13 +127,18 @@ public class MainActivity extends Activity implements TcpService.TcpDataListener
         // Enable fullscreen mode
         setupFullscreen();
         
+        // Start decoding theme fonts before the views ask for them
+        ThemeManager.getInstance(this).preloadFonts();
+        
         setContentView(R.layout.activity_main_simple);
         
         initializeViews();
         setupTouchListeners();
         initializeServices();
-        startDataSimulation();
-        startFullscreenEnforcer();
+        initializeTasks();
+        startFullscreenWatcher();
+        // The simulation and the TCP service start once the trip is restored
+        loadTripData();
     }
     
     private void initializeViews() {
@@ -111,6 +161,7 @@ public class MainActivity extends Activity implements TcpService.TcpDataListener
         // Trip details
         distanceDetail = (TripDetailView) findViewById(R.id.distance_detail);
         fuelUsageDetail = (TripDetailView) findViewById(R.id.fuel_usage_detail);
+        rangeDetail = (TripDetailView) findViewById(R.id.range_detail);
         avgTempDetail = (TripDetailView) findViewById(R.id.avg_temp_detail);
         avgSpeedDetail = (TripDetailView) findViewById(R.id.avg_speed_detail);
         
@@ -140,6 +191,7 @@ public class MainActivity extends Activity implements TcpService.TcpDataListener
         
         // Set up status click listeners
         tcpIndicator.setOnStatusClickListener(this);
+        tcpIndicator.setOnStatusLongClickListener(this);
         
         // Force text size update for all indicators
         oilWarningIndicator.updateTextSize();
@@ -155,6 +207,7 @@ public class MainActivity extends Activity implements TcpService.TcpDataListener
         // Initialize trip detail labels
         distanceDetail.setLabel(getString(R.string.distance));
         fuelUsageDetail.setLabel(getString(R.string.fuel_use));
+        rangeDetail.setLabel(getString(R.string.range));
         avgTempDetail.setLabel(getString(R.string.avg_temp));
         avgSpeedDetail.setLabel(getString(R.string.avg_speed));
         
@@ -178,22 +231,223 @@ public class MainActivity extends Activity implements TcpService.TcpDataListener
         
         // Initialize trip calculator
         tripCalculator = new TripCalculator();
+        preferences = getSharedPreferences("dashboard", MODE_PRIVATE);
+        tripCalculator.setTankCapacity(preferences.getFloat(PREF_TANK_CAPACITY,
+            (float) TripCalculator.DEFAULT_TANK_CAPACITY_L));
+        
+        tripExporter = new TripExporter();
+        Metrics.getInstance().startDump(new File(getFilesDir(), METRICS_FILE), METRICS_DUMP_MS);
+        
+        // Scale refresh, ingest and power use with the vehicle state
+        governor = new VehicleStateGovernor();
+        governor.setOnDriveStateChangeListener(new VehicleStateGovernor.OnDriveStateChangeListener() {
+            @Override
+            public void onDriveStateChanged(VehicleStateGovernor.DriveState oldState, VehicleStateGovernor.DriveState newState) {
+                if (tcpService != null) {
+                    tcpService.setMinDispatchIntervalMs(governor.getIngestIntervalMs());
+                }
+                if (simulationTask != null) {
+                    scheduler.setPeriod(simulationTask, governor.getRefreshIntervalMs());
+                }
+                applyPowerPolicy();
+                // Nobody watches the screen while parked, let the device idle
+                if (watchdog != null) {
+                    watchdog.setActive(newState != VehicleStateGovernor.DriveState.PARKED);
+                }
+            }
+        });
+        applyPowerPolicy();
+        
+        // Log main thread stalls, nobody is there to notice a frozen needle
+        watchdog = new MainThreadWatchdog(MainThreadWatchdog.DEFAULT_THRESHOLD_MS);
+        watchdog.setActive(governor.getState() != VehicleStateGovernor.DriveState.PARKED);
+        watchdog.start();
+        
+        // Caches given back under memory pressure, cheapest to rebuild first
+        memoryManager = new MemoryManager();
+        memoryManager.register("speedometer.layer", MemoryManager.PRIORITY_BITMAPS, speedometer);
+        memoryManager.register("coolant.layer", MemoryManager.PRIORITY_BITMAPS, coolantGauge);
+        memoryManager.register("fuel.layer", MemoryManager.PRIORITY_BITMAPS, fuelGauge);
+        memoryManager.register("fonts", MemoryManager.PRIORITY_FONTS, FontManager.getInstance(this));
+    }
+    
+    /**
+     * Recover the trip journal, load the catalog and open the event log on a
+     * background thread, a long journal takes seconds to replay. The
+     * calculator belongs to that thread until onTripDataLoaded() runs.
+     */
+    private void loadTripData() {
+        final File filesDir = getFilesDir();
+        Thread loader = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                final TripJournal journal = new TripJournal(new File(filesDir, TripJournal.FILE_NAME), tripCalculator);
+                journal.recover();
+                final TripCatalog catalog = new TripCatalog(new File(filesDir, TripCatalog.FILE_NAME));
+                catalog.load();
+                final EventLog log = new EventLog(new File(filesDir, EVENT_LOG_DIR));
+                log.open();
+                runOnUiThread(new Runnable() {
+                    @Override
+                    public void run() {
+                        onTripDataLoaded(journal, catalog, log);
+                    }
+                });
+            }
+        }, "TripDataLoader");
+        loader.start();
+    }
+    
+    /**
+     * Start everything that reads or writes the trip: sample persistence,
+     * the TCP service, the simulation and the diagnostics server
+     */
+    private void onTripDataLoaded(TripJournal journal, TripCatalog catalog, EventLog log) {
+        if (destroyed) {
+            journal.close();
+            catalog.close();
+            log.close();
+            return;
+        }
+        // Persist every new sample from here on
+        tripJournal = journal;
+        tripCalculator.setOnSampleListener(tripJournal);
+        scheduler.schedulePeriodic(journalTask, TripJournal.DEFAULT_COMMIT_INTERVAL_MS,
+                                   TripJournal.DEFAULT_COMMIT_INTERVAL_MS, 1000);
+        
+        // Finished trips, a trip left over from a long park is archived right away
+        tripCatalog = catalog;
+        archiveTripIfParked(System.currentTimeMillis());
+        
+        tripCalculator.fillMetrics(tripMetrics);
+        tripDistance = tripMetrics.distance;
+        fuelUsage = tripMetrics.fuelUsage;
+        avgTemperature = tripMetrics.avgTemperature;
+        avgSpeed = tripMetrics.avgSpeed;
+        rangeKm = tripMetrics.rangeKm;
+        memoryManager.register("track", MemoryManager.PRIORITY_HISTORY, tripCalculator);
+        
+        // Event history on disk, opened before the services add their first events
+        eventLog = log;
+        EventManager.getInstance().setEventLog(eventLog);
         
         // Initialize TCP service
         tcpService = new TcpService(this);
         tcpService.setDataListener(this);
+        tcpService.setMinDispatchIntervalMs(governor.getIngestIntervalMs());
+        startDataSimulation();
+        
+        // Let technicians inspect the car from a laptop on the ESP32's Wi-Fi
+        diagnosticsServer = new DiagnosticsServer(DiagnosticsServer.DEFAULT_PORT, new DiagnosticsServer.TelemetrySource() {
+            @Override
+            public void writeTelemetry(JsonWriter json) {
+                writeTelemetryJson(json);
+            }
+        }, eventLog);
+        try {
+            diagnosticsServer.start();
+        } catch (IOException e) {
+            android.util.Log.w("MainActivity", "Diagnostics server not started", e);
+        }
     }
     
+    private void updateDriveState() {
+        if (governor != null) {
+            // Demo data counts as live data so the demo animates at full rate
+            governor.update(speed, rpm, tcpConnected || demoMode, reverseGear);
+        }
+    }
     
-    private void startDataSimulation() {
-        handler.post(new Runnable() {
+    private void applyPowerPolicy() {
+        // Keep the screen bright while the car is in use, let it dim when parked
+        boolean bright = governor == null || governor.shouldKeepScreenBright();
+        int lockLevel = bright ? PowerManager.SCREEN_BRIGHT_WAKE_LOCK : PowerManager.SCREEN_DIM_WAKE_LOCK;
+        
+        if (wakeLock != null && wakeLock.isHeld()) {
+            wakeLock.release();
+        }
+        PowerManager powerManager = (PowerManager) getSystemService(POWER_SERVICE);
+        wakeLock = powerManager.newWakeLock(lockLevel, "CarDashboard::WakeLock");
+        wakeLock.acquire();
+        
+        if (bright) {
+            getWindow().addFlags(WindowManager.LayoutParams.FLAG_KEEP_SCREEN_ON);
+        } else {
+            getWindow().clearFlags(WindowManager.LayoutParams.FLAG_KEEP_SCREEN_ON);
+        }
+    }
+    
+    
+    private void initializeTasks() {
+        scheduler = MainThreadScheduler.getInstance();
+        
+        simulationTask = scheduler.newTask("simulation", new Runnable() {
             @Override
             public void run() {
                 updateDashboardData();
+                updateDriveState();
                 updateUI();
-                handler.postDelayed(this, 1000); // Update every second
             }
         });
+        
+        demoTask = scheduler.newTask("demoAnimation", new Runnable() {
+            @Override
+            public void run() {
+                if (demoMode) {
+                    updateDemoAnimation();
+                } else {
+                    scheduler.cancel(demoTask);
+                }
+            }
+        });
+        
+        hideButtonsTask = scheduler.newTask("hideButtons", new Runnable() {
+            @Override
+            public void run() {
+                speedometer.setShowDemoButton(false);
+                speedometer.setShowThemeButton(false);
+            }
+        });
+        
+        fullscreenTask = scheduler.newTask("fullscreen", new Runnable() {
+            @Override
+            public void run() {
+                applyImmersiveFlags();
+            }
+        });
+        
+        // Commits a partial batch when samples stop arriving, e.g. after the connection drops
+        journalTask = scheduler.newTask("tripJournal", new Runnable() {
+            @Override
+            public void run() {
+                tripJournal.commitIfDue();
+            }
+        });
+        
+        exportStatusTask = scheduler.newTask("exportStatus", new Runnable() {
+            @Override
+            public void run() {
+                distanceDetail.setDetail("");
+            }
+        });
+        recomputeStatusTask = scheduler.newTask("recomputeStatus", new Runnable() {
+            @Override
+            public void run() {
+                fuelUsageDetail.setDetail("");
+            }
+        });
+        memoryTask = scheduler.newTask("memory", new Runnable() {
+            @Override
+            public void run() {
+                memoryManager.check();
+            }
+        });
+        scheduler.schedulePeriodic(memoryTask, MemoryManager.CHECK_INTERVAL_MS, MemoryManager.CHECK_INTERVAL_MS, 2000);
+    }
+    
+    private void startDataSimulation() {
+        // Every second while in use, the refresh is shared with other due tasks when possible
+        scheduler.schedulePeriodic(simulationTask, 0, governor.getRefreshIntervalMs(), 250);
     }
     
     private void updateDashboardData() {
@@ -245,6 +499,7 @@ public class MainActivity extends Activity implements TcpService.TcpDataListener
     }
     
     private void updateUI() {
+        TraceRecorder.begin("updateUI");
         // Update speedometer
         speedometer.setSpeed((float) speed);
         speedometer.setRpm((float) rpm);
@@ -255,10 +510,26 @@ public class MainActivity extends Activity implements TcpService.TcpDataListener
         fuelGauge.setValue((float) fuelLevel);
         
         // Update trip details
-        distanceDetail.setValue(String.format("%.1f km", tripDistance));
-        fuelUsageDetail.setValue(String.format("%.1f L/100km", fuelUsage));
-        avgTempDetail.setValue(String.format("%.0f°C", avgTemperature));
-        avgSpeedDetail.setValue(String.format("%.1f km/h", avgSpeed));
+        // Formatted into one reused buffer, the tiles copy what changed
+        distanceDetail.setValue(tileText.clear().append(tripDistance, 1).append(" km"));
+        fuelUsageDetail.setValue(tileText.clear().append(fuelUsage, 1).append(" L/100km"));
+        rangeDetail.setValue(tileText.clear().append(rangeKm, 0).append(" km"));
+        avgTempDetail.setValue(tileText.clear().append(avgTemperature, 0).append("°C"));
+        avgSpeedDetail.setValue(tileText.clear().append(avgSpeed, 1).append(" km/h"));
+        
+        // Last 5 minutes and trip maximum, only for real trip data
+        if (demoMode || Double.isNaN(tripMetrics.recentAvgSpeed)) {
+            avgTempDetail.setDetail("");
+            avgSpeedDetail.setDetail("");
+            rangeDetail.setDetail("");
+        } else {
+            rangeDetail.setDetail(tileText.clear().append("at ").append(tripMetrics.recentFuelUsage, 1)
+                .append(" L/100km"));
+            avgTempDetail.setDetail(tileText.clear().append("5m ").append(tripMetrics.recentAvgTemperature, 0)
+                .append("°C  max ").append(tripMetrics.maxTemperature, 0).append("°C"));
+            avgSpeedDetail.setDetail(tileText.clear().append("5m ").append(tripMetrics.recentAvgSpeed, 0)
+                .append("  max ").append(tripMetrics.maxSpeed, 0).append(" km/h"));
+        }
         
         // Update status indicators
         oilWarningIndicator.setActive(oilWarning);
@@ -274,6 +545,7 @@ public class MainActivity extends Activity implements TcpService.TcpDataListener
         leftTurnIndicator.setBlinking(leftTurnSignal);
         rightTurnIndicator.setActive(rightTurnSignal);
         rightTurnIndicator.setBlinking(rightTurnSignal);
+        TraceRecorder.end();
     }
     
     private void updateBatteryIndicator() {
@@ -328,6 +600,8 @@ public class MainActivity extends Activity implements TcpService.TcpDataListener
         distanceDetail.setFont(themeManager.getBoldFont());
         fuelUsageDetail.updateThemeColors();
         fuelUsageDetail.setFont(themeManager.getBoldFont());
+        rangeDetail.updateThemeColors();
+        rangeDetail.setFont(themeManager.getBoldFont());
         avgTempDetail.updateThemeColors();
         avgTempDetail.setFont(themeManager.getBoldFont());
         avgSpeedDetail.updateThemeColors();
@@ -419,33 +693,21 @@ public class MainActivity extends Activity implements TcpService.TcpDataListener
             | WindowManager.LayoutParams.FLAG_SHOW_WHEN_LOCKED
         );
         
-        // For all Android versions, try to hide navigation
-        getWindow().getDecorView().setSystemUiVisibility(
-            View.SYSTEM_UI_FLAG_LAYOUT_STABLE
+        applyImmersiveFlags();
+    }
+    
+    private void applyImmersiveFlags() {
+        // Hide navigation and status bars, sticky immersive mode on Android 4.4+ (API 19+)
+        int flags = View.SYSTEM_UI_FLAG_LAYOUT_STABLE
             | View.SYSTEM_UI_FLAG_LAYOUT_HIDE_NAVIGATION
             | View.SYSTEM_UI_FLAG_LAYOUT_FULLSCREEN
             | View.SYSTEM_UI_FLAG_HIDE_NAVIGATION
             | View.SYSTEM_UI_FLAG_FULLSCREEN
-            | View.SYSTEM_UI_FLAG_LOW_PROFILE
-        );
-        
-        // For Android 4.4+ (API 19+), add immersive mode
+            | View.SYSTEM_UI_FLAG_LOW_PROFILE;
         if (Build.VERSION.SDK_INT >= 19) {
-            getWindow().getDecorView().setSystemUiVisibility(
-                View.SYSTEM_UI_FLAG_LAYOUT_STABLE
-                | View.SYSTEM_UI_FLAG_LAYOUT_HIDE_NAVIGATION
-                | View.SYSTEM_UI_FLAG_LAYOUT_FULLSCREEN
-                | View.SYSTEM_UI_FLAG_HIDE_NAVIGATION
-                | View.SYSTEM_UI_FLAG_FULLSCREEN
-                | View.SYSTEM_UI_FLAG_LOW_PROFILE
-                | 0x00001000  // SYSTEM_UI_FLAG_IMMERSIVE_STICKY for API 19+
-            );
-        }
-        
-        // Acquire wake lock to keep screen on
-        PowerManager powerManager = (PowerManager) getSystemService(POWER_SERVICE);
-        wakeLock = powerManager.newWakeLock(PowerManager.SCREEN_BRIGHT_WAKE_LOCK, "CarDashboard::WakeLock");
-        wakeLock.acquire();
+            flags |= 0x00001000; // SYSTEM_UI_FLAG_IMMERSIVE_STICKY for API 19+
+        }
+        getWindow().getDecorView().setSystemUiVisibility(flags);
     }
     
     @Override
@@ -453,61 +715,21 @@ public class MainActivity extends Activity implements TcpService.TcpDataListener
         super.onWindowFocusChanged(hasFocus);
         
         if (hasFocus) {
-            // Re-enable fullscreen when window gains focus - more aggressive approach
-            getWindow().getDecorView().setSystemUiVisibility(
-                View.SYSTEM_UI_FLAG_LAYOUT_STABLE
-                | View.SYSTEM_UI_FLAG_LAYOUT_HIDE_NAVIGATION
-                | View.SYSTEM_UI_FLAG_LAYOUT_FULLSCREEN
-                | View.SYSTEM_UI_FLAG_HIDE_NAVIGATION
-                | View.SYSTEM_UI_FLAG_FULLSCREEN
-                | View.SYSTEM_UI_FLAG_LOW_PROFILE
-            );
-            
-            // For Android 4.4+ (API 19+), add immersive mode
-            if (Build.VERSION.SDK_INT >= 19) {
-                getWindow().getDecorView().setSystemUiVisibility(
-                    View.SYSTEM_UI_FLAG_LAYOUT_STABLE
-                    | View.SYSTEM_UI_FLAG_LAYOUT_HIDE_NAVIGATION
-                    | View.SYSTEM_UI_FLAG_LAYOUT_FULLSCREEN
-                    | View.SYSTEM_UI_FLAG_HIDE_NAVIGATION
-                    | View.SYSTEM_UI_FLAG_FULLSCREEN
-                    | View.SYSTEM_UI_FLAG_LOW_PROFILE
-                    | 0x00001000  // SYSTEM_UI_FLAG_IMMERSIVE_STICKY for API 19+
-                );
-            }
+            // Re-enable fullscreen when window gains focus
+            applyImmersiveFlags();
         }
     }
     
-    private void startFullscreenEnforcer() {
-        // Periodically enforce fullscreen mode to ensure navigation stays hidden
-        handler.post(new Runnable() {
+    private void startFullscreenWatcher() {
+        // Re-hide the system bars only when they actually appear instead of polling
+        getWindow().getDecorView().setOnSystemUiVisibilityChangeListener(new View.OnSystemUiVisibilityChangeListener() {
             @Override
-            public void run() {
-                // Force fullscreen mode
-                getWindow().getDecorView().setSystemUiVisibility(
-                    View.SYSTEM_UI_FLAG_LAYOUT_STABLE
-                    | View.SYSTEM_UI_FLAG_LAYOUT_HIDE_NAVIGATION
-                    | View.SYSTEM_UI_FLAG_LAYOUT_FULLSCREEN
-                    | View.SYSTEM_UI_FLAG_HIDE_NAVIGATION
-                    | View.SYSTEM_UI_FLAG_FULLSCREEN
-                    | View.SYSTEM_UI_FLAG_LOW_PROFILE
-                );
-                
-                // For Android 4.4+ (API 19+), add immersive mode
-                if (Build.VERSION.SDK_INT >= 19) {
-                    getWindow().getDecorView().setSystemUiVisibility(
-                        View.SYSTEM_UI_FLAG_LAYOUT_STABLE
-                        | View.SYSTEM_UI_FLAG_LAYOUT_HIDE_NAVIGATION
-                        | View.SYSTEM_UI_FLAG_LAYOUT_FULLSCREEN
-                        | View.SYSTEM_UI_FLAG_HIDE_NAVIGATION
-                        | View.SYSTEM_UI_FLAG_FULLSCREEN
-                        | View.SYSTEM_UI_FLAG_LOW_PROFILE
-                        | 0x00001000  // SYSTEM_UI_FLAG_IMMERSIVE_STICKY for API 19+
-                    );
+            public void onSystemUiVisibilityChange(int visibility) {
+                int hidden = View.SYSTEM_UI_FLAG_FULLSCREEN | View.SYSTEM_UI_FLAG_HIDE_NAVIGATION;
+                if ((visibility & hidden) != hidden) {
+                    // Leave the bars up briefly so the touch that revealed them still works
+                    scheduler.schedule(fullscreenTask, governor.getBackgroundIntervalMs(), 500);
                 }
-                
-                // Schedule next enforcement in 1 second
-                handler.postDelayed(this, 1000);
             }
         });
     }
@@ -520,33 +742,204 @@ public class MainActivity extends Activity implements TcpService.TcpDataListener
                 showDemoAndThemeButtons();
             }
         });
+        
+        // Start tracing when the speedometer is held, and export the trace the next time
+        speedometer.setOnLongClickListener(new View.OnLongClickListener() {
+            @Override
+            public boolean onLongClick(View v) {
+                toggleTracing();
+                return true;
+            }
+        });
+        
+        // Export the trip when the distance tile is held
+        distanceDetail.setOnLongClickListener(new View.OnLongClickListener() {
+            @Override
+            public boolean onLongClick(View v) {
+                exportTrip();
+                return true;
+            }
+        });
+        
+        // Switch the tank size when the fuel tile is held
+        fuelUsageDetail.setOnLongClickListener(new View.OnLongClickListener() {
+            @Override
+            public boolean onLongClick(View v) {
+                nextTankCapacity();
+                return true;
+            }
+        });
     }
     
-    private void showDemoAndThemeButtons() {
-        // Cancel any existing hide timer
-        if (hideButtonsRunnable != null) {
-            buttonHideHandler.removeCallbacks(hideButtonsRunnable);
+    /**
+     * Write the current trip as GPX and CSV to the app's external files
+     * directory, showing progress on the distance tile
+     */
+    private void exportTrip() {
+        if (tripJournal == null || tripExporter.isBusy()) {
+            return;
+        }
+        tripJournal.flush();
+        File directory = getExternalFilesDir(null);
+        if (directory == null) {
+            // No external storage mounted
+            directory = getFilesDir();
         }
+        String name = "trip-" + new SimpleDateFormat("yyyyMMdd-HHmmss", Locale.US).format(new Date());
         
-        // Show buttons on speedometer
-        speedometer.setShowDemoButton(true);
-        speedometer.setShowThemeButton(true);
+        TripExporter.ExportListener listener = new TripExporter.ExportListener() {
+            @Override
+            public void onProgress(long points, long estimatedPoints) {
+                showExportStatus(String.format("Export %d%%", estimatedPoints > 0 ? points * 100 / estimatedPoints : 0), false);
+            }
+            
+            @Override
+            public void onFinished(File output, long points, long elapsedMs, boolean truncated) {
+                // A damaged journal only exports up to the damage
+                showExportStatus((truncated ? "Saved part of " : "Saved ") + output.getName(), true);
+            }
+            
+            @Override
+            public void onFailed(File output, IOException error) {
+                showExportStatus("Export failed", true);
+            }
+        };
+        distanceDetail.setDetail("Export 0%");
+        tripExporter.export(tripJournal.getFile(), new File(directory, name + ".gpx"), TripExporter.Format.GPX, listener);
+        tripExporter.export(tripJournal.getFile(), new File(directory, name + ".csv"), TripExporter.Format.CSV, listener);
+    }
+    
+    /**
+     * Start a trace, or stop it and write it as trace-event JSON next to the
+     * trip exports. Open the file in ui.perfetto.dev or chrome://tracing.
+     */
+    private void toggleTracing() {
+        if (!TraceRecorder.isEnabled()) {
+            TraceRecorder.start();
+            showExportStatus("Tracing", false);
+            return;
+        }
+        TraceRecorder.stop();
+        File directory = getExternalFilesDir(null);
+        if (directory == null) {
+            directory = getFilesDir();
+        }
+        final File output = new File(directory,
+            "trace-" + new SimpleDateFormat("yyyyMMdd-HHmmss", Locale.US).format(new Date()) + ".json");
+        final int pid = android.os.Process.myPid();
+        Thread exporter = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    int events = TraceRecorder.export(output, pid);
+                    android.util.Log.i("MainActivity", "Wrote " + events + " trace events to " + output);
+                    showExportStatus("Saved " + output.getName(), true);
+                } catch (IOException e) {
+                    android.util.Log.e("MainActivity", "Failed to write trace", e);
+                    showExportStatus("Trace failed", true);
+                }
+            }
+        }, "TraceExport");
+        exporter.setPriority(Thread.MIN_PRIORITY);
+        exporter.start();
+    }
+    
+    /**
+     * Cycle through the tank sizes and recompute the fuel of the archived
+     * trips with the new size, showing progress on the fuel tile. Only trips
+     * whose journal is still kept are recomputed, see
+     * TripJournal.MAX_ARCHIVED_JOURNALS; older trips keep their fuel.
+     */
+    private void nextTankCapacity() {
+        if (tripCatalog == null) {
+            // Still loading, the calculator isn't ours yet
+            return;
+        }
+        double capacity = TANK_CAPACITIES_L[0];
+        for (int i = 0; i < TANK_CAPACITIES_L.length; i++) {
+            if (TANK_CAPACITIES_L[i] > tripCalculator.getTankCapacity() + 0.5) {
+                capacity = TANK_CAPACITIES_L[i];
+                break;
+            }
+        }
+        preferences.edit().putFloat(PREF_TANK_CAPACITY, (float) capacity).apply();
+        tripCalculator.setTankCapacity(capacity);
+        fuelUsage = tripCalculator.getFuelUsage();
+        tripCalculator.fillMetrics(tripMetrics);
+        rangeKm = tripMetrics.rangeKm;
+        updateUI();
         
-        // Hide buttons after 5 seconds
-        hideButtonsRunnable = new Runnable() {
+        if (recomputeJob != null) {
+            recomputeJob.cancel();
+        }
+        File[] journals = new File(getFilesDir(), TRIP_JOURNAL_DIR).listFiles();
+        if (journals == null || journals.length == 0) {
+            showRecomputeStatus(String.format("Tank %.0f L", capacity), true);
+            return;
+        }
+        // Names are start times of equal length, so they sort by time
+        Arrays.sort(journals);
+        recomputeJob = new TripRecomputeJob(tripCatalog, journals, capacity);
+        recomputeJob.start(new TripRecomputeJob.Listener() {
+            @Override
+            public void onProgress(int chunksDone, int chunks, double samplesPerSecond) {
+                showRecomputeStatus(String.format("Recompute %d%%", chunksDone * 100 / chunks), false);
+            }
+            
+            @Override
+            public void onFinished(int tripsUpdated, long samples, double samplesPerSecond) {
+                showRecomputeStatus(String.format("%d trips updated", tripsUpdated), true);
+            }
+            
+            @Override
+            public void onCancelled(int chunksDone, int chunks) {
+            }
+        });
+        showRecomputeStatus(String.format("Tank %.0f L", capacity), false);
+    }
+    
+    private void showRecomputeStatus(final String status, final boolean done) {
+        runOnUiThread(new Runnable() {
             @Override
             public void run() {
-                speedometer.setShowDemoButton(false);
-                speedometer.setShowThemeButton(false);
+                fuelUsageDetail.setDetail(status);
+                if (done) {
+                    scheduler.schedule(recomputeStatusTask, 5000, 500);
+                } else {
+                    scheduler.cancel(recomputeStatusTask);
+                }
             }
-        };
-        buttonHideHandler.postDelayed(hideButtonsRunnable, 5000);
+        });
+    }
+    
+    private void showExportStatus(final String status, final boolean done) {
+        runOnUiThread(new Runnable() {
+            @Override
+            public void run() {
+                distanceDetail.setDetail(status);
+                if (done) {
+                    scheduler.schedule(exportStatusTask, 5000, 500);
+                } else {
+                    scheduler.cancel(exportStatusTask);
+                }
+            }
+        });
+    }
+    
+    private void showDemoAndThemeButtons() {
+        // Show buttons on speedometer
+        speedometer.setShowDemoButton(true);
+        speedometer.setShowThemeButton(true);
+        
+        // Hide buttons after 5 seconds, replacing any existing hide timer
+        scheduler.schedule(hideButtonsTask, 5000, 500);
     }
     
     public void onDemoButtonClick() {
         if (demoMode) {
             // Stop demo mode
             demoMode = false;
+            scheduler.cancel(demoTask);
             // Reset to real data
             speed = 0;
             tripDistance = 0;
@@ -558,6 +951,7 @@ public class MainActivity extends Activity implements TcpService.TcpDataListener
             demoMode = true;
             startDemoAnimation();
         }
+        updateDriveState();
         updateUI();
     }
     
@@ -584,72 +978,65 @@ public class MainActivity extends Activity implements TcpService.TcpDataListener
         rightTurnSignal = false;
         reverseGear = false;
         
-        final long startTime = System.currentTimeMillis();
-        final long cycleDuration = 10000; // 10 seconds for full cycle
+        demoStartTime = System.currentTimeMillis();
+        scheduler.schedulePeriodic(demoTask, 0, 50, 0); // Update every 50ms for smoother animation
+    }
+    
+    private void updateDemoAnimation() {
+        long elapsed = System.currentTimeMillis() - demoStartTime;
+        float cycleProgress = (elapsed % DEMO_CYCLE_DURATION) / (float) DEMO_CYCLE_DURATION;
         
-        handler.post(new Runnable() {
-            @Override
-            public void run() {
-                if (demoMode) {
-                    long elapsed = System.currentTimeMillis() - startTime;
-                    float cycleProgress = (elapsed % cycleDuration) / (float) cycleDuration;
-                    
-                    // Create smooth sine wave animation (0 to 1 and back to 0)
-                    float animationProgress = (float) (Math.sin(cycleProgress * 2 * Math.PI - Math.PI/2) + 1) / 2;
-                    
-                    // Animate speed from 0 to 120 km/h and back
-                    speed = animationProgress * 120;
-                    
-                    // Animate RPM from 0 to 6000 and back
-                    rpm = animationProgress * 6000;
-                    
-                    // Animate coolant temp from 60 to 120°C and back
-                    coolantTemp = 60 + animationProgress * 60;
-                    
-                    // Animate fuel level from 100 to 0 and back
-                    fuelLevel = 100 - animationProgress * 100;
-                    
-                    // Animate trip distance (continuously increasing)
-                    tripDistance = (elapsed / 1000.0) * 10; // 10 km per second
-                    
-                    // Animate other values
-                    fuelUsage = animationProgress * 10; // 0 to 10 L/100km
-                    avgTemperature = 20 + animationProgress * 20; // 20 to 40°C
-                    avgSpeed = animationProgress * 100; // 0 to 100 km/h
-                    
-                    // Animate status indicators based on animation progress
-                    oilWarning = animationProgress > 0.7; // Warning at high values
-                    batteryVoltage = 12.0 + animationProgress * 2.0; // 12 to 14V
-                    
-                    // Animate all 6 light icons
-                    drlOn = animationProgress > 0.1; // DRL on most of the time
-                    lowBeamOn = animationProgress > 0.4 && animationProgress < 0.8; // Low beam in middle range
-                    highBeamOn = animationProgress > 0.6 && animationProgress < 0.9; // High beam in upper range
-                    hazardLights = animationProgress > 0.8; // Hazard lights at high values
-                    
-                    // Animate turn signals with different patterns
-                    if (animationProgress > 0.3 && animationProgress < 0.5) {
-                        leftTurnSignal = true;
-                        rightTurnSignal = false;
-                    } else if (animationProgress > 0.7 && animationProgress < 0.9) {
-                        leftTurnSignal = false;
-                        rightTurnSignal = true;
-                    } else {
-                        leftTurnSignal = false;
-                        rightTurnSignal = false;
-                    }
-                    
-                    // Animate reverse gear - engage when speed is low and animation is in certain range
-                    reverseGear = (animationProgress > 0.1 && animationProgress < 0.2) || 
-                                 (animationProgress > 0.8 && animationProgress < 0.9);
-                    
-                    updateUI();
-                    
-                    // Continue animation
-                    handler.postDelayed(this, 50); // Update every 50ms for smoother animation
-                }
-            }
-        });
+        // Create smooth sine wave animation (0 to 1 and back to 0)
+        float animationProgress = (float) (Math.sin(cycleProgress * 2 * Math.PI - Math.PI/2) + 1) / 2;
+        
+        // Animate speed from 0 to 120 km/h and back
+        speed = animationProgress * 120;
+        
+        // Animate RPM from 0 to 6000 and back
+        rpm = animationProgress * 6000;
+        
+        // Animate coolant temp from 60 to 120°C and back
+        coolantTemp = 60 + animationProgress * 60;
+        
+        // Animate fuel level from 100 to 0 and back
+        fuelLevel = 100 - animationProgress * 100;
+        
+        // Animate trip distance (continuously increasing)
+        tripDistance = (elapsed / 1000.0) * 10; // 10 km per second
+        
+        // Animate other values
+        fuelUsage = animationProgress * 10; // 0 to 10 L/100km
+        avgTemperature = 20 + animationProgress * 20; // 20 to 40°C
+        avgSpeed = animationProgress * 100; // 0 to 100 km/h
+        rangeKm = fuelLevel * 6; // 600 km on a full tank
+        
+        // Animate status indicators based on animation progress
+        oilWarning = animationProgress > 0.7; // Warning at high values
+        batteryVoltage = 12.0 + animationProgress * 2.0; // 12 to 14V
+        
+        // Animate all 6 light icons
+        drlOn = animationProgress > 0.1; // DRL on most of the time
+        lowBeamOn = animationProgress > 0.4 && animationProgress < 0.8; // Low beam in middle range
+        highBeamOn = animationProgress > 0.6 && animationProgress < 0.9; // High beam in upper range
+        hazardLights = animationProgress > 0.8; // Hazard lights at high values
+        
+        // Animate turn signals with different patterns
+        if (animationProgress > 0.3 && animationProgress < 0.5) {
+            leftTurnSignal = true;
+            rightTurnSignal = false;
+        } else if (animationProgress > 0.7 && animationProgress < 0.9) {
+            leftTurnSignal = false;
+            rightTurnSignal = true;
+        } else {
+            leftTurnSignal = false;
+            rightTurnSignal = false;
+        }
+        
+        // Animate reverse gear - engage when speed is low and animation is in certain range
+        reverseGear = (animationProgress > 0.1 && animationProgress < 0.2) || 
+                     (animationProgress > 0.8 && animationProgress < 0.9);
+        
+        updateUI();
     }
     
     
@@ -672,24 +1059,32 @@ public class MainActivity extends Activity implements TcpService.TcpDataListener
         this.rightTurnSignal = rightTurnSignal;
         this.hazardLights = hazardLights;
         this.reverseGear = reverseGear;
+        updateDriveState();
         
         // Update trip calculator with location and current data
         if (tripCalculator != null) {
+            archiveTripIfParked(System.currentTimeMillis());
             tripCalculator.updateLocation(location, speed, coolantTemp, fuelLevel);
             
-            // Get calculated trip metrics
-            this.tripDistance = tripCalculator.getTotalDistance();
-            this.fuelUsage = tripCalculator.getFuelUsage();
-            this.avgTemperature = tripCalculator.getAvgTemperature();
-            this.avgSpeed = tripCalculator.getAvgSpeed();
+            // Get calculated trip metrics in one snapshot
+            tripCalculator.fillMetrics(tripMetrics);
+            this.tripDistance = tripMetrics.distance;
+            this.fuelUsage = tripMetrics.fuelUsage;
+            this.avgTemperature = tripMetrics.avgTemperature;
+            this.avgSpeed = tripMetrics.avgSpeed;
+            this.rangeKm = tripMetrics.rangeKm;
         }
         
+        if (perfHud != null && perfHud.isShowing()) {
+            perfHud.onFrameDispatched(tcpService.getDispatchedReadNs());
+        }
         updateUI();
     }
     
     @Override
     public void onTcpStatusChange(boolean connected, String status) {
         tcpConnected = connected;
+        updateDriveState();
         updateUI();
     }
     
@@ -697,6 +1092,11 @@ public class MainActivity extends Activity implements TcpService.TcpDataListener
     protected void onPause() {
         super.onPause();
         android.util.Log.d("MainActivity", "App paused - but keeping it running for car use");
+        
+        // The process may be killed while in the background
+        if (tripJournal != null) {
+            tripJournal.flush();
+        }
     }
     
     @Override
@@ -706,6 +1106,25 @@ public class MainActivity extends Activity implements TcpService.TcpDataListener
         
         // Ensure fullscreen mode is maintained
         setupFullscreen();
+        if (governor != null) {
+            applyPowerPolicy();
+        }
+    }
+    
+    @Override
+    public void onTrimMemory(int level) {
+        super.onTrimMemory(level);
+        if (memoryManager != null) {
+            memoryManager.onTrimMemory(level);
+        }
+    }
+    
+    @Override
+    public void onLowMemory() {
+        super.onLowMemory();
+        if (memoryManager != null) {
+            memoryManager.onLowMemory();
+        }
     }
     
     @Override
@@ -719,8 +1138,16 @@ public class MainActivity extends Activity implements TcpService.TcpDataListener
     protected void onDestroy() {
         super.onDestroy();
         android.util.Log.i("MainActivity", "Car Dashboard app destroyed");
+        destroyed = true;
         
-        handler.removeCallbacksAndMessages(null);
+        scheduler.removeTask(simulationTask);
+        scheduler.removeTask(demoTask);
+        scheduler.removeTask(hideButtonsTask);
+        scheduler.removeTask(fullscreenTask);
+        scheduler.removeTask(journalTask);
+        scheduler.removeTask(exportStatusTask);
+        scheduler.removeTask(recomputeStatusTask);
+        scheduler.removeTask(memoryTask);
         
         // Release wake lock
         if (wakeLock != null && wakeLock.isHeld()) {
@@ -731,15 +1158,36 @@ public class MainActivity extends Activity implements TcpService.TcpDataListener
         if (tcpService != null) {
             tcpService.cleanup();
         }
-        if (tripCalculator != null) {
-            tripCalculator.resetTrip();
+        // Keep the trip, it is restored from the journal on the next start
+        if (tripJournal != null) {
+            tripJournal.close();
+        }
+        if (tripCatalog != null) {
+            tripCatalog.close();
+        }
+        if (tripExporter != null) {
+            tripExporter.shutdown();
+        }
+        if (recomputeJob != null) {
+            recomputeJob.cancel();
+        }
+        if (diagnosticsServer != null) {
+            diagnosticsServer.stop();
+        }
+        if (eventLog != null) {
+            EventManager.getInstance().setEventLog(null);
+            eventLog.close();
+        }
+        Metrics.getInstance().stopDump();
+        if (watchdog != null) {
+            watchdog.stop();
         }
         
     }
     
     public void resetTrip() {
-        if (tripCalculator != null) {
-            tripCalculator.resetTrip();
+        if (tripJournal != null) {
+            archiveTrip();
             tripDistance = 0.0;
             fuelUsage = 0.0;
             avgTemperature = 0.0;
@@ -749,6 +1197,35 @@ public class MainActivity extends Activity implements TcpService.TcpDataListener
         }
     }
     
+    /**
+     * Start a new trip when the car was parked for a long time since the last sample
+     */
+    private void archiveTripIfParked(long now) {
+        if (tripCalculator.getDataPoints() > 0
+                && now - tripCalculator.getLastSampleTime() > TripCatalog.NEW_TRIP_GAP_MS) {
+            archiveTrip();
+        }
+    }
+    
+    /**
+     * Move the current trip into the catalog and start a new one
+     */
+    private void archiveTrip() {
+        if (tripCalculator.getDataPoints() > 0) {
+            TripCatalog.Summary summary = new TripCatalog.Summary();
+            summary.fillFrom(tripCalculator);
+            tripCatalog.add(summary);
+            tripCatalog.compactAsync();
+            android.util.Log.i("MainActivity", String.format("Archived trip: %.1f km", summary.distanceKm));
+            // Keep the samples, so the trip can be recomputed later
+            tripJournal.archive(new File(new File(getFilesDir(), TRIP_JOURNAL_DIR),
+                                         summary.startMs + ".journal"));
+        } else {
+            tripJournal.reset();
+        }
+        tripCalculator.resetTrip();
+    }
+    
     // Status click handling
     @Override
     public void onStatusClick(String statusType) {
@@ -757,7 +1234,31 @@ public class MainActivity extends Activity implements TcpService.TcpDataListener
         }
     }
     
+    @Override
+    public void onStatusLongClick(String statusType) {
+        if (getString(R.string.wifi).equals(statusType)) {
+            togglePerfHud();
+        }
+    }
+    
+    /**
+     * Show or hide the performance overlay in the top left corner
+     */
+    private void togglePerfHud() {
+        if (perfHud == null) {
+            perfHud = new PerfHudView(this);
+            addContentView(perfHud, new FrameLayout.LayoutParams(
+                FrameLayout.LayoutParams.WRAP_CONTENT, FrameLayout.LayoutParams.WRAP_CONTENT, Gravity.TOP | Gravity.LEFT));
+        }
+        perfHud.setTcpService(tcpService);
+        perfHud.setShowing(!perfHud.isShowing());
+    }
+    
     private void showTcpDialog() {
+        if (tcpService == null) {
+            // Nothing to show before the trip data is loaded
+            return;
+        }
         String status = tcpService != null ? tcpService.getStatus() : "TCP Service not available";
         List<EventManager.TcpEvent> events = EventManager.getInstance().getLatestTcpEvents();
         
@@ -795,41 +1296,167 @@ public class MainActivity extends Activity implements TcpService.TcpDataListener
             },
             currentJsonData
         );
+        dialog.setEventLog(eventLog);
+        dialog.setLiveSource(new ServiceStatusDialog.LiveSource() {
+            @Override
+            public long getEventsSince(long sequence, List<Object> out) {
+                return EventManager.getInstance().getTcpEventsSince(sequence, out);
+            }
+            
+            @Override
+            public String getCurrentJsonData() {
+                return generateCurrentJsonData();
+            }
+        });
         
         Dialog dialogInstance = dialog.createDialog();
         dialogInstance.show();
     }
     
+    private int getIndicatorRedrawCount() {
+        return oilWarningIndicator.getRedrawCount() + batteryIndicator.getRedrawCount()
+            + tcpIndicator.getRedrawCount() + drlIndicator.getRedrawCount()
+            + lowBeamIndicator.getRedrawCount() + highBeamIndicator.getRedrawCount()
+            + hazardIndicator.getRedrawCount() + leftTurnIndicator.getRedrawCount()
+            + rightTurnIndicator.getRedrawCount();
+    }
+    
     private String generateCurrentJsonData() {
         try {
-            StringBuilder json = new StringBuilder();
-            json.append("{\n");
-            json.append("  \"timestamp\": ").append(System.currentTimeMillis()).append(",\n");
-            json.append("  \"speed\": ").append(String.format("%.1f", speed)).append(",\n");
-            json.append("  \"rpm\": ").append(String.format("%.0f", rpm)).append(",\n");
-            json.append("  \"coolantTemp\": ").append(String.format("%.1f", coolantTemp)).append(",\n");
-            json.append("  \"fuelLevel\": ").append(String.format("%.1f", fuelLevel)).append(",\n");
-            json.append("  \"oilWarning\": ").append(oilWarning).append(",\n");
-            json.append("  \"batteryVoltage\": ").append(String.format("%.1f", batteryVoltage)).append(",\n");
-            json.append("  \"drlOn\": ").append(drlOn).append(",\n");
-            json.append("  \"lowBeamOn\": ").append(lowBeamOn).append(",\n");
-            json.append("  \"highBeamOn\": ").append(highBeamOn).append(",\n");
-            json.append("  \"leftTurnSignal\": ").append(leftTurnSignal).append(",\n");
-            json.append("  \"rightTurnSignal\": ").append(rightTurnSignal).append(",\n");
-            json.append("  \"hazardLights\": ").append(hazardLights).append(",\n");
-            json.append("  \"reverseGear\": ").append(reverseGear).append(",\n");
-            json.append("  \"tripDistance\": ").append(String.format("%.1f", tripDistance)).append(",\n");
-            json.append("  \"fuelUsage\": ").append(String.format("%.1f", fuelUsage)).append(",\n");
-            json.append("  \"avgTemperature\": ").append(String.format("%.1f", avgTemperature)).append(",\n");
-            json.append("  \"avgSpeed\": ").append(String.format("%.1f", avgSpeed)).append(",\n");
-            json.append("  \"tcpConnected\": ").append(tcpConnected).append(",\n");
-            json.append("  \"demoMode\": ").append(demoMode).append("\n");
-            json.append("}");
-            
-            return json.toString();
+            writeTelemetryJson(dialogJson.reset());
+            return dialogJson.toString();
         } catch (Exception e) {
             return "{\n  \"error\": \"Failed to format JSON\"\n}";
         }
     }
     
+    /**
+     * Current telemetry and diagnostics, for the status dialog and the
+     * diagnostics server. Must run on the main thread.
+     */
+    private void writeTelemetryJson(JsonWriter json) {
+        json.beginObject();
+        json.name("timestamp").value(System.currentTimeMillis());
+        json.name("speed").value(speed, 1);
+        json.name("rpm").value(rpm, 0);
+        json.name("coolantTemp").value(coolantTemp, 1);
+        json.name("fuelLevel").value(fuelLevel, 1);
+        json.name("oilWarning").value(oilWarning);
+        json.name("batteryVoltage").value(batteryVoltage, 1);
+        json.name("drlOn").value(drlOn);
+        json.name("lowBeamOn").value(lowBeamOn);
+        json.name("highBeamOn").value(highBeamOn);
+        json.name("leftTurnSignal").value(leftTurnSignal);
+        json.name("rightTurnSignal").value(rightTurnSignal);
+        json.name("hazardLights").value(hazardLights);
+        json.name("reverseGear").value(reverseGear);
+        json.name("tripDistance").value(tripDistance, 1);
+        json.name("fuelUsage").value(fuelUsage, 1);
+        json.name("avgTemperature").value(avgTemperature, 1);
+        json.name("avgSpeed").value(avgSpeed, 1);
+        json.name("tcpConnected").value(tcpConnected);
+        json.name("demoMode").value(demoMode);
+        json.name("driveState").value(governor.getState().name());
+        json.name("coalescedFrames").value(tcpService.getCoalescedFrameCount());
+        json.name("cpuMsPerState").beginObject();
+        VehicleStateGovernor.DriveState[] states = VehicleStateGovernor.DriveState.values();
+        for (int i = 0; i < states.length; i++) {
+            json.name(states[i].name()).beginInlineObject()
+                .name("cpu").value(governor.getCpuTimeMs(states[i]))
+                .name("wall").value(governor.getWallTimeMs(states[i]))
+                .endObject();
+        }
+        json.endObject();
+        json.name("scheduler").beginObject();
+        json.name("wakeups").value(scheduler.getWakeupCount());
+        json.name("tasks").beginObject();
+        List<MainThreadScheduler.Task> tasks = scheduler.getTasks();
+        for (int i = 0; i < tasks.size(); i++) {
+            MainThreadScheduler.Task task = tasks.get(i);
+            json.name(task.getName()).beginInlineObject()
+                .name("runs").value(task.getRunCount())
+                .name("avgUs").value(task.getAverageRunUs())
+                .name("maxUs").value(task.getMaxRunUs())
+                .endObject();
+        }
+        json.endObject();
+        json.endObject();
+        TrackSimplifier track = tripCalculator.getTrackSimplifier();
+        json.name("track").beginObject();
+        json.name("samples").value(track.getInputCount());
+        json.name("kept").value(track.getOutputCount());
+        json.name("compression").value(track.getCompressionRatio(), 1);
+        json.name("maxDeviationM").value(track.getMaxDeviationM(), 2);
+        json.endObject();
+        RangeEstimator range = tripCalculator.getRangeEstimator();
+        json.name("range").beginObject();
+        json.name("rangeKm").value(range.getRangeKm(), 0);
+        json.name("consumption").value(range.getConsumption(), 2);
+        json.name("smoothedFuel").value(range.getFuelLevel(), 2);
+        json.name("windowKm").value(range.getWindowDistanceKm(), 1);
+        json.endObject();
+        json.name("tripJournal").beginObject();
+        json.name("recoveredSamples").value(tripJournal.getRecoveredSamples());
+        json.name("recoveryMs").value(tripJournal.getRecoveryMs());
+        json.name("droppedBytes").value(tripJournal.getDroppedBytes());
+        json.name("records").value(tripJournal.getRecordCount());
+        json.name("commits").value(tripJournal.getCommitCount());
+        json.name("lastCommitUs").value(tripJournal.getLastCommitUs());
+        json.endObject();
+        long now = System.currentTimeMillis();
+        tripCatalog.query(now - 30L * 24 * 60 * 60 * 1000, now, last30Days);
+        json.name("tripCatalog").beginObject();
+        json.name("trips").value(tripCatalog.size());
+        json.name("last30Days").beginInlineObject()
+            .name("trips").value(last30Days.trips)
+            .name("distanceKm").value(last30Days.distanceKm, 1)
+            .name("drivingMin").value(last30Days.drivingMs / 60000)
+            .endObject();
+        json.endObject();
+        if (recomputeJob != null) {
+            json.name("recompute").beginObject();
+            json.name("chunks").value(recomputeJob.getChunkCount());
+            json.name("chunksDone").value(recomputeJob.getChunksDone());
+            json.name("finished").value(recomputeJob.isFinished());
+            json.name("samplesPerSecond").value(recomputeJob.getSamplesPerSecond(), 0);
+            json.endObject();
+        }
+        json.name("eventLog").beginObject();
+        json.name("segments").value(eventLog.getSegmentCount());
+        json.name("diskBytes").value(eventLog.getDiskBytes());
+        json.name("written").value(eventLog.getWrittenCount());
+        json.name("templates").value(eventLog.getTemplateCount());
+        json.name("dropped").value(eventLog.getDroppedCount());
+        json.endObject();
+        Metrics.getInstance().snapshot(metricsSnapshot);
+        json.name("metrics");
+        metricsSnapshot.writeJson(json);
+        json.name("allocations");
+        AllocationTracker.writeJson(json);
+        json.name("memory");
+        memoryManager.writeJson(json);
+        json.name("renderQuality").beginObject();
+        json.name("speedometer").beginInlineObject()
+            .name("tier").value(speedometer.getQualityTier().name())
+            .name("avgDrawUs").value(speedometer.getAverageDrawUs())
+            .endObject();
+        json.name("coolant").beginInlineObject()
+            .name("tier").value(coolantGauge.getQualityTier().name())
+            .name("avgDrawUs").value(coolantGauge.getAverageDrawUs())
+            .endObject();
+        json.name("fuel").beginInlineObject()
+            .name("tier").value(fuelGauge.getQualityTier().name())
+            .name("avgDrawUs").value(fuelGauge.getAverageDrawUs())
+            .endObject();
+        json.endObject();
+        json.name("redraws").beginObject();
+        json.name("speedometer").value(speedometer.getRedrawCount());
+        json.name("gauges").value(coolantGauge.getRedrawCount() + fuelGauge.getRedrawCount());
+        json.name("indicators").value(getIndicatorRedrawCount());
+        json.name("tripDetails").value(distanceDetail.getRedrawCount() + fuelUsageDetail.getRedrawCount()
+            + rangeDetail.getRedrawCount() + avgTempDetail.getRedrawCount() + avgSpeedDetail.getRedrawCount());
+        json.endObject();
+        json.endObject();
+    }
+    
 }
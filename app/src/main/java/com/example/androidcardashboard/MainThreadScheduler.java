@@ -0,0 +1,310 @@
+package com.example.androidcardashboard;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Single scheduler for all periodic and delayed work on the main thread.
+ * Tasks live in a hashed timer wheel and share one Handler wakeup: each task
+ * has a tolerance, the wakeup is set to the earliest point any task can no
+ * longer wait, and every task that is due by then runs in the same pass,
+ * in deadline order. Each slot keeps the earliest such point of its tasks,
+ * so finding the next wakeup looks at the slots rather than every task.
+ * All methods must be called on the main thread.
+ */
+public class MainThreadScheduler {
+    private static final long TICK_MS = 16;
+    private static final int WHEEL_SIZE = 64; // Power of two, about one second per turn
+    private static final int WHEEL_MASK = WHEEL_SIZE - 1;
+    
+    private static MainThreadScheduler instance;
+    
+    private final Handler handler = new Handler(Looper.getMainLooper());
+    private final Task[] wheel = new Task[WHEEL_SIZE];
+    // Earliest deadline plus tolerance in each slot, Long.MAX_VALUE when empty
+    private final long[] slotWakeAt = new long[WHEEL_SIZE];
+    private final List<Task> tasks = new ArrayList<>();
+    private final List<Task> dueTasks = new ArrayList<>();
+    private long cursorTick;
+    private long nextWakeAt = Long.MAX_VALUE;
+    private long wakeupCount = 0;
+    private final Metrics.Histogram tickTime = Metrics.getInstance().histogram("main.tick");
+    
+    private final Runnable wakeRunnable = new Runnable() {
+        @Override
+        public void run() {
+            wake(SystemClock.uptimeMillis());
+        }
+    };
+    
+    /**
+     * A unit of work. Create once with newTask() and schedule or cancel it as often as needed.
+     */
+    public static final class Task {
+        private final String name;
+        private final Runnable action;
+        private long deadline;
+        private long wakeAt;
+        private long periodMs;
+        private long toleranceMs;
+        private boolean inWheel = false;
+        private boolean due = false;
+        private boolean repeatPending = false;
+        private Task next;
+        private Task prev;
+        
+        // Execution statistics
+        private long runCount = 0;
+        private long totalRunNs = 0;
+        private long maxRunNs = 0;
+        
+        private Task(String name, Runnable action) {
+            this.name = name;
+            this.action = action;
+        }
+        
+        public String getName() {
+            return name;
+        }
+        
+        public long getRunCount() {
+            return runCount;
+        }
+        
+        public long getAverageRunUs() {
+            return runCount == 0 ? 0 : totalRunNs / runCount / 1000;
+        }
+        
+        public long getMaxRunUs() {
+            return maxRunNs / 1000;
+        }
+    }
+    
+    private MainThreadScheduler() {
+        this(SystemClock.uptimeMillis());
+    }
+    
+    MainThreadScheduler(long nowMs) {
+        cursorTick = nowMs / TICK_MS;
+        Arrays.fill(slotWakeAt, Long.MAX_VALUE);
+    }
+    
+    public static synchronized MainThreadScheduler getInstance() {
+        if (instance == null) {
+            instance = new MainThreadScheduler();
+        }
+        return instance;
+    }
+    
+    public Task newTask(String name, Runnable action) {
+        Task task = new Task(name, action);
+        tasks.add(task);
+        return task;
+    }
+    
+    /**
+     * Run the task once after delayMs, or may run up to toleranceMs later to share a wakeup
+     */
+    public void schedule(Task task, long delayMs, long toleranceMs) {
+        schedulePeriodic(task, delayMs, 0, toleranceMs);
+    }
+    
+    void schedule(Task task, long delayMs, long toleranceMs, long nowMs) {
+        schedulePeriodic(task, delayMs, 0, toleranceMs, nowMs);
+    }
+    
+    /**
+     * Run the task after delayMs and then every periodMs after each run.
+     * Any schedule replaces the previous one for the same task.
+     */
+    public void schedulePeriodic(Task task, long delayMs, long periodMs, long toleranceMs) {
+        schedulePeriodic(task, delayMs, periodMs, toleranceMs, SystemClock.uptimeMillis());
+    }
+    
+    void schedulePeriodic(Task task, long delayMs, long periodMs, long toleranceMs, long nowMs) {
+        unlink(task);
+        task.periodMs = periodMs;
+        task.toleranceMs = toleranceMs;
+        task.due = false;
+        task.repeatPending = false;
+        insert(task, nowMs + delayMs);
+        scheduleWakeup();
+    }
+    
+    /**
+     * Change the period of a periodic task, taking effect after its next run
+     */
+    public void setPeriod(Task task, long periodMs) {
+        task.periodMs = periodMs;
+    }
+    
+    public void cancel(Task task) {
+        boolean setWakeup = task.inWheel && task.wakeAt == nextWakeAt;
+        unlink(task);
+        task.due = false;
+        task.repeatPending = false;
+        if (setWakeup) {
+            // Move the wakeup on rather than wake for nothing
+            scheduleWakeup();
+        }
+    }
+    
+    /**
+     * Cancel the task and drop it from the scheduler, e.g. when its owner is destroyed
+     */
+    public void removeTask(Task task) {
+        cancel(task);
+        tasks.remove(task);
+    }
+    
+    public boolean isScheduled(Task task) {
+        return task.inWheel || task.repeatPending;
+    }
+    
+    public List<Task> getTasks() {
+        return new ArrayList<>(tasks);
+    }
+    
+    public long getWakeupCount() {
+        return wakeupCount;
+    }
+    
+    void wake(long now) {
+        long start = System.nanoTime();
+        nextWakeAt = Long.MAX_VALUE;
+        wakeupCount++;
+        runDueTasks(now);
+        scheduleWakeup();
+        tickTime.recordNanos(System.nanoTime() - start);
+    }
+    
+    /**
+     * Uptime the Handler wakeup is set for, Long.MAX_VALUE when idle
+     */
+    long getNextWakeAt() {
+        return nextWakeAt;
+    }
+    
+    private static int slotOf(long deadline) {
+        return (int) ((deadline / TICK_MS) & WHEEL_MASK);
+    }
+    
+    private void insert(Task task, long deadline) {
+        task.deadline = deadline;
+        task.wakeAt = deadline + task.toleranceMs;
+        int slot = slotOf(deadline);
+        task.prev = null;
+        task.next = wheel[slot];
+        if (task.next != null) {
+            task.next.prev = task;
+        }
+        wheel[slot] = task;
+        slotWakeAt[slot] = Math.min(slotWakeAt[slot], task.wakeAt);
+        task.inWheel = true;
+    }
+    
+    private void unlink(Task task) {
+        if (!task.inWheel) {
+            return;
+        }
+        int slot = slotOf(task.deadline);
+        if (task.prev != null) {
+            task.prev.next = task.next;
+        } else {
+            wheel[slot] = task.next;
+        }
+        if (task.next != null) {
+            task.next.prev = task.prev;
+        }
+        task.next = null;
+        task.prev = null;
+        task.inWheel = false;
+        // Only a walk of this slot when the task set its earliest wakeup
+        if (task.wakeAt == slotWakeAt[slot]) {
+            long wakeAt = Long.MAX_VALUE;
+            for (Task other = wheel[slot]; other != null; other = other.next) {
+                wakeAt = Math.min(wakeAt, other.wakeAt);
+            }
+            slotWakeAt[slot] = wakeAt;
+        }
+    }
+    
+    private void runDueTasks(long now) {
+        // Visit every slot passed since the last wakeup, a full turn at most, oldest first
+        long targetTick = now / TICK_MS;
+        long ticks = Math.min(targetTick - cursorTick + 1, WHEEL_SIZE);
+        for (long i = ticks - 1; i >= 0; i--) {
+            Task task = wheel[(int) ((targetTick - i) & WHEEL_MASK)];
+            while (task != null) {
+                Task next = task.next;
+                // Tasks for a later turn of the wheel stay in place
+                if (task.deadline <= now) {
+                    unlink(task);
+                    task.due = true;
+                    task.repeatPending = task.periodMs > 0;
+                    addDue(task);
+                }
+                task = next;
+            }
+        }
+        // The current tick may still hold tasks due later in it, so visit it again next time
+        cursorTick = targetTick;
+        
+        long passStart = System.nanoTime();
+        for (int i = 0; i < dueTasks.size(); i++) {
+            Task task = dueTasks.get(i);
+            // An earlier task in this pass may have cancelled or rescheduled it
+            if (!task.due) {
+                continue;
+            }
+            task.due = false;
+            long start = System.nanoTime();
+            TraceRecorder.begin(task.name);
+            task.action.run();
+            TraceRecorder.end();
+            long elapsed = System.nanoTime() - start;
+            
+            task.runCount++;
+            task.totalRunNs += elapsed;
+            task.maxRunNs = Math.max(task.maxRunNs, elapsed);
+            
+            // Fixed delay like postDelayed, so coalesced tasks stay in phase afterwards
+            if (task.repeatPending) {
+                task.repeatPending = false;
+                insert(task, now + (System.nanoTime() - passStart) / 1000000 + task.periodMs);
+            }
+        }
+        dueTasks.clear();
+    }
+    
+    /**
+     * Keep the pass in deadline order; a slot lists its tasks newest first,
+     * and few tasks are due at once, so an insertion from the end is enough
+     */
+    private void addDue(Task task) {
+        int index = dueTasks.size();
+        while (index > 0 && dueTasks.get(index - 1).deadline > task.deadline) {
+            index--;
+        }
+        dueTasks.add(index, task);
+    }
+    
+    private void scheduleWakeup() {
+        long wakeAt = Long.MAX_VALUE;
+        for (int slot = 0; slot < WHEEL_SIZE; slot++) {
+            wakeAt = Math.min(wakeAt, slotWakeAt[slot]);
+        }
+        if (wakeAt == nextWakeAt) {
+            return;
+        }
+        handler.removeCallbacks(wakeRunnable);
+        nextWakeAt = wakeAt;
+        if (wakeAt != Long.MAX_VALUE) {
+            handler.postAtTime(wakeRunnable, wakeAt);
+        }
+    }
+}
@@ -0,0 +1,220 @@
+package com.example.androidcardashboard;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
+
+import java.util.concurrent.Executor;
+
+/**
+ * Detects stalls of the main thread. A watchdog thread posts a heartbeat to
+ * the main Looper and measures how long it takes to run; when it hasn't run
+ * after the threshold, the main thread's stack is sampled and logged with
+ * the message being handled, and the stall's duration is logged when the
+ * heartbeat finally runs.
+ *
+ * Stalls are counted in main.stalls, their durations go to the main.stall
+ * histogram and all heartbeat turnarounds to main.heartbeat. While inactive,
+ * e.g. when parked, the watchdog thread waits without a timeout and so
+ * causes no wakeups.
+ */
+public class MainThreadWatchdog {
+    private static final String TAG = "MainThreadWatchdog";
+    
+    public static final long DEFAULT_THRESHOLD_MS = 2000;
+    private static final long DEFAULT_HEARTBEAT_MS = 1000;
+    private static final int STACK_FRAMES = 12;
+    private static final int MAX_STACK_CHARS = 400;
+    
+    private final Thread watched;
+    private final Executor poster;
+    private final long thresholdNs;
+    private final long heartbeatNs;
+    
+    private final Object lock = new Object();
+    private boolean active = false; // Guarded by lock
+    private volatile boolean running = false;
+    private Thread thread;
+    
+    // Heartbeat token, posted again only after it ran
+    private volatile long answeredAt;
+    private volatile long answeredCount = 0;
+    private final Runnable heartbeat = new Runnable() {
+        @Override
+        public void run() {
+            answeredAt = System.nanoTime();
+            answeredCount++;
+        }
+    };
+    
+    private final Metrics.Counter stalls = Metrics.getInstance().counter("main.stalls");
+    private final Metrics.Histogram stallTime = Metrics.getInstance().histogram("main.stall");
+    private final Metrics.Histogram turnaround = Metrics.getInstance().histogram("main.heartbeat");
+    private volatile String lastStall;
+    
+    /**
+     * Watch the main Looper
+     */
+    public MainThreadWatchdog(long thresholdMs) {
+        this(Looper.getMainLooper().getThread(), handlerExecutor(new Handler(Looper.getMainLooper())),
+            thresholdMs, Math.min(DEFAULT_HEARTBEAT_MS, thresholdMs));
+    }
+    
+    /**
+     * Watch a thread that runs what is posted to poster
+     */
+    MainThreadWatchdog(Thread watched, Executor poster, long thresholdMs, long heartbeatMs) {
+        this.watched = watched;
+        this.poster = poster;
+        this.thresholdNs = thresholdMs * 1000000;
+        this.heartbeatNs = heartbeatMs * 1000000;
+    }
+    
+    private static Executor handlerExecutor(final Handler handler) {
+        return new Executor() {
+            @Override
+            public void execute(Runnable command) {
+                handler.post(command);
+            }
+        };
+    }
+    
+    public synchronized void start() {
+        if (running) {
+            return;
+        }
+        running = true;
+        thread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                watch();
+            }
+        }, "Watchdog");
+        thread.setPriority(Thread.MIN_PRIORITY);
+        thread.setDaemon(true);
+        thread.start();
+    }
+    
+    public synchronized void stop() {
+        running = false;
+        if (thread != null) {
+            thread.interrupt();
+            thread = null;
+        }
+    }
+    
+    /**
+     * Send heartbeats only while active; an inactive watchdog doesn't wake up
+     */
+    public void setActive(boolean active) {
+        synchronized (lock) {
+            this.active = active;
+            lock.notifyAll();
+        }
+    }
+    
+    public long getStallCount() {
+        return stalls.get();
+    }
+    
+    /**
+     * Where the last stall was caught, null without stalls
+     */
+    public String getLastStall() {
+        return lastStall;
+    }
+    
+    private void watch() {
+        try {
+            while (running) {
+                synchronized (lock) {
+                    while (running && !active) {
+                        lock.wait();
+                    }
+                }
+                long expected = answeredCount + 1;
+                long sentAt = System.nanoTime();
+                poster.execute(heartbeat);
+                
+                // Wait for the heartbeat, sampling the stack once it is overdue
+                boolean reported = false;
+                Thread.sleep(heartbeatNs / 1000000);
+                while (running && answeredCount < expected) {
+                    if (!reported && System.nanoTime() - sentAt >= thresholdNs) {
+                        reportStall(System.nanoTime() - sentAt);
+                        reported = true;
+                    }
+                    Thread.sleep(heartbeatNs / 1000000);
+                }
+                if (answeredCount < expected) {
+                    break;
+                }
+                long durationNs = answeredAt - sentAt;
+                turnaround.recordNanos(durationNs);
+                if (reported) {
+                    stallTime.recordNanos(durationNs);
+                    logEvent("Main thread recovered after %d ms", durationNs / 1000000, EventManager.LEVEL_INFO);
+                }
+            }
+        } catch (InterruptedException e) {
+            // Stopped
+        }
+    }
+    
+    private void reportStall(long elapsedNs) {
+        StackTraceElement[] stack = watched.getStackTrace();
+        String message = describeMessage(stack);
+        String frames = describeStack(stack);
+        lastStall = message + " | " + frames;
+        stalls.increment();
+        Log.w(TAG, "Main thread stalled for " + elapsedNs / 1000000 + " ms in " + lastStall);
+        // The template stays constant, the stack is stored as text without interning
+        logEvent("Main thread stalled %d ms", elapsedNs / 1000000, EventManager.LEVEL_WARNING);
+        EventManager.getInstance().addAppText("Stalled in " + lastStall, EventManager.LEVEL_WARNING);
+    }
+    
+    private static void logEvent(String template, long arg, int level) {
+        EventManager.getInstance().addAppEvent(template, arg, level);
+    }
+    
+    /**
+     * The Runnable or Handler the Looper is dispatching to: the frame called
+     * by Handler.dispatchMessage
+     */
+    static String describeMessage(StackTraceElement[] stack) {
+        for (int i = stack.length - 1; i > 0; i--) {
+            StackTraceElement frame = stack[i];
+            if (frame.getClassName().equals("android.os.Handler") && frame.getMethodName().equals("dispatchMessage")) {
+                StackTraceElement callee = stack[i - 1];
+                if (callee.getClassName().equals("android.os.Handler") && i > 1) {
+                    // handleCallback, the Runnable is one further up
+                    callee = stack[i - 2];
+                }
+                return shortName(callee);
+            }
+        }
+        return "unknown message";
+    }
+    
+    /**
+     * Innermost frames, newest first
+     */
+    static String describeStack(StackTraceElement[] stack) {
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; i < Math.min(stack.length, STACK_FRAMES) && text.length() < MAX_STACK_CHARS; i++) {
+            if (i > 0) {
+                text.append(" < ");
+            }
+            text.append(shortName(stack[i]));
+            if (stack[i].getLineNumber() > 0) {
+                text.append(':').append(stack[i].getLineNumber());
+            }
+        }
+        return text.length() > MAX_STACK_CHARS ? text.substring(0, MAX_STACK_CHARS) : text.toString();
+    }
+    
+    private static String shortName(StackTraceElement frame) {
+        String className = frame.getClassName();
+        return className.substring(className.lastIndexOf('.') + 1) + "." + frame.getMethodName();
+    }
+}
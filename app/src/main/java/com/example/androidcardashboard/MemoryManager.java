@@ -0,0 +1,280 @@
+package com.example.androidcardashboard;
+
+import android.content.ComponentCallbacks2;
+import android.util.Log;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Sheds caches under memory pressure, in priority order: bitmap layers
+ * first, as they are the largest and redrawn in one frame, then fonts no
+ * theme uses, then the oldest part of history rings.
+ *
+ * Pressure comes from onTrimMemory() and onLowMemory(), and from check(),
+ * which runs periodically and sheds on its own when the heap headroom
+ * gets low. check() also keeps the heap.headroomKb and gc.perMinute gauges
+ * up to date. Collections are counted by a finalizer chain, see
+ * watchGarbageCollections(). Caches are registered and shed on the main
+ * thread.
+ */
+public class MemoryManager {
+    private static final String TAG = "MemoryManager";
+    
+    public static final int PRIORITY_BITMAPS = 0;
+    public static final int PRIORITY_FONTS = 1;
+    public static final int PRIORITY_HISTORY = 2;
+    private static final String[] PRIORITY_NAMES = {"bitmaps", "fonts", "history"};
+    
+    public static final long CHECK_INTERVAL_MS = 10000;
+    // Headroom, as a fraction of the heap limit, below which check() sheds
+    static final double LOW_HEADROOM = 0.15;
+    static final double CRITICAL_HEADROOM = 0.05;
+    
+    private static final AtomicLong gcCount = new AtomicLong();
+    private static boolean watchingGc = false;
+    
+    /**
+     * Something that can give memory back and rebuild it later
+     */
+    public interface Cache {
+        /**
+         * Release what can be rebuilt
+         * @return estimated bytes freed, 0 when unknown
+         */
+        long trimCache();
+        
+        /**
+         * @return estimated bytes held, -1 when unknown
+         */
+        long getCacheBytes();
+    }
+    
+    private static final class Entry {
+        final String name;
+        final int priority;
+        final Cache cache;
+        long trims = 0;
+        long freedBytes = 0;
+        
+        Entry(String name, int priority, Cache cache) {
+            this.name = name;
+            this.priority = priority;
+            this.cache = cache;
+        }
+    }
+    
+    private final List<Entry> caches = new ArrayList<>();
+    
+    // Pressure, last heap sample and the sheds so far
+    private int shedPriority = -1; // Highest priority check() shed since headroom was last fine
+    private long lastCheckAt = -1;
+    private long lastGcCount = 0;
+    private long usedBytes = 0;
+    private long maxBytes = 0;
+    private double gcsPerMinute = 0;
+    private long sheds = 0;
+    private long freedBytes = 0;
+    private String lastShedReason;
+    
+    private final Metrics.Counter shedCount = Metrics.getInstance().counter("memory.sheds");
+    private final Metrics.Gauge gcRate = Metrics.getInstance().gauge("gc.perMinute");
+    
+    /**
+     * Unreachable as soon as it is made; its finalizer runs after the next
+     * collection and makes the following sentinel. The chain keeps going once
+     * started, at the cost of one tiny object per collection.
+     */
+    private static final class GcSentinel {
+        @Override
+        protected void finalize() throws Throwable {
+            gcCount.incrementAndGet();
+            new GcSentinel();
+            super.finalize();
+        }
+    }
+    
+    public MemoryManager() {
+        final Runtime runtime = Runtime.getRuntime();
+        Metrics.getInstance().gauge("heap.headroomKb", new Metrics.GaugeSource() {
+            @Override
+            public long read() {
+                return (runtime.maxMemory() - runtime.totalMemory() + runtime.freeMemory()) / 1024;
+            }
+        });
+        Metrics.getInstance().gauge("gc.count", new Metrics.GaugeSource() {
+            @Override
+            public long read() {
+                return gcCount.get();
+            }
+        });
+        watchGarbageCollections();
+    }
+    
+    /**
+     * Start counting collections, once per process
+     */
+    public static synchronized void watchGarbageCollections() {
+        if (!watchingGc) {
+            watchingGc = true;
+            new GcSentinel();
+        }
+    }
+    
+    /**
+     * Collections since watchGarbageCollections()
+     */
+    public static long getGcCount() {
+        return gcCount.get();
+    }
+    
+    /**
+     * @param priority PRIORITY_BITMAPS, PRIORITY_FONTS or PRIORITY_HISTORY
+     */
+    public void register(String name, int priority, Cache cache) {
+        caches.add(new Entry(name, priority, cache));
+    }
+    
+    /**
+     * From ComponentCallbacks2.onTrimMemory()
+     */
+    public void onTrimMemory(int level) {
+        shed(priorityForTrimLevel(level), "trim level " + level);
+    }
+    
+    public void onLowMemory() {
+        shed(PRIORITY_HISTORY, "low memory");
+    }
+    
+    /**
+     * How far to shed for a trim level: hidden or lightly pressed only drops
+     * bitmaps, running low or moderate in the background also fonts, and
+     * critical or about to be killed everything
+     */
+    static int priorityForTrimLevel(int level) {
+        if (level >= ComponentCallbacks2.TRIM_MEMORY_COMPLETE
+                || level == ComponentCallbacks2.TRIM_MEMORY_RUNNING_CRITICAL) {
+            return PRIORITY_HISTORY;
+        }
+        if (level >= ComponentCallbacks2.TRIM_MEMORY_MODERATE
+                || level == ComponentCallbacks2.TRIM_MEMORY_RUNNING_LOW) {
+            return PRIORITY_FONTS;
+        }
+        return PRIORITY_BITMAPS;
+    }
+    
+    /**
+     * Sample the heap and collections, shedding when headroom is low
+     */
+    public void check() {
+        Runtime runtime = Runtime.getRuntime();
+        check(System.nanoTime() / 1000000, runtime.totalMemory() - runtime.freeMemory(), runtime.maxMemory(),
+            gcCount.get());
+    }
+    
+    void check(long nowMs, long usedBytes, long maxBytes, long gcs) {
+        if (lastCheckAt >= 0 && nowMs > lastCheckAt) {
+            gcsPerMinute = (gcs - lastGcCount) * 60000.0 / (nowMs - lastCheckAt);
+            gcRate.set(Math.round(gcsPerMinute));
+        }
+        lastCheckAt = nowMs;
+        lastGcCount = gcs;
+        this.usedBytes = usedBytes;
+        this.maxBytes = maxBytes;
+        
+        long headroom = maxBytes - usedBytes;
+        int priority;
+        if (headroom < maxBytes * CRITICAL_HEADROOM) {
+            priority = PRIORITY_HISTORY;
+        } else if (headroom < maxBytes * LOW_HEADROOM) {
+            priority = PRIORITY_FONTS;
+        } else {
+            shedPriority = -1;
+            return;
+        }
+        // Shed again only when pressure got worse, the caches are gone already
+        if (priority > shedPriority) {
+            shedPriority = priority;
+            Log.w(TAG, "Heap headroom down to " + headroom / 1024 + " of " + maxBytes / 1024 + " KB");
+            shed(priority, priority == PRIORITY_HISTORY ? "critical headroom" : "low headroom");
+        }
+    }
+    
+    /**
+     * Trim every cache up to and including the given priority. The reason
+     * goes into the event template, so it comes from a small fixed set.
+     */
+    private void shed(int upToPriority, String reason) {
+        long freed = 0;
+        for (int priority = PRIORITY_BITMAPS; priority <= upToPriority; priority++) {
+            for (Entry entry : caches) {
+                if (entry.priority == priority) {
+                    long bytes = entry.cache.trimCache();
+                    entry.trims++;
+                    entry.freedBytes += bytes;
+                    freed += bytes;
+                }
+            }
+        }
+        sheds++;
+        freedBytes += freed;
+        lastShedReason = reason;
+        shedCount.increment();
+        Log.i(TAG, "Shed " + PRIORITY_NAMES[upToPriority] + " and below (" + reason + "), " + freed / 1024 + " KB");
+        EventManager.getInstance().addAppEvent("Memory pressure, " + PRIORITY_NAMES[upToPriority]
+            + " and below shed (" + reason + "), %d KB freed", freed / 1024, EventManager.LEVEL_WARNING);
+    }
+    
+    public long getShedCount() {
+        return sheds;
+    }
+    
+    public long getFreedBytes() {
+        return freedBytes;
+    }
+    
+    public double getGcsPerMinute() {
+        return gcsPerMinute;
+    }
+    
+    /**
+     * Heap left before the limit at the last check
+     */
+    public long getHeadroomBytes() {
+        return maxBytes - usedBytes;
+    }
+    
+    public void writeJson(JsonWriter json) {
+        json.beginObject();
+        json.name("heap").beginInlineObject()
+            .name("usedKb").value(usedBytes / 1024)
+            .name("maxKb").value(maxBytes / 1024)
+            .name("headroomKb").value(getHeadroomBytes() / 1024)
+            .endObject();
+        json.name("gc").beginInlineObject()
+            .name("count").value(lastGcCount)
+            .name("perMinute").value(gcsPerMinute, 1)
+            .endObject();
+        json.name("sheds").value(sheds);
+        json.name("freedKb").value(freedBytes / 1024);
+        json.name("lastShed").value(lastShedReason);
+        json.name("caches").beginObject();
+        for (Entry entry : caches) {
+            long bytes = entry.cache.getCacheBytes();
+            json.name(entry.name).beginInlineObject()
+                .name("priority").value(PRIORITY_NAMES[entry.priority])
+                .name("sizeKb");
+            if (bytes >= 0) {
+                json.value(bytes / 1024);
+            } else {
+                json.nullValue();
+            }
+            json.name("trims").value(entry.trims)
+                .name("freedKb").value(entry.freedBytes / 1024)
+                .endObject();
+        }
+        json.endObject();
+        json.endObject();
+    }
+}
@@ -0,0 +1,351 @@
+package com.example.androidcardashboard;
+
+import android.util.Log;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * In-process metrics: counters, gauges and fixed-bucket histograms.
+ *
+ * Metrics are registered once, in a constructor or field initializer, and
+ * recording never allocates or locks. Counters are striped over a few cells
+ * a cache line apart, picked by thread id, so the TCP thread and the main
+ * thread don't contend on one line. Histograms count durations in
+ * microseconds in fixed exponential buckets. snapshot() copies every metric
+ * into a reusable Snapshot for the diagnostics and the periodic dump file.
+ */
+public class Metrics {
+    private static final String TAG = "Metrics";
+    
+    public static final int MAX_METRICS = 64;
+    public static final int TYPE_COUNTER = 0;
+    public static final int TYPE_GAUGE = 1;
+    public static final int TYPE_HISTOGRAM = 2;
+    
+    private static final int STRIPES = 4; // Power of two
+    private static final int CELL_SPACING = 8; // Longs per 64-byte cache line
+    // Bucket upper bounds in microseconds, the last bucket counts everything above
+    private static final long[] BUCKET_BOUNDS_US = {
+        10, 20, 50, 100, 200, 500, 1000, 2000, 5000, 10000, 20000, 50000, 100000, 200000, 500000, 1000000
+    };
+    public static final int BUCKETS = BUCKET_BOUNDS_US.length + 1;
+    
+    private static Metrics instance;
+    
+    private final Metric[] metrics = new Metric[MAX_METRICS];
+    private volatile int count = 0;
+    
+    private ScheduledExecutorService dumper;
+    
+    public abstract static class Metric {
+        private final String name;
+        private final int type;
+        
+        Metric(String name, int type) {
+            this.name = name;
+            this.type = type;
+        }
+        
+        public String getName() {
+            return name;
+        }
+    }
+    
+    public static final class Counter extends Metric {
+        private final AtomicLongArray cells = new AtomicLongArray(STRIPES * CELL_SPACING);
+        
+        Counter(String name) {
+            super(name, TYPE_COUNTER);
+        }
+        
+        public void increment() {
+            add(1);
+        }
+        
+        public void add(long delta) {
+            int stripe = (int) (Thread.currentThread().getId() & (STRIPES - 1));
+            cells.getAndAdd(stripe * CELL_SPACING, delta);
+        }
+        
+        public long get() {
+            long sum = 0;
+            for (int i = 0; i < STRIPES; i++) {
+                sum += cells.get(i * CELL_SPACING);
+            }
+            return sum;
+        }
+    }
+    
+    /**
+     * Value read when a snapshot is taken, must be safe on any thread
+     */
+    public interface GaugeSource {
+        long read();
+    }
+    
+    public static final class Gauge extends Metric {
+        private final AtomicLong value = new AtomicLong();
+        private final GaugeSource source;
+        
+        Gauge(String name, GaugeSource source) {
+            super(name, TYPE_GAUGE);
+            this.source = source;
+        }
+        
+        public void set(long newValue) {
+            value.set(newValue);
+        }
+        
+        public long get() {
+            return source != null ? source.read() : value.get();
+        }
+    }
+    
+    public static final class Histogram extends Metric {
+        private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+        private final AtomicLong sumUs = new AtomicLong();
+        private final AtomicLong maxUs = new AtomicLong();
+        
+        Histogram(String name) {
+            super(name, TYPE_HISTOGRAM);
+        }
+        
+        public void recordNanos(long durationNs) {
+            record(durationNs / 1000);
+        }
+        
+        public void record(long valueUs) {
+            int bucket = 0;
+            while (bucket < BUCKET_BOUNDS_US.length && valueUs > BUCKET_BOUNDS_US[bucket]) {
+                bucket++;
+            }
+            counts.incrementAndGet(bucket);
+            sumUs.addAndGet(valueUs);
+            long max = maxUs.get();
+            while (valueUs > max && !maxUs.compareAndSet(max, valueUs)) {
+                max = maxUs.get();
+            }
+        }
+        
+        public long getCount() {
+            long total = 0;
+            for (int i = 0; i < BUCKETS; i++) {
+                total += counts.get(i);
+            }
+            return total;
+        }
+    }
+    
+    /**
+     * Copy of all metrics at one time, reused between snapshots
+     */
+    public static final class Snapshot {
+        public long timestampMs;
+        public int count;
+        public final String[] names = new String[MAX_METRICS];
+        public final int[] types = new int[MAX_METRICS];
+        // Counter or gauge value, number of histogram samples
+        public final long[] values = new long[MAX_METRICS];
+        public final long[] sumsUs = new long[MAX_METRICS];
+        public final long[] maxesUs = new long[MAX_METRICS];
+        public final long[][] buckets = new long[MAX_METRICS][BUCKETS];
+        
+        /**
+         * Upper bound of the bucket that holds a fraction of a histogram's samples
+         */
+        public long getPercentileUs(int index, double fraction) {
+            long rank = (long) Math.ceil(values[index] * fraction);
+            long seen = 0;
+            for (int b = 0; b < BUCKET_BOUNDS_US.length; b++) {
+                seen += buckets[index][b];
+                if (seen >= rank && seen > 0) {
+                    return Math.min(BUCKET_BOUNDS_US[b], maxesUs[index]);
+                }
+            }
+            return maxesUs[index];
+        }
+        
+        public long getAverageUs(int index) {
+            return values[index] == 0 ? 0 : sumsUs[index] / values[index];
+        }
+        
+        /**
+         * Write the metrics as one JSON object, histograms as count, average,
+         * percentiles and max in microseconds
+         */
+        public void writeJson(JsonWriter json) {
+            json.beginObject();
+            for (int i = 0; i < count; i++) {
+                json.name(names[i]);
+                if (types[i] == TYPE_HISTOGRAM) {
+                    json.beginInlineObject()
+                        .name("count").value(values[i])
+                        .name("avgUs").value(getAverageUs(i))
+                        .name("p50Us").value(getPercentileUs(i, 0.5))
+                        .name("p95Us").value(getPercentileUs(i, 0.95))
+                        .name("p99Us").value(getPercentileUs(i, 0.99))
+                        .name("maxUs").value(maxesUs[i])
+                        .endObject();
+                } else {
+                    json.value(values[i]);
+                }
+            }
+            json.endObject();
+        }
+    }
+    
+    private Metrics() {
+        final Runtime runtime = Runtime.getRuntime();
+        gauge("heap.usedKb", new GaugeSource() {
+            @Override
+            public long read() {
+                return (runtime.totalMemory() - runtime.freeMemory()) / 1024;
+            }
+        });
+        gauge("heap.maxKb", new GaugeSource() {
+            @Override
+            public long read() {
+                return runtime.maxMemory() / 1024;
+            }
+        });
+    }
+    
+    public static synchronized Metrics getInstance() {
+        if (instance == null) {
+            instance = new Metrics();
+        }
+        return instance;
+    }
+    
+    public Counter counter(String name) {
+        return (Counter) register(name, TYPE_COUNTER, null);
+    }
+    
+    public Gauge gauge(String name) {
+        return (Gauge) register(name, TYPE_GAUGE, null);
+    }
+    
+    public Gauge gauge(String name, GaugeSource source) {
+        return (Gauge) register(name, TYPE_GAUGE, source);
+    }
+    
+    /**
+     * Durations in microseconds. All instances of a view share one histogram.
+     */
+    public Histogram histogram(String name) {
+        return (Histogram) register(name, TYPE_HISTOGRAM, null);
+    }
+    
+    private synchronized Metric register(String name, int type, GaugeSource source) {
+        for (int i = 0; i < count; i++) {
+            if (metrics[i].name.equals(name)) {
+                if (metrics[i].type != type) {
+                    throw new IllegalArgumentException(name + " is already registered as another type");
+                }
+                return metrics[i];
+            }
+        }
+        Metric metric = type == TYPE_COUNTER ? new Counter(name)
+            : type == TYPE_GAUGE ? new Gauge(name, source) : new Histogram(name);
+        if (count == MAX_METRICS) {
+            // Still records, but is left out of snapshots
+            Log.w(TAG, "Too many metrics, not reporting " + name);
+            return metric;
+        }
+        metrics[count] = metric;
+        count++;
+        return metric;
+    }
+    
+    /**
+     * Copy all metrics. Safe on any thread; each value is read atomically,
+     * but the metrics are not frozen against each other.
+     */
+    public void snapshot(Snapshot out) {
+        int registered = count;
+        out.timestampMs = System.currentTimeMillis();
+        out.count = registered;
+        for (int i = 0; i < registered; i++) {
+            Metric metric = metrics[i];
+            out.names[i] = metric.name;
+            out.types[i] = metric.type;
+            if (metric instanceof Counter) {
+                out.values[i] = ((Counter) metric).get();
+            } else if (metric instanceof Gauge) {
+                out.values[i] = ((Gauge) metric).get();
+            } else {
+                Histogram histogram = (Histogram) metric;
+                long total = 0;
+                for (int b = 0; b < BUCKETS; b++) {
+                    out.buckets[i][b] = histogram.counts.get(b);
+                    total += out.buckets[i][b];
+                }
+                out.values[i] = total;
+                out.sumsUs[i] = histogram.sumUs.get();
+                out.maxesUs[i] = histogram.maxUs.get();
+            }
+        }
+    }
+    
+    /**
+     * Write a snapshot to a JSON file every periodMs on a background thread.
+     * The file is replaced by rename, so a reader never sees half of it.
+     */
+    public synchronized void startDump(final File file, long periodMs) {
+        stopDump();
+        dumper = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, "MetricsDump");
+                thread.setPriority(Thread.MIN_PRIORITY);
+                return thread;
+            }
+        });
+        dumper.scheduleWithFixedDelay(new Runnable() {
+            private final Snapshot snapshot = new Snapshot();
+            private final JsonWriter json = new JsonWriter(true);
+            
+            @Override
+            public void run() {
+                snapshot(snapshot);
+                json.reset().beginObject().name("timestamp").value(snapshot.timestampMs).name("metrics");
+                snapshot.writeJson(json);
+                json.endObject();
+                try {
+                    writeDump(file, json.toString() + "\n");
+                } catch (IOException e) {
+                    Log.w(TAG, "Failed to write " + file, e);
+                }
+            }
+        }, periodMs, periodMs, TimeUnit.MILLISECONDS);
+    }
+    
+    public synchronized void stopDump() {
+        if (dumper != null) {
+            dumper.shutdown();
+            dumper = null;
+        }
+    }
+    
+    static void writeDump(File file, CharSequence json) throws IOException {
+        File temp = new File(file.getPath() + ".tmp");
+        FileOutputStream out = new FileOutputStream(temp);
+        try {
+            out.write(json.toString().getBytes("UTF-8"));
+            out.getFD().sync();
+        } finally {
+            out.close();
+        }
+        if (!temp.renameTo(file)) {
+            throw new IOException("Failed to replace " + file);
+        }
+    }
+}
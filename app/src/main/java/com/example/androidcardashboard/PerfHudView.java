@@ -0,0 +1,179 @@
+package com.example.androidcardashboard;
+
+import android.content.Context;
+import android.graphics.Canvas;
+import android.graphics.Color;
+import android.graphics.Paint;
+import android.graphics.Typeface;
+import android.util.TypedValue;
+import android.view.Choreographer;
+import android.view.View;
+import android.view.ViewTreeObserver;
+import android.view.WindowManager;
+
+/**
+ * Overlay with the frame rate, worst frame, ingest rate, socket-to-screen
+ * latency, dropped and coalesced frames, heap and GCs of the last seconds.
+ *
+ * Frames come from a Choreographer callback and draws from the window's
+ * draw listener, both only registered while the overlay shows. The text is
+ * formatted by PerfStats into char buffers once per second, and this view
+ * only invalidates then, so it adds one small draw per second.
+ *
+ * While it shows, allocation counting is on: the scopes of the views and
+ * the decoder fill in, and so does "frame", the main thread's allocations
+ * from one vsync to the next.
+ */
+public class PerfHudView extends View implements Choreographer.FrameCallback, ViewTreeObserver.OnDrawListener {
+    private static final int LINE_TEMPLATE_CHARS = 30;
+    
+    private final float refreshRate;
+    private PerfStats stats;
+    private final Paint backgroundPaint;
+    private final Paint textPaint;
+    private final float padding;
+    private final float lineHeight;
+    
+    private TcpService tcpService;
+    private boolean showing = false;
+    private boolean running = false;
+    private boolean windowVisible = false;
+    private ViewTreeObserver observer;
+    private final AllocationTracker.Scope frameAllocations =
+        AllocationTracker.scope("frame", AllocationTracker.NO_BUDGET);
+    private long frameAllocationMark = -1;
+    
+    public PerfHudView(Context context) {
+        super(context);
+        WindowManager windowManager = (WindowManager) context.getSystemService(Context.WINDOW_SERVICE);
+        refreshRate = windowManager.getDefaultDisplay().getRefreshRate();
+        stats = new PerfStats(refreshRate);
+        
+        backgroundPaint = new Paint();
+        backgroundPaint.setColor(Color.argb(180, 0, 0, 0));
+        backgroundPaint.setStyle(Paint.Style.FILL);
+        
+        textPaint = new Paint(Paint.ANTI_ALIAS_FLAG);
+        textPaint.setColor(Color.rgb(120, 255, 120));
+        textPaint.setTypeface(Typeface.MONOSPACE);
+        textPaint.setTextSize(TypedValue.applyDimension(TypedValue.COMPLEX_UNIT_SP, 12,
+            context.getResources().getDisplayMetrics()));
+        padding = textPaint.getTextSize() / 2;
+        lineHeight = textPaint.getFontSpacing();
+        
+        setVisibility(GONE);
+    }
+    
+    /**
+     * Service the ingest rate and coalesced frames are read from, may be null
+     */
+    public void setTcpService(TcpService tcpService) {
+        this.tcpService = tcpService;
+    }
+    
+    public boolean isShowing() {
+        return showing;
+    }
+    
+    public void setShowing(boolean showing) {
+        this.showing = showing;
+        setVisibility(showing ? VISIBLE : GONE);
+        updateRunning();
+    }
+    
+    /**
+     * A telemetry frame was handed to the UI, read from the socket at readNs
+     */
+    public void onFrameDispatched(long readNs) {
+        if (running && readNs != 0) {
+            stats.onFrameDispatched(readNs);
+        }
+    }
+    
+    @Override
+    protected void onAttachedToWindow() {
+        super.onAttachedToWindow();
+        windowVisible = getWindowVisibility() == VISIBLE;
+        updateRunning();
+    }
+    
+    @Override
+    protected void onDetachedFromWindow() {
+        windowVisible = false;
+        updateRunning();
+        super.onDetachedFromWindow();
+    }
+    
+    @Override
+    protected void onWindowVisibilityChanged(int visibility) {
+        super.onWindowVisibilityChanged(visibility);
+        windowVisible = visibility == VISIBLE;
+        updateRunning();
+    }
+    
+    private void updateRunning() {
+        boolean run = showing && windowVisible;
+        if (run == running) {
+            return;
+        }
+        running = run;
+        if (run) {
+            // Start over, numbers from before the pause would span the gap
+            stats = new PerfStats(refreshRate);
+            observer = getViewTreeObserver();
+            observer.addOnDrawListener(this);
+            Choreographer.getInstance().postFrameCallback(this);
+            AllocationTracker.setEnabled(true);
+            frameAllocationMark = -1;
+            MemoryManager.watchGarbageCollections();
+        } else {
+            if (observer != null && observer.isAlive()) {
+                observer.removeOnDrawListener(this);
+            }
+            observer = null;
+            Choreographer.getInstance().removeFrameCallback(this);
+            AllocationTracker.setEnabled(false);
+        }
+    }
+    
+    @Override
+    public void doFrame(long frameTimeNanos) {
+        if (!running) {
+            return;
+        }
+        frameAllocations.end(frameAllocationMark);
+        stats.onVsync(frameTimeNanos);
+        Runtime runtime = Runtime.getRuntime();
+        long ingested = tcpService != null ? tcpService.getIngestedFrameCount() : 0;
+        long coalesced = tcpService != null ? tcpService.getCoalescedFrameCount() : 0;
+        if (stats.update(System.nanoTime(), ingested, coalesced, runtime.totalMemory() - runtime.freeMemory(),
+                runtime.maxMemory(), MemoryManager.getGcCount())) {
+            invalidate();
+        }
+        Choreographer.getInstance().postFrameCallback(this);
+        frameAllocationMark = frameAllocations.begin();
+    }
+    
+    @Override
+    public void onDraw() {
+        // ViewTreeObserver: the window is about to draw
+        stats.onDraw(System.nanoTime());
+    }
+    
+    @Override
+    protected void onMeasure(int widthMeasureSpec, int heightMeasureSpec) {
+        int width = (int) (textPaint.measureText("0") * LINE_TEMPLATE_CHARS + padding * 2);
+        int height = (int) (lineHeight * stats.getLineCount() + padding * 2);
+        setMeasuredDimension(width, height);
+    }
+    
+    @Override
+    protected void onDraw(Canvas canvas) {
+        canvas.drawRect(0, 0, getWidth(), getHeight(), backgroundPaint);
+        float baseline = padding - textPaint.ascent();
+        for (int i = 0; i < stats.getLineCount(); i++) {
+            canvas.drawText(stats.getLine(i), 0, stats.getLineLength(i), padding, baseline, textPaint);
+            baseline += lineHeight;
+        }
+    }
+}
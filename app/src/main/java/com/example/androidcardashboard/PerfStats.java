@@ -0,0 +1,272 @@
+package com.example.androidcardashboard;
+
+import java.util.Arrays;
+
+/**
+ * Numbers of the performance HUD over the last WINDOW_SECONDS, kept in
+ * one-second slots and formatted into preallocated char lines once per
+ * second. Nothing here allocates after construction, so measuring doesn't
+ * add garbage collections of its own.
+ *
+ * Totals such as draws or ingested frames are kept as running counts; each
+ * closed second stores them, and the window value is the difference to the
+ * second WINDOW_SECONDS ago.
+ */
+public class PerfStats {
+    public static final int WINDOW_SECONDS = 10;
+    private static final long SECOND_NS = 1000000000L;
+    private static final int LATENCY_SAMPLES = 512; // Power of two
+    private static final int LINE_CHARS = 48;
+    
+    private final long vsyncNs;
+    
+    // Running counts
+    private long draws = 0;
+    private long droppedFrames = 0;
+    
+    // Counts at the end of each closed second, indexed by second % (WINDOW_SECONDS + 1)
+    private final long[] drawsAt = new long[WINDOW_SECONDS + 1];
+    private final long[] droppedAt = new long[WINDOW_SECONDS + 1];
+    private final long[] ingestAt = new long[WINDOW_SECONDS + 1];
+    private final long[] coalescedAt = new long[WINDOW_SECONDS + 1];
+    private final long[] gcAt = new long[WINDOW_SECONDS + 1];
+    private final long[] worstFrameNs = new long[WINDOW_SECONDS + 1];
+    private long seconds = 0; // Closed seconds
+    private long secondStartNs = -1;
+    
+    private long lastVsyncNs = 0;
+    private long pendingReadNs = 0;
+    private final long[] latencyNs = new long[LATENCY_SAMPLES];
+    private final long[] latencyAtNs = new long[LATENCY_SAMPLES];
+    private final long[] latencyScratch = new long[LATENCY_SAMPLES];
+    private long latencyCount = 0;
+    
+    // Window values, updated when a second closes
+    private int fps;
+    private long worstFrameMs;
+    private int ingestPerSecond;
+    private long latencyP99Ms = -1;
+    private long windowDropped;
+    private long windowCoalesced;
+    private long windowGcs;
+    
+    private final char[][] lines = new char[4][LINE_CHARS];
+    private final int[] lineLengths = new int[4];
+    private int lineLength;
+    
+    public PerfStats(float refreshRateHz) {
+        vsyncNs = (long) (SECOND_NS / Math.max(1f, refreshRateHz));
+    }
+    
+    /**
+     * A Choreographer frame. The gap to the previous one is the frame time,
+     * each vsync missed in it is a dropped frame.
+     */
+    public void onVsync(long frameTimeNs) {
+        if (lastVsyncNs != 0) {
+            long intervalNs = frameTimeNs - lastVsyncNs;
+            int slot = (int) (seconds % (WINDOW_SECONDS + 1));
+            worstFrameNs[slot] = Math.max(worstFrameNs[slot], intervalNs);
+            droppedFrames += Math.max(0, (intervalNs + vsyncNs / 2) / vsyncNs - 1);
+        }
+        lastVsyncNs = frameTimeNs;
+    }
+    
+    /**
+     * A telemetry frame reached the UI, read from the socket at readNs. Of
+     * several dispatches before a draw only the last one is on screen.
+     */
+    public void onFrameDispatched(long readNs) {
+        pendingReadNs = readNs;
+    }
+    
+    /**
+     * A draw pass of the window, which shows any dispatched frame
+     */
+    public void onDraw(long nowNs) {
+        draws++;
+        if (pendingReadNs != 0) {
+            int slot = (int) (latencyCount & (LATENCY_SAMPLES - 1));
+            latencyNs[slot] = nowNs - pendingReadNs;
+            latencyAtNs[slot] = nowNs;
+            latencyCount++;
+            pendingReadNs = 0;
+        }
+    }
+    
+    /**
+     * Close the second if it is over and reformat the lines
+     * @return true when the lines changed
+     */
+    public boolean update(long nowNs, long ingestFrames, long coalescedFrames, long heapUsedBytes, long heapMaxBytes,
+                          long gcCount) {
+        if (secondStartNs < 0) {
+            secondStartNs = nowNs;
+            storeSecond(seconds, ingestFrames, coalescedFrames, gcCount);
+            return false;
+        }
+        if (nowNs - secondStartNs < SECOND_NS) {
+            return false;
+        }
+        secondStartNs += SECOND_NS * ((nowNs - secondStartNs) / SECOND_NS);
+        seconds++;
+        storeSecond(seconds, ingestFrames, coalescedFrames, gcCount);
+        worstFrameNs[(int) (seconds % (WINDOW_SECONDS + 1))] = 0;
+        
+        int windowSeconds = (int) Math.min(seconds, WINDOW_SECONDS);
+        int now = (int) (seconds % (WINDOW_SECONDS + 1));
+        int start = (int) ((seconds - windowSeconds) % (WINDOW_SECONDS + 1));
+        fps = (int) ((drawsAt[now] - drawsAt[start]) / windowSeconds);
+        ingestPerSecond = (int) ((ingestAt[now] - ingestAt[start]) / windowSeconds);
+        windowDropped = droppedAt[now] - droppedAt[start];
+        windowCoalesced = coalescedAt[now] - coalescedAt[start];
+        windowGcs = gcAt[now] - gcAt[start];
+        long worst = 0;
+        for (int i = 0; i <= WINDOW_SECONDS; i++) {
+            if (i != now) {
+                worst = Math.max(worst, worstFrameNs[i]);
+            }
+        }
+        worstFrameMs = worst / 1000000;
+        latencyP99Ms = latencyPercentile(nowNs - windowSeconds * SECOND_NS, 0.99);
+        
+        formatLines(heapUsedBytes, heapMaxBytes);
+        return true;
+    }
+    
+    private void storeSecond(long second, long ingestFrames, long coalescedFrames, long gcCount) {
+        int slot = (int) (second % (WINDOW_SECONDS + 1));
+        drawsAt[slot] = draws;
+        droppedAt[slot] = droppedFrames;
+        ingestAt[slot] = ingestFrames;
+        coalescedAt[slot] = coalescedFrames;
+        gcAt[slot] = gcCount;
+    }
+    
+    /**
+     * @return latency in ms at a fraction of the samples since a time, -1 without samples
+     */
+    private long latencyPercentile(long sinceNs, double fraction) {
+        int count = 0;
+        long available = Math.min(latencyCount, LATENCY_SAMPLES);
+        for (long i = latencyCount - available; i < latencyCount; i++) {
+            int slot = (int) (i & (LATENCY_SAMPLES - 1));
+            if (latencyAtNs[slot] >= sinceNs) {
+                latencyScratch[count++] = latencyNs[slot];
+            }
+        }
+        if (count == 0) {
+            return -1;
+        }
+        Arrays.sort(latencyScratch, 0, count);
+        int index = (int) Math.min(count - 1, Math.ceil(count * fraction) - 1);
+        return latencyScratch[Math.max(0, index)] / 1000000;
+    }
+    
+    private void formatLines(long heapUsedBytes, long heapMaxBytes) {
+        startLine(0);
+        append("FPS ").append(fps).append("  worst ").append(worstFrameMs).append(" ms");
+        endLine(0);
+        startLine(1);
+        append("ingest ").append(ingestPerSecond).append("/s  p99 ");
+        if (latencyP99Ms < 0) {
+            append("--");
+        } else {
+            append(latencyP99Ms).append(" ms");
+        }
+        endLine(1);
+        startLine(2);
+        append("dropped ").append(windowDropped).append("  coalesced ").append(windowCoalesced);
+        endLine(2);
+        startLine(3);
+        append("heap ").append(heapUsedBytes >> 20).append("/").append(heapMaxBytes >> 20)
+            .append(" MB  GC ").append(windowGcs);
+        endLine(3);
+    }
+    
+    // Line formatting without String or StringBuilder
+    
+    private int currentLine;
+    
+    private void startLine(int line) {
+        currentLine = line;
+        lineLength = 0;
+    }
+    
+    private void endLine(int line) {
+        lineLengths[line] = lineLength;
+    }
+    
+    private PerfStats append(String text) {
+        int count = Math.min(text.length(), LINE_CHARS - lineLength);
+        text.getChars(0, count, lines[currentLine], lineLength);
+        lineLength += count;
+        return this;
+    }
+    
+    private PerfStats append(long value) {
+        char[] line = lines[currentLine];
+        if (value < 0) {
+            if (lineLength < LINE_CHARS) {
+                line[lineLength++] = '-';
+            }
+            value = -value;
+        }
+        int digits = 1;
+        for (long rest = value / 10; rest > 0; rest /= 10) {
+            digits++;
+        }
+        if (lineLength + digits > LINE_CHARS) {
+            return this;
+        }
+        for (int i = lineLength + digits - 1; i >= lineLength; i--) {
+            line[i] = (char) ('0' + value % 10);
+            value /= 10;
+        }
+        lineLength += digits;
+        return this;
+    }
+    
+    public int getLineCount() {
+        return lines.length;
+    }
+    
+    public char[] getLine(int line) {
+        return lines[line];
+    }
+    
+    public int getLineLength(int line) {
+        return lineLengths[line];
+    }
+    
+    public int getFps() {
+        return fps;
+    }
+    
+    public long getWorstFrameMs() {
+        return worstFrameMs;
+    }
+    
+    public int getIngestPerSecond() {
+        return ingestPerSecond;
+    }
+    
+    /**
+     * Socket read to draw, -1 without frames in the window
+     */
+    public long getLatencyP99Ms() {
+        return latencyP99Ms;
+    }
+    
+    public long getDroppedFrames() {
+        return windowDropped;
+    }
+    
+    public long getCoalescedFrames() {
+        return windowCoalesced;
+    }
+    
+    public long getGcCount() {
+        return windowGcs;
+    }
+}
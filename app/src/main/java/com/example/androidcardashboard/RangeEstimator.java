@@ -0,0 +1,129 @@
+package com.example.androidcardashboard;
+
+/**
+ * Distance-to-empty from the fuel level stream, in constant time per sample.
+ *
+ * The sender's fuel level jumps by a few percent when fuel sloshes, so each
+ * reading is first clamped to a band around the smoothed level and then
+ * folded into a time-based exponential average. Drops of the smoothed level
+ * and the distance driven are summed with a decay per kilometre, which
+ * weighs the last ~DECAY_DISTANCE_KM the most. A few kilometres at a typical
+ * consumption decay along with them, so the range is sensible before the
+ * first kilometres.
+ *
+ * A rise that lasts REFUEL_CONFIRM_MS is a refuel: the smoothed level jumps
+ * to the new reading without counting a negative drop.
+ */
+public class RangeEstimator {
+    public static final double DEFAULT_CONSUMPTION_L_PER_100KM = 8.0;
+    private static final double PRIOR_DISTANCE_KM = 5.0;
+    private static final double DECAY_DISTANCE_KM = 50.0;
+    private static final long FUEL_SMOOTHING_MS = 60000;
+    private static final double SLOSH_BAND_PERCENT = 3.0;
+    private static final double REFUEL_JUMP_PERCENT = 5.0;
+    private static final long REFUEL_CONFIRM_MS = 10000;
+    
+    private double tankCapacityLitres;
+    
+    private boolean hasSample = false;
+    private long lastTime;
+    private double smoothedFuel;   // Percent of the tank
+    private long refuelSince = -1; // Start of a pending rise, -1 when none
+    
+    // Decayed sums of the smoothed fuel drop and the distance driven
+    private double fuelDropPercent;
+    private double distanceKm;
+    private double priorKm; // Distance at the default consumption
+    
+    public RangeEstimator(double tankCapacityLitres) {
+        this.tankCapacityLitres = tankCapacityLitres;
+        reset();
+    }
+    
+    /**
+     * Forget the consumption history, e.g. for a different car
+     */
+    public void reset() {
+        hasSample = false;
+        refuelSince = -1;
+        fuelDropPercent = 0;
+        distanceKm = 0;
+        priorKm = PRIOR_DISTANCE_KM;
+    }
+    
+    /**
+     * @param stepKm distance driven since the previous sample
+     * @param fuelLevel raw fuel level in percent
+     */
+    public void add(long timestamp, double stepKm, double fuelLevel) {
+        if (!hasSample) {
+            hasSample = true;
+            lastTime = timestamp;
+            smoothedFuel = fuelLevel;
+            return;
+        }
+        long elapsed = Math.max(0, timestamp - lastTime);
+        lastTime = Math.max(lastTime, timestamp);
+        
+        double previous = smoothedFuel;
+        if (fuelLevel > smoothedFuel + REFUEL_JUMP_PERCENT) {
+            // Hold the level until the rise is confirmed or turns out to be slosh
+            if (refuelSince < 0) {
+                refuelSince = timestamp;
+            } else if (timestamp - refuelSince >= REFUEL_CONFIRM_MS) {
+                smoothedFuel = fuelLevel;
+                previous = fuelLevel;
+                refuelSince = -1;
+            }
+        } else {
+            refuelSince = -1;
+            double clamped = Math.max(smoothedFuel - SLOSH_BAND_PERCENT,
+                                      Math.min(smoothedFuel + SLOSH_BAND_PERCENT, fuelLevel));
+            smoothedFuel += (clamped - smoothedFuel) * elapsed / (double) (FUEL_SMOOTHING_MS + elapsed);
+        }
+        
+        // Rational approximation of exp(-d / D), exact enough for steps of metres
+        double decay = DECAY_DISTANCE_KM / (DECAY_DISTANCE_KM + stepKm);
+        distanceKm = distanceKm * decay + stepKm;
+        fuelDropPercent = fuelDropPercent * decay + previous - smoothedFuel;
+        priorKm *= decay;
+    }
+    
+    public void setTankCapacity(double litres) {
+        tankCapacityLitres = litres;
+    }
+    
+    /**
+     * Recent consumption in L/100km, never below a tenth of the default so
+     * a stretch of rising readings cannot make the range unbounded
+     */
+    public double getConsumption() {
+        double litres = fuelDropPercent * tankCapacityLitres / 100.0
+            + priorKm * DEFAULT_CONSUMPTION_L_PER_100KM / 100.0;
+        return Math.max(DEFAULT_CONSUMPTION_L_PER_100KM / 10.0, litres / (distanceKm + priorKm) * 100.0);
+    }
+    
+    /**
+     * Distance to empty in km, NaN before the first fuel reading
+     */
+    public double getRangeKm() {
+        if (!hasSample) {
+            return Double.NaN;
+        }
+        return Math.max(0, smoothedFuel) * tankCapacityLitres / 100.0 / getConsumption() * 100.0;
+    }
+    
+    /**
+     * Smoothed fuel level in percent
+     */
+    public double getFuelLevel() {
+        return smoothedFuel;
+    }
+    
+    /**
+     * Distance the consumption is averaged over, decayed, in km
+     */
+    public double getWindowDistanceKm() {
+        return distanceKm + priorKm;
+    }
+}
@@ -3,9 +3,11 @@ package com.example.androidcardashboard;
 import android.app.AlertDialog;
 import android.app.Dialog;
 import android.content.Context;
+import android.content.DialogInterface;
 import android.graphics.Color;
 import android.graphics.Typeface;
 import android.os.Bundle;
+import android.os.SystemClock;
 import android.view.LayoutInflater;
 import android.view.View;
 import android.view.ViewGroup;
@@ -13,9 +15,21 @@ import android.widget.BaseAdapter;
 import android.widget.Button;
 import android.widget.ListView;
 import android.widget.TextView;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Date;
 import java.util.List;
+import java.util.Locale;
 
 public class ServiceStatusDialog {
+    private static final int HISTORY_PAGE_SIZE = 20;
+    private static final long DAY_MS = 24 * 60 * 60 * 1000L;
+    private static final int PROBLEM_LEVELS = (1 << EventManager.LEVEL_ERROR) | (1 << EventManager.LEVEL_WARNING);
+    private static final int LIVE_ROWS = 50;
+    private static final long EVENTS_REFRESH_MS = 250;
+    private static final long JSON_REFRESH_MS = 1000;
+    private static final String TIMESTAMP_KEY = "\"timestamp\"";
+    
     private Context context;
     private String title;
     private int iconResId;
@@ -24,12 +38,42 @@ public class ServiceStatusDialog {
     private OnActionClickListener actionClickListener;
     private String currentJsonData;
     
+    // Event history, paged from the log on disk
+    private EventLog eventLog;
+    private EventLog.Page page;
+    private final List<Long> pageStarts = new ArrayList<>(); // Empty while the latest events are shown
+    private int levelMask = EventLog.ALL_LEVELS;
+    private EventAdapter adapter;
+    private TextView eventsHeader;
+    
+    // Live updates while the dialog is shown
+    private LiveSource liveSource;
+    private final List<Object> liveEvents = new ArrayList<>(); // Newest first
+    private final List<Object> newEvents = new ArrayList<>();
+    private long liveSequence = 0;
+    private long jsonUpdatedAt;
+    private TextView jsonDataView;
+    private MainThreadScheduler.Task refreshTask;
+    
     public interface OnActionClickListener {
         void onConnectClick();
         void onDisconnectClick();
         void onRetryClick();
     }
     
+    /**
+     * Events and data for a dialog that stays current, called on the main thread
+     */
+    public interface LiveSource {
+        /**
+         * Add the events after a sequence number, oldest first
+         * @return the sequence number to pass next time
+         */
+        long getEventsSince(long sequence, List<Object> out);
+        
+        String getCurrentJsonData();
+    }
+    
     public ServiceStatusDialog(Context context, String title, int iconResId, 
                              String serviceStatus, List<?> events, 
                              OnActionClickListener actionClickListener) {
@@ -48,6 +92,22 @@ public class ServiceStatusDialog {
         this.currentJsonData = currentJsonData;
     }
     
+    /**
+     * Let the events list page back through the log, optional
+     */
+    public void setEventLog(EventLog eventLog) {
+        this.eventLog = eventLog;
+    }
+    
+    /**
+     * Keep the events and data current while the dialog is shown. Only new
+     * events are added to the list, at most every EVENTS_REFRESH_MS, and the
+     * data is rebuilt every JSON_REFRESH_MS.
+     */
+    public void setLiveSource(LiveSource liveSource) {
+        this.liveSource = liveSource;
+    }
+    
     public Dialog createDialog() {
         AlertDialog.Builder builder = new AlertDialog.Builder(context);
         
@@ -64,11 +124,20 @@ public class ServiceStatusDialog {
         
         // Set up events list
         ListView eventsList = (ListView) dialogView.findViewById(R.id.events_list);
-        EventAdapter adapter = new EventAdapter(events);
+        if (liveSource != null) {
+            events = liveEvents;
+            addNewEvents();
+        }
+        adapter = new EventAdapter(events);
         eventsList.setAdapter(adapter);
+        eventsHeader = (TextView) dialogView.findViewById(R.id.events_header);
+        if (eventLog != null) {
+            setUpHistory(dialogView);
+        }
         
         // Set up JSON data display
-        TextView jsonDataView = (TextView) dialogView.findViewById(R.id.json_data_display);
+        jsonDataView = (TextView) dialogView.findViewById(R.id.json_data_display);
+        jsonUpdatedAt = SystemClock.uptimeMillis();
         if (currentJsonData != null && !currentJsonData.isEmpty()) {
             jsonDataView.setText(currentJsonData);
         } else {
@@ -120,7 +189,183 @@ public class ServiceStatusDialog {
         });
         
         builder.setView(dialogView);
-        return builder.create();
+        AlertDialog dialog = builder.create();
+        if (liveSource != null) {
+            startLiveUpdates(dialog);
+        }
+        return dialog;
+    }
+    
+    private void startLiveUpdates(AlertDialog dialog) {
+        final MainThreadScheduler scheduler = MainThreadScheduler.getInstance();
+        refreshTask = scheduler.newTask("statusDialog", new Runnable() {
+            @Override
+            public void run() {
+                refresh();
+            }
+        });
+        dialog.setOnShowListener(new DialogInterface.OnShowListener() {
+            @Override
+            public void onShow(DialogInterface dialogInterface) {
+                // Shares wakeups with the dashboard's own tasks
+                scheduler.schedulePeriodic(refreshTask, EVENTS_REFRESH_MS, EVENTS_REFRESH_MS, 100);
+            }
+        });
+        dialog.setOnDismissListener(new DialogInterface.OnDismissListener() {
+            @Override
+            public void onDismiss(DialogInterface dialogInterface) {
+                scheduler.removeTask(refreshTask);
+            }
+        });
+    }
+    
+    private void refresh() {
+        if (addNewEvents() && pageStarts.isEmpty()) {
+            adapter.notifyDataSetChanged();
+        }
+        long now = SystemClock.uptimeMillis();
+        if (now - jsonUpdatedAt >= JSON_REFRESH_MS) {
+            jsonUpdatedAt = now;
+            String json = liveSource.getCurrentJsonData();
+            // The timestamp alone is not worth a relayout
+            if (currentJsonData == null || !sameExceptTimestamp(json, currentJsonData)) {
+                currentJsonData = json;
+                jsonDataView.setText(json);
+            }
+        }
+    }
+    
+    /**
+     * Whether two telemetry texts differ in nothing but the timestamp value,
+     * which changes on every rebuild
+     */
+    static boolean sameExceptTimestamp(String a, String b) {
+        int start = a.indexOf(TIMESTAMP_KEY);
+        if (start < 0 || start != b.indexOf(TIMESTAMP_KEY)) {
+            return a.equals(b);
+        }
+        int valueStart = start + TIMESTAMP_KEY.length();
+        int aEnd = skipNumber(a, valueStart);
+        int bEnd = skipNumber(b, valueStart);
+        return a.length() - aEnd == b.length() - bEnd
+            && a.regionMatches(0, b, 0, start)
+            && a.regionMatches(aEnd, b, bEnd, a.length() - aEnd);
+    }
+    
+    /**
+     * Index after the ": 123" that follows a key
+     */
+    private static int skipNumber(String text, int index) {
+        while (index < text.length()) {
+            char c = text.charAt(index);
+            if (c != ':' && c != ' ' && (c < '0' || c > '9')) {
+                break;
+            }
+            index++;
+        }
+        return index;
+    }
+    
+    /**
+     * Put the events since the last call at the top of the live list
+     * @return whether there were any
+     */
+    private boolean addNewEvents() {
+        liveSequence = liveSource.getEventsSince(liveSequence, newEvents);
+        if (newEvents.isEmpty()) {
+            return false;
+        }
+        for (int i = 0; i < newEvents.size(); i++) {
+            liveEvents.add(0, newEvents.get(i));
+        }
+        newEvents.clear();
+        while (liveEvents.size() > LIVE_ROWS) {
+            liveEvents.remove(liveEvents.size() - 1);
+        }
+        return true;
+    }
+    
+    private void setUpHistory(View dialogView) {
+        page = new EventLog.Page(HISTORY_PAGE_SIZE);
+        final Button filterBtn = (Button) dialogView.findViewById(R.id.btn_events_filter);
+        Button olderBtn = (Button) dialogView.findViewById(R.id.btn_events_older);
+        Button newerBtn = (Button) dialogView.findViewById(R.id.btn_events_newer);
+        filterBtn.setVisibility(View.VISIBLE);
+        olderBtn.setVisibility(View.VISIBLE);
+        newerBtn.setVisibility(View.VISIBLE);
+        
+        filterBtn.setOnClickListener(new View.OnClickListener() {
+            @Override
+            public void onClick(View v) {
+                levelMask = levelMask == EventLog.ALL_LEVELS ? PROBLEM_LEVELS : EventLog.ALL_LEVELS;
+                filterBtn.setText(levelMask == EventLog.ALL_LEVELS ? R.string.events_filter_all : R.string.events_filter_problems);
+                // Start again from the newest matching events
+                pageStarts.clear();
+                showHistoryPage(EventLog.NEWEST);
+            }
+        });
+        olderBtn.setOnClickListener(new View.OnClickListener() {
+            @Override
+            public void onClick(View v) {
+                if (pageStarts.isEmpty()) {
+                    showHistoryPage(EventLog.NEWEST);
+                } else if (page.next >= 0) {
+                    showHistoryPage(page.next);
+                }
+            }
+        });
+        // A long press jumps a day back
+        olderBtn.setOnLongClickListener(new View.OnLongClickListener() {
+            @Override
+            public boolean onLongClick(View v) {
+                long from = pageStarts.isEmpty() || page.count == 0 ? System.currentTimeMillis() : page.timestamps[0];
+                showHistoryPage(eventLog.positionAt(from - DAY_MS));
+                return true;
+            }
+        });
+        newerBtn.setOnClickListener(new View.OnClickListener() {
+            @Override
+            public void onClick(View v) {
+                if (pageStarts.size() <= 1) {
+                    showLatestEvents();
+                } else {
+                    pageStarts.remove(pageStarts.size() - 1);
+                    showHistoryPage(pageStarts.remove(pageStarts.size() - 1));
+                }
+            }
+        });
+    }
+    
+    private void showHistoryPage(long start) {
+        eventLog.readPage(start, levelMask, page);
+        pageStarts.add(start);
+        List<Object> pageEvents = new ArrayList<>(page.count);
+        for (int i = 0; i < page.count; i++) {
+            if (page.sources[i] == EventLog.SOURCE_GPS) {
+                pageEvents.add(new EventManager.GpsEvent(page.messages[i], page.levels[i], page.timestamps[i]));
+            } else {
+                pageEvents.add(new EventManager.TcpEvent(page.messages[i], page.levels[i], page.timestamps[i]));
+            }
+        }
+        adapter.setEvents(pageEvents);
+        long newest = page.count > 0 ? page.timestamps[0] : System.currentTimeMillis();
+        String time = new SimpleDateFormat("MMM d HH:mm", Locale.getDefault()).format(new Date(newest));
+        eventsHeader.setText(context.getString(R.string.events_history, time));
+    }
+    
+    private void showLatestEvents() {
+        pageStarts.clear();
+        adapter.setEvents(events);
+        eventsHeader.setText(R.string.latest_events);
+    }
+    
+    /**
+     * Views of a recycled row, so a bind only sets text
+     */
+    private static class RowViews {
+        TextView levelView;
+        TextView messageView;
+        TextView timeView;
     }
     
     private class EventAdapter extends BaseAdapter {
@@ -130,6 +375,11 @@ public class ServiceStatusDialog {
             this.events = events;
         }
         
+        public void setEvents(List<?> events) {
+            this.events = events;
+            notifyDataSetChanged();
+        }
+        
         @Override
         public int getCount() {
             return events.size();
@@ -147,16 +397,24 @@ public class ServiceStatusDialog {
         
         @Override
         public View getView(int position, View convertView, ViewGroup parent) {
+            RowViews row;
             if (convertView == null) {
                 convertView = LayoutInflater.from(context).inflate(R.layout.item_event, null);
+                row = new RowViews();
+                row.levelView = (TextView) convertView.findViewById(R.id.event_level);
+                row.messageView = (TextView) convertView.findViewById(R.id.event_message);
+                row.timeView = (TextView) convertView.findViewById(R.id.event_time);
+                convertView.setTag(row);
+            } else {
+                row = (RowViews) convertView.getTag();
             }
             
             Object event = getItem(position);
-            TextView levelView = (TextView) convertView.findViewById(R.id.event_level);
-            TextView messageView = (TextView) convertView.findViewById(R.id.event_message);
-            TextView timeView = (TextView) convertView.findViewById(R.id.event_time);
+            TextView levelView = row.levelView;
+            TextView messageView = row.messageView;
+            TextView timeView = row.timeView;
             
-            String level = "";
+            int level = -1;
             String message = "";
             String time = "";
             
@@ -172,7 +430,7 @@ public class ServiceStatusDialog {
                 time = tcpEvent.getFormattedTime();
             }
             
-            levelView.setText(level);
+            levelView.setText(EventManager.getLevelName(level));
             messageView.setText(message);
             timeView.setText(time);
             
@@ -186,19 +444,19 @@ public class ServiceStatusDialog {
             return convertView;
         }
         
-        private int getLevelColor(String level) {
+        private int getLevelColor(int level) {
             switch (level) {
-                case "INFO":
+                case EventManager.LEVEL_INFO:
                     return Color.parseColor("#40C4FF"); // Minimal theme secondary accent
-                case "STATUS":
+                case EventManager.LEVEL_STATUS:
                     return Color.parseColor("#00E676"); // Minimal theme success
-                case "CONFIG":
+                case EventManager.LEVEL_CONFIG:
                     return Color.parseColor("#FFB74D"); // Minimal theme warning
-                case "TRIP":
+                case EventManager.LEVEL_TRIP:
                     return Color.parseColor("#00E5FF"); // Minimal theme primary accent
-                case "DATA":
+                case EventManager.LEVEL_DATA:
                     return Color.parseColor("#40C4FF"); // Minimal theme secondary accent
-                case "ERROR":
+                case EventManager.LEVEL_ERROR:
                     return Color.parseColor("#FF5252"); // Minimal theme danger
                 default:
                     return Color.parseColor("#CCCCCC"); // Minimal theme text secondary
@@ -1,17 +1,19 @@
 package com.example.androidcardashboard;
 
 import android.content.Context;
+import android.graphics.Bitmap;
 import android.graphics.Canvas;
 import android.graphics.Color;
 import android.graphics.Paint;
 import android.graphics.Path;
+import android.graphics.Rect;
 import android.graphics.RectF;
 import android.graphics.Typeface;
 import android.util.AttributeSet;
 import android.view.MotionEvent;
 import android.view.View;
 
-public class SpeedometerView extends View {
+public class SpeedometerView extends View implements MemoryManager.Cache {
     private Paint backgroundPaint;
     private Paint progressPaint;
     private Paint textPaint;
@@ -28,6 +30,40 @@ public class SpeedometerView extends View {
     private float radius;
     private RectF progressRect;
     
+    // Dirty regions for partial invalidation
+    private final Rect digitBounds = new Rect();
+    private final Rect rpmBounds = new Rect();
+    private final Rect buttonBounds = new Rect();
+    private final Rect dirtyRect = new Rect();
+    
+    // Number of onDraw passes, to verify invalidation savings
+    private int redrawCount = 0;
+    private final AllocationTracker.Scope drawAllocations = AllocationTracker.scope("draw.Speedometer", 0);
+    
+    // Analog style paints, reused across frames
+    private Paint bezelPaint;
+    private Paint innerBezelPaint;
+    private Paint tickPaint;
+    private Paint majorTickPaint;
+    private Paint numberPaint;
+    private Paint needlePaint;
+    private Paint hubPaint;
+    
+    // Per-frame drawing state, reused so onDraw doesn't allocate
+    private Paint htopTickPaint;
+    private final Path tickPath = new Path();
+    private Paint buttonPaint;
+    private Paint buttonTextPaint;
+    private final RectF buttonRect = new RectF();
+    private final TextBuffer speedText = new TextBuffer(8);
+    private final TextBuffer rpmText = new TextBuffer(16);
+    private final TextBuffer numberText = new TextBuffer(8);
+    
+    // Rendering quality, stepped down when onDraw gets too slow
+    private final FrameTimeGovernor frameGovernor = new FrameTimeGovernor("Speedometer");
+    private Bitmap staticLayer;
+    private boolean staticLayerValid = false;
+    
     // Theme colors - Dynamic based on current theme
     private int primaryColor;
     private int secondaryColor;
@@ -101,6 +137,41 @@ public class SpeedometerView extends View {
         rpmPaint.setColor(secondaryColor);
         rpmPaint.setTextAlign(Paint.Align.CENTER);
         rpmPaint.setTypeface(themeManager.getPrimaryFont());
+        
+        // Analog style paints
+        bezelPaint = new Paint(Paint.ANTI_ALIAS_FLAG);
+        bezelPaint.setStyle(Paint.Style.STROKE);
+        bezelPaint.setStrokeWidth(8);
+        
+        innerBezelPaint = new Paint(Paint.ANTI_ALIAS_FLAG);
+        innerBezelPaint.setStyle(Paint.Style.STROKE);
+        innerBezelPaint.setStrokeWidth(4);
+        
+        tickPaint = new Paint(Paint.ANTI_ALIAS_FLAG);
+        tickPaint.setStrokeWidth(2);
+        
+        majorTickPaint = new Paint(Paint.ANTI_ALIAS_FLAG);
+        majorTickPaint.setStrokeWidth(3);
+        
+        numberPaint = new Paint(Paint.ANTI_ALIAS_FLAG);
+        numberPaint.setTextAlign(Paint.Align.CENTER);
+        
+        needlePaint = new Paint(Paint.ANTI_ALIAS_FLAG);
+        needlePaint.setStrokeWidth(8);
+        needlePaint.setStrokeCap(Paint.Cap.ROUND);
+        
+        hubPaint = new Paint(Paint.ANTI_ALIAS_FLAG);
+        hubPaint.setStyle(Paint.Style.FILL);
+        
+        htopTickPaint = new Paint(Paint.ANTI_ALIAS_FLAG);
+        htopTickPaint.setStyle(Paint.Style.FILL);
+        
+        buttonPaint = new Paint(Paint.ANTI_ALIAS_FLAG);
+        buttonPaint.setStyle(Paint.Style.FILL);
+        
+        buttonTextPaint = new Paint(Paint.ANTI_ALIAS_FLAG);
+        buttonTextPaint.setColor(Color.WHITE);
+        buttonTextPaint.setTextAlign(Paint.Align.CENTER);
     }
     
     @Override
@@ -121,11 +192,30 @@ public class SpeedometerView extends View {
         // Set text sizes based on radius
         textPaint.setTextSize(radius * 0.4f);
         rpmPaint.setTextSize(radius * 0.15f);
+        
+        // Speed digits and KM/H label live inside the center circle
+        DirtyRegion.setCircleBounds(digitBounds, centerX, centerY, radius * 0.6f);
+        
+        // RPM text line at the bottom
+        float rpmBaseline = centerY + radius * 0.8f;
+        rpmBounds.set((int) (centerX - radius * 0.6f), (int) (rpmBaseline - radius * 0.2f),
+                      (int) (centerX + radius * 0.6f), (int) (rpmBaseline + radius * 0.06f) + 1);
+        
+        // Demo and theme buttons
+        float buttonY = centerY + radius * 0.4f;
+        buttonBounds.set((int) (centerX - radius * 0.55f) - 2, (int) (buttonY - radius * 0.075f) - 2,
+                         (int) (centerX + radius * 0.55f) + 2, (int) (buttonY + radius * 0.075f) + 2);
+        
+        staticLayerValid = false;
     }
     
     @Override
     protected void onDraw(Canvas canvas) {
         super.onDraw(canvas);
+        redrawCount++;
+        TraceRecorder.begin("draw.Speedometer");
+        long drawStart = System.nanoTime();
+        long allocationMark = drawAllocations.begin();
         
         // Draw gauge based on style
         switch (gaugeStyle) {
@@ -156,7 +246,8 @@ public class SpeedometerView extends View {
             canvas.drawText("R", centerX, centerY + radius * 0.1f, textPaint);
         } else {
             textPaint.setColor(speedColor); // Use speed-based color
-            canvas.drawText(String.valueOf((int) speed), centerX, centerY + radius * 0.1f, textPaint);
+            speedText.clear().append((int) speed);
+            canvas.drawText(speedText.chars(), 0, speedText.length(), centerX, centerY + radius * 0.1f, textPaint);
         }
         
         // Draw "KM/H" label with speed-based color
@@ -165,11 +256,20 @@ public class SpeedometerView extends View {
         
         // Draw RPM display at bottom (reset to original color)
         rpmPaint.setColor(secondaryColor);
-        String rpmText = String.format("%.1fK RPM", rpm / 1000);
-        canvas.drawText(rpmText, centerX, centerY + radius * 0.8f, rpmPaint);
+        rpmText.clear().append(rpm / 1000, 1).append("K RPM");
+        canvas.drawText(rpmText.chars(), 0, rpmText.length(), centerX, centerY + radius * 0.8f, rpmPaint);
         
         // Draw demo and theme buttons
         drawButtons(canvas);
+        
+        drawAllocations.end(allocationMark);
+        TraceRecorder.end();
+        if (frameGovernor.recordFrame(System.nanoTime() - drawStart)) {
+            if (frameGovernor.getTier() != FrameTimeGovernor.QualityTier.CACHED) {
+                releaseStaticLayer();
+            }
+            invalidate();
+        }
     }
     
     private void drawButtons(Canvas canvas) {
@@ -182,21 +282,16 @@ public class SpeedometerView extends View {
         // Demo button (left)
         if (showDemoButton) {
             float demoButtonX = centerX - radius * 0.4f;
-            RectF demoButtonRect = new RectF(
+            buttonRect.set(
                 demoButtonX - buttonWidth/2,
                 buttonY - buttonHeight/2,
                 demoButtonX + buttonWidth/2,
                 buttonY + buttonHeight/2
             );
             
-            Paint buttonPaint = new Paint(Paint.ANTI_ALIAS_FLAG);
             buttonPaint.setColor(themeManager.getSuccessColor());
-            buttonPaint.setStyle(Paint.Style.FILL);
-            canvas.drawRoundRect(demoButtonRect, 8, 8, buttonPaint);
+            canvas.drawRoundRect(buttonRect, 8, 8, buttonPaint);
             
-            Paint buttonTextPaint = new Paint(Paint.ANTI_ALIAS_FLAG);
-            buttonTextPaint.setColor(Color.WHITE);
-            buttonTextPaint.setTextAlign(Paint.Align.CENTER);
             buttonTextPaint.setTextSize(buttonHeight * 0.4f);
             canvas.drawText("DEMO", demoButtonX, buttonY + buttonHeight * 0.15f, buttonTextPaint);
         }
@@ -204,21 +299,16 @@ public class SpeedometerView extends View {
         // Theme button (right)
         if (showThemeButton) {
             float themeButtonX = centerX + radius * 0.4f;
-            RectF themeButtonRect = new RectF(
+            buttonRect.set(
                 themeButtonX - buttonWidth/2,
                 buttonY - buttonHeight/2,
                 themeButtonX + buttonWidth/2,
                 buttonY + buttonHeight/2
             );
             
-            Paint buttonPaint = new Paint(Paint.ANTI_ALIAS_FLAG);
             buttonPaint.setColor(primaryColor);
-            buttonPaint.setStyle(Paint.Style.FILL);
-            canvas.drawRoundRect(themeButtonRect, 8, 8, buttonPaint);
+            canvas.drawRoundRect(buttonRect, 8, 8, buttonPaint);
             
-            Paint buttonTextPaint = new Paint(Paint.ANTI_ALIAS_FLAG);
-            buttonTextPaint.setColor(Color.WHITE);
-            buttonTextPaint.setTextAlign(Paint.Align.CENTER);
             buttonTextPaint.setTextSize(buttonHeight * 0.4f);
             canvas.drawText("THEME", themeButtonX, buttonY + buttonHeight * 0.15f, buttonTextPaint);
         }
@@ -263,13 +353,94 @@ public class SpeedometerView extends View {
     }
     
     public void setSpeed(float speed) {
-        this.speed = Math.max(0, Math.min(maxSpeed, speed));
-        invalidate();
+        float newSpeed = Math.max(0, Math.min(maxSpeed, speed));
+        if (newSpeed == this.speed) {
+            return;
+        }
+        
+        float oldSpeed = this.speed;
+        boolean colorChanged = getSpeedBasedColor(oldSpeed) != getSpeedBasedColor(newSpeed);
+        this.speed = newSpeed;
+        
+        dirtyRect.setEmpty();
+        unionGaugeDirtyRegion(dirtyRect, oldSpeed, newSpeed, colorChanged);
+        
+        // Digits and KM/H label change with the displayed value or the color band
+        if (colorChanged || (!reverseGear && (int) oldSpeed != (int) newSpeed)) {
+            dirtyRect.union(digitBounds);
+        }
+        invalidateRegion(dirtyRect);
     }
     
     public void setRpm(float rpm) {
-        this.rpm = Math.max(0, Math.min(maxRpm, rpm));
-        invalidate();
+        float newRpm = Math.max(0, Math.min(maxRpm, rpm));
+        if (newRpm == this.rpm) {
+            return;
+        }
+        
+        // RPM is displayed with one decimal in thousands, so only tenths matter
+        boolean textChanged = Math.round(newRpm / 100) != Math.round(this.rpm / 100);
+        this.rpm = newRpm;
+        if (textChanged) {
+            invalidateRegion(rpmBounds);
+        }
+    }
+    
+    public int getRedrawCount() {
+        return redrawCount;
+    }
+    
+    public FrameTimeGovernor.QualityTier getQualityTier() {
+        return frameGovernor.getTier();
+    }
+    
+    public long getAverageDrawUs() {
+        return frameGovernor.getAverageDrawUs();
+    }
+    
+    private void unionGaugeDirtyRegion(Rect out, float oldSpeed, float newSpeed, boolean colorChanged) {
+        float oldNormalized = Math.min(oldSpeed / maxSpeed, 1.0f);
+        float newNormalized = Math.min(newSpeed / maxSpeed, 1.0f);
+        // A color band change repaints the whole active part of the gauge
+        float low = colorChanged ? 0 : Math.min(oldNormalized, newNormalized);
+        float high = Math.max(oldNormalized, newNormalized);
+        
+        switch (gaugeStyle) {
+            case MINIMAL:
+                DirtyRegion.unionSector(out, centerX, centerY, radius,
+                    Math.toRadians(-135 + low * 270), Math.toRadians(-135 + high * 270),
+                    progressPaint.getStrokeWidth());
+                break;
+            case HTOP: {
+                int numTicks = 50;
+                int oldTicks = Math.round(oldNormalized * numTicks);
+                int newTicks = Math.round(newNormalized * numTicks);
+                if (!colorChanged && oldTicks == newTicks) {
+                    break;
+                }
+                int lowTick = colorChanged ? 0 : Math.min(oldTicks, newTicks);
+                int highTick = Math.max(oldTicks, newTicks);
+                DirtyRegion.unionSector(out, centerX, centerY, radius,
+                    -Math.PI * 1.25 + (lowTick / (float) numTicks) * Math.PI * 1.5,
+                    -Math.PI * 1.25 + (highTick / (float) numTicks) * Math.PI * 1.5, 8);
+                break;
+            }
+            case ANALOG: {
+                // Needle sweep plus the counterweight on the opposite side
+                double oldAngle = -Math.PI * 1.25 + oldNormalized * Math.PI * 1.5;
+                double newAngle = -Math.PI * 1.25 + newNormalized * Math.PI * 1.5;
+                DirtyRegion.unionSector(out, centerX, centerY, radius * 0.75f, oldAngle, newAngle, 8);
+                DirtyRegion.unionSector(out, centerX, centerY, radius * 0.25f,
+                    oldAngle + Math.PI, newAngle + Math.PI, 8);
+                break;
+            }
+        }
+    }
+    
+    private void invalidateRegion(Rect region) {
+        if (!region.isEmpty()) {
+            invalidate(region);
+        }
     }
     
     public float getSpeed() {
@@ -277,6 +448,10 @@ public class SpeedometerView extends View {
     }
     
     private int getSpeedBasedColor() {
+        return getSpeedBasedColor(speed);
+    }
+    
+    private int getSpeedBasedColor(float speed) {
         if (speed <= 50) {
             return greenColor; // Green up to 50 kph
         } else if (speed <= 80) {
@@ -291,6 +466,9 @@ public class SpeedometerView extends View {
     }
     
     public void setThemeColors(int primary, int secondary, int background) {
+        if (primary == primaryColor && secondary == secondaryColor && background == backgroundColor) {
+            return;
+        }
         this.primaryColor = primary;
         this.secondaryColor = secondary;
         this.backgroundColor = background;
@@ -300,18 +478,25 @@ public class SpeedometerView extends View {
         textPaint.setColor(primaryColor);
         centerPaint.setColor(backgroundColor);
         rpmPaint.setColor(secondaryColor);
+        staticLayerValid = false;
 
         invalidate();
     }
     
     public void setShowDemoButton(boolean show) {
+        if (show == showDemoButton) {
+            return;
+        }
         this.showDemoButton = show;
-        invalidate();
+        invalidateRegion(buttonBounds);
     }
     
     public void setShowThemeButton(boolean show) {
+        if (show == showThemeButton) {
+            return;
+        }
         this.showThemeButton = show;
-        invalidate();
+        invalidateRegion(buttonBounds);
     }
     
     public void setButtonClickListener(OnButtonClickListener listener) {
@@ -319,33 +504,55 @@ public class SpeedometerView extends View {
     }
     
     public void setReverseGear(boolean reverseGear) {
+        if (reverseGear == this.reverseGear) {
+            return;
+        }
         this.reverseGear = reverseGear;
-        invalidate();
+        invalidateRegion(digitBounds);
     }
     
     public void setPrimaryColor(int color) {
+        if (color == primaryColor) {
+            return;
+        }
         this.primaryColor = color;
         progressPaint.setColor(color);
         invalidate();
     }
     
     public void setSecondaryColor(int color) {
+        if (color == secondaryColor) {
+            return;
+        }
         this.secondaryColor = color;
-        invalidate();
+        invalidateRegion(rpmBounds);
     }
     
     public void setBackgroundColor(int color) {
+        if (color == backgroundColor) {
+            return;
+        }
         this.backgroundColor = color;
         centerPaint.setColor(color);
-        invalidate();
+        invalidateRegion(digitBounds);
     }
     
     public void setGaugeStyle(ThemeManager.GaugeStyle style) {
+        if (style == gaugeStyle) {
+            return;
+        }
         this.gaugeStyle = style;
+        if (style != ThemeManager.GaugeStyle.ANALOG) {
+            releaseStaticLayer();
+        }
         invalidate();
     }
     
     public void setFont(Typeface font) {
+        if (font == this.font && textPaint.getTypeface() == themeManager.getBoldFont()
+                && rpmPaint.getTypeface() == themeManager.getPrimaryFont()) {
+            return;
+        }
         this.font = font;
         if (textPaint != null) {
             textPaint.setTypeface(themeManager.getBoldFont());
@@ -353,10 +560,21 @@ public class SpeedometerView extends View {
         if (rpmPaint != null) {
             rpmPaint.setTypeface(themeManager.getPrimaryFont());
         }
+        staticLayerValid = false;
         invalidate();
     }
     
     public void updateThemeColors() {
+        if (backgroundPaint != null
+                && primaryColor == themeManager.getPrimaryAccentColor()
+                && secondaryColor == themeManager.getSecondaryAccentColor()
+                && backgroundColor == themeManager.getBackgroundColor()
+                && greenColor == themeManager.getSuccessColor()
+                && orangeColor == themeManager.getWarningColor()
+                && redColor == themeManager.getDangerColor()
+                && backgroundPaint.getColor() == themeManager.getInactiveColor()) {
+            return;
+        }
         this.primaryColor = themeManager.getPrimaryAccentColor();
         this.secondaryColor = themeManager.getSecondaryAccentColor();
         this.backgroundColor = themeManager.getBackgroundColor();
@@ -373,6 +591,7 @@ public class SpeedometerView extends View {
         if (centerPaint != null) {
             centerPaint.setColor(backgroundColor);
         }
+        staticLayerValid = false;
         invalidate();
     }
     
@@ -387,8 +606,7 @@ public class SpeedometerView extends View {
         float normalizedSpeed = Math.min(speed / maxSpeed, 1.0f);
         int activeTicks = Math.round(normalizedSpeed * numTicks);
         
-        Paint tickPaint = new Paint(Paint.ANTI_ALIAS_FLAG);
-        tickPaint.setStyle(Paint.Style.FILL);
+        Paint tickPaint = htopTickPaint;
         
         for (int i = 0; i < numTicks; i++) {
             float angle = (float) (-Math.PI * 1.25 + (i / (float) numTicks) * Math.PI * 1.5);
@@ -443,7 +661,8 @@ public class SpeedometerView extends View {
         float innerWidth2Y = innerY + (float) (Math.sin(perpAngle2) * (tickWidth / 4));
         
         // Create rounded pentagon path (no sharp tip)
-        Path pentagonPath = new Path();
+        Path pentagonPath = tickPath;
+        pentagonPath.reset();
         pentagonPath.moveTo(innerWidth1X, innerWidth1Y); // Inner edge 1 (rounded)
         pentagonPath.lineTo(midWidth1X, midWidth1Y); // First intermediate point
         pentagonPath.lineTo(width1X, width1Y); // Base edge 1
@@ -465,41 +684,82 @@ public class SpeedometerView extends View {
     
     private void drawAnalogStyleGauge(Canvas canvas) {
         // Analog-style speedometer with traditional markings and needle
-        
+        FrameTimeGovernor.QualityTier tier = frameGovernor.getTier();
+        if (tier == FrameTimeGovernor.QualityTier.CACHED && getWidth() > 0 && getHeight() > 0) {
+            if (!staticLayerValid) {
+                renderStaticLayer();
+            }
+            canvas.drawBitmap(staticLayer, 0, 0, null);
+        } else {
+            drawAnalogDial(canvas, tier == FrameTimeGovernor.QualityTier.FULL);
+        }
+        drawAnalogNeedle(canvas);
+    }
+    
+    private void renderStaticLayer() {
+        if (staticLayer == null || staticLayer.getWidth() != getWidth() || staticLayer.getHeight() != getHeight()) {
+            releaseStaticLayer();
+            staticLayer = Bitmap.createBitmap(getWidth(), getHeight(), Bitmap.Config.ARGB_8888);
+        } else {
+            staticLayer.eraseColor(Color.TRANSPARENT);
+        }
+        // Drawn once, so the cached dial keeps full quality
+        drawAnalogDial(new Canvas(staticLayer), true);
+        staticLayerValid = true;
+    }
+    
+    /**
+     * Memory pressure: drop the cached dial, the next draw makes it again
+     */
+    @Override
+    public long trimCache() {
+        long bytes = getCacheBytes();
+        releaseStaticLayer();
+        return bytes;
+    }
+    
+    @Override
+    public long getCacheBytes() {
+        return staticLayer != null ? staticLayer.getByteCount() : 0;
+    }
+    
+    private void releaseStaticLayer() {
+        if (staticLayer != null) {
+            staticLayer.recycle();
+            staticLayer = null;
+        }
+        staticLayerValid = false;
+    }
+    
+    private void drawAnalogDial(Canvas canvas, boolean fullQuality) {
         // Draw gauge bezel (outer rim)
-        Paint bezelPaint = new Paint(Paint.ANTI_ALIAS_FLAG);
+        bezelPaint.setAntiAlias(fullQuality);
         bezelPaint.setColor(themeManager.getSecondaryAccentColor()); // Gold bezel
-        bezelPaint.setStyle(Paint.Style.STROKE);
-        bezelPaint.setStrokeWidth(8);
         canvas.drawCircle(centerX, centerY, radius, bezelPaint);
         
         // Draw inner bezel ring
-        Paint innerBezelPaint = new Paint(Paint.ANTI_ALIAS_FLAG);
+        innerBezelPaint.setAntiAlias(fullQuality);
         innerBezelPaint.setColor(themeManager.getPrimaryAccentColor()); // Lighter gold
-        innerBezelPaint.setStyle(Paint.Style.STROKE);
-        innerBezelPaint.setStrokeWidth(4);
         canvas.drawCircle(centerX, centerY, radius - 6, innerBezelPaint);
         
         // Draw gauge face background
         canvas.drawCircle(centerX, centerY, radius - 12, backgroundPaint);
         
         // Draw tick marks (0-200 km/h scale)
-        Paint tickPaint = new Paint(Paint.ANTI_ALIAS_FLAG);
+        tickPaint.setAntiAlias(fullQuality);
         tickPaint.setColor(themeManager.getTextSecondaryColor());
-        tickPaint.setStrokeWidth(2);
         
-        Paint majorTickPaint = new Paint(Paint.ANTI_ALIAS_FLAG);
+        majorTickPaint.setAntiAlias(fullQuality);
         majorTickPaint.setColor(themeManager.getTextPrimaryColor());
-        majorTickPaint.setStrokeWidth(3);
         
-        Paint numberPaint = new Paint(Paint.ANTI_ALIAS_FLAG);
+        numberPaint.setAntiAlias(fullQuality);
         numberPaint.setColor(themeManager.getTextPrimaryColor());
         numberPaint.setTextSize(radius * 0.08f);
-        numberPaint.setTextAlign(Paint.Align.CENTER);
         numberPaint.setTypeface(themeManager.getPrimaryFont());
         
         int numTicks = 24; // 24 major ticks for 0-120 km/h (every 5 km/h)
-        for (int i = 0; i <= numTicks; i++) {
+        int tickStep = fullQuality ? 1 : 2; // Reduced quality keeps only the major ticks
+        for (int i = 0; i <= numTicks; i += tickStep) {
             float angle = (float) (-Math.PI * 1.25 + (i / (float) numTicks) * Math.PI * 1.5);
             float tickLength = (i % 2 == 0) ? radius * 0.12f : radius * 0.06f; // Major ticks every 10 km/h
             float tickStart = radius - 12 - tickLength;
@@ -518,19 +778,19 @@ public class SpeedometerView extends View {
                 float numberRadius = radius - 12 - tickLength - 15;
                 float numberX = centerX + (float) (Math.cos(angle) * numberRadius);
                 float numberY = centerY + (float) (Math.sin(angle) * numberRadius) + radius * 0.03f;
-                canvas.drawText(String.valueOf(i * 5), numberX, numberY, numberPaint);
+                numberText.clear().append(i * 5);
+                canvas.drawText(numberText.chars(), 0, numberText.length(), numberX, numberY, numberPaint);
             }
         }
-        
+    }
+    
+    private void drawAnalogNeedle(Canvas canvas) {
         // Draw needle with realistic design
         float normalizedSpeed = speed / maxSpeed;
         float needleAngle = (float) (-Math.PI * 1.25 + normalizedSpeed * Math.PI * 1.5);
         
         // Main needle (red/white) - longer and more visible
-        Paint needlePaint = new Paint(Paint.ANTI_ALIAS_FLAG);
         needlePaint.setColor(getSpeedBasedColor());
-        needlePaint.setStrokeWidth(8);
-        needlePaint.setStrokeCap(Paint.Cap.ROUND);
         
         float needleLength = radius * 0.75f; // Longer needle
         float needleEndX = centerX + (float) (Math.cos(needleAngle) * needleLength);
@@ -539,25 +799,19 @@ public class SpeedometerView extends View {
         canvas.drawLine(centerX, centerY, needleEndX, needleEndY, needlePaint);
         
         // Needle counterweight (small circle at opposite end)
-        Paint counterweightPaint = new Paint(Paint.ANTI_ALIAS_FLAG);
-        counterweightPaint.setColor(themeManager.getTextSecondaryColor());
-        counterweightPaint.setStyle(Paint.Style.FILL);
+        hubPaint.setColor(themeManager.getTextSecondaryColor());
         
         float counterweightLength = radius * 0.25f; // Longer counterweight
         float counterweightX = centerX + (float) (Math.cos(needleAngle + Math.PI) * counterweightLength);
         float counterweightY = centerY + (float) (Math.sin(needleAngle + Math.PI) * counterweightLength);
-        canvas.drawCircle(counterweightX, counterweightY, 5, counterweightPaint);
+        canvas.drawCircle(counterweightX, counterweightY, 5, hubPaint);
         
         // Draw needle center hub
-        Paint hubPaint = new Paint(Paint.ANTI_ALIAS_FLAG);
         hubPaint.setColor(themeManager.getSecondaryAccentColor()); // Gold hub
-        hubPaint.setStyle(Paint.Style.FILL);
         canvas.drawCircle(centerX, centerY, 8, hubPaint);
         
         // Draw center dot
-        Paint centerDotPaint = new Paint(Paint.ANTI_ALIAS_FLAG);
-        centerDotPaint.setColor(themeManager.getBackgroundColor()); // Dark center
-        centerDotPaint.setStyle(Paint.Style.FILL);
-        canvas.drawCircle(centerX, centerY, 4, centerDotPaint);
+        hubPaint.setColor(themeManager.getBackgroundColor()); // Dark center
+        canvas.drawCircle(centerX, centerY, 4, hubPaint);
     }
 }
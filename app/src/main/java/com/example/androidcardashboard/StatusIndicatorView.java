@@ -5,8 +5,9 @@ import android.graphics.Canvas;
 import android.graphics.Color;
 import android.graphics.Paint;
 import android.graphics.Path;
+import android.graphics.Rect;
 import android.graphics.RectF;
-import android.os.Handler;
+import android.os.SystemClock;
 import android.util.AttributeSet;
 import android.view.View;
 import android.view.View.OnClickListener;
@@ -18,6 +19,7 @@ public class StatusIndicatorView extends View implements OnClickListener {
     
     private boolean isActive = false;
     private String label = "";
+    private String iconName = ""; // Upper-case label, picks the icon
     private int activeColor;
     private int inactiveColor;
     private int textColor;
@@ -26,12 +28,25 @@ public class StatusIndicatorView extends View implements OnClickListener {
     
     private boolean isBlinking = false;
     private boolean blinkState = false;
-    private Handler blinkHandler = new Handler();
-    private Runnable blinkRunnable;
+    private static final long BLINK_PERIOD_MS = 500; // Blink every 500ms
+    private MainThreadScheduler.Task blinkTask;
     
     private int centerX, centerY;
     private float indicatorRadius;
     
+    // Icon and label area, the only part that changes with state
+    private final Rect contentBounds = new Rect();
+    
+    // Reused by the icon drawers, which draw one shape at a time
+    private final Paint iconPaint = new Paint(Paint.ANTI_ALIAS_FLAG);
+    private final Path iconPath = new Path();
+    private final RectF iconRect = new RectF();
+    
+    // Number of onDraw passes, to verify invalidation savings
+    private int redrawCount = 0;
+    private final AllocationTracker.Scope drawAllocations = AllocationTracker.scope("draw.StatusIndicator", 0);
+    private final Metrics.Histogram drawTime = Metrics.getInstance().histogram("draw.StatusIndicator");
+    
     private OnStatusClickListener statusClickListener;
     
     public StatusIndicatorView(Context context) {
@@ -78,11 +93,24 @@ public class StatusIndicatorView extends View implements OnClickListener {
         
         // Set fixed text size for uniform appearance across all indicators
         textPaint.setTextSize(14);
+        
+        // Icons stay within 0.75 * iconSize of their center, the label sits below
+        float iconSize = indicatorRadius * 1.5f;
+        float iconY = centerY - indicatorRadius;
+        float labelBaseline = centerY + indicatorRadius * 1.2f;
+        contentBounds.set(0, (int) (iconY - iconSize * 0.75f) - 1,
+                          w, (int) (labelBaseline + textPaint.getTextSize() * 0.4f) + 1);
+        contentBounds.union((int) (centerX - iconSize * 0.75f) - 1, (int) (iconY - iconSize * 0.75f) - 1,
+                            (int) (centerX + iconSize * 0.75f) + 1, (int) (iconY + iconSize * 0.75f) + 1);
     }
     
     @Override
     protected void onDraw(Canvas canvas) {
         super.onDraw(canvas);
+        redrawCount++;
+        TraceRecorder.begin("draw.StatusIndicator");
+        long drawStart = System.nanoTime();
+        long allocationMark = drawAllocations.begin();
         
         // Draw background
         canvas.drawRect(0, 0, getWidth(), getHeight(), backgroundPaint);
@@ -112,6 +140,9 @@ public class StatusIndicatorView extends View implements OnClickListener {
             textPaint.setColor(indicatorPaint.getColor());
             canvas.drawText(label, centerX, centerY + indicatorRadius * 1.2f, textPaint);
         }
+        drawAllocations.end(allocationMark);
+        drawTime.recordNanos(System.nanoTime() - drawStart);
+        TraceRecorder.end();
     }
     
     private void drawIcon(Canvas canvas) {
@@ -119,7 +150,7 @@ public class StatusIndicatorView extends View implements OnClickListener {
         float iconX = centerX;
         float iconY = centerY - indicatorRadius;
         
-        switch (label.toUpperCase()) {
+        switch (iconName) {
             case "OIL":
                 drawOilIcon(canvas, iconX, iconY, iconSize);
                 break;
@@ -157,21 +188,30 @@ public class StatusIndicatorView extends View implements OnClickListener {
         }
     }
     
+    /**
+     * The shared icon paint, reset to the indicator color and the given style
+     */
+    private Paint iconPaint(Paint.Style style) {
+        iconPaint.reset();
+        iconPaint.setFlags(Paint.ANTI_ALIAS_FLAG);
+        iconPaint.setColor(indicatorPaint.getColor());
+        iconPaint.setStyle(style);
+        return iconPaint;
+    }
+    
     private void drawOilIcon(Canvas canvas, float x, float y, float size) {
         // Oil can icon - step 2: body + T-shaped cover
-        Paint oilPaint = new Paint(Paint.ANTI_ALIAS_FLAG);
-        oilPaint.setColor(indicatorPaint.getColor());
-        oilPaint.setStyle(Paint.Style.FILL);
+        Paint oilPaint = iconPaint(Paint.Style.FILL);
         
         // Main can body - simple rounded rectangle
         float canWidth = size * 0.6f;
         float canHeight = size * 0.6f; // Reduced from 0.8f to 0.6f
         float cornerRadius = size * 0.1f;
         
-        android.graphics.RectF canRect = new android.graphics.RectF(
+        iconRect.set(
             x - canWidth * 0.5f, y - canHeight * 0.5f, 
             x + canWidth * 0.5f, y + canHeight * 0.5f);
-        canvas.drawRoundRect(canRect, cornerRadius, cornerRadius, oilPaint);
+        canvas.drawRoundRect(iconRect, cornerRadius, cornerRadius, oilPaint);
         
         // T-shaped cover on top - smaller width than body
         float coverWidth = size * 0.4f; // Smaller than body width
@@ -179,22 +219,20 @@ public class StatusIndicatorView extends View implements OnClickListener {
         float coverTop = y - canHeight * 0.5f - coverHeight * 0.5f - size * 0.05f; // Position above body, moved up
         
         // Horizontal part of T (top)
-        android.graphics.RectF topRect = new android.graphics.RectF(
+        iconRect.set(
             x - coverWidth * 0.5f, coverTop - coverHeight * 0.3f,
             x + coverWidth * 0.5f, coverTop + coverHeight * 0.3f);
-        canvas.drawRoundRect(topRect, cornerRadius * 0.5f, cornerRadius * 0.5f, oilPaint);
+        canvas.drawRoundRect(iconRect, cornerRadius * 0.5f, cornerRadius * 0.5f, oilPaint);
         
         // Vertical part of T (center stem)
         float stemWidth = size * 0.08f;
-        android.graphics.RectF stemRect = new android.graphics.RectF(
+        iconRect.set(
             x - stemWidth * 0.5f, coverTop - coverHeight * 0.3f,
             x + stemWidth * 0.5f, coverTop + coverHeight * 0.3f);
-        canvas.drawRoundRect(stemRect, cornerRadius * 0.3f, cornerRadius * 0.3f, oilPaint);
+        canvas.drawRoundRect(iconRect, cornerRadius * 0.3f, cornerRadius * 0.3f, oilPaint);
         
         // C-shaped handle from top left of body, going left, down, and back to center left
-        Paint handlePaint = new Paint(Paint.ANTI_ALIAS_FLAG);
-        handlePaint.setColor(indicatorPaint.getColor());
-        handlePaint.setStyle(Paint.Style.STROKE);
+        Paint handlePaint = iconPaint(Paint.Style.STROKE);
         handlePaint.setStrokeWidth(size * 0.08f);
         handlePaint.setStrokeCap(Paint.Cap.ROUND);
         
@@ -205,15 +243,13 @@ public class StatusIndicatorView extends View implements OnClickListener {
         float handleRadius = size * 0.12f; // Radius of the C-shape curve
         
         // Draw C-shaped handle as an arc (going left, down, and back)
-        android.graphics.RectF handleRect = new android.graphics.RectF(
+        iconRect.set(
             handleStartX - handleRadius, handleTopY,
             handleStartX + handleRadius, handleBottomY + handleRadius);
-        canvas.drawArc(handleRect, 90f, 180f, false, handlePaint);
+        canvas.drawArc(iconRect, 90f, 180f, false, handlePaint);
         
         // Triangular neck/spout from right side of body
-        Paint neckPaint = new Paint(Paint.ANTI_ALIAS_FLAG);
-        neckPaint.setColor(indicatorPaint.getColor());
-        neckPaint.setStyle(Paint.Style.FILL);
+        Paint neckPaint = iconPaint(Paint.Style.FILL);
         
         // Calculate neck positions
         float neckStartY = y - canHeight * 0.25f; // 25% from top of body
@@ -222,18 +258,16 @@ public class StatusIndicatorView extends View implements OnClickListener {
         float neckTipX = neckBaseX + size * 0.35f; // Tip extends outward (longer)
         
         // Create triangular path for the neck
-        Path neckPath = new Path();
-        neckPath.moveTo(neckBaseX, neckStartY);      // Top-left corner (base against body)
-        neckPath.lineTo(neckTipX, neckStartY);        // Tip horizontally aligned with highest point
-        neckPath.lineTo(neckBaseX, neckEndY);       // Bottom-left corner (base against body)
-        neckPath.close();                            // Close the triangle
+        iconPath.reset();
+        iconPath.moveTo(neckBaseX, neckStartY);      // Top-left corner (base against body)
+        iconPath.lineTo(neckTipX, neckStartY);        // Tip horizontally aligned with highest point
+        iconPath.lineTo(neckBaseX, neckEndY);       // Bottom-left corner (base against body)
+        iconPath.close();                            // Close the triangle
         
-        canvas.drawPath(neckPath, neckPaint);
+        canvas.drawPath(iconPath, neckPaint);
         
         // Oil drop below the tip of the neck
-        Paint dropPaint = new Paint(Paint.ANTI_ALIAS_FLAG);
-        dropPaint.setColor(indicatorPaint.getColor());
-        dropPaint.setStyle(Paint.Style.FILL);
+        Paint dropPaint = iconPaint(Paint.Style.FILL);
         
         // Calculate drop positions
         float dropTopY = neckStartY + size * 0.08f; // Few pixels below the tip
@@ -242,44 +276,42 @@ public class StatusIndicatorView extends View implements OnClickListener {
         float dropWidth = size * 0.12f; // Drop width
         
         // Create water drop path (pointy top, circular bottom)
-        Path dropPath = new Path();
-        dropPath.moveTo(dropCenterX, dropTopY); // Start at top point
+        iconPath.reset();
+        iconPath.moveTo(dropCenterX, dropTopY); // Start at top point
         
         // Left side curve
-        dropPath.quadTo(dropCenterX - dropWidth * 0.3f, dropTopY + size * 0.05f,
+        iconPath.quadTo(dropCenterX - dropWidth * 0.3f, dropTopY + size * 0.05f,
                         dropCenterX - dropWidth * 0.5f, dropBottomY - size * 0.03f);
         
         // Bottom curve (circular)
-        dropPath.quadTo(dropCenterX, dropBottomY,
+        iconPath.quadTo(dropCenterX, dropBottomY,
                         dropCenterX + dropWidth * 0.5f, dropBottomY - size * 0.03f);
         
         // Right side curve
-        dropPath.quadTo(dropCenterX + dropWidth * 0.3f, dropTopY + size * 0.05f,
+        iconPath.quadTo(dropCenterX + dropWidth * 0.3f, dropTopY + size * 0.05f,
                         dropCenterX, dropTopY);
         
-        dropPath.close();
-        canvas.drawPath(dropPath, dropPaint);
+        iconPath.close();
+        canvas.drawPath(iconPath, dropPaint);
     }
     
     private void drawBatteryIcon(Canvas canvas, float x, float y, float size) {
         // Battery icon (battery_full/battery_alert style)
-        Paint batteryPaint = new Paint(Paint.ANTI_ALIAS_FLAG);
-        batteryPaint.setColor(indicatorPaint.getColor());
-        batteryPaint.setStyle(Paint.Style.FILL);
+        Paint batteryPaint = iconPaint(Paint.Style.FILL);
         
         // Battery body
-        RectF batteryBody = new RectF(
+        iconRect.set(
             x - size * 0.4f, y - size * 0.3f, 
             x + size * 0.4f, y + size * 0.3f
         );
-        canvas.drawRoundRect(batteryBody, size * 0.05f, size * 0.05f, batteryPaint);
+        canvas.drawRoundRect(iconRect, size * 0.05f, size * 0.05f, batteryPaint);
         
         // Battery terminal
-        RectF batteryTerminal = new RectF(
+        iconRect.set(
             x + size * 0.4f, y - size * 0.15f, 
             x + size * 0.5f, y + size * 0.15f
         );
-        canvas.drawRoundRect(batteryTerminal, size * 0.02f, size * 0.02f, batteryPaint);
+        canvas.drawRoundRect(iconRect, size * 0.02f, size * 0.02f, batteryPaint);
         
         // Battery level indicator (3 bars)
         batteryPaint.setColor(Color.WHITE);
@@ -295,9 +327,7 @@ public class StatusIndicatorView extends View implements OnClickListener {
     
     private void drawWifiIcon(Canvas canvas, float x, float y, float size) {
         // WiFi icon inspired by SVG design - clean signal arcs
-        Paint wifiPaint = new Paint(Paint.ANTI_ALIAS_FLAG);
-        wifiPaint.setColor(indicatorPaint.getColor());
-        wifiPaint.setStyle(Paint.Style.STROKE);
+        Paint wifiPaint = iconPaint(Paint.Style.STROKE);
         wifiPaint.setStrokeWidth(size * 0.08f);
         wifiPaint.setStrokeCap(Paint.Cap.ROUND);
         
@@ -314,10 +344,10 @@ public class StatusIndicatorView extends View implements OnClickListener {
             // Position each arc so they appear to emanate from the center point
             float arcCenterY = centerY + size * 0.1f;
             
-            android.graphics.RectF rect = new android.graphics.RectF(
+            iconRect.set(
                 centerX - arcRadius, arcCenterY - arcRadius, 
                 centerX + arcRadius, arcCenterY + arcRadius);
-            canvas.drawArc(rect, startAngle, sweepAngle, false, wifiPaint);
+            canvas.drawArc(iconRect, startAngle, sweepAngle, false, wifiPaint);
         }
         
         // Draw center dot (WiFi access point indicator)
@@ -328,9 +358,7 @@ public class StatusIndicatorView extends View implements OnClickListener {
     
     private void drawGpsIcon(Canvas canvas, float x, float y, float size) {
         // GPS icon (gps_fixed style)
-        Paint gpsPaint = new Paint(Paint.ANTI_ALIAS_FLAG);
-        gpsPaint.setColor(indicatorPaint.getColor());
-        gpsPaint.setStyle(Paint.Style.STROKE);
+        Paint gpsPaint = iconPaint(Paint.Style.STROKE);
         gpsPaint.setStrokeWidth(size * 0.08f);
         
         // GPS crosshair
@@ -348,9 +376,7 @@ public class StatusIndicatorView extends View implements OnClickListener {
     
     private void drawDrlIcon(Canvas canvas, float x, float y, float size) {
         // DRL icon (wb_sunny style)
-        Paint sunPaint = new Paint(Paint.ANTI_ALIAS_FLAG);
-        sunPaint.setColor(indicatorPaint.getColor());
-        sunPaint.setStyle(Paint.Style.FILL);
+        Paint sunPaint = iconPaint(Paint.Style.FILL);
         
         // Sun center
         canvas.drawCircle(x, y, size * 0.2f, sunPaint);
@@ -370,9 +396,7 @@ public class StatusIndicatorView extends View implements OnClickListener {
     
     private void drawLowBeamIcon(Canvas canvas, float x, float y, float size) {
         // Low beam icon - lamp pointing to the right (same as high beam but with downward light rays)
-        Paint lampPaint = new Paint(Paint.ANTI_ALIAS_FLAG);
-        lampPaint.setColor(indicatorPaint.getColor());
-        lampPaint.setStyle(Paint.Style.FILL);
+        Paint lampPaint = iconPaint(Paint.Style.FILL);
         
         // Calculate lamp dimensions - fill entire canvas height
         float lampWidth = size * 0.6f; // Width of the lamp
@@ -385,9 +409,9 @@ public class StatusIndicatorView extends View implements OnClickListener {
         // Draw the rectangular part (right side) with gap from circular part
         float bodyGap = size * 0.05f; // Small gap between circular and rectangular parts
         float rectLeft = leftEdge + size * 0.5f + bodyGap; // Start after the circular part + gap
-        android.graphics.RectF rectPart = new android.graphics.RectF(
+        iconRect.set(
             rectLeft, topEdge, rightEdge, bottomEdge);
-        canvas.drawRoundRect(rectPart, size * 0.05f, size * 0.05f, lampPaint);
+        canvas.drawRoundRect(iconRect, size * 0.05f, size * 0.05f, lampPaint);
         
         // Draw the perfect semicircle on the left - diameter same as canvas height
         float circleRadius = size * 0.5f; // Radius is half the canvas height (diameter = canvas height)
@@ -395,17 +419,15 @@ public class StatusIndicatorView extends View implements OnClickListener {
         float circleCenterY = y;
         
         // Create a path for the semicircle
-        Path semicirclePath = new Path();
-        android.graphics.RectF arcRect = new android.graphics.RectF(
+        iconPath.reset();
+        iconRect.set(
             circleCenterX - circleRadius, circleCenterY - circleRadius,
             circleCenterX + circleRadius, circleCenterY + circleRadius);
-        semicirclePath.addArc(arcRect, 90f, 180f); // 180 degrees starting from top
-        canvas.drawPath(semicirclePath, lampPaint);
+        iconPath.addArc(iconRect, 90f, 180f); // 180 degrees starting from top
+        canvas.drawPath(iconPath, lampPaint);
         
         // Draw 3 light rays pointing down and right (opposite of high beam)
-        Paint rayPaint = new Paint(Paint.ANTI_ALIAS_FLAG);
-        rayPaint.setColor(indicatorPaint.getColor());
-        rayPaint.setStyle(Paint.Style.STROKE);
+        Paint rayPaint = iconPaint(Paint.Style.STROKE);
         rayPaint.setStrokeWidth(size * 0.06f);
         rayPaint.setStrokeCap(Paint.Cap.ROUND);
         
@@ -426,9 +448,7 @@ public class StatusIndicatorView extends View implements OnClickListener {
     
     private void drawHighBeamIcon(Canvas canvas, float x, float y, float size) {
         // High beam icon - lamp pointing to the right (fills canvas height, perfectly circular left edge)
-        Paint lampPaint = new Paint(Paint.ANTI_ALIAS_FLAG);
-        lampPaint.setColor(indicatorPaint.getColor());
-        lampPaint.setStyle(Paint.Style.FILL);
+        Paint lampPaint = iconPaint(Paint.Style.FILL);
         
         // Calculate lamp dimensions - fill entire canvas height
         float lampWidth = size * 0.6f; // Width of the lamp
@@ -441,9 +461,9 @@ public class StatusIndicatorView extends View implements OnClickListener {
         // Draw the rectangular part (right side) with gap from circular part
         float bodyGap = size * 0.05f; // Small gap between circular and rectangular parts
         float rectLeft = leftEdge + size * 0.5f + bodyGap; // Start after the circular part + gap
-        android.graphics.RectF rectPart = new android.graphics.RectF(
+        iconRect.set(
             rectLeft, topEdge, rightEdge, bottomEdge);
-        canvas.drawRoundRect(rectPart, size * 0.05f, size * 0.05f, lampPaint);
+        canvas.drawRoundRect(iconRect, size * 0.05f, size * 0.05f, lampPaint);
         
         // Draw the perfect semicircle on the left - diameter same as canvas height
         float circleRadius = size * 0.5f; // Radius is half the canvas height (diameter = canvas height)
@@ -451,17 +471,15 @@ public class StatusIndicatorView extends View implements OnClickListener {
         float circleCenterY = y;
         
         // Create a path for the semicircle
-        Path semicirclePath = new Path();
-        android.graphics.RectF arcRect = new android.graphics.RectF(
+        iconPath.reset();
+        iconRect.set(
             circleCenterX - circleRadius, circleCenterY - circleRadius,
             circleCenterX + circleRadius, circleCenterY + circleRadius);
-        semicirclePath.addArc(arcRect, 90f, 180f); // 180 degrees starting from top
-        canvas.drawPath(semicirclePath, lampPaint);
+        iconPath.addArc(iconRect, 90f, 180f); // 180 degrees starting from top
+        canvas.drawPath(iconPath, lampPaint);
         
         // Draw 3 light rays pointing up and right
-        Paint rayPaint = new Paint(Paint.ANTI_ALIAS_FLAG);
-        rayPaint.setColor(indicatorPaint.getColor());
-        rayPaint.setStyle(Paint.Style.STROKE);
+        Paint rayPaint = iconPaint(Paint.Style.STROKE);
         rayPaint.setStrokeWidth(size * 0.06f);
         rayPaint.setStrokeCap(Paint.Cap.ROUND);
         
@@ -482,30 +500,26 @@ public class StatusIndicatorView extends View implements OnClickListener {
     
     private void drawHazardIcon(Canvas canvas, float x, float y, float size) {
         // Hazard icon - warning triangle with exclamation mark (inspired by SVG)
-        Paint hazardPaint = new Paint(Paint.ANTI_ALIAS_FLAG);
-        hazardPaint.setColor(indicatorPaint.getColor());
-        hazardPaint.setStyle(Paint.Style.STROKE);
+        Paint hazardPaint = iconPaint(Paint.Style.STROKE);
         hazardPaint.setStrokeWidth(size * 0.08f);
         hazardPaint.setStrokeCap(Paint.Cap.ROUND);
         hazardPaint.setStrokeJoin(Paint.Join.ROUND);
         
         // Draw the warning triangle outline
-        Path trianglePath = new Path();
+        iconPath.reset();
         float triangleHeight = size * 0.6f;
         float triangleWidth = size * 0.5f;
         
         // Triangle points: top, bottom-left, bottom-right
-        trianglePath.moveTo(x, y - triangleHeight * 0.4f);
-        trianglePath.lineTo(x - triangleWidth * 0.5f, y + triangleHeight * 0.3f);
-        trianglePath.lineTo(x + triangleWidth * 0.5f, y + triangleHeight * 0.3f);
-        trianglePath.close();
+        iconPath.moveTo(x, y - triangleHeight * 0.4f);
+        iconPath.lineTo(x - triangleWidth * 0.5f, y + triangleHeight * 0.3f);
+        iconPath.lineTo(x + triangleWidth * 0.5f, y + triangleHeight * 0.3f);
+        iconPath.close();
         
-        canvas.drawPath(trianglePath, hazardPaint);
+        canvas.drawPath(iconPath, hazardPaint);
         
         // Draw the exclamation mark inside
-        Paint exclamationPaint = new Paint(Paint.ANTI_ALIAS_FLAG);
-        exclamationPaint.setColor(indicatorPaint.getColor());
-        exclamationPaint.setStyle(Paint.Style.FILL);
+        Paint exclamationPaint = iconPaint(Paint.Style.FILL);
         
         // Vertical line of exclamation mark
         float lineWidth = size * 0.06f;
@@ -520,9 +534,7 @@ public class StatusIndicatorView extends View implements OnClickListener {
     
     private void drawLeftTurnIcon(Canvas canvas, float x, float y, float size) {
         // Draw a clean left arrow using just the arrow head lines
-        Paint arrowPaint = new Paint(Paint.ANTI_ALIAS_FLAG);
-        arrowPaint.setColor(indicatorPaint.getColor());
-        arrowPaint.setStyle(Paint.Style.STROKE);
+        Paint arrowPaint = iconPaint(Paint.Style.STROKE);
         arrowPaint.setStrokeWidth(size * 0.15f);
         arrowPaint.setStrokeCap(Paint.Cap.ROUND);
         
@@ -535,9 +547,7 @@ public class StatusIndicatorView extends View implements OnClickListener {
     
     private void drawRightTurnIcon(Canvas canvas, float x, float y, float size) {
         // Draw a clean right arrow using just the arrow head lines
-        Paint arrowPaint = new Paint(Paint.ANTI_ALIAS_FLAG);
-        arrowPaint.setColor(indicatorPaint.getColor());
-        arrowPaint.setStyle(Paint.Style.STROKE);
+        Paint arrowPaint = iconPaint(Paint.Style.STROKE);
         arrowPaint.setStrokeWidth(size * 0.15f);
         arrowPaint.setStrokeCap(Paint.Cap.ROUND);
         
@@ -549,25 +559,56 @@ public class StatusIndicatorView extends View implements OnClickListener {
     }
     
     public void setActive(boolean active) {
+        if (active == isActive) {
+            return;
+        }
         this.isActive = active;
-        invalidate();
+        invalidateContent();
     }
     
     public void setLabel(String label) {
+        if (label.equals(this.label)) {
+            return;
+        }
         this.label = label;
-        invalidate();
+        this.iconName = label.toUpperCase();
+        invalidateContent();
     }
     
     public void setActiveColor(int color) {
+        if (color == activeColor) {
+            return;
+        }
         this.activeColor = color;
-        invalidate();
+        // The active color is only visible while active or for always-colored indicators
+        if (isActive || alwaysShowColor) {
+            invalidateContent();
+        }
     }
     
     public void updateThemeColors() {
-        this.activeColor = themeManager.getPrimaryAccentColor();
-        this.inactiveColor = themeManager.getInactiveColor();
-        this.textColor = themeManager.getTextSecondaryColor();
-        invalidate();
+        int newActiveColor = themeManager.getPrimaryAccentColor();
+        int newInactiveColor = themeManager.getInactiveColor();
+        int newTextColor = themeManager.getTextSecondaryColor();
+        if (newActiveColor == activeColor && newInactiveColor == inactiveColor && newTextColor == textColor) {
+            return;
+        }
+        this.activeColor = newActiveColor;
+        this.inactiveColor = newInactiveColor;
+        this.textColor = newTextColor;
+        invalidateContent();
+    }
+    
+    public int getRedrawCount() {
+        return redrawCount;
+    }
+    
+    private void invalidateContent() {
+        if (contentBounds.isEmpty()) {
+            invalidate();
+        } else {
+            invalidate(contentBounds);
+        }
     }
     
     public void updateTheme() {
@@ -577,25 +618,37 @@ public class StatusIndicatorView extends View implements OnClickListener {
     
     
     public void setInactiveColor(int color) {
+        if (color == inactiveColor) {
+            return;
+        }
         this.inactiveColor = color;
-        invalidate();
+        invalidateContent();
     }
     
     public void setAlwaysShowColor(boolean alwaysShowColor) {
+        if (alwaysShowColor == this.alwaysShowColor) {
+            return;
+        }
         this.alwaysShowColor = alwaysShowColor;
-        invalidate();
+        invalidateContent();
     }
     
     public void setTextColor(int color) {
+        if (color == textColor) {
+            return;
+        }
         this.textColor = color;
         textPaint.setColor(color);
-        invalidate();
+        invalidateContent();
     }
     
     public void updateTextSize() {
         // Force text size update to fixed size
+        if (textPaint.getTextSize() == 14) {
+            return;
+        }
         textPaint.setTextSize(14);
-        invalidate();
+        invalidateContent();
     }
     
     public boolean isActive() {
@@ -603,6 +656,9 @@ public class StatusIndicatorView extends View implements OnClickListener {
     }
     
     public void setBlinking(boolean blinking) {
+        if (blinking == isBlinking) {
+            return;
+        }
         this.isBlinking = blinking;
         if (blinking) {
             startBlinking();
@@ -612,46 +668,76 @@ public class StatusIndicatorView extends View implements OnClickListener {
     }
     
     private void startBlinking() {
-        if (blinkRunnable != null) {
-            blinkHandler.removeCallbacks(blinkRunnable);
+        MainThreadScheduler scheduler = MainThreadScheduler.getInstance();
+        if (blinkTask == null) {
+            blinkTask = scheduler.newTask("blink:" + label, new Runnable() {
+                @Override
+                public void run() {
+                    blinkState = !blinkState;
+                    if (isActive) {
+                        invalidateContent();
+                    }
+                }
+            });
         }
         
-        blinkRunnable = new Runnable() {
-            @Override
-            public void run() {
-                blinkState = !blinkState;
-                invalidate();
-                if (isBlinking) {
-                    blinkHandler.postDelayed(this, 500); // Blink every 500ms
-                }
-            }
-        };
-        blinkHandler.post(blinkRunnable);
+        // Show the icon right away, then toggle on the shared 500ms phase so
+        // all blinking indicators flash together and share one wakeup
+        blinkState = true;
+        if (isActive) {
+            invalidateContent();
+        }
+        long now = SystemClock.uptimeMillis();
+        scheduler.schedulePeriodic(blinkTask, BLINK_PERIOD_MS - now % BLINK_PERIOD_MS, BLINK_PERIOD_MS, 0);
     }
     
     private void stopBlinking() {
-        if (blinkRunnable != null) {
-            blinkHandler.removeCallbacks(blinkRunnable);
-            blinkRunnable = null;
+        if (blinkTask != null) {
+            MainThreadScheduler.getInstance().cancel(blinkTask);
+        }
+        if (blinkState && isActive) {
+            invalidateContent();
         }
         blinkState = false;
-        invalidate();
     }
     
     @Override
     protected void onDetachedFromWindow() {
         super.onDetachedFromWindow();
         stopBlinking();
+        if (blinkTask != null) {
+            MainThreadScheduler.getInstance().removeTask(blinkTask);
+            blinkTask = null;
+        }
     }
     
     public interface OnStatusClickListener {
         void onStatusClick(String statusType);
     }
     
+    public interface OnStatusLongClickListener {
+        void onStatusLongClick(String statusType);
+    }
+    
     public void setOnStatusClickListener(OnStatusClickListener listener) {
         this.statusClickListener = listener;
     }
     
+    public void setOnStatusLongClickListener(final OnStatusLongClickListener listener) {
+        if (listener == null) {
+            setOnLongClickListener(null);
+            setLongClickable(false);
+            return;
+        }
+        setOnLongClickListener(new OnLongClickListener() {
+            @Override
+            public boolean onLongClick(View v) {
+                listener.onStatusLongClick(label);
+                return true;
+            }
+        });
+    }
+    
     @Override
     public void onClick(View v) {
         if (statusClickListener != null) {
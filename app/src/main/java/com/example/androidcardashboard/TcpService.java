@@ -3,13 +3,12 @@ package com.example.androidcardashboard;
 import android.content.Context;
 import android.os.Handler;
 import android.os.Looper;
+import android.os.SystemClock;
 import android.util.Log;
 
 import java.io.IOException;
 import java.io.InputStream;
 import java.net.Socket;
-import java.nio.ByteBuffer;
-import java.nio.ByteOrder;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 
@@ -33,6 +32,42 @@ public class TcpService {
     private boolean shouldReconnect = true;
     private String status = "Disconnected";
     
+    // Latest decoded frame, handed to the UI thread by dispatchRunnable.
+    // Frames arriving while a dispatch is pending replace the pending values.
+    private final Object frameLock = new Object();
+    private double latestSpeed;
+    private double latestRpm;
+    private double latestCoolantTemp;
+    private double latestFuelLevel;
+    private boolean latestOilWarning;
+    private double latestBatteryVoltage;
+    private boolean latestDrlOn;
+    private boolean latestLowBeamOn;
+    private boolean latestHighBeamOn;
+    private boolean latestLeftTurnSignal;
+    private boolean latestRightTurnSignal;
+    private boolean latestHazardLights;
+    private boolean latestReverseGear;
+    private String latestLocation = "";
+    private long latestReadNs;
+    private volatile long dispatchedReadNs;
+    private boolean dispatchPending = false;
+    private long lastDispatchTime = 0;
+    private volatile long minDispatchIntervalMs = 0;
+    private volatile long coalescedFrames = 0;
+    private final Metrics.Counter ingestBytes = Metrics.getInstance().counter("tcp.bytes");
+    private final Metrics.Counter ingestReads = Metrics.getInstance().counter("tcp.reads");
+    private final Metrics.Counter ingestFrames = Metrics.getInstance().counter("tcp.frames");
+    private final Metrics.Histogram decodeTime = Metrics.getInstance().histogram("tcp.decode");
+    private final AllocationTracker.Scope decodeAllocations = AllocationTracker.scope("tcp.decode", 0);
+    private final TelemetryDecoder decoder = new TelemetryDecoder(); // Read thread only
+    private final Runnable dispatchRunnable = new Runnable() {
+        @Override
+        public void run() {
+            dispatchLatestFrame();
+        }
+    };
+    
     public interface TcpDataListener {
         void onTcpDataUpdate(double speed, double rpm, double coolantTemp, double fuelLevel, 
                            boolean oilWarning, double batteryVoltage, boolean drlOn, 
@@ -54,7 +89,7 @@ public class TcpService {
     
     private void initializeTcpService() {
         updateStatus(false, "TCP Service ready");
-        EventManager.getInstance().addTcpEvent("Service initialized", "STATUS");
+        EventManager.getInstance().addTcpEvent("Service initialized", EventManager.LEVEL_STATUS);
         connectToServer();
     }
     
@@ -63,7 +98,7 @@ public class TcpService {
         
         isConnecting = true;
         updateStatus(false, "Connecting to ESP32...");
-        EventManager.getInstance().addTcpEvent("Connecting...", "INFO");
+        EventManager.getInstance().addTcpEvent("Connecting...", EventManager.LEVEL_INFO);
         
         executorService.execute(new Runnable() {
             @Override
@@ -80,7 +115,7 @@ public class TcpService {
                     isConnected = true;
                     isConnecting = false;
                     updateStatus(true, "Connected to ESP32");
-                    EventManager.getInstance().addTcpEvent("Connected", "STATUS");
+                    EventManager.getInstance().addTcpEvent("Connected", EventManager.LEVEL_STATUS);
                     
                     // Start receiving data
                     startReceivingData();
@@ -88,7 +123,7 @@ public class TcpService {
                 } catch (IOException e) {
                     Log.e(TAG, "Connection failed", e);
                     updateStatus(false, "Connection failed: " + e.getMessage());
-                    EventManager.getInstance().addTcpEvent("Connection failed", "ERROR");
+                    EventManager.getInstance().addTcpEvent("Connection failed", EventManager.LEVEL_ERROR);
                     isConnecting = false;
                     
                     // Schedule reconnection if enabled
@@ -124,15 +159,29 @@ public class TcpService {
                 
                 while (isConnected && shouldReconnect) {
                     try {
-                        int bytesRead = inputStream.read(buffer);
+                        TraceRecorder.begin("tcp.read");
+                        int bytesRead;
+                        long readNs;
+                        try {
+                            bytesRead = inputStream.read(buffer);
+                            readNs = System.nanoTime();
+                        } finally {
+                            TraceRecorder.end();
+                        }
                         
                 if (bytesRead > 0) {
-                    // Log data reception with timestamp
-                    String timeStr = java.text.DateFormat.getTimeInstance(java.text.DateFormat.MEDIUM).format(new java.util.Date());
-                    String logMessage = String.format("%s | Data received | %d bytes", timeStr, bytesRead);
-                    EventManager.getInstance().addTcpEvent(logMessage, "DATA");
+                    // The event keeps its own timestamp, and the byte count is formatted when shown
+                    EventManager.getInstance().addTcpEvent("Data received | %d bytes", bytesRead, EventManager.LEVEL_DATA);
+                    ingestReads.increment();
+                    ingestBytes.add(bytesRead);
                     
-                    parseBinaryData(buffer, bytesRead);
+                    long decodeStart = System.nanoTime();
+                    TraceRecorder.begin("tcp.decode");
+                    long allocationMark = decodeAllocations.begin();
+                    parseBinaryData(buffer, bytesRead, readNs);
+                    decodeAllocations.end(allocationMark);
+                    TraceRecorder.end();
+                    decodeTime.recordNanos(System.nanoTime() - decodeStart);
                 } else if (bytesRead == -1) {
                             // End of stream - connection closed
                             Log.d(TAG, "Connection closed by server");
@@ -143,7 +192,7 @@ public class TcpService {
                         Log.e(TAG, "Error receiving data", e);
                         if (isConnected) {
                             updateStatus(false, "Data receive error");
-                            EventManager.getInstance().addTcpEvent("Data receive error", "ERROR");
+                            EventManager.getInstance().addTcpEvent("Data receive error", EventManager.LEVEL_ERROR);
                         }
                         break;
                     }
@@ -153,7 +202,7 @@ public class TcpService {
                 if (isConnected) {
                     isConnected = false;
                     updateStatus(false, "Connection lost");
-                    EventManager.getInstance().addTcpEvent("Connection lost", "ERROR");
+                    EventManager.getInstance().addTcpEvent("Connection lost", EventManager.LEVEL_ERROR);
                     
                     if (shouldReconnect) {
                         scheduleReconnect();
@@ -163,109 +212,105 @@ public class TcpService {
         });
     }
     
-    private void parseBinaryData(byte[] data, int length) {
+    private void parseBinaryData(byte[] data, int length, long readNs) {
         try {
-            // Parse data using the same structure as HTTP service
-            double speed = 0.0;
-            double rpm = 0.0; // ESP32 doesn't send RPM
-            double coolantTemp = 0.0;
-            double fuelLevel = 0.0;
-            boolean oilWarning = false;
-            double batteryVoltage = 0.0;
-            boolean drlOn = false;
-            boolean lowBeamOn = false;
-            boolean highBeamOn = false;
-            boolean leftTurnSignal = false;
-            boolean rightTurnSignal = false;
-            boolean hazardLights = false;
-            boolean reverseGear = false;
-            String location = "";
-            
-            int offset = 0;
-            
-            // Parse boolean flags (first byte)
-            if (offset < length) {
-                int boolFlags = data[offset] & 0xFF;
-                reverseGear = (boolFlags & (1 << 0)) != 0;
-                hazardLights = (boolFlags & (1 << 1)) != 0;
-                rightTurnSignal = (boolFlags & (1 << 2)) != 0;
-                leftTurnSignal = (boolFlags & (1 << 3)) != 0;
-                highBeamOn = (boolFlags & (1 << 4)) != 0;
-                lowBeamOn = (boolFlags & (1 << 5)) != 0;
-                drlOn = (boolFlags & (1 << 6)) != 0;
-                oilWarning = (boolFlags & (1 << 7)) != 0;
-                offset++;
-            }
-            
-            // Parse speed (4 bytes, little endian)
-            if (offset + 4 <= length) {
-                int speedInt = ByteBuffer.wrap(data, offset, 4).order(ByteOrder.LITTLE_ENDIAN).getInt();
-                speed = (double) speedInt / 10.0;
-                offset += 4;
-            }
-            
-            // Parse coolant temp (4 bytes, little endian)
-            if (offset + 4 <= length) {
-                int coolantTempInt = ByteBuffer.wrap(data, offset, 4).order(ByteOrder.LITTLE_ENDIAN).getInt();
-                coolantTemp = (double) coolantTempInt / 10.0;
-                offset += 4;
-            }
-            
-            // Parse fuel level (4 bytes, little endian)
-            if (offset + 4 <= length) {
-                int fuelLevelInt = ByteBuffer.wrap(data, offset, 4).order(ByteOrder.LITTLE_ENDIAN).getInt();
-                fuelLevel = (double) fuelLevelInt / 10.0;
-                offset += 4;
-            }
-            
-            // Parse battery voltage (4 bytes, little endian)
-            if (offset + 4 <= length) {
-                int batteryVoltageInt = ByteBuffer.wrap(data, offset, 4).order(ByteOrder.LITTLE_ENDIAN).getInt();
-                batteryVoltage = (double) batteryVoltageInt / 10.0;
-                offset += 4;
-            }
-            
-            // Parse location string (32 bytes, null-terminated)
-            if (offset + 32 <= length) {
-                String locationStr = new String(data, offset, 32).trim();
-                if (locationStr.endsWith("\0")) {
-                    location = locationStr.substring(0, locationStr.indexOf("\0"));
-                } else {
-                    location = locationStr;
-                }
-            }
+            decoder.decode(data, length);
+            ingestFrames.increment();
             
             // Update UI on main thread
             if (dataListener != null) {
-                final double finalSpeed = speed;
-                final double finalRpm = rpm;
-                final double finalCoolantTemp = coolantTemp;
-                final double finalFuelLevel = fuelLevel;
-                final boolean finalOilWarning = oilWarning;
-                final double finalBatteryVoltage = batteryVoltage;
-                final boolean finalDrlOn = drlOn;
-                final boolean finalLowBeamOn = lowBeamOn;
-                final boolean finalHighBeamOn = highBeamOn;
-                final boolean finalLeftTurnSignal = leftTurnSignal;
-                final boolean finalRightTurnSignal = rightTurnSignal;
-                final boolean finalHazardLights = hazardLights;
-                final boolean finalReverseGear = reverseGear;
-                final String finalLocation = location;
-                
-                mainHandler.post(new Runnable() {
-                    @Override
-                    public void run() {
-                        dataListener.onTcpDataUpdate(finalSpeed, finalRpm, finalCoolantTemp, finalFuelLevel, 
-                            finalOilWarning, finalBatteryVoltage, finalDrlOn, finalLowBeamOn, finalHighBeamOn, 
-                            finalLeftTurnSignal, finalRightTurnSignal, finalHazardLights, finalReverseGear, finalLocation);
+                synchronized (frameLock) {
+                    latestSpeed = decoder.getSpeed();
+                    latestRpm = 0.0; // ESP32 doesn't send RPM
+                    latestCoolantTemp = decoder.getCoolantTemp();
+                    latestFuelLevel = decoder.getFuelLevel();
+                    latestOilWarning = decoder.isOilWarning();
+                    latestBatteryVoltage = decoder.getBatteryVoltage();
+                    latestDrlOn = decoder.isDrlOn();
+                    latestLowBeamOn = decoder.isLowBeamOn();
+                    latestHighBeamOn = decoder.isHighBeamOn();
+                    latestLeftTurnSignal = decoder.isLeftTurnSignal();
+                    latestRightTurnSignal = decoder.isRightTurnSignal();
+                    latestHazardLights = decoder.isHazardLights();
+                    latestReverseGear = decoder.isReverseGear();
+                    latestLocation = decoder.getLocation();
+                    latestReadNs = readNs;
+                    
+                    if (dispatchPending) {
+                        // The pending dispatch will pick up these values
+                        coalescedFrames++;
+                    } else {
+                        dispatchPending = true;
+                        long sinceLastDispatch = SystemClock.uptimeMillis() - lastDispatchTime;
+                        long delay = Math.max(0, minDispatchIntervalMs - sinceLastDispatch);
+                        mainHandler.postDelayed(dispatchRunnable, delay);
                     }
-                });
+                }
             }
             
         } catch (Exception e) {
             Log.e(TAG, "Failed to parse binary data", e);
-            EventManager.getInstance().addTcpEvent("Binary data parse error", "ERROR");
+            EventManager.getInstance().addTcpEvent("Binary data parse error", EventManager.LEVEL_ERROR);
+        }
+    }
+    
+    private void dispatchLatestFrame() {
+        TraceRecorder.begin("main.dispatch");
+        double speed, rpm, coolantTemp, fuelLevel, batteryVoltage;
+        boolean oilWarning, drlOn, lowBeamOn, highBeamOn, leftTurnSignal, rightTurnSignal, hazardLights, reverseGear;
+        String location;
+        synchronized (frameLock) {
+            speed = latestSpeed;
+            rpm = latestRpm;
+            coolantTemp = latestCoolantTemp;
+            fuelLevel = latestFuelLevel;
+            oilWarning = latestOilWarning;
+            batteryVoltage = latestBatteryVoltage;
+            drlOn = latestDrlOn;
+            lowBeamOn = latestLowBeamOn;
+            highBeamOn = latestHighBeamOn;
+            leftTurnSignal = latestLeftTurnSignal;
+            rightTurnSignal = latestRightTurnSignal;
+            hazardLights = latestHazardLights;
+            reverseGear = latestReverseGear;
+            location = latestLocation;
+            dispatchedReadNs = latestReadNs;
+            dispatchPending = false;
+            lastDispatchTime = SystemClock.uptimeMillis();
+        }
+        
+        if (dataListener != null) {
+            dataListener.onTcpDataUpdate(speed, rpm, coolantTemp, fuelLevel, oilWarning, batteryVoltage,
+                drlOn, lowBeamOn, highBeamOn, leftTurnSignal, rightTurnSignal, hazardLights, reverseGear, location);
         }
+        TraceRecorder.end();
+    }
+    
+    /**
+     * Limit how often telemetry frames reach the UI thread. Frames arriving
+     * faster are coalesced into the next dispatch. 0 dispatches every frame.
+     */
+    public void setMinDispatchIntervalMs(long intervalMs) {
+        this.minDispatchIntervalMs = intervalMs;
+    }
+    
+    public long getCoalescedFrameCount() {
+        return coalescedFrames;
+    }
+    
+    /**
+     * System.nanoTime() when the frame last handed to the listener was read
+     * from the socket
+     */
+    public long getDispatchedReadNs() {
+        return dispatchedReadNs;
+    }
+    
+    /**
+     * Frames decoded since start, including coalesced ones
+     */
+    public long getIngestedFrameCount() {
+        return ingestFrames.get();
     }
     
     private void updateStatus(boolean connected, String status) {
@@ -301,7 +346,7 @@ public class TcpService {
         }
         
         updateStatus(false, "Disconnected");
-        EventManager.getInstance().addTcpEvent("Disconnected", "STATUS");
+        EventManager.getInstance().addTcpEvent("Disconnected", EventManager.LEVEL_STATUS);
     }
     
     public boolean isConnected() {
@@ -323,6 +368,7 @@ public class TcpService {
     
     public void cleanup() {
         disconnect();
+        mainHandler.removeCallbacks(dispatchRunnable);
         if (executorService != null && !executorService.isShutdown()) {
             executorService.shutdown();
         }
@@ -0,0 +1,154 @@
+package com.example.androidcardashboard;
+
+import java.nio.charset.Charset;
+
+/**
+ * Decodes the ESP32's binary telemetry frame: a flags byte, speed, coolant
+ * temperature, fuel level and battery voltage as little-endian ints in
+ * tenths, then a 32-byte NUL-padded location. Fields missing from a short
+ * frame are zero.
+ *
+ * Values are read in place, and the location String is only made again when
+ * its bytes change, so decoding a frame allocates nothing in the usual case.
+ * Not thread safe; the values are valid until the next decode().
+ */
+public class TelemetryDecoder {
+    public static final int LOCATION_BYTES = 32;
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+    
+    private double speed;
+    private double coolantTemp;
+    private double fuelLevel;
+    private double batteryVoltage;
+    private boolean oilWarning;
+    private boolean drlOn;
+    private boolean lowBeamOn;
+    private boolean highBeamOn;
+    private boolean leftTurnSignal;
+    private boolean rightTurnSignal;
+    private boolean hazardLights;
+    private boolean reverseGear;
+    private String location = "";
+    
+    // Bytes the current location was decoded from
+    private final byte[] locationBytes = new byte[LOCATION_BYTES];
+    private int locationLength = 0;
+    
+    public void decode(byte[] data, int length) {
+        int offset = 0;
+        
+        int flags = offset < length ? data[offset++] & 0xFF : 0;
+        reverseGear = (flags & (1 << 0)) != 0;
+        hazardLights = (flags & (1 << 1)) != 0;
+        rightTurnSignal = (flags & (1 << 2)) != 0;
+        leftTurnSignal = (flags & (1 << 3)) != 0;
+        highBeamOn = (flags & (1 << 4)) != 0;
+        lowBeamOn = (flags & (1 << 5)) != 0;
+        drlOn = (flags & (1 << 6)) != 0;
+        oilWarning = (flags & (1 << 7)) != 0;
+        
+        speed = readTenths(data, offset, length);
+        offset += 4;
+        coolantTemp = readTenths(data, offset, length);
+        offset += 4;
+        fuelLevel = readTenths(data, offset, length);
+        offset += 4;
+        batteryVoltage = readTenths(data, offset, length);
+        offset += 4;
+        
+        if (offset + LOCATION_BYTES <= length) {
+            decodeLocation(data, offset);
+        } else {
+            setLocation(data, offset, 0);
+        }
+    }
+    
+    /**
+     * Little-endian int in tenths, 0 past the end of the frame
+     */
+    private static double readTenths(byte[] data, int offset, int length) {
+        if (offset + 4 > length) {
+            return 0.0;
+        }
+        int value = (data[offset] & 0xFF)
+            | (data[offset + 1] & 0xFF) << 8
+            | (data[offset + 2] & 0xFF) << 16
+            | (data[offset + 3] & 0xFF) << 24;
+        return value / 10.0;
+    }
+    
+    private void decodeLocation(byte[] data, int offset) {
+        int end = 0;
+        while (end < LOCATION_BYTES && data[offset + end] != 0) {
+            end++;
+        }
+        setLocation(data, offset, end);
+    }
+    
+    private void setLocation(byte[] data, int offset, int count) {
+        if (count == locationLength) {
+            boolean same = true;
+            for (int i = 0; i < count && same; i++) {
+                same = data[offset + i] == locationBytes[i];
+            }
+            if (same) {
+                return;
+            }
+        }
+        System.arraycopy(data, offset, locationBytes, 0, count);
+        locationLength = count;
+        location = count > 0 ? new String(data, offset, count, UTF_8).trim() : "";
+    }
+    
+    public double getSpeed() {
+        return speed;
+    }
+    
+    public double getCoolantTemp() {
+        return coolantTemp;
+    }
+    
+    public double getFuelLevel() {
+        return fuelLevel;
+    }
+    
+    public double getBatteryVoltage() {
+        return batteryVoltage;
+    }
+    
+    public boolean isOilWarning() {
+        return oilWarning;
+    }
+    
+    public boolean isDrlOn() {
+        return drlOn;
+    }
+    
+    public boolean isLowBeamOn() {
+        return lowBeamOn;
+    }
+    
+    public boolean isHighBeamOn() {
+        return highBeamOn;
+    }
+    
+    public boolean isLeftTurnSignal() {
+        return leftTurnSignal;
+    }
+    
+    public boolean isRightTurnSignal() {
+        return rightTurnSignal;
+    }
+    
+    public boolean isHazardLights() {
+        return hazardLights;
+    }
+    
+    public boolean isReverseGear() {
+        return reverseGear;
+    }
+    
+    public String getLocation() {
+        return location;
+    }
+}
@@ -0,0 +1,139 @@
+package com.example.androidcardashboard;
+
+/**
+ * Reusable char buffer for text that changes every frame, such as the speed
+ * readout. Numbers are formatted in place, so once the buffer is large
+ * enough nothing is allocated; draw it with Canvas.drawText(char[], ...).
+ * Decimals always use a point.
+ */
+public class TextBuffer {
+    private static final long[] POWERS_OF_TEN = {1, 10, 100, 1000, 10000, 100000, 1000000};
+    
+    private char[] chars;
+    private int length = 0;
+    
+    public TextBuffer(int capacity) {
+        chars = new char[capacity];
+    }
+    
+    public TextBuffer clear() {
+        length = 0;
+        return this;
+    }
+    
+    public TextBuffer append(char c) {
+        ensureCapacity(1);
+        chars[length++] = c;
+        return this;
+    }
+    
+    public TextBuffer append(String text) {
+        ensureCapacity(text.length());
+        text.getChars(0, text.length(), chars, length);
+        length += text.length();
+        return this;
+    }
+    
+    public TextBuffer append(long value) {
+        if (value == Long.MIN_VALUE) {
+            return append("-9223372036854775808");
+        }
+        if (value < 0) {
+            append('-');
+            value = -value;
+        }
+        int digits = 1;
+        for (long rest = value / 10; rest > 0; rest /= 10) {
+            digits++;
+        }
+        ensureCapacity(digits);
+        for (int i = length + digits - 1; i >= length; i--) {
+            chars[i] = (char) ('0' + value % 10);
+            value /= 10;
+        }
+        length += digits;
+        return this;
+    }
+    
+    /**
+     * Number with a fixed count of decimals, at most 6, rounded half up
+     */
+    public TextBuffer append(double value, int decimals) {
+        if (Double.isNaN(value) || Double.isInfinite(value)) {
+            return append("--");
+        }
+        long scale = POWERS_OF_TEN[decimals];
+        long scaled = Math.round(Math.abs(value) * scale);
+        if (value < 0 && scaled != 0) {
+            append('-');
+        }
+        append(scaled / scale);
+        if (decimals > 0) {
+            append('.');
+            long fraction = scaled % scale;
+            for (long digit = scale / 10; digit > 0; digit /= 10) {
+                append((char) ('0' + fraction / digit % 10));
+            }
+        }
+        return this;
+    }
+    
+    /**
+     * Replace the text with a copy of another buffer's
+     */
+    public TextBuffer set(TextBuffer other) {
+        length = 0;
+        ensureCapacity(other.length);
+        System.arraycopy(other.chars, 0, chars, 0, other.length);
+        length = other.length;
+        return this;
+    }
+    
+    public boolean contentEquals(TextBuffer other) {
+        if (other.length != length) {
+            return false;
+        }
+        for (int i = 0; i < length; i++) {
+            if (chars[i] != other.chars[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+    
+    public boolean contentEquals(String text) {
+        if (text.length() != length) {
+            return false;
+        }
+        for (int i = 0; i < length; i++) {
+            if (chars[i] != text.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+    
+    /**
+     * The text, valid up to length(); may be replaced when the text grows
+     */
+    public char[] chars() {
+        return chars;
+    }
+    
+    public int length() {
+        return length;
+    }
+    
+    @Override
+    public String toString() {
+        return new String(chars, 0, length);
+    }
+    
+    private void ensureCapacity(int more) {
+        if (length + more > chars.length) {
+            char[] larger = new char[Math.max(chars.length * 2, length + more)];
+            System.arraycopy(chars, 0, larger, 0, length);
+            chars = larger;
+        }
+    }
+}
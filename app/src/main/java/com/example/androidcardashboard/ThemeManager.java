@@ -44,21 +44,57 @@ public class ThemeManager {
     }
     
     public void cycleTheme() {
+        currentTheme = getNextTheme();
+        preloadFonts();
+    }
+    
+    public ThemeType getNextTheme() {
         switch (currentTheme) {
             case MINIMAL:
-                currentTheme = ThemeType.LINUX;
-                break;
+                return ThemeType.LINUX;
             case LINUX:
-                currentTheme = ThemeType.ANALOG;
-                break;
+                return ThemeType.ANALOG;
             case ANALOG:
-                currentTheme = ThemeType.MINIMAL;
-                break;
+                return ThemeType.MINIMAL;
+            default:
+                return ThemeType.MINIMAL;
         }
     }
     
     public void setTheme(ThemeType theme) {
         this.currentTheme = theme;
+        preloadFonts();
+    }
+    
+    /**
+     * Font assets used by a theme (themes using system fonts return an empty array)
+     */
+    public static String[] getFontAssets(ThemeType theme) {
+        switch (theme) {
+            case LINUX:
+                return new String[] {
+                    FontManager.FIRA_CODE_REGULAR,
+                    FontManager.FIRA_CODE_BOLD,
+                    FontManager.FIRA_CODE_MEDIUM
+                };
+            default:
+                return new String[0];
+        }
+    }
+    
+    /**
+     * Decode the fonts of the active and next theme in the background and
+     * pin them so memory pressure only evicts fonts no theme is about to use.
+     */
+    public void preloadFonts() {
+        String[] currentFonts = getFontAssets(currentTheme);
+        String[] nextFonts = getFontAssets(getNextTheme());
+        String[] fonts = new String[currentFonts.length + nextFonts.length];
+        System.arraycopy(currentFonts, 0, fonts, 0, currentFonts.length);
+        System.arraycopy(nextFonts, 0, fonts, currentFonts.length, nextFonts.length);
+        
+        fontManager.setPinnedFonts(fonts);
+        fontManager.preloadFonts(fonts);
     }
     
     // Color schemes for different themes
@@ -0,0 +1,298 @@
+package com.example.androidcardashboard;
+
+/**
+ * Streaming, time-weighted statistics of one signal over the whole trip and
+ * over sliding windows. Each sample holds its value until the next sample
+ * (at most maxHoldMs, so data gaps do not count), which makes the results
+ * independent of the frame rate. Updates are O(1); every window uses a fixed
+ * ring of buckets, so its edge moves in steps of windowMs / BUCKETS.
+ */
+public class TimeWeightedStats {
+    private static final int BUCKETS = 60;
+    
+    private final long maxHoldMs;
+    private final Accumulator trip = new Accumulator();
+    private final SlidingWindow[] windows;
+    
+    private boolean hasSample = false;
+    private long lastTime;
+    private double lastValue;
+    // Values are accumulated relative to the first sample to keep the sums small
+    private double shift;
+    
+    public TimeWeightedStats(long maxHoldMs, long... windowLengthsMs) {
+        this.maxHoldMs = maxHoldMs;
+        windows = new SlidingWindow[windowLengthsMs.length];
+        for (int i = 0; i < windowLengthsMs.length; i++) {
+            windows[i] = new SlidingWindow(windowLengthsMs[i]);
+        }
+    }
+    
+    public void add(long timestampMs, double value) {
+        if (!hasSample) {
+            shift = value;
+        } else if (timestampMs > lastTime) {
+            // The previous value held from its sample until this one
+            long end = Math.min(timestampMs, lastTime + maxHoldMs);
+            addSegment(lastTime, end, lastValue - shift);
+        }
+        
+        double shifted = value - shift;
+        trip.addExtremes(shifted);
+        for (int i = 0; i < windows.length; i++) {
+            windows[i].advanceTo(timestampMs);
+            windows[i].currentBucket().addExtremes(shifted);
+        }
+        
+        hasSample = true;
+        lastTime = Math.max(lastTime, timestampMs);
+        lastValue = value;
+    }
+    
+    private void addSegment(long start, long end, double shiftedValue) {
+        if (end <= start) {
+            return;
+        }
+        trip.addWeighted(end - start, shiftedValue);
+        for (int i = 0; i < windows.length; i++) {
+            windows[i].addSegment(start, end, shiftedValue);
+        }
+    }
+    
+    /**
+     * Drop window buckets that are older than the given time, e.g. before a
+     * query when no samples arrived for a while
+     */
+    public void advanceTo(long timestampMs) {
+        for (int i = 0; i < windows.length; i++) {
+            windows[i].advanceTo(timestampMs);
+        }
+    }
+    
+    public void reset() {
+        hasSample = false;
+        lastTime = 0;
+        trip.clear();
+        for (int i = 0; i < windows.length; i++) {
+            windows[i].clear();
+        }
+    }
+    
+    // Whole trip
+    
+    public double getMean() {
+        return trip.mean(shift);
+    }
+    
+    public double getVariance() {
+        return trip.variance();
+    }
+    
+    public double getMin() {
+        return trip.min(shift);
+    }
+    
+    public double getMax() {
+        return trip.max(shift);
+    }
+    
+    /**
+     * Time covered by the statistics, in milliseconds
+     */
+    public long getDurationMs() {
+        return (long) trip.weight.value();
+    }
+    
+    // Sliding windows, by index in the constructor's window list
+    
+    public double getWindowMean(int window) {
+        return windows[window].total.mean(shift);
+    }
+    
+    public double getWindowVariance(int window) {
+        return windows[window].total.variance();
+    }
+    
+    public double getWindowMin(int window) {
+        return windows[window].min(shift);
+    }
+    
+    public double getWindowMax(int window) {
+        return windows[window].max(shift);
+    }
+    
+    /**
+     * Neumaier-compensated running sum, supports adding negative terms
+     */
+    static final class CompensatedSum {
+        private double sum;
+        private double compensation;
+        
+        void add(double term) {
+            double total = sum + term;
+            if (Math.abs(sum) >= Math.abs(term)) {
+                compensation += (sum - total) + term;
+            } else {
+                compensation += (term - total) + sum;
+            }
+            sum = total;
+        }
+        
+        double value() {
+            return sum + compensation;
+        }
+        
+        void clear() {
+            sum = 0;
+            compensation = 0;
+        }
+    }
+    
+    /**
+     * Weighted sums of shifted values plus extremes
+     */
+    static final class Accumulator {
+        final CompensatedSum weight = new CompensatedSum();
+        final CompensatedSum sum = new CompensatedSum();
+        final CompensatedSum sumSquares = new CompensatedSum();
+        double min = Double.POSITIVE_INFINITY;
+        double max = Double.NEGATIVE_INFINITY;
+        
+        void addWeighted(double w, double shiftedValue) {
+            weight.add(w);
+            sum.add(w * shiftedValue);
+            sumSquares.add(w * shiftedValue * shiftedValue);
+        }
+        
+        void addExtremes(double shiftedValue) {
+            min = Math.min(min, shiftedValue);
+            max = Math.max(max, shiftedValue);
+        }
+        
+        void addSums(Accumulator other, double sign) {
+            weight.add(sign * other.weight.value());
+            sum.add(sign * other.sum.value());
+            sumSquares.add(sign * other.sumSquares.value());
+        }
+        
+        double mean(double shift) {
+            double w = weight.value();
+            return w > 0 ? shift + sum.value() / w : Double.NaN;
+        }
+        
+        double variance() {
+            double w = weight.value();
+            if (w <= 0) {
+                return Double.NaN;
+            }
+            double mean = sum.value() / w;
+            return Math.max(0, sumSquares.value() / w - mean * mean);
+        }
+        
+        double min(double shift) {
+            return min == Double.POSITIVE_INFINITY ? Double.NaN : shift + min;
+        }
+        
+        double max(double shift) {
+            return max == Double.NEGATIVE_INFINITY ? Double.NaN : shift + max;
+        }
+        
+        void clear() {
+            weight.clear();
+            sum.clear();
+            sumSquares.clear();
+            min = Double.POSITIVE_INFINITY;
+            max = Double.NEGATIVE_INFINITY;
+        }
+    }
+    
+    /**
+     * Ring of BUCKETS accumulators covering lengthMs, with a running total
+     * of the sums so mean and variance are O(1) to read
+     */
+    static final class SlidingWindow {
+        final long bucketMs;
+        final Accumulator[] buckets = new Accumulator[BUCKETS];
+        final Accumulator total = new Accumulator();
+        long newestBucket = Long.MIN_VALUE;
+        
+        SlidingWindow(long lengthMs) {
+            bucketMs = Math.max(1, lengthMs / BUCKETS);
+            for (int i = 0; i < BUCKETS; i++) {
+                buckets[i] = new Accumulator();
+            }
+        }
+        
+        Accumulator currentBucket() {
+            return buckets[(int) (newestBucket % BUCKETS)];
+        }
+        
+        void advanceTo(long timestampMs) {
+            long bucket = timestampMs / bucketMs;
+            if (newestBucket == Long.MIN_VALUE) {
+                newestBucket = bucket;
+                return;
+            }
+            if (bucket <= newestBucket) {
+                return;
+            }
+            if (bucket - newestBucket >= BUCKETS) {
+                clear();
+                newestBucket = bucket;
+                return;
+            }
+            // Expire the buckets that are reused for the new time range
+            while (newestBucket < bucket) {
+                newestBucket++;
+                Accumulator expired = buckets[(int) (newestBucket % BUCKETS)];
+                total.addSums(expired, -1);
+                expired.clear();
+            }
+            if (total.weight.value() == 0) {
+                // Weights are whole milliseconds and cancel exactly, clear rounding left in the other sums
+                total.clear();
+            }
+        }
+        
+        void addSegment(long start, long end, double shiftedValue) {
+            if (newestBucket == Long.MIN_VALUE) {
+                advanceTo(start);
+            }
+            // Ignore the part that is already outside the window
+            start = Math.max(start, (newestBucket - BUCKETS + 1) * bucketMs);
+            while (start < end) {
+                long bucket = start / bucketMs;
+                long segmentEnd = Math.min(end, (bucket + 1) * bucketMs);
+                advanceTo(start);
+                Accumulator target = buckets[(int) (bucket % BUCKETS)];
+                target.addWeighted(segmentEnd - start, shiftedValue);
+                total.addWeighted(segmentEnd - start, shiftedValue);
+                start = segmentEnd;
+            }
+        }
+        
+        double min(double shift) {
+            double min = Double.POSITIVE_INFINITY;
+            for (int i = 0; i < BUCKETS; i++) {
+                min = Math.min(min, buckets[i].min);
+            }
+            return min == Double.POSITIVE_INFINITY ? Double.NaN : shift + min;
+        }
+        
+        double max(double shift) {
+            double max = Double.NEGATIVE_INFINITY;
+            for (int i = 0; i < BUCKETS; i++) {
+                max = Math.max(max, buckets[i].max);
+            }
+            return max == Double.NEGATIVE_INFINITY ? Double.NaN : shift + max;
+        }
+        
+        void clear() {
+            for (int i = 0; i < BUCKETS; i++) {
+                buckets[i].clear();
+            }
+            total.clear();
+            newestBucket = Long.MIN_VALUE;
+        }
+    }
+}
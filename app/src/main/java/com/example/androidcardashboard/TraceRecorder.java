@@ -0,0 +1,261 @@
+package com.example.androidcardashboard;
+
+import android.util.Log;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.lang.ref.WeakReference;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Begin/end trace markers across threads, exported as Chrome trace-event
+ * JSON (chrome://tracing, ui.perfetto.dev).
+ *
+ * Each thread records into its own preallocated ring, so recording takes no
+ * lock and allocates nothing once the ring exists; the oldest events are
+ * overwritten. Where android.os.Trace exists (API 18+), the markers also
+ * go to systrace. When tracing is off, begin() and end() only read one
+ * volatile flag, and end() a counter of the systrace sections still open.
+ *
+ * Markers must nest on each thread: every begin() needs an end() on the
+ * same thread, also on exceptions.
+ */
+public final class TraceRecorder {
+    private static final String TAG = "TraceRecorder";
+    
+    private static final int RING_CAPACITY = 8192; // Events per thread, power of two
+    private static final int MAX_THREADS = 16;
+    
+    private static volatile boolean enabled = false;
+    private static volatile long startNs;
+    // Sections opened in systrace and not closed yet, on all threads
+    private static final AtomicInteger openSystemSections = new AtomicInteger();
+    
+    private static final List<ThreadRing> rings = new ArrayList<>();
+    private static final ThreadLocal<ThreadRing> currentRing = new ThreadLocal<ThreadRing>() {
+        @Override
+        protected ThreadRing initialValue() {
+            ThreadRing ring = new ThreadRing(Thread.currentThread());
+            register(ring);
+            return ring;
+        }
+    };
+    
+    // android.os.Trace, null below API 18
+    private static final Method systemBegin;
+    private static final Method systemEnd;
+    
+    static {
+        Method begin = null;
+        Method end = null;
+        try {
+            Class<?> trace = Class.forName("android.os.Trace");
+            begin = trace.getMethod("beginSection", String.class);
+            end = trace.getMethod("endSection");
+        } catch (Exception e) {
+            // Older platform or plain JVM, only the rings are used
+        }
+        systemBegin = begin;
+        systemEnd = end;
+    }
+    
+    /**
+     * Events of one thread. Only that thread writes; the exporter reads the
+     * count before and after copying and drops what was overwritten meanwhile.
+     */
+    static final class ThreadRing {
+        final WeakReference<Thread> thread;
+        final String threadName;
+        final long threadId;
+        final long[] times = new long[RING_CAPACITY];
+        final String[] names = new String[RING_CAPACITY]; // null for an end
+        final Object[] sectionArgs = new Object[1];
+        int systemDepth = 0;
+        volatile long written = 0;
+        
+        ThreadRing(Thread owner) {
+            thread = new WeakReference<>(owner);
+            threadName = owner.getName();
+            threadId = owner.getId();
+        }
+        
+        void add(String name) {
+            long index = written;
+            int slot = (int) (index & (RING_CAPACITY - 1));
+            times[slot] = System.nanoTime();
+            names[slot] = name;
+            written = index + 1;
+        }
+    }
+    
+    private TraceRecorder() {
+    }
+    
+    /**
+     * Start recording, events from an earlier recording are not exported
+     */
+    public static void start() {
+        startNs = System.nanoTime();
+        enabled = true;
+        Log.i(TAG, "Tracing started");
+    }
+    
+    public static void stop() {
+        enabled = false;
+        Log.i(TAG, "Tracing stopped");
+    }
+    
+    public static boolean isEnabled() {
+        return enabled;
+    }
+    
+    public static void begin(String name) {
+        if (!enabled) {
+            return;
+        }
+        ThreadRing ring = currentRing.get();
+        ring.add(name);
+        if (systemBegin != null) {
+            ring.sectionArgs[0] = name;
+            try {
+                systemBegin.invoke(null, ring.sectionArgs);
+                ring.systemDepth++;
+                openSystemSections.incrementAndGet();
+            } catch (Exception e) {
+                // Not traceable, the ring still has the marker
+            }
+        }
+    }
+    
+    public static void end() {
+        ThreadRing ring;
+        if (enabled) {
+            ring = currentRing.get();
+            ring.add(null);
+        } else {
+            // Stopped while sections were open, they still need closing
+            if (openSystemSections.get() == 0) {
+                return;
+            }
+            ring = currentRing.get();
+        }
+        // Only close sections this recording opened, systrace needs them balanced
+        if (systemEnd != null && ring.systemDepth > 0) {
+            ring.systemDepth--;
+            openSystemSections.decrementAndGet();
+            try {
+                systemEnd.invoke(null);
+            } catch (Exception e) {
+                // Ignored as in begin()
+            }
+        }
+    }
+    
+    private static void register(ThreadRing ring) {
+        synchronized (rings) {
+            if (rings.size() >= MAX_THREADS) {
+                // Make room by dropping a finished thread's events
+                for (int i = 0; i < rings.size(); i++) {
+                    Thread owner = rings.get(i).thread.get();
+                    if (owner == null || !owner.isAlive()) {
+                        rings.remove(i);
+                        break;
+                    }
+                }
+            }
+            if (rings.size() < MAX_THREADS) {
+                rings.add(ring);
+            }
+        }
+    }
+    
+    /**
+     * Write the recorded events of all threads as trace-event JSON. May run
+     * on any thread while recording continues.
+     * @param pid process id to show the threads under
+     * @return number of events written
+     */
+    public static int export(File file, int pid) throws IOException {
+        Writer out = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(file), "UTF-8"), 64 * 1024);
+        try {
+            return export(out, pid);
+        } finally {
+            out.close();
+        }
+    }
+    
+    static int export(Writer out, int pid) throws IOException {
+        List<ThreadRing> threads;
+        synchronized (rings) {
+            threads = new ArrayList<>(rings);
+        }
+        long since = startNs;
+        long[] times = new long[RING_CAPACITY];
+        String[] names = new String[RING_CAPACITY];
+        int events = 0;
+        boolean first = true;
+        
+        out.write("{\"displayTimeUnit\":\"ms\",\"traceEvents\":[\n");
+        for (int t = 0; t < threads.size(); t++) {
+            ThreadRing ring = threads.get(t);
+            out.write(first ? "" : ",\n");
+            first = false;
+            out.write("{\"name\":\"thread_name\",\"ph\":\"M\",\"pid\":" + pid + ",\"tid\":" + ring.threadId
+                + ",\"args\":{\"name\":\"" + escape(ring.threadName) + "\"}}");
+            
+            // Copy, then keep only what the thread didn't overwrite during the copy
+            long end = ring.written;
+            long begin = Math.max(0, end - RING_CAPACITY);
+            for (long i = begin; i < end; i++) {
+                int slot = (int) (i & (RING_CAPACITY - 1));
+                times[(int) (i - begin)] = ring.times[slot];
+                names[(int) (i - begin)] = ring.names[slot];
+            }
+            // The slot of the next index may be half written already
+            long valid = Math.max(begin, ring.written + 1 - RING_CAPACITY);
+            
+            // Ends whose begin was overwritten or predates the recording are left out
+            int depth = 0;
+            for (long i = valid; i < end; i++) {
+                int index = (int) (i - begin);
+                if (times[index] < since) {
+                    continue;
+                }
+                String name = names[index];
+                if (name == null && depth == 0) {
+                    continue;
+                }
+                depth += name != null ? 1 : -1;
+                out.write(",\n{\"ph\":\"");
+                out.write(name != null ? "B" : "E");
+                out.write("\",\"ts\":");
+                out.write(formatMicros(times[index] - since));
+                out.write(",\"pid\":" + pid + ",\"tid\":" + ring.threadId);
+                if (name != null) {
+                    out.write(",\"name\":\"");
+                    out.write(escape(name));
+                    out.write('"');
+                }
+                out.write('}');
+                events++;
+            }
+        }
+        out.write("\n]}\n");
+        return events;
+    }
+    
+    private static String formatMicros(long nanos) {
+        return (nanos / 1000) + "." + String.format("%03d", nanos % 1000);
+    }
+    
+    private static String escape(String text) {
+        return text.replace("\\", "\\\\").replace("\"", "\\\"");
+    }
+}
@@ -0,0 +1,182 @@
+package com.example.androidcardashboard;
+
+/**
+ * Streaming, error-bounded track simplification (sliding-window variant of
+ * Douglas-Peucker). Points after the last kept point are buffered while the
+ * segment from the kept point to the newest point stays within toleranceM of
+ * every buffered point; when it no longer does, or maxLookahead points are
+ * buffered, the previous point is kept and becomes the new anchor. Kept
+ * points are appended to the output history, at most maxLookahead samples late.
+ *
+ * Every dropped point lies within toleranceM of the kept polyline. Distances
+ * use a local equirectangular projection around the anchor, which is exact
+ * enough over the few hundred metres a window spans.
+ */
+public class TrackSimplifier {
+    private static final double METRES_PER_DEG = DistanceKernel.EARTH_RADIUS_KM * 1000.0 * Math.PI / 180.0;
+    
+    private final LocationHistory output;
+    private final double toleranceM;
+    private final int maxLookahead;
+    
+    // Window: slot 0 is the anchor (last kept point), then the buffered points
+    private final double[] latitudes;
+    private final double[] longitudes;
+    private final long[] timestamps;
+    private final double[] speeds;
+    private final double[] temperatures;
+    private final double[] fuelLevels;
+    private final double[] x; // Metres east of the anchor
+    private final double[] y; // Metres north of the anchor
+    private int count = 0;
+    private double anchorCos;
+    
+    // Deviation of the buffered points from the segment anchor -> newest point
+    private double windowDeviationM = 0;
+    
+    private long inputCount = 0;
+    private long outputCount = 0;
+    private double maxDeviationM = 0;
+    
+    public TrackSimplifier(LocationHistory output, double toleranceM, int maxLookahead) {
+        this.output = output;
+        this.toleranceM = toleranceM;
+        this.maxLookahead = Math.max(2, maxLookahead);
+        int capacity = this.maxLookahead + 1;
+        latitudes = new double[capacity];
+        longitudes = new double[capacity];
+        timestamps = new long[capacity];
+        speeds = new double[capacity];
+        temperatures = new double[capacity];
+        fuelLevels = new double[capacity];
+        x = new double[capacity];
+        y = new double[capacity];
+    }
+    
+    public void add(double latitude, double longitude, long timestamp,
+                    double speed, double temperature, double fuelLevel) {
+        inputCount++;
+        if (count == 0) {
+            // First point of the track is always kept
+            put(0, latitude, longitude, timestamp, speed, temperature, fuelLevel);
+            setAnchor();
+            emit(0);
+            count = 1;
+            return;
+        }
+        
+        double px = (longitude - longitudes[0]) * anchorCos * METRES_PER_DEG;
+        double py = (latitude - latitudes[0]) * METRES_PER_DEG;
+        if (count <= maxLookahead) {
+            double deviation = maxDeviation(px, py);
+            if (deviation <= toleranceM) {
+                put(count, latitude, longitude, timestamp, speed, temperature, fuelLevel);
+                x[count] = px;
+                y[count] = py;
+                count++;
+                windowDeviationM = deviation;
+                return;
+            }
+        }
+        
+        // The newest point breaks the bound, keep the one before it and start over from there
+        keepNewest();
+        put(1, latitude, longitude, timestamp, speed, temperature, fuelLevel);
+        x[1] = (longitude - longitudes[0]) * anchorCos * METRES_PER_DEG;
+        y[1] = (latitude - latitudes[0]) * METRES_PER_DEG;
+        count = 2;
+        windowDeviationM = 0;
+    }
+    
+    /**
+     * Keep the newest buffered point now, e.g. before the track is exported
+     */
+    public void flush() {
+        if (count > 1) {
+            keepNewest();
+            count = 1;
+            windowDeviationM = 0;
+        }
+    }
+    
+    public void reset() {
+        count = 0;
+        windowDeviationM = 0;
+        inputCount = 0;
+        outputCount = 0;
+        maxDeviationM = 0;
+    }
+    
+    private void keepNewest() {
+        int newest = count - 1;
+        maxDeviationM = Math.max(maxDeviationM, windowDeviationM);
+        emit(newest);
+        put(0, latitudes[newest], longitudes[newest], timestamps[newest],
+            speeds[newest], temperatures[newest], fuelLevels[newest]);
+        setAnchor();
+    }
+    
+    /**
+     * Largest distance from the buffered points to the segment anchor -> (px, py)
+     */
+    private double maxDeviation(double px, double py) {
+        double lengthSquared = px * px + py * py;
+        double max = 0;
+        for (int i = 1; i < count; i++) {
+            double t = lengthSquared > 0 ? (x[i] * px + y[i] * py) / lengthSquared : 0;
+            t = Math.max(0, Math.min(1, t));
+            double dx = x[i] - t * px;
+            double dy = y[i] - t * py;
+            max = Math.max(max, Math.sqrt(dx * dx + dy * dy));
+        }
+        return max;
+    }
+    
+    private void setAnchor() {
+        anchorCos = Math.cos(Math.toRadians(latitudes[0]));
+        x[0] = 0;
+        y[0] = 0;
+    }
+    
+    private void put(int slot, double latitude, double longitude, long timestamp,
+                     double speed, double temperature, double fuelLevel) {
+        latitudes[slot] = latitude;
+        longitudes[slot] = longitude;
+        timestamps[slot] = timestamp;
+        speeds[slot] = speed;
+        temperatures[slot] = temperature;
+        fuelLevels[slot] = fuelLevel;
+    }
+    
+    private void emit(int slot) {
+        output.append(latitudes[slot], longitudes[slot], timestamps[slot],
+                      speeds[slot], temperatures[slot], fuelLevels[slot]);
+        outputCount++;
+    }
+    
+    public long getInputCount() {
+        return inputCount;
+    }
+    
+    public long getOutputCount() {
+        return outputCount;
+    }
+    
+    /**
+     * Input points per kept point, 1 when nothing was dropped yet
+     */
+    public double getCompressionRatio() {
+        return outputCount > 0 ? inputCount / (double) outputCount : 1.0;
+    }
+    
+    /**
+     * Largest distance of a dropped point from the kept polyline, in metres
+     */
+    public double getMaxDeviationM() {
+        return maxDeviationM;
+    }
+    
+    public double getToleranceM() {
+        return toleranceM;
+    }
+}
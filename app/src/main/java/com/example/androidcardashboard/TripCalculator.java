@@ -1,15 +1,30 @@
 package com.example.androidcardashboard;
 
 import android.util.Log;
-import java.util.ArrayList;
-import java.util.List;
 
-public class TripCalculator {
+public class TripCalculator implements MemoryManager.Cache {
     private static final String TAG = "TripCalculator";
     
+    // Default history length, matches the previous fixed limit
+    public static final int DEFAULT_HISTORY_CAPACITY = 1000;
+    
+    // Simplified track, dropped points stay within TRACK_TOLERANCE_M of it
+    public static final double TRACK_TOLERANCE_M = 5.0;
+    public static final int TRACK_MAX_LOOKAHEAD = 64;
+    
+    // Track points kept when the history is trimmed under memory pressure
+    public static final int MIN_TRIMMED_HISTORY = 100;
+    
     // Location data
-    private List<LocationPoint> locationHistory = new ArrayList<>();
-    private LocationPoint lastLocation = null;
+    private final LocationHistory locationHistory;
+    private final int historyCapacity;
+    private final TrackSimplifier trackSimplifier;
+    private final DistanceKernel distanceKernel = new DistanceKernel();
+    private final Metrics.Histogram updateTime = Metrics.getInstance().histogram("trip.update");
+    // Distance follows every sample, not the simplified track
+    private boolean hasLastLocation = false;
+    private double lastLatitude;
+    private double lastLongitude;
     
     // Trip metrics
     private double totalDistance = 0.0;
@@ -18,27 +33,40 @@ public class TripCalculator {
     private double totalSpeed = 0.0;
     private int dataPoints = 0;
     private long tripStartTime = 0;
+    private long firstSampleTime = 0;
+    private long lastSampleTime = 0;
+    
+    // Derived metrics, kept up to date on every sample
+    private double fuelUsage = 0.0;
+    private double avgTemperature = 0.0;
+    private double avgSpeed = 0.0;
+    
+    // Time-weighted statistics, so bursts of frames do not skew the averages
+    public static final int WINDOW_1_MIN = 0;
+    public static final int WINDOW_5_MIN = 1;
+    static final long MAX_SAMPLE_HOLD_MS = 5000; // Longer gaps are treated as missing data
+    private final TimeWeightedStats speedStats = new TimeWeightedStats(MAX_SAMPLE_HOLD_MS, 60 * 1000, 5 * 60 * 1000);
+    private final TimeWeightedStats temperatureStats = new TimeWeightedStats(MAX_SAMPLE_HOLD_MS, 60 * 1000, 5 * 60 * 1000);
     
     // Current trip data
     private double currentFuelLevel = 100.0;
     private double initialFuelLevel = 100.0;
     
-    public static class LocationPoint {
-        public double latitude;
-        public double longitude;
-        public long timestamp;
-        public double speed;
-        public double temperature;
-        public double fuelLevel;
-        
-        public LocationPoint(double lat, double lon, long time, double spd, double temp, double fuel) {
-            this.latitude = lat;
-            this.longitude = lon;
-            this.timestamp = time;
-            this.speed = spd;
-            this.temperature = temp;
-            this.fuelLevel = fuel;
-        }
+    // Fuel levels are percent of the tank, converted to litres with its capacity
+    public static final double DEFAULT_TANK_CAPACITY_L = 45.0;
+    private double tankCapacityLitres = DEFAULT_TANK_CAPACITY_L;
+    
+    // Follows the car across trips, so it is not reset with the trip
+    private final RangeEstimator rangeEstimator = new RangeEstimator(DEFAULT_TANK_CAPACITY_L);
+    
+    private OnSampleListener sampleListener;
+    
+    /**
+     * Called after every accepted sample, e.g. to persist it
+     */
+    public interface OnSampleListener {
+        void onSample(double latitude, double longitude, long timestamp,
+                      double speed, double temperature, double fuelLevel);
     }
     
     public static class TripMetrics {
@@ -47,6 +75,19 @@ public class TripCalculator {
         public double avgTemperature;
         public double avgSpeed;
         
+        // Last 5 minutes and trip extremes, NaN until there is data
+        public double recentAvgTemperature = Double.NaN;
+        public double maxTemperature = Double.NaN;
+        public double recentAvgSpeed = Double.NaN;
+        public double maxSpeed = Double.NaN;
+        
+        // Distance to empty and the recent consumption it is based on
+        public double rangeKm = Double.NaN;
+        public double recentFuelUsage = Double.NaN;
+        
+        public TripMetrics() {
+        }
+        
         public TripMetrics(double dist, double fuel, double avgTemp, double avgSpd) {
             this.distance = dist;
             this.fuelUsage = fuel;
@@ -56,18 +97,40 @@ public class TripCalculator {
     }
     
     public TripCalculator() {
+        this(DEFAULT_HISTORY_CAPACITY);
+    }
+    
+    /**
+     * @param historyCapacity number of simplified track points kept
+     */
+    public TripCalculator(int historyCapacity) {
+        this.historyCapacity = historyCapacity;
+        locationHistory = new LocationHistory(historyCapacity);
+        trackSimplifier = new TrackSimplifier(locationHistory, TRACK_TOLERANCE_M, TRACK_MAX_LOOKAHEAD);
         resetTrip();
     }
     
     public void resetTrip() {
         locationHistory.clear();
-        lastLocation = null;
+        if (locationHistory.getCapacity() != historyCapacity) {
+            // A new trip gets the full history back after a trim
+            locationHistory.resize(historyCapacity);
+        }
+        trackSimplifier.reset();
+        hasLastLocation = false;
         totalDistance = 0.0;
         totalFuelUsed = 0.0;
         totalTemperature = 0.0;
         totalSpeed = 0.0;
         dataPoints = 0;
+        fuelUsage = 0.0;
+        avgTemperature = 0.0;
+        avgSpeed = 0.0;
+        speedStats.reset();
+        temperatureStats.reset();
         tripStartTime = System.currentTimeMillis();
+        firstSampleTime = 0;
+        lastSampleTime = 0;
         currentFuelLevel = 100.0;
         initialFuelLevel = 100.0;
         Log.d(TAG, "Trip reset");
@@ -89,92 +152,204 @@ public class TripCalculator {
             double latitude = Double.parseDouble(parts[0].trim());
             double longitude = Double.parseDouble(parts[1].trim());
             long timestamp = System.currentTimeMillis();
+            updateSample(latitude, longitude, timestamp, speed, temperature, fuelLevel);
+            if (sampleListener != null) {
+                sampleListener.onSample(latitude, longitude, timestamp, speed, temperature, fuelLevel);
+            }
+        } catch (NumberFormatException e) {
+            Log.e(TAG, "Failed to parse location: " + locationString, e);
+        }
+    }
+    
+    /**
+     * Add one parsed sample with its own timestamp. Used for live data and
+     * for replaying a journal, does not notify the sample listener.
+     */
+    public void updateSample(double latitude, double longitude, long timestamp,
+                             double speed, double temperature, double fuelLevel) {
+        long start = System.nanoTime();
+        // Calculate distance from last location
+        double distance = 0;
+        if (hasLastLocation) {
+            distance = distanceKernel.distanceKm(lastLatitude, lastLongitude, latitude, longitude);
+            totalDistance += distance;
             
-            LocationPoint newLocation = new LocationPoint(latitude, longitude, timestamp, speed, temperature, fuelLevel);
-            
-            // Calculate distance from last location
-            if (lastLocation != null) {
-                double distance = calculateDistance(lastLocation, newLocation);
-                totalDistance += distance;
-                
+            if (Log.isLoggable(TAG, Log.DEBUG)) {
                 Log.d(TAG, String.format("Distance: %.2f km, Total: %.2f km", distance, totalDistance));
             }
-            
-            // Update fuel usage
-            if (fuelLevel < currentFuelLevel) {
-                double fuelUsed = currentFuelLevel - fuelLevel;
-                totalFuelUsed += fuelUsed;
+        }
+        hasLastLocation = true;
+        lastLatitude = latitude;
+        lastLongitude = longitude;
+        
+        // Update fuel usage, the first sample only sets the starting level
+        if (dataPoints > 0 && fuelLevel < currentFuelLevel) {
+            double fuelUsed = currentFuelLevel - fuelLevel;
+            totalFuelUsed += fuelUsed;
+            if (Log.isLoggable(TAG, Log.DEBUG)) {
                 Log.d(TAG, String.format("Fuel used: %.2f%%, Total: %.2f%%", fuelUsed, totalFuelUsed));
             }
-            currentFuelLevel = fuelLevel;
-            
-            // Update averages
-            totalTemperature += temperature;
-            totalSpeed += speed;
-            dataPoints++;
-            
-            // Store location
-            locationHistory.add(newLocation);
-            lastLocation = newLocation;
-            
-            // Keep only last 1000 points to prevent memory issues
-            if (locationHistory.size() > 1000) {
-                locationHistory.remove(0);
-            }
-            
-        } catch (NumberFormatException e) {
-            Log.e(TAG, "Failed to parse location: " + locationString, e);
         }
+        currentFuelLevel = fuelLevel;
+        rangeEstimator.add(timestamp, distance, fuelLevel);
+        
+        // Update averages
+        totalTemperature += temperature;
+        totalSpeed += speed;
+        if (dataPoints == 0) {
+            firstSampleTime = timestamp;
+        }
+        lastSampleTime = timestamp;
+        dataPoints++;
+        speedStats.add(timestamp, speed);
+        temperatureStats.add(timestamp, temperature);
+        updateDerivedMetrics();
+        
+        // Store the simplified track, the oldest point is dropped once the history is full
+        trackSimplifier.add(latitude, longitude, timestamp, speed, temperature, fuelLevel);
+        updateTime.recordNanos(System.nanoTime() - start);
     }
     
-    public TripMetrics getTripMetrics() {
-        double fuelUsage = 0.0;
+    private void updateDerivedMetrics() {
+        fuelUsage = 0.0;
         if (totalDistance > 0 && totalFuelUsed > 0) {
             // Calculate fuel usage in L/100km
-            fuelUsage = (totalFuelUsed / totalDistance) * 100.0;
+            fuelUsage = (getTotalFuelUsedLitres() / totalDistance) * 100.0;
         }
         
-        double avgTemperature = dataPoints > 0 ? totalTemperature / dataPoints : 0.0;
-        double avgSpeed = dataPoints > 0 ? totalSpeed / dataPoints : 0.0;
-        
+        if (speedStats.getDurationMs() > 0) {
+            avgTemperature = temperatureStats.getMean();
+            avgSpeed = speedStats.getMean();
+        } else {
+            // No time has passed between samples yet, fall back to the sample mean
+            avgTemperature = dataPoints > 0 ? totalTemperature / dataPoints : 0.0;
+            avgSpeed = dataPoints > 0 ? totalSpeed / dataPoints : 0.0;
+        }
+    }
+    
+    public TripMetrics getTripMetrics() {
         return new TripMetrics(totalDistance, fuelUsage, avgTemperature, avgSpeed);
     }
     
+    /**
+     * Copy all current metrics into a caller-owned snapshot, without allocating
+     */
+    public void fillMetrics(TripMetrics out) {
+        out.distance = totalDistance;
+        out.fuelUsage = fuelUsage;
+        out.avgTemperature = avgTemperature;
+        out.avgSpeed = avgSpeed;
+        out.recentAvgTemperature = temperatureStats.getWindowMean(WINDOW_5_MIN);
+        out.maxTemperature = temperatureStats.getMax();
+        out.recentAvgSpeed = speedStats.getWindowMean(WINDOW_5_MIN);
+        out.maxSpeed = speedStats.getMax();
+        out.rangeKm = rangeEstimator.getRangeKm();
+        out.recentFuelUsage = rangeEstimator.getConsumption();
+    }
+    
+    /**
+     * Recent points of the simplified track, oldest first. The newest
+     * samples are still buffered by the simplifier until it is flushed.
+     */
+    public LocationHistory getLocationHistory() {
+        return locationHistory;
+    }
+    
+    /**
+     * Memory pressure: halve the track history, dropping its oldest points,
+     * down to MIN_TRIMMED_HISTORY. The distance and averages don't depend
+     * on it.
+     */
+    @Override
+    public long trimCache() {
+        int capacity = locationHistory.getCapacity();
+        int trimmed = Math.max(Math.min(MIN_TRIMMED_HISTORY, capacity), capacity / 2);
+        if (trimmed == capacity) {
+            return 0;
+        }
+        locationHistory.resize(trimmed);
+        return (long) (capacity - trimmed) * LocationHistory.BYTES_PER_SAMPLE;
+    }
+    
+    @Override
+    public long getCacheBytes() {
+        return (long) locationHistory.getCapacity() * LocationHistory.BYTES_PER_SAMPLE;
+    }
+    
+    public RangeEstimator getRangeEstimator() {
+        return rangeEstimator;
+    }
+    
+    public TrackSimplifier getTrackSimplifier() {
+        return trackSimplifier;
+    }
+    
     public double getTotalDistance() {
         return totalDistance;
     }
     
+    /**
+     * Fuel used in percent of the tank
+     */
+    public double getTotalFuelUsed() {
+        return totalFuelUsed;
+    }
+    
+    public double getTotalFuelUsedLitres() {
+        return totalFuelUsed * tankCapacityLitres / 100.0;
+    }
+    
+    public double getTankCapacity() {
+        return tankCapacityLitres;
+    }
+    
+    public void setTankCapacity(double litres) {
+        this.tankCapacityLitres = litres;
+        rangeEstimator.setTankCapacity(litres);
+        updateDerivedMetrics();
+    }
+    
+    public double getCurrentFuelLevel() {
+        return currentFuelLevel;
+    }
+    
+    public int getDataPoints() {
+        return dataPoints;
+    }
+    
+    /**
+     * Timestamps of the first and latest sample, 0 before the first sample
+     */
+    public long getFirstSampleTime() {
+        return firstSampleTime;
+    }
+    
+    public long getLastSampleTime() {
+        return lastSampleTime;
+    }
+    
     public double getFuelUsage() {
-        TripMetrics metrics = getTripMetrics();
-        return metrics.fuelUsage;
+        return fuelUsage;
     }
     
     public double getAvgTemperature() {
-        TripMetrics metrics = getTripMetrics();
-        return metrics.avgTemperature;
+        return avgTemperature;
     }
     
     public double getAvgSpeed() {
-        TripMetrics metrics = getTripMetrics();
-        return metrics.avgSpeed;
+        return avgSpeed;
     }
     
-    private double calculateDistance(LocationPoint point1, LocationPoint point2) {
-        // Haversine formula for calculating distance between two GPS points
-        final int R = 6371; // Earth's radius in kilometers
-        
-        double lat1Rad = Math.toRadians(point1.latitude);
-        double lat2Rad = Math.toRadians(point2.latitude);
-        double deltaLatRad = Math.toRadians(point2.latitude - point1.latitude);
-        double deltaLonRad = Math.toRadians(point2.longitude - point1.longitude);
-        
-        double a = Math.sin(deltaLatRad / 2) * Math.sin(deltaLatRad / 2) +
-                   Math.cos(lat1Rad) * Math.cos(lat2Rad) *
-                   Math.sin(deltaLonRad / 2) * Math.sin(deltaLonRad / 2);
-        
-        double c = 2 * Math.atan2(Math.sqrt(a), Math.sqrt(1 - a));
-        
-        return R * c; // Distance in kilometers
+    public TimeWeightedStats getSpeedStats() {
+        return speedStats;
+    }
+    
+    public TimeWeightedStats getTemperatureStats() {
+        return temperatureStats;
+    }
+    
+    public void setOnSampleListener(OnSampleListener listener) {
+        this.sampleListener = listener;
     }
     
     public void setInitialFuelLevel(double fuelLevel) {
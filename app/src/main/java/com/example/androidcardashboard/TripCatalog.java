@@ -0,0 +1,515 @@
+package com.example.androidcardashboard;
+
+import android.util.Log;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.CRC32;
+
+/**
+ * History of finished trips, one fixed-width summary record per trip sorted
+ * by start time. The summaries are kept in memory as parallel arrays with
+ * prefix sums, so totals for a time range such as "last 30 days" cost two
+ * binary searches and never touch samples. New trips are appended to the
+ * file; compaction merges short trips into the trip before them and
+ * rewrites the file. File writes run on a background thread.
+ */
+public class TripCatalog {
+    private static final String TAG = "TripCatalog";
+    
+    public static final String FILE_NAME = "trips.catalog";
+    
+    // Parked longer than this since the last sample starts a new trip
+    public static final long NEW_TRIP_GAP_MS = 5 * 60 * 1000;
+    
+    // Compaction merges a short trip into the previous one if the stop between them was brief.
+    // Recorded trips are at least NEW_TRIP_GAP_MS apart, so the merge gap has to be longer.
+    public static final double SMALL_TRIP_KM = 2.0;
+    public static final long SMALL_TRIP_MS = 5 * 60 * 1000;
+    public static final long MERGE_GAP_MS = 3 * NEW_TRIP_GAP_MS;
+    
+    static final int HEADER_SIZE = 16;
+    static final int RECORD_SIZE = 64;
+    private static final long MAGIC = 0x5452495043415431L; // "TRIPCAT1"
+    private static final int VERSION = 1;
+    private static final int INITIAL_CAPACITY = 64;
+    
+    /**
+     * One trip, fuel in litres
+     */
+    public static class Summary {
+        public long startMs;
+        public long endMs;
+        public long drivingMs;
+        public double distanceKm;
+        public double fuelUsed;
+        public double avgSpeed;
+        public double maxSpeed;
+        public double avgTemperature;
+        public int samples;
+        
+        /**
+         * Summarize the trip currently held by the calculator
+         */
+        public void fillFrom(TripCalculator calculator) {
+            startMs = calculator.getFirstSampleTime();
+            endMs = calculator.getLastSampleTime();
+            drivingMs = calculator.getSpeedStats().getDurationMs();
+            distanceKm = calculator.getTotalDistance();
+            fuelUsed = calculator.getTotalFuelUsedLitres();
+            avgSpeed = calculator.getAvgSpeed();
+            double max = calculator.getSpeedStats().getMax();
+            maxSpeed = Double.isNaN(max) ? 0 : max;
+            avgTemperature = calculator.getAvgTemperature();
+            samples = calculator.getDataPoints();
+        }
+    }
+    
+    /**
+     * Aggregate over the trips that started in a time range
+     */
+    public static class Totals {
+        public int trips;
+        public double distanceKm;
+        public double fuelUsed;
+        public long drivingMs;
+        public double avgSpeed;       // Weighted by driving time, NaN without driving time
+        public double avgTemperature; // Weighted by driving time, NaN without driving time
+    }
+    
+    private final File file;
+    private final CRC32 crc = new CRC32();
+    private final ExecutorService writer;
+    
+    // Columns, sorted by start time
+    private int size = 0;
+    private long[] startMs = new long[INITIAL_CAPACITY];
+    private long[] endMs = new long[INITIAL_CAPACITY];
+    private long[] drivingMs = new long[INITIAL_CAPACITY];
+    private double[] distanceKm = new double[INITIAL_CAPACITY];
+    private double[] fuelUsed = new double[INITIAL_CAPACITY];
+    private float[] avgSpeed = new float[INITIAL_CAPACITY];
+    private float[] maxSpeed = new float[INITIAL_CAPACITY];
+    private float[] avgTemperature = new float[INITIAL_CAPACITY];
+    private int[] samples = new int[INITIAL_CAPACITY];
+    
+    // Prefix sums, entry i covers trips 0..i-1
+    private double[] prefixDistance = new double[INITIAL_CAPACITY + 1];
+    private double[] prefixFuel = new double[INITIAL_CAPACITY + 1];
+    private long[] prefixDrivingMs = new long[INITIAL_CAPACITY + 1];
+    private double[] prefixSpeedMs = new double[INITIAL_CAPACITY + 1];
+    private double[] prefixTemperatureMs = new double[INITIAL_CAPACITY + 1];
+    
+    // Persistence state, records 0..persistedCount-1 are on disk unless a rewrite is pending
+    private int persistedCount = 0;
+    private boolean rewriteNeeded = false;
+    private final Runnable syncTask = new Runnable() {
+        @Override
+        public void run() {
+            sync();
+        }
+    };
+    
+    public TripCatalog(File file) {
+        this.file = file;
+        this.writer = Executors.newSingleThreadExecutor(new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, "TripCatalog");
+                thread.setPriority(Thread.MIN_PRIORITY);
+                return thread;
+            }
+        });
+    }
+    
+    /**
+     * Read the catalog file, stopping at the first corrupt record
+     * @return number of trips loaded
+     */
+    public synchronized int load() {
+        size = 0;
+        persistedCount = 0;
+        if (!file.exists()) {
+            return 0;
+        }
+        
+        byte[] bytes;
+        try {
+            RandomAccessFile in = new RandomAccessFile(file, "r");
+            try {
+                bytes = new byte[(int) in.length()];
+                in.readFully(bytes);
+            } finally {
+                in.close();
+            }
+        } catch (IOException e) {
+            Log.e(TAG, "Failed to read trip catalog", e);
+            return 0;
+        }
+        
+        ByteBuffer buffer = ByteBuffer.wrap(bytes);
+        if (bytes.length < HEADER_SIZE || buffer.getLong(0) != MAGIC
+                || buffer.getInt(8) != VERSION || buffer.getInt(12) != RECORD_SIZE) {
+            Log.w(TAG, "Trip catalog header invalid, starting empty");
+            rewriteNeeded = true;
+            return 0;
+        }
+        
+        Summary summary = new Summary();
+        int offset = HEADER_SIZE;
+        while (offset + RECORD_SIZE <= bytes.length) {
+            if (buffer.getInt(offset + 56) != checksum(bytes, offset)) {
+                Log.w(TAG, "Corrupt trip record at " + offset + ", dropping the rest");
+                rewriteNeeded = true;
+                break;
+            }
+            decode(buffer, offset, summary);
+            insert(summary);
+            offset += RECORD_SIZE;
+        }
+        persistedCount = size;
+        if (rewriteNeeded || offset != bytes.length) {
+            rewriteNeeded = true;
+            writer.execute(syncTask);
+        }
+        return size;
+    }
+    
+    /**
+     * Add a finished trip and write it in the background
+     */
+    public synchronized void add(Summary summary) {
+        int position = insert(summary);
+        if (position < persistedCount) {
+            // Out of order, the records after it moved
+            rewriteNeeded = true;
+        }
+        writer.execute(syncTask);
+    }
+    
+    /**
+     * Totals of the trips that started in [fromMs, toMs)
+     */
+    public synchronized void query(long fromMs, long toMs, Totals out) {
+        int from = lowerBound(fromMs);
+        int to = Math.max(from, lowerBound(toMs));
+        out.trips = to - from;
+        out.distanceKm = prefixDistance[to] - prefixDistance[from];
+        out.fuelUsed = prefixFuel[to] - prefixFuel[from];
+        out.drivingMs = prefixDrivingMs[to] - prefixDrivingMs[from];
+        if (out.drivingMs > 0) {
+            out.avgSpeed = (prefixSpeedMs[to] - prefixSpeedMs[from]) / out.drivingMs;
+            out.avgTemperature = (prefixTemperatureMs[to] - prefixTemperatureMs[from]) / out.drivingMs;
+        } else {
+            out.avgSpeed = Double.NaN;
+            out.avgTemperature = Double.NaN;
+        }
+    }
+    
+    /**
+     * Replace the summary of the trip at index, e.g. after recomputing it.
+     * The start time must stay between its neighbours'. Compaction moves
+     * trips, so look the index up with the catalog locked and keep the lock
+     * until this returns.
+     */
+    public synchronized void replace(int index, Summary summary) {
+        set(index, summary);
+        rebuildPrefixSums(index);
+        if (index < persistedCount) {
+            rewriteNeeded = true;
+        }
+        writer.execute(syncTask);
+    }
+    
+    public synchronized int size() {
+        return size;
+    }
+    
+    public synchronized void getSummary(int index, Summary out) {
+        out.startMs = startMs[index];
+        out.endMs = endMs[index];
+        out.drivingMs = drivingMs[index];
+        out.distanceKm = distanceKm[index];
+        out.fuelUsed = fuelUsed[index];
+        out.avgSpeed = avgSpeed[index];
+        out.maxSpeed = maxSpeed[index];
+        out.avgTemperature = avgTemperature[index];
+        out.samples = samples[index];
+    }
+    
+    /**
+     * Merge short trips into the previous trip when the stop between them
+     * was shorter than MERGE_GAP_MS, then rewrite the file if anything changed
+     * @return number of trips merged away
+     */
+    public int compact() {
+        int merged;
+        synchronized (this) {
+            int target = -1;
+            for (int i = 0; i < size; i++) {
+                boolean small = distanceKm[i] < SMALL_TRIP_KM || drivingMs[i] < SMALL_TRIP_MS;
+                if (target >= 0 && small && startMs[i] - endMs[target] <= MERGE_GAP_MS) {
+                    mergeInto(target, i);
+                } else {
+                    target++;
+                    if (target != i) {
+                        move(i, target);
+                    }
+                }
+            }
+            merged = size - (target + 1);
+            if (merged > 0) {
+                size = target + 1;
+                rebuildPrefixSums(0);
+                rewriteNeeded = true;
+            }
+        }
+        if (merged > 0) {
+            Log.i(TAG, "Compaction merged " + merged + " short trips");
+            sync();
+        }
+        return merged;
+    }
+    
+    /**
+     * Run compact() on the background thread
+     */
+    public void compactAsync() {
+        writer.execute(new Runnable() {
+            @Override
+            public void run() {
+                compact();
+            }
+        });
+    }
+    
+    /**
+     * Finish pending writes, waiting briefly, and stop the background thread
+     */
+    public void close() {
+        writer.shutdown();
+        try {
+            if (!writer.awaitTermination(2, TimeUnit.SECONDS)) {
+                Log.w(TAG, "Catalog writer did not finish in time");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+    
+    private void mergeInto(int target, int source) {
+        long time = drivingMs[target] + drivingMs[source];
+        if (time > 0) {
+            avgSpeed[target] = (float) ((avgSpeed[target] * (double) drivingMs[target]
+                + avgSpeed[source] * (double) drivingMs[source]) / time);
+            avgTemperature[target] = (float) ((avgTemperature[target] * (double) drivingMs[target]
+                + avgTemperature[source] * (double) drivingMs[source]) / time);
+        }
+        endMs[target] = Math.max(endMs[target], endMs[source]);
+        drivingMs[target] = time;
+        distanceKm[target] += distanceKm[source];
+        fuelUsed[target] += fuelUsed[source];
+        maxSpeed[target] = Math.max(maxSpeed[target], maxSpeed[source]);
+        samples[target] += samples[source];
+    }
+    
+    private void move(int from, int to) {
+        startMs[to] = startMs[from];
+        endMs[to] = endMs[from];
+        drivingMs[to] = drivingMs[from];
+        distanceKm[to] = distanceKm[from];
+        fuelUsed[to] = fuelUsed[from];
+        avgSpeed[to] = avgSpeed[from];
+        maxSpeed[to] = maxSpeed[from];
+        avgTemperature[to] = avgTemperature[from];
+        samples[to] = samples[from];
+    }
+    
+    /**
+     * Insert keeping the start time order, usually at the end
+     */
+    private int insert(Summary summary) {
+        if (size == startMs.length) {
+            grow();
+        }
+        int position = lowerBound(summary.startMs + 1);
+        for (int i = size; i > position; i--) {
+            move(i - 1, i);
+        }
+        set(position, summary);
+        size++;
+        rebuildPrefixSums(position);
+        return position;
+    }
+    
+    private void set(int index, Summary summary) {
+        startMs[index] = summary.startMs;
+        endMs[index] = summary.endMs;
+        drivingMs[index] = summary.drivingMs;
+        distanceKm[index] = summary.distanceKm;
+        fuelUsed[index] = summary.fuelUsed;
+        avgSpeed[index] = (float) summary.avgSpeed;
+        maxSpeed[index] = (float) summary.maxSpeed;
+        avgTemperature[index] = (float) summary.avgTemperature;
+        samples[index] = summary.samples;
+    }
+    
+    /**
+     * First trip starting at or after the given time
+     */
+    private int lowerBound(long timeMs) {
+        int low = 0;
+        int high = size;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (startMs[mid] < timeMs) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+    
+    private void rebuildPrefixSums(int from) {
+        for (int i = from; i < size; i++) {
+            prefixDistance[i + 1] = prefixDistance[i] + distanceKm[i];
+            prefixFuel[i + 1] = prefixFuel[i] + fuelUsed[i];
+            prefixDrivingMs[i + 1] = prefixDrivingMs[i] + drivingMs[i];
+            prefixSpeedMs[i + 1] = prefixSpeedMs[i] + avgSpeed[i] * (double) drivingMs[i];
+            prefixTemperatureMs[i + 1] = prefixTemperatureMs[i] + avgTemperature[i] * (double) drivingMs[i];
+        }
+    }
+    
+    private void grow() {
+        int capacity = startMs.length * 2;
+        startMs = Arrays.copyOf(startMs, capacity);
+        endMs = Arrays.copyOf(endMs, capacity);
+        drivingMs = Arrays.copyOf(drivingMs, capacity);
+        distanceKm = Arrays.copyOf(distanceKm, capacity);
+        fuelUsed = Arrays.copyOf(fuelUsed, capacity);
+        avgSpeed = Arrays.copyOf(avgSpeed, capacity);
+        maxSpeed = Arrays.copyOf(maxSpeed, capacity);
+        avgTemperature = Arrays.copyOf(avgTemperature, capacity);
+        samples = Arrays.copyOf(samples, capacity);
+        prefixDistance = Arrays.copyOf(prefixDistance, capacity + 1);
+        prefixFuel = Arrays.copyOf(prefixFuel, capacity + 1);
+        prefixDrivingMs = Arrays.copyOf(prefixDrivingMs, capacity + 1);
+        prefixSpeedMs = Arrays.copyOf(prefixSpeedMs, capacity + 1);
+        prefixTemperatureMs = Arrays.copyOf(prefixTemperatureMs, capacity + 1);
+    }
+    
+    // File format
+    
+    private void encode(ByteBuffer buffer, int offset, int index) {
+        buffer.putLong(offset, startMs[index]);
+        buffer.putLong(offset + 8, endMs[index]);
+        buffer.putLong(offset + 16, drivingMs[index]);
+        buffer.putDouble(offset + 24, distanceKm[index]);
+        buffer.putDouble(offset + 32, fuelUsed[index]);
+        buffer.putFloat(offset + 40, avgSpeed[index]);
+        buffer.putFloat(offset + 44, maxSpeed[index]);
+        buffer.putFloat(offset + 48, avgTemperature[index]);
+        buffer.putInt(offset + 52, samples[index]);
+        buffer.putInt(offset + 56, checksum(buffer.array(), offset));
+    }
+    
+    private static void decode(ByteBuffer buffer, int offset, Summary out) {
+        out.startMs = buffer.getLong(offset);
+        out.endMs = buffer.getLong(offset + 8);
+        out.drivingMs = buffer.getLong(offset + 16);
+        out.distanceKm = buffer.getDouble(offset + 24);
+        out.fuelUsed = buffer.getDouble(offset + 32);
+        out.avgSpeed = buffer.getFloat(offset + 40);
+        out.maxSpeed = buffer.getFloat(offset + 44);
+        out.avgTemperature = buffer.getFloat(offset + 48);
+        out.samples = buffer.getInt(offset + 52);
+    }
+    
+    private int checksum(byte[] bytes, int offset) {
+        crc.reset();
+        crc.update(bytes, offset, 56);
+        return (int) crc.getValue();
+    }
+    
+    /**
+     * Bring the file up to date: append new records, or rewrite it after
+     * compaction and out of order inserts. Runs on the writer thread.
+     */
+    private void sync() {
+        boolean rewrite;
+        int from;
+        byte[] bytes;
+        synchronized (this) {
+            rewrite = rewriteNeeded;
+            from = rewrite ? 0 : persistedCount;
+            if (from == size && !rewrite) {
+                return;
+            }
+            int headerBytes = rewrite ? HEADER_SIZE : 0;
+            bytes = new byte[headerBytes + (size - from) * RECORD_SIZE];
+            ByteBuffer buffer = ByteBuffer.wrap(bytes);
+            if (rewrite) {
+                putHeader(buffer);
+            }
+            for (int i = from; i < size; i++) {
+                encode(buffer, headerBytes + (i - from) * RECORD_SIZE, i);
+            }
+            persistedCount = size;
+            rewriteNeeded = false;
+        }
+        
+        try {
+            if (rewrite) {
+                // Write a new file and swap it in, so a crash leaves either version intact
+                File temp = new File(file.getPath() + ".tmp");
+                writeAt(temp, 0, bytes, true);
+                if (!temp.renameTo(file)) {
+                    throw new IOException("Failed to replace " + file);
+                }
+            } else {
+                writeAt(file, HEADER_SIZE + (long) from * RECORD_SIZE, bytes, false);
+            }
+        } catch (IOException e) {
+            Log.e(TAG, "Failed to write trip catalog", e);
+            synchronized (this) {
+                rewriteNeeded = true;
+            }
+        }
+    }
+    
+    private static void putHeader(ByteBuffer buffer) {
+        buffer.putLong(0, MAGIC);
+        buffer.putInt(8, VERSION);
+        buffer.putInt(12, RECORD_SIZE);
+    }
+    
+    private static void writeAt(File target, long offset, byte[] bytes, boolean truncate) throws IOException {
+        RandomAccessFile out = new RandomAccessFile(target, "rw");
+        try {
+            if (truncate) {
+                out.setLength(0);
+            } else if (out.length() < HEADER_SIZE) {
+                byte[] header = new byte[HEADER_SIZE];
+                putHeader(ByteBuffer.wrap(header));
+                out.write(header);
+            }
+            out.seek(offset);
+            out.write(bytes);
+            if (!truncate) {
+                // Drop anything a torn earlier write left past the last record
+                out.setLength(offset + bytes.length);
+            }
+            out.getFD().sync();
+        } finally {
+            out.close();
+        }
+    }
+}
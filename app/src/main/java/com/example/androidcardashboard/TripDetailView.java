@@ -4,6 +4,7 @@ import android.content.Context;
 import android.graphics.Canvas;
 import android.graphics.Color;
 import android.graphics.Paint;
+import android.graphics.Rect;
 import android.graphics.RectF;
 import android.graphics.Typeface;
 import android.util.AttributeSet;
@@ -14,15 +15,28 @@ public class TripDetailView extends View {
     private Paint borderPaint;
     private Paint labelPaint;
     private Paint valuePaint;
+    private Paint detailPaint;
     
     private String label = "";
-    private String value = "";
+    // Copied from the caller's buffers, values change on every update
+    private final TextBuffer value = new TextBuffer(16);
+    private final TextBuffer detail = new TextBuffer(32);
     private int textColor;
     private int valueColor;
     
     private int centerX, centerY;
     private RectF backgroundRect;
     
+    // Text lines, invalidated separately when label or value change
+    private final Rect labelBounds = new Rect();
+    private final Rect valueBounds = new Rect();
+    private final Rect detailBounds = new Rect();
+    
+    // Number of onDraw passes, to verify invalidation savings
+    private int redrawCount = 0;
+    private final AllocationTracker.Scope drawAllocations = AllocationTracker.scope("draw.TripDetail", 0);
+    private final Metrics.Histogram drawTime = Metrics.getInstance().histogram("draw.TripDetail");
+    
     // Font
     private Typeface font = Typeface.DEFAULT;
     private ThemeManager themeManager;
@@ -67,6 +81,12 @@ public class TripDetailView extends View {
         valuePaint.setTextAlign(Paint.Align.CENTER);
         valuePaint.setFakeBoldText(true);
         valuePaint.setTypeface(themeManager.getBoldFont());
+        
+        // Detail text paint, small secondary line under the value
+        detailPaint = new Paint(Paint.ANTI_ALIAS_FLAG);
+        detailPaint.setColor(textColor);
+        detailPaint.setTextAlign(Paint.Align.CENTER);
+        detailPaint.setTypeface(themeManager.getPrimaryFont());
     }
     
     @Override
@@ -81,11 +101,25 @@ public class TripDetailView extends View {
         // Set text sizes based on view dimensions
         labelPaint.setTextSize(h * 0.15f);
         valuePaint.setTextSize(h * 0.2f);
+        detailPaint.setTextSize(h * 0.1f);
+        
+        // Text lines span the tile width inside the border
+        labelBounds.set(4, (int) (centerY - 10 - labelPaint.getTextSize()) - 1,
+                        w - 4, (int) (centerY - 10 + labelPaint.getTextSize() * 0.3f) + 1);
+        valueBounds.set(4, (int) (centerY + 20 - valuePaint.getTextSize()) - 1,
+                        w - 4, (int) (centerY + 20 + valuePaint.getTextSize() * 0.3f) + 1);
+        float detailBaseline = centerY + 20 + h * 0.17f;
+        detailBounds.set(4, (int) (detailBaseline - detailPaint.getTextSize()) - 1,
+                         w - 4, (int) (detailBaseline + detailPaint.getTextSize() * 0.3f) + 1);
     }
     
     @Override
     protected void onDraw(Canvas canvas) {
         super.onDraw(canvas);
+        redrawCount++;
+        TraceRecorder.begin("draw.TripDetail");
+        long drawStart = System.nanoTime();
+        long allocationMark = drawAllocations.begin();
         
         // Draw background
         canvas.drawRoundRect(backgroundRect, 8, 8, backgroundPaint);
@@ -95,33 +129,101 @@ public class TripDetailView extends View {
         canvas.drawText(label, centerX, centerY - 10, labelPaint);
         
         // Draw value (below label)
-        canvas.drawText(value, centerX, centerY + 20, valuePaint);
+        canvas.drawText(value.chars(), 0, value.length(), centerX, centerY + 20, valuePaint);
+        
+        // Draw detail (below value)
+        if (detail.length() > 0) {
+            canvas.drawText(detail.chars(), 0, detail.length(), centerX, centerY + 20 + getHeight() * 0.17f,
+                detailPaint);
+        }
+        drawAllocations.end(allocationMark);
+        drawTime.recordNanos(System.nanoTime() - drawStart);
+        TraceRecorder.end();
     }
     
     public void setLabel(String label) {
+        if (label.equals(this.label)) {
+            return;
+        }
         this.label = label;
-        invalidate();
+        invalidateRegion(labelBounds);
     }
     
     public void setValue(String value) {
-        this.value = value;
-        invalidate();
+        if (this.value.contentEquals(value)) {
+            return;
+        }
+        this.value.clear().append(value);
+        invalidateRegion(valueBounds);
+    }
+    
+    /**
+     * Copy of the buffer's text, which the caller may reuse right away
+     */
+    public void setValue(TextBuffer value) {
+        if (this.value.contentEquals(value)) {
+            return;
+        }
+        this.value.set(value);
+        invalidateRegion(valueBounds);
     }
     
+    /**
+     * Secondary line under the value, e.g. a recent average; empty to hide
+     */
+    public void setDetail(String detail) {
+        if (this.detail.contentEquals(detail)) {
+            return;
+        }
+        this.detail.clear().append(detail);
+        invalidateRegion(detailBounds);
+    }
+    
+    public void setDetail(TextBuffer detail) {
+        if (this.detail.contentEquals(detail)) {
+            return;
+        }
+        this.detail.set(detail);
+        invalidateRegion(detailBounds);
+    }
     
     public void setValueColor(int color) {
+        if (color == valueColor) {
+            return;
+        }
         this.valueColor = color;
         valuePaint.setColor(color);
-        invalidate();
+        invalidateRegion(valueBounds);
     }
     
     public void setTextColor(int color) {
+        if (color == textColor) {
+            return;
+        }
         this.textColor = color;
         labelPaint.setColor(color);
-        invalidate();
+        detailPaint.setColor(color);
+        invalidateRegion(labelBounds);
+        invalidateRegion(detailBounds);
+    }
+    
+    public int getRedrawCount() {
+        return redrawCount;
+    }
+    
+    private void invalidateRegion(Rect region) {
+        if (region.isEmpty()) {
+            invalidate();
+        } else {
+            invalidate(region);
+        }
     }
     
     public void setFont(Typeface font) {
+        if (font == this.font && labelPaint.getTypeface() == themeManager.getPrimaryFont()
+                && valuePaint.getTypeface() == themeManager.getBoldFont()) {
+            return;
+        }
         this.font = font;
         if (labelPaint != null) {
             labelPaint.setTypeface(themeManager.getPrimaryFont());
@@ -129,10 +231,20 @@ public class TripDetailView extends View {
         if (valuePaint != null) {
             valuePaint.setTypeface(themeManager.getBoldFont());
         }
+        if (detailPaint != null) {
+            detailPaint.setTypeface(themeManager.getPrimaryFont());
+        }
         invalidate();
     }
     
     public void updateThemeColors() {
+        if (backgroundPaint != null
+                && textColor == themeManager.getTextSecondaryColor()
+                && valueColor == themeManager.getPrimaryAccentColor()
+                && backgroundPaint.getColor() == themeManager.getContainerColor()
+                && borderPaint.getColor() == themeManager.getInactiveColor()) {
+            return;
+        }
         this.textColor = themeManager.getTextSecondaryColor();
         this.valueColor = themeManager.getPrimaryAccentColor();
         
@@ -145,6 +257,9 @@ public class TripDetailView extends View {
         if (labelPaint != null) {
             labelPaint.setColor(textColor);
         }
+        if (detailPaint != null) {
+            detailPaint.setColor(textColor);
+        }
         if (valuePaint != null) {
             valuePaint.setColor(valueColor);
         }
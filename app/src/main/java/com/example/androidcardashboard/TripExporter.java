@@ -0,0 +1,330 @@
+package com.example.androidcardashboard;
+
+import android.util.Log;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Exports the full-resolution trip from the journal file to GPX or CSV on a
+ * background thread. Records are streamed through a fixed-size read chunk
+ * and a buffered writer, and numbers are formatted into a reused char
+ * buffer, so memory use does not depend on the trip length.
+ */
+public class TripExporter {
+    private static final String TAG = "TripExporter";
+    
+    public enum Format {
+        GPX("gpx"),
+        CSV("csv");
+        
+        public final String extension;
+        
+        Format(String extension) {
+            this.extension = extension;
+        }
+    }
+    
+    /**
+     * Called on the export thread
+     */
+    public interface ExportListener {
+        void onProgress(long points, long estimatedPoints);
+        
+        /**
+         * @param truncated a torn or corrupt record ended the journal early,
+         *                  the samples after it are missing
+         */
+        void onFinished(File output, long points, long elapsedMs, boolean truncated);
+        void onFailed(File output, IOException error);
+    }
+    
+    /**
+     * Outcome of one export
+     */
+    static final class Result {
+        long points;
+        boolean truncated;
+    }
+    
+    private static final int WRITE_BUFFER_CHARS = 64 * 1024;
+    private static final int PROGRESS_INTERVAL = 20000;
+    private static final long MS_PER_DAY = 24 * 60 * 60 * 1000L;
+    
+    private final ExecutorService executor;
+    private final AtomicInteger queued = new AtomicInteger();
+    
+    public TripExporter() {
+        executor = Executors.newSingleThreadExecutor(new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, "TripExporter");
+                thread.setPriority(Thread.MIN_PRIORITY);
+                return thread;
+            }
+        });
+    }
+    
+    /**
+     * Queue an export of the journal. Samples are included up to the end of
+     * the journal when the export reaches it, so flush the journal first.
+     */
+    public void export(final File journal, final File output, final Format format, final ExportListener listener) {
+        queued.incrementAndGet();
+        executor.execute(new Runnable() {
+            @Override
+            public void run() {
+                long start = System.nanoTime();
+                try {
+                    Result result = exportToFile(journal, output, format, listener);
+                    long elapsedMs = (System.nanoTime() - start) / 1000000;
+                    Log.i(TAG, "Exported " + result.points + " points to " + output + " in " + elapsedMs + " ms");
+                    listener.onFinished(output, result.points, elapsedMs, result.truncated);
+                } catch (IOException e) {
+                    Log.e(TAG, "Export to " + output + " failed", e);
+                    output.delete();
+                    listener.onFailed(output, e);
+                } finally {
+                    queued.decrementAndGet();
+                }
+            }
+        });
+    }
+    
+    /**
+     * True while an export is queued or running
+     */
+    public boolean isBusy() {
+        return queued.get() > 0;
+    }
+    
+    public void shutdown() {
+        executor.shutdown();
+    }
+    
+    static Result exportToFile(File journal, File output, Format format, ExportListener listener) throws IOException {
+        TripJournal.Reader reader = new TripJournal.Reader(journal);
+        try {
+            Writer out = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(output), "UTF-8"),
+                                            WRITE_BUFFER_CHARS);
+            Result result = new Result();
+            try {
+                // The file length includes the preallocated space
+                result.points = write(reader, out, format, listener, reader.countRecords());
+            } finally {
+                out.close();
+            }
+            if (reader.isTorn()) {
+                Log.w(TAG, "Journal " + journal + " is torn after " + result.points + " points, the rest is missing");
+                result.truncated = true;
+            }
+            return result;
+        } finally {
+            reader.close();
+        }
+    }
+    
+    /**
+     * Stream all samples from the reader to the writer
+     * @return number of points written
+     */
+    static long write(TripJournal.Reader reader, Writer out, Format format,
+                      ExportListener listener, long estimatedPoints) throws IOException {
+        LineBuilder line = new LineBuilder();
+        if (format == Format.GPX) {
+            out.write("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n"
+                + "<gpx version=\"1.1\" creator=\"AndroidCarDashboard\" xmlns=\"http://www.topografix.com/GPX/1/1\">\n"
+                + "<trk><name>Trip</name><trkseg>\n");
+        } else {
+            out.write("timestamp_ms,latitude,longitude,speed_kmh,coolant_c,fuel_pct\n");
+        }
+        
+        long points = 0;
+        while (reader.next()) {
+            if (!reader.isSample()) {
+                continue;
+            }
+            line.clear();
+            if (format == Format.GPX) {
+                line.append("<trkpt lat=\"").append(reader.getLatitude(), 7)
+                    .append("\" lon=\"").append(reader.getLongitude(), 7)
+                    .append("\"><time>").appendIsoTime(reader.getTimestamp())
+                    .append("</time></trkpt>\n");
+            } else {
+                line.append(reader.getTimestamp()).append(',')
+                    .append(reader.getLatitude(), 7).append(',')
+                    .append(reader.getLongitude(), 7).append(',')
+                    .append(reader.getSpeed(), 1).append(',')
+                    .append(reader.getTemperature(), 1).append(',')
+                    .append(reader.getFuelLevel(), 2).append('\n');
+            }
+            line.writeTo(out);
+            
+            points++;
+            if (listener != null && points % PROGRESS_INTERVAL == 0) {
+                listener.onProgress(points, estimatedPoints);
+            }
+        }
+        
+        if (format == Format.GPX) {
+            out.write("</trkseg></trk>\n</gpx>\n");
+        }
+        return points;
+    }
+    
+    /**
+     * Reused line buffer with fixed-decimal number formatting, avoiding
+     * String.format and per-number strings
+     */
+    static final class LineBuilder {
+        private static final long[] POWERS_OF_TEN = {1, 10, 100, 1000, 10000, 100000, 1000000, 10000000, 100000000};
+        
+        private final char[] chars = new char[256];
+        private final char[] digits = new char[20];
+        private int length = 0;
+        
+        // Date part of the last timestamp, days rarely change within a trip
+        private long cachedDay = Long.MIN_VALUE;
+        private final char[] cachedDate = new char[11];
+        
+        void clear() {
+            length = 0;
+        }
+        
+        LineBuilder append(char c) {
+            chars[length++] = c;
+            return this;
+        }
+        
+        LineBuilder append(String text) {
+            text.getChars(0, text.length(), chars, length);
+            length += text.length();
+            return this;
+        }
+        
+        LineBuilder append(long value) {
+            if (value < 0) {
+                append('-');
+                value = -value;
+            }
+            int count = 0;
+            do {
+                digits[count++] = (char) ('0' + value % 10);
+                value /= 10;
+            } while (value > 0);
+            while (count > 0) {
+                chars[length++] = digits[--count];
+            }
+            return this;
+        }
+        
+        /**
+         * Append with a fixed number of decimals (at most 8), rounded half up
+         */
+        LineBuilder append(double value, int decimals) {
+            if (Double.isNaN(value) || Double.isInfinite(value)) {
+                return append("NaN");
+            }
+            if (value < 0) {
+                value = -value;
+                long scaled = Math.round(value * POWERS_OF_TEN[decimals]);
+                if (scaled != 0) {
+                    append('-');
+                }
+                return appendScaled(scaled, decimals);
+            }
+            return appendScaled(Math.round(value * POWERS_OF_TEN[decimals]), decimals);
+        }
+        
+        private LineBuilder appendScaled(long scaled, int decimals) {
+            append(scaled / POWERS_OF_TEN[decimals]);
+            if (decimals > 0) {
+                append('.');
+                long fraction = scaled % POWERS_OF_TEN[decimals];
+                for (int i = decimals - 1; i >= 0; i--) {
+                    chars[length + i] = (char) ('0' + fraction % 10);
+                    fraction /= 10;
+                }
+                length += decimals;
+            }
+            return this;
+        }
+        
+        /**
+         * UTC time as yyyy-MM-ddTHH:mm:ss.SSSZ
+         */
+        LineBuilder appendIsoTime(long timestampMs) {
+            long day = floorDiv(timestampMs, MS_PER_DAY);
+            if (day != cachedDay) {
+                cachedDay = day;
+                fillDate(day);
+            }
+            System.arraycopy(cachedDate, 0, chars, length, cachedDate.length);
+            length += cachedDate.length;
+            
+            long ms = timestampMs - day * MS_PER_DAY;
+            appendTwoDigits((int) (ms / 3600000)).append(':');
+            appendTwoDigits((int) (ms / 60000 % 60)).append(':');
+            appendTwoDigits((int) (ms / 1000 % 60)).append('.');
+            int millis = (int) (ms % 1000);
+            chars[length++] = (char) ('0' + millis / 100);
+            appendTwoDigits(millis % 100);
+            return append('Z');
+        }
+        
+        private LineBuilder appendTwoDigits(int value) {
+            chars[length++] = (char) ('0' + value / 10);
+            chars[length++] = (char) ('0' + value % 10);
+            return this;
+        }
+        
+        /**
+         * Civil date of a day number since 1970-01-01 as yyyy-MM-ddT (Howard Hinnant's algorithm)
+         */
+        private void fillDate(long day) {
+            long z = day + 719468;
+            long era = floorDiv(z, 146097);
+            long dayOfEra = z - era * 146097;
+            long yearOfEra = (dayOfEra - dayOfEra / 1460 + dayOfEra / 36524 - dayOfEra / 146096) / 365;
+            long dayOfYear = dayOfEra - (365 * yearOfEra + yearOfEra / 4 - yearOfEra / 100);
+            long monthIndex = (5 * dayOfYear + 2) / 153;
+            int dayOfMonth = (int) (dayOfYear - (153 * monthIndex + 2) / 5 + 1);
+            int month = (int) (monthIndex < 10 ? monthIndex + 3 : monthIndex - 9);
+            int year = (int) (yearOfEra + era * 400 + (month <= 2 ? 1 : 0));
+            
+            cachedDate[0] = (char) ('0' + year / 1000 % 10);
+            cachedDate[1] = (char) ('0' + year / 100 % 10);
+            cachedDate[2] = (char) ('0' + year / 10 % 10);
+            cachedDate[3] = (char) ('0' + year % 10);
+            cachedDate[4] = '-';
+            cachedDate[5] = (char) ('0' + month / 10);
+            cachedDate[6] = (char) ('0' + month % 10);
+            cachedDate[7] = '-';
+            cachedDate[8] = (char) ('0' + dayOfMonth / 10);
+            cachedDate[9] = (char) ('0' + dayOfMonth % 10);
+            cachedDate[10] = 'T';
+        }
+        
+        private static long floorDiv(long value, long divisor) {
+            long quotient = value / divisor;
+            return (value % divisor != 0 && (value < 0) != (divisor < 0)) ? quotient - 1 : quotient;
+        }
+        
+        void writeTo(Writer out) throws IOException {
+            out.write(chars, 0, length);
+        }
+        
+        @Override
+        public String toString() {
+            return new String(chars, 0, length);
+        }
+    }
+}
@@ -0,0 +1,646 @@
+package com.example.androidcardashboard;
+
+import android.util.Log;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.CRC32;
+
+/**
+ * Append-only binary journal of trip samples and metric checkpoints, so an
+ * app restart or power loss does not wipe the trip.
+ *
+ * Records have a fixed size and a CRC. Samples are buffered on the main
+ * thread and written as one group commit every commitSamples samples or
+ * commitIntervalMs, ending with a checkpoint and a single fsync on a
+ * background thread. The file grows in preallocated chunks, so most commits
+ * do not touch the file size. On startup recover() replays the samples into
+ * the TripCalculator and stops at the first torn or corrupt record.
+ */
+public class TripJournal implements TripCalculator.OnSampleListener {
+    private static final String TAG = "TripJournal";
+    
+    public static final String FILE_NAME = "trip.journal";
+    public static final int DEFAULT_COMMIT_SAMPLES = 50;
+    public static final long DEFAULT_COMMIT_INTERVAL_MS = 5000;
+    
+    // Archived journals kept for recomputing trips, beyond these the oldest are deleted
+    public static final int MAX_ARCHIVED_JOURNALS = 500;
+    public static final long MAX_ARCHIVE_BYTES = 32 * 1024 * 1024; // About 190 hours at 1 Hz
+    
+    // File layout: header, then records until the first zero type
+    static final int HEADER_SIZE = 16;
+    static final int RECORD_SIZE = 48;
+    private static final long MAGIC = 0x545249504A524E31L; // "TRIPJRN1"
+    private static final int VERSION = 1;
+    private static final int TYPE_SAMPLE = 1;
+    private static final int TYPE_CHECKPOINT = 2;
+    private static final long PREALLOCATE_BYTES = 1024 * 1024; // About 6 hours at 1 Hz
+    
+    private final File file;
+    private final TripCalculator calculator;
+    private final int commitSamples;
+    private final long commitIntervalMs;
+    
+    // Main thread: records waiting for the next group commit
+    private final ByteBuffer pending;
+    private final CRC32 crc = new CRC32();
+    private int pendingSamples = 0;
+    private long lastCommitNs = System.nanoTime();
+    
+    // Writer thread, after recover() hands the file over
+    private final ExecutorService writer;
+    private RandomAccessFile randomAccessFile;
+    private FileChannel channel;
+    private long writePosition;
+    private long allocatedLength;
+    
+    // Statistics
+    private volatile long commitCount = 0;
+    private volatile long recordCount = 0;
+    private volatile long lastCommitUs = 0;
+    private long recoveredSamples = 0;
+    private long recoveryMs = 0;
+    private long droppedBytes = 0;
+    
+    public TripJournal(File file, TripCalculator calculator) {
+        this(file, calculator, DEFAULT_COMMIT_SAMPLES, DEFAULT_COMMIT_INTERVAL_MS);
+    }
+    
+    public TripJournal(File file, TripCalculator calculator, int commitSamples, long commitIntervalMs) {
+        this.file = file;
+        this.calculator = calculator;
+        this.commitSamples = Math.max(1, commitSamples);
+        this.commitIntervalMs = commitIntervalMs;
+        // Room for a full batch plus its checkpoint
+        this.pending = ByteBuffer.allocate((this.commitSamples + 1) * RECORD_SIZE);
+        this.writer = Executors.newSingleThreadExecutor(new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, "TripJournal");
+                thread.setPriority(Thread.MIN_PRIORITY);
+                return thread;
+            }
+        });
+    }
+    
+    /**
+     * Open the journal and replay it into the calculator. Call once, before
+     * the journal is registered as sample listener.
+     * @return number of samples restored
+     */
+    public long recover() {
+        long start = System.nanoTime();
+        try {
+            randomAccessFile = new RandomAccessFile(file, "rw");
+            channel = randomAccessFile.getChannel();
+            long size = channel.size();
+            
+            if (size < HEADER_SIZE || !readHeader()) {
+                if (size > 0) {
+                    Log.w(TAG, "Journal header invalid, starting a new trip");
+                }
+                truncate();
+                return 0;
+            }
+            
+            writePosition = replay(size);
+            allocatedLength = size;
+            if (writePosition < size) {
+                // Zero whatever a torn commit may have left, so old records never follow new ones
+                clearTail();
+            }
+        } catch (IOException e) {
+            Log.e(TAG, "Failed to open trip journal", e);
+            closeFile();
+        } finally {
+            recoveryMs = (System.nanoTime() - start) / 1000000;
+        }
+        Log.i(TAG, "Recovered " + recoveredSamples + " samples in " + recoveryMs + " ms");
+        return recoveredSamples;
+    }
+    
+    private boolean readHeader() throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+        while (header.hasRemaining() && channel.read(header, header.position()) > 0) {
+            // Read the whole header
+        }
+        header.flip();
+        return header.remaining() == HEADER_SIZE && header.getLong() == MAGIC
+            && header.getInt() == VERSION && header.getInt() == RECORD_SIZE;
+    }
+    
+    private long replay(long size) throws IOException {
+        Reader reader = new Reader(channel);
+        double checkpointDistance = -1;
+        boolean endsWithCheckpoint = false;
+        
+        while (reader.next()) {
+            if (reader.isSample()) {
+                calculator.updateSample(reader.getLatitude(), reader.getLongitude(), reader.getTimestamp(),
+                                        reader.getSpeed(), reader.getTemperature(), reader.getFuelLevel());
+                recoveredSamples++;
+                endsWithCheckpoint = false;
+            } else {
+                checkpointDistance = reader.getCheckpointDistance();
+                endsWithCheckpoint = true;
+            }
+            recordCount++;
+        }
+        if (reader.isTorn()) {
+            Log.w(TAG, "Torn or corrupt record at " + reader.getPosition() + ", dropping the rest");
+            droppedBytes = size - reader.getPosition();
+        }
+        
+        // A torn batch may end with samples after the last checkpoint, only compare complete ones
+        if (endsWithCheckpoint && Math.abs(checkpointDistance - calculator.getTotalDistance()) > 0.001) {
+            Log.w(TAG, String.format("Replayed distance %.3f km differs from checkpoint %.3f km",
+                calculator.getTotalDistance(), checkpointDistance));
+        }
+        return reader.getPosition();
+    }
+    
+    // Main thread
+    
+    @Override
+    public void onSample(double latitude, double longitude, long timestamp,
+                         double speed, double temperature, double fuelLevel) {
+        int start = beginRecord(TYPE_SAMPLE, timestamp);
+        pending.putDouble(latitude);
+        pending.putDouble(longitude);
+        pending.putFloat((float) speed);
+        pending.putFloat((float) temperature);
+        pending.putFloat((float) fuelLevel);
+        endRecord(start);
+        pendingSamples++;
+        
+        if (pendingSamples >= commitSamples || commitDue()) {
+            commit();
+        }
+    }
+    
+    /**
+     * Commit a partial batch once it is older than the commit interval, for
+     * when samples stop arriving
+     */
+    public void commitIfDue() {
+        if (pendingSamples > 0 && commitDue()) {
+            commit();
+        }
+    }
+    
+    /**
+     * Commit whatever is buffered now, e.g. when the app goes to the background
+     */
+    public void flush() {
+        if (pendingSamples > 0) {
+            commit();
+        }
+    }
+    
+    private boolean commitDue() {
+        return (System.nanoTime() - lastCommitNs) / 1000000 >= commitIntervalMs;
+    }
+    
+    private void commit() {
+        int start = beginRecord(TYPE_CHECKPOINT, System.currentTimeMillis());
+        pending.putDouble(calculator.getTotalDistance());
+        pending.putDouble(calculator.getTotalFuelUsed());
+        pending.putFloat((float) calculator.getCurrentFuelLevel());
+        pending.putInt(calculator.getDataPoints());
+        endRecord(start);
+        
+        final byte[] batch = Arrays.copyOf(pending.array(), pending.position());
+        pending.clear();
+        pendingSamples = 0;
+        lastCommitNs = System.nanoTime();
+        writer.execute(new Runnable() {
+            @Override
+            public void run() {
+                writeBatch(batch);
+            }
+        });
+    }
+    
+    private int beginRecord(int type, long timestamp) {
+        int start = pending.position();
+        pending.putInt(type);
+        pending.putInt(0); // Checksum, filled in by endRecord
+        pending.putLong(timestamp);
+        return start;
+    }
+    
+    private void endRecord(int start) {
+        // Unused fields stay zero
+        while (pending.position() < start + RECORD_SIZE) {
+            pending.put((byte) 0);
+        }
+        pending.putInt(start + 4, checksum(crc, pending.array(), start));
+    }
+    
+    private static int checksum(CRC32 crc, byte[] record, int offset) {
+        // Covers the type and the payload, not the checksum itself
+        crc.reset();
+        crc.update(record, offset, 4);
+        crc.update(record, offset + 8, RECORD_SIZE - 8);
+        return (int) crc.getValue();
+    }
+    
+    /**
+     * Start a new trip: drop the buffered samples and empty the file
+     */
+    public void reset() {
+        pending.clear();
+        pendingSamples = 0;
+        lastCommitNs = System.nanoTime();
+        writer.execute(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    truncate();
+                } catch (IOException e) {
+                    Log.e(TAG, "Failed to reset trip journal", e);
+                }
+            }
+        });
+    }
+    
+    /**
+     * Commit the buffered samples, move the journal file to target, e.g. to
+     * keep a finished trip, and continue with an empty journal. The oldest
+     * journals in target's directory are deleted beyond MAX_ARCHIVED_JOURNALS
+     * or MAX_ARCHIVE_BYTES. If the move fails the journal keeps its samples
+     * and the next trip is appended to them.
+     */
+    public void archive(final File target) {
+        flush();
+        writer.execute(new Runnable() {
+            @Override
+            public void run() {
+                boolean wasOpen = channel != null;
+                boolean moved = false;
+                try {
+                    if (wasOpen) {
+                        // Drop the preallocated space
+                        channel.truncate(writePosition);
+                    }
+                    closeFile();
+                    File directory = target.getParentFile();
+                    if (directory != null && !directory.isDirectory() && !directory.mkdirs()) {
+                        throw new IOException("Failed to create " + directory);
+                    }
+                    if (!file.renameTo(target)) {
+                        throw new IOException("Failed to move journal to " + target);
+                    }
+                    moved = true;
+                    pruneArchive(directory, MAX_ARCHIVED_JOURNALS, MAX_ARCHIVE_BYTES);
+                } catch (IOException e) {
+                    Log.e(TAG, "Failed to archive trip journal", e);
+                    closeFile();
+                }
+                try {
+                    randomAccessFile = new RandomAccessFile(file, "rw");
+                    channel = randomAccessFile.getChannel();
+                    if (moved || !wasOpen) {
+                        truncate();
+                    } else {
+                        // Still the only copy of the trip, append after its samples
+                        allocatedLength = channel.size();
+                    }
+                } catch (IOException e) {
+                    Log.e(TAG, "Failed to reopen trip journal", e);
+                    closeFile();
+                }
+            }
+        });
+    }
+    
+    /**
+     * Delete the oldest journals in directory until at most maxJournals and
+     * maxBytes are left, always keeping the newest. Archived journals are
+     * named by their start time with equal length, so names sort by age.
+     * @return number of journals deleted
+     */
+    static int pruneArchive(File directory, int maxJournals, long maxBytes) {
+        File[] journals = directory != null ? directory.listFiles() : null;
+        if (journals == null) {
+            return 0;
+        }
+        Arrays.sort(journals);
+        int kept = 0;
+        long bytes = 0;
+        int deleted = 0;
+        for (int i = journals.length - 1; i >= 0; i--) {
+            if (!journals[i].getName().endsWith(".journal")) {
+                continue;
+            }
+            bytes += journals[i].length();
+            if (kept > 0 && (kept >= maxJournals || bytes > maxBytes)) {
+                if (journals[i].delete()) {
+                    deleted++;
+                }
+            } else {
+                kept++;
+            }
+        }
+        if (deleted > 0) {
+            Log.i(TAG, "Deleted " + deleted + " old trip journals, " + kept + " kept");
+        }
+        return deleted;
+    }
+    
+    /**
+     * Commit the buffered samples and close the file, waiting briefly for the write
+     */
+    public void close() {
+        flush();
+        writer.execute(new Runnable() {
+            @Override
+            public void run() {
+                closeFile();
+            }
+        });
+        writer.shutdown();
+        try {
+            if (!writer.awaitTermination(2, TimeUnit.SECONDS)) {
+                Log.w(TAG, "Journal writer did not finish in time");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+    
+    // Writer thread
+    
+    private void writeBatch(byte[] batch) {
+        if (channel == null) {
+            return;
+        }
+        long start = System.nanoTime();
+        try {
+            boolean grown = ensureAllocated(writePosition + batch.length);
+            ByteBuffer buffer = ByteBuffer.wrap(batch);
+            while (buffer.hasRemaining()) {
+                writePosition += channel.write(buffer, writePosition);
+            }
+            // File metadata only needs syncing when the preallocated space grew
+            channel.force(grown);
+            commitCount++;
+            recordCount += batch.length / RECORD_SIZE;
+            lastCommitUs = (System.nanoTime() - start) / 1000;
+        } catch (IOException e) {
+            Log.e(TAG, "Failed to write trip journal", e);
+        }
+    }
+    
+    private boolean ensureAllocated(long length) throws IOException {
+        if (length <= allocatedLength) {
+            return false;
+        }
+        allocatedLength = length + PREALLOCATE_BYTES;
+        randomAccessFile.setLength(allocatedLength);
+        return true;
+    }
+    
+    private void truncate() throws IOException {
+        if (channel == null) {
+            return;
+        }
+        channel.truncate(0);
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+        header.putLong(MAGIC).putInt(VERSION).putInt(RECORD_SIZE);
+        header.flip();
+        channel.write(header, 0);
+        writePosition = HEADER_SIZE;
+        allocatedLength = HEADER_SIZE;
+        recordCount = 0;
+        channel.force(true);
+    }
+    
+    private void clearTail() throws IOException {
+        long end = Math.min(allocatedLength, writePosition + (long) (commitSamples + 1) * RECORD_SIZE);
+        ByteBuffer zeros = ByteBuffer.allocate((int) (end - writePosition));
+        long position = writePosition;
+        while (zeros.hasRemaining()) {
+            position += channel.write(zeros, position);
+        }
+        channel.force(false);
+    }
+    
+    private void closeFile() {
+        try {
+            if (randomAccessFile != null) {
+                randomAccessFile.close();
+            }
+        } catch (IOException e) {
+            Log.e(TAG, "Failed to close trip journal", e);
+        }
+        randomAccessFile = null;
+        channel = null;
+    }
+    
+    /**
+     * Sequential reader over the valid records of a journal file, in chunks
+     * so memory use does not depend on the trip length. Stops at the end of
+     * the written records or at the first torn or corrupt one.
+     */
+    public static class Reader implements Closeable {
+        private static final int CHUNK_RECORDS = 1024;
+        
+        private final RandomAccessFile ownedFile;
+        private final FileChannel channel;
+        private final ByteBuffer chunk = ByteBuffer.allocate(CHUNK_RECORDS * RECORD_SIZE);
+        private final byte[] record = new byte[RECORD_SIZE];
+        private final ByteBuffer fields = ByteBuffer.wrap(record);
+        private final CRC32 crc = new CRC32();
+        private long position = HEADER_SIZE; // File offset of the next record
+        private long chunkEnd = HEADER_SIZE; // File offset after the buffered chunk
+        private long recordsLeft = Long.MAX_VALUE;
+        private boolean torn = false;
+        
+        /**
+         * Open a journal file for reading, e.g. for export while the journal is in use
+         */
+        public Reader(File file) throws IOException {
+            this(file, 0, Long.MAX_VALUE);
+        }
+        
+        /**
+         * Read at most maxRecords records, starting at record firstRecord
+         */
+        public Reader(File file, long firstRecord, long maxRecords) throws IOException {
+            position = HEADER_SIZE + firstRecord * RECORD_SIZE;
+            chunkEnd = position;
+            recordsLeft = maxRecords;
+            ownedFile = new RandomAccessFile(file, "r");
+            channel = ownedFile.getChannel();
+            ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+            channel.read(header, 0);
+            header.flip();
+            if (header.remaining() < HEADER_SIZE || header.getLong() != MAGIC
+                    || header.getInt() != VERSION || header.getInt() != RECORD_SIZE) {
+                ownedFile.close();
+                throw new IOException("Not a trip journal: " + file);
+            }
+            chunk.limit(0);
+        }
+        
+        private Reader(FileChannel channel) {
+            this.ownedFile = null;
+            this.channel = channel;
+            chunk.limit(0);
+        }
+        
+        /**
+         * Move to the next record
+         * @return false at the end of the valid records
+         */
+        public boolean next() throws IOException {
+            if (recordsLeft == 0) {
+                return false;
+            }
+            if (chunk.remaining() < RECORD_SIZE) {
+                chunk.clear();
+                while (chunk.hasRemaining()) {
+                    int read = channel.read(chunk, chunkEnd + chunk.position());
+                    if (read <= 0) {
+                        break;
+                    }
+                }
+                chunkEnd += chunk.position();
+                chunk.flip();
+                if (chunk.remaining() < RECORD_SIZE) {
+                    return false;
+                }
+            }
+            chunk.get(record);
+            int type = fields.getInt(0);
+            if (type == 0) {
+                // Start of the preallocated space
+                return false;
+            }
+            if (fields.getInt(4) != checksum(crc, record, 0)
+                    || (type != TYPE_SAMPLE && type != TYPE_CHECKPOINT)) {
+                torn = true;
+                return false;
+            }
+            position += RECORD_SIZE;
+            recordsLeft--;
+            return true;
+        }
+        
+        public boolean isSample() {
+            return fields.getInt(0) == TYPE_SAMPLE;
+        }
+        
+        public long getTimestamp() {
+            return fields.getLong(8);
+        }
+        
+        // Sample fields
+        
+        public double getLatitude() {
+            return fields.getDouble(16);
+        }
+        
+        public double getLongitude() {
+            return fields.getDouble(24);
+        }
+        
+        public double getSpeed() {
+            return fields.getFloat(32);
+        }
+        
+        public double getTemperature() {
+            return fields.getFloat(36);
+        }
+        
+        public double getFuelLevel() {
+            return fields.getFloat(40);
+        }
+        
+        // Checkpoint fields
+        
+        public double getCheckpointDistance() {
+            return fields.getDouble(16);
+        }
+        
+        /**
+         * Records from the current one up to the start of the preallocated
+         * space, found by a binary search for the first empty record. Torn
+         * records count, so this is an upper bound.
+         */
+        public long countRecords() throws IOException {
+            long first = (position - HEADER_SIZE) / RECORD_SIZE;
+            long low = first;
+            long high = Math.max(low, (channel.size() - HEADER_SIZE) / RECORD_SIZE);
+            ByteBuffer type = ByteBuffer.allocate(4);
+            while (low < high) {
+                long middle = (low + high) >>> 1;
+                type.clear();
+                channel.read(type, HEADER_SIZE + middle * RECORD_SIZE);
+                if (type.position() == 4 && type.getInt(0) != 0) {
+                    low = middle + 1;
+                } else {
+                    high = middle;
+                }
+            }
+            return Math.min(recordsLeft, low - first);
+        }
+        
+        /**
+         * File offset after the last valid record read
+         */
+        public long getPosition() {
+            return position;
+        }
+        
+        public boolean isTorn() {
+            return torn;
+        }
+        
+        @Override
+        public void close() throws IOException {
+            if (ownedFile != null) {
+                ownedFile.close();
+            }
+        }
+    }
+    
+    public File getFile() {
+        return file;
+    }
+    
+    public long getRecoveredSamples() {
+        return recoveredSamples;
+    }
+    
+    public long getRecoveryMs() {
+        return recoveryMs;
+    }
+    
+    public long getDroppedBytes() {
+        return droppedBytes;
+    }
+    
+    public long getCommitCount() {
+        return commitCount;
+    }
+    
+    public long getRecordCount() {
+        return recordCount;
+    }
+    
+    public long getLastCommitUs() {
+        return lastCommitUs;
+    }
+}
@@ -0,0 +1,414 @@
+package com.example.androidcardashboard;
+
+import android.util.Log;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Recomputes the catalog summaries of archived trips from their journals,
+ * e.g. after the tank capacity or the fuel formula changed.
+ *
+ * Journals are split into chunks of records. One worker per core takes the
+ * next chunk from a shared atomic cursor, so faster workers simply take
+ * more chunks (ForkJoinPool needs API 21; with equal chunks the cursor
+ * balances the load the same way). Each chunk folds into a Partial, and
+ * partials merge associatively in record order: the merge adds the
+ * distance, fuel drop and hold time across the chunk boundary. Cancelling
+ * keeps finished chunks, so start() again resumes with the rest.
+ *
+ * The summaries are written with the catalog locked, which keeps compaction
+ * from moving trips meanwhile. A job cancelled before it got the lock
+ * writes nothing, so a cancelled job can't overwrite the results of the
+ * job that replaced it.
+ */
+public class TripRecomputeJob {
+    private static final String TAG = "TripRecomputeJob";
+    
+    public static final int DEFAULT_CHUNK_RECORDS = 16384;
+    private static final int CANCEL_CHECK_RECORDS = 4096;
+    
+    /**
+     * Called on the job's coordinator thread
+     */
+    public interface Listener {
+        void onProgress(int chunksDone, int chunks, double samplesPerSecond);
+        void onFinished(int tripsUpdated, long samples, double samplesPerSecond);
+        void onCancelled(int chunksDone, int chunks);
+    }
+    
+    private final TripCatalog catalog;
+    private final File[] journals;
+    private final double tankCapacityLitres;
+    private final long maxHoldMs;
+    private final int threads;
+    
+    // Chunk plan, in journal and record order
+    private final int[] chunkJournal;
+    private final long[] chunkFirstRecord;
+    private final int chunkRecords;
+    private final Partial[] partials;
+    
+    private final AtomicInteger cursor = new AtomicInteger();
+    private final AtomicInteger chunksDone = new AtomicInteger();
+    private final AtomicLong samplesRead = new AtomicLong();
+    private volatile boolean cancelled = false;
+    private volatile boolean running = false;
+    private volatile boolean finished = false;
+    private volatile double samplesPerSecond = 0;
+    
+    /**
+     * @param journals archived trip journals, sorted by trip start
+     */
+    public TripRecomputeJob(TripCatalog catalog, File[] journals, double tankCapacityLitres) {
+        this(catalog, journals, tankCapacityLitres, DEFAULT_CHUNK_RECORDS,
+             Runtime.getRuntime().availableProcessors());
+    }
+    
+    public TripRecomputeJob(TripCatalog catalog, File[] journals, double tankCapacityLitres,
+                            int chunkRecords, int threads) {
+        this.catalog = catalog;
+        this.journals = journals;
+        this.tankCapacityLitres = tankCapacityLitres;
+        this.maxHoldMs = TripCalculator.MAX_SAMPLE_HOLD_MS;
+        this.chunkRecords = chunkRecords;
+        this.threads = Math.max(1, threads);
+        
+        int chunks = 0;
+        for (int i = 0; i < journals.length; i++) {
+            chunks += (int) ((recordCount(journals[i]) + chunkRecords - 1) / chunkRecords);
+        }
+        chunkJournal = new int[chunks];
+        chunkFirstRecord = new long[chunks];
+        partials = new Partial[chunks];
+        int chunk = 0;
+        for (int i = 0; i < journals.length; i++) {
+            long records = recordCount(journals[i]);
+            for (long first = 0; first < records; first += chunkRecords) {
+                chunkJournal[chunk] = i;
+                chunkFirstRecord[chunk] = first;
+                chunk++;
+            }
+        }
+    }
+    
+    private static long recordCount(File journal) {
+        return Math.max(0, (journal.length() - TripJournal.HEADER_SIZE) / TripJournal.RECORD_SIZE);
+    }
+    
+    /**
+     * Start or resume on background threads
+     */
+    public synchronized void start(final Listener listener) {
+        if (running || finished) {
+            return;
+        }
+        running = true;
+        cancelled = false;
+        cursor.set(0);
+        Thread coordinator = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    runWorkers(listener);
+                } finally {
+                    running = false;
+                }
+            }
+        }, "TripRecompute");
+        coordinator.setPriority(Thread.MIN_PRIORITY);
+        coordinator.start();
+    }
+    
+    public void cancel() {
+        cancelled = true;
+    }
+    
+    public boolean isRunning() {
+        return running;
+    }
+    
+    public boolean isFinished() {
+        return finished;
+    }
+    
+    public double getSamplesPerSecond() {
+        return samplesPerSecond;
+    }
+    
+    public int getChunkCount() {
+        return partials.length;
+    }
+    
+    public int getChunksDone() {
+        return chunksDone.get();
+    }
+    
+    private void runWorkers(final Listener listener) {
+        final long start = System.nanoTime();
+        final long samplesBefore = samplesRead.get();
+        Thread[] workers = new Thread[threads];
+        for (int i = 0; i < threads; i++) {
+            workers[i] = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    DistanceKernel kernel = new DistanceKernel();
+                    int chunk;
+                    while (!cancelled && (chunk = cursor.getAndIncrement()) < partials.length) {
+                        if (partials[chunk] != null) {
+                            // Done before a cancel
+                            continue;
+                        }
+                        Partial partial = processChunk(chunk, kernel);
+                        if (partial != null) {
+                            partials[chunk] = partial;
+                            int done = chunksDone.incrementAndGet();
+                            samplesPerSecond = rate(samplesRead.get() - samplesBefore, start);
+                            if (listener != null) {
+                                listener.onProgress(done, partials.length, samplesPerSecond);
+                            }
+                        }
+                    }
+                }
+            }, "TripRecompute-" + i);
+            workers[i].setPriority(Thread.MIN_PRIORITY);
+            workers[i].start();
+        }
+        for (int i = 0; i < threads; i++) {
+            try {
+                workers[i].join();
+            } catch (InterruptedException e) {
+                cancelled = true;
+                Thread.currentThread().interrupt();
+            }
+        }
+        samplesPerSecond = rate(samplesRead.get() - samplesBefore, start);
+        
+        if (chunksDone.get() < partials.length) {
+            Log.i(TAG, "Cancelled after " + chunksDone.get() + " of " + partials.length + " chunks");
+            if (listener != null) {
+                listener.onCancelled(chunksDone.get(), partials.length);
+            }
+            return;
+        }
+        
+        int updated = updateCatalog();
+        if (updated < 0) {
+            Log.i(TAG, "Cancelled before updating the catalog");
+            if (listener != null) {
+                listener.onCancelled(chunksDone.get(), partials.length);
+            }
+            return;
+        }
+        finished = true;
+        Log.i(TAG, String.format("Recomputed %d trips, %d samples at %.0f samples/s",
+            updated, samplesRead.get(), samplesPerSecond));
+        if (listener != null) {
+            listener.onFinished(updated, samplesRead.get(), samplesPerSecond);
+        }
+    }
+    
+    private static double rate(long samples, long startNs) {
+        long elapsedNs = System.nanoTime() - startNs;
+        return elapsedNs > 0 ? samples * 1e9 / elapsedNs : 0;
+    }
+    
+    /**
+     * Fold one chunk, or null if cancelled or unreadable
+     */
+    private Partial processChunk(int chunk, DistanceKernel kernel) {
+        Partial partial = new Partial(maxHoldMs);
+        try {
+            TripJournal.Reader reader = new TripJournal.Reader(journals[chunkJournal[chunk]],
+                                                               chunkFirstRecord[chunk], chunkRecords);
+            try {
+                int records = 0;
+                while (reader.next()) {
+                    if (reader.isSample()) {
+                        partial.add(reader.getLatitude(), reader.getLongitude(), reader.getTimestamp(),
+                                    reader.getSpeed(), reader.getTemperature(), reader.getFuelLevel(), kernel);
+                    }
+                    if (++records % CANCEL_CHECK_RECORDS == 0 && cancelled) {
+                        return null;
+                    }
+                }
+            } finally {
+                reader.close();
+            }
+        } catch (IOException e) {
+            // Keep going, an unreadable chunk just adds nothing
+            Log.e(TAG, "Failed to read " + journals[chunkJournal[chunk]], e);
+        }
+        samplesRead.addAndGet(partial.count);
+        return partial;
+    }
+    
+    /**
+     * Merge the partials of each journal, then the journals of each catalog
+     * trip (compaction may have merged several), and replace the summaries
+     * @return number of trips updated, -1 when cancelled
+     */
+    int updateCatalog() {
+        DistanceKernel kernel = new DistanceKernel();
+        Partial[] perJournal = new Partial[journals.length];
+        for (int i = 0; i < partials.length; i++) {
+            int journal = chunkJournal[i];
+            if (perJournal[journal] == null) {
+                perJournal[journal] = new Partial(maxHoldMs);
+            }
+            perJournal[journal].merge(partials[i], true, kernel);
+        }
+        
+        int updated = 0;
+        TripCatalog.Summary summary = new TripCatalog.Summary();
+        int journal = 0;
+        // Indexes stay valid while locked, compaction and other jobs wait
+        synchronized (catalog) {
+            if (cancelled) {
+                return -1;
+            }
+            for (int trip = 0; trip < catalog.size() && journal < journals.length; trip++) {
+                catalog.getSummary(trip, summary);
+                Partial total = new Partial(maxHoldMs);
+                while (journal < journals.length && (perJournal[journal] == null
+                        || perJournal[journal].firstTime <= summary.endMs)) {
+                    Partial part = perJournal[journal++];
+                    if (part != null && part.count > 0 && part.firstTime >= summary.startMs) {
+                        // Separate trips, nothing is driven between them
+                        total.merge(part, false, kernel);
+                    }
+                }
+                if (total.count > 0) {
+                    total.fillSummary(summary, tankCapacityLitres);
+                    catalog.replace(trip, summary);
+                    updated++;
+                }
+            }
+        }
+        return updated;
+    }
+    
+    /**
+     * Trip aggregate over a contiguous run of samples, mirroring the
+     * TripCalculator rules for distance, fuel and time-weighted averages
+     */
+    static final class Partial {
+        final long maxHoldMs;
+        int count = 0;
+        
+        // Boundary samples, needed to join neighbouring partials
+        double firstLatitude;
+        double firstLongitude;
+        long firstTime;
+        double firstFuel;
+        double lastLatitude;
+        double lastLongitude;
+        long lastTime;
+        double lastSpeed;
+        double lastTemperature;
+        double lastFuel;
+        
+        double distanceKm = 0;
+        double fuelDropPercent = 0;
+        long heldMs = 0;
+        double speedMs = 0;
+        double temperatureMs = 0;
+        double speedSum = 0;
+        double temperatureSum = 0;
+        double maxSpeed = 0;
+        
+        Partial(long maxHoldMs) {
+            this.maxHoldMs = maxHoldMs;
+        }
+        
+        void add(double latitude, double longitude, long time,
+                 double speed, double temperature, double fuel, DistanceKernel kernel) {
+            if (count == 0) {
+                firstLatitude = latitude;
+                firstLongitude = longitude;
+                firstTime = time;
+                firstFuel = fuel;
+                lastTime = time;
+            } else {
+                join(latitude, longitude, time, fuel, kernel);
+                lastTime = Math.max(lastTime, time);
+            }
+            lastLatitude = latitude;
+            lastLongitude = longitude;
+            lastSpeed = speed;
+            lastTemperature = temperature;
+            lastFuel = fuel;
+            speedSum += speed;
+            temperatureSum += temperature;
+            maxSpeed = Math.max(maxSpeed, speed);
+            count++;
+        }
+        
+        /**
+         * Step from the last sample to the next one
+         */
+        private void join(double latitude, double longitude, long time, double fuel, DistanceKernel kernel) {
+            distanceKm += kernel.distanceKm(lastLatitude, lastLongitude, latitude, longitude);
+            if (fuel < lastFuel) {
+                fuelDropPercent += lastFuel - fuel;
+            }
+            if (time > lastTime) {
+                long held = Math.min(time - lastTime, maxHoldMs);
+                heldMs += held;
+                speedMs += lastSpeed * held;
+                temperatureMs += lastTemperature * held;
+            }
+        }
+        
+        /**
+         * Append the samples of other, which follow this one's
+         * @param continuous whether the step between the two counts, false for separate trips
+         */
+        void merge(Partial other, boolean continuous, DistanceKernel kernel) {
+            if (other.count == 0) {
+                return;
+            }
+            if (count == 0) {
+                firstLatitude = other.firstLatitude;
+                firstLongitude = other.firstLongitude;
+                firstTime = other.firstTime;
+                firstFuel = other.firstFuel;
+                lastTime = other.lastTime;
+            } else {
+                if (continuous) {
+                    join(other.firstLatitude, other.firstLongitude, other.firstTime, other.firstFuel, kernel);
+                }
+                lastTime = Math.max(lastTime, other.lastTime);
+            }
+            lastLatitude = other.lastLatitude;
+            lastLongitude = other.lastLongitude;
+            lastSpeed = other.lastSpeed;
+            lastTemperature = other.lastTemperature;
+            lastFuel = other.lastFuel;
+            distanceKm += other.distanceKm;
+            fuelDropPercent += other.fuelDropPercent;
+            heldMs += other.heldMs;
+            speedMs += other.speedMs;
+            temperatureMs += other.temperatureMs;
+            speedSum += other.speedSum;
+            temperatureSum += other.temperatureSum;
+            maxSpeed = Math.max(maxSpeed, other.maxSpeed);
+            count += other.count;
+        }
+        
+        void fillSummary(TripCatalog.Summary out, double tankCapacityLitres) {
+            out.startMs = firstTime;
+            out.endMs = lastTime;
+            out.drivingMs = heldMs;
+            out.distanceKm = distanceKm;
+            out.fuelUsed = fuelDropPercent * tankCapacityLitres / 100.0;
+            // Same fallback as TripCalculator when no time passed between samples
+            out.avgSpeed = heldMs > 0 ? speedMs / heldMs : speedSum / count;
+            out.avgTemperature = heldMs > 0 ? temperatureMs / heldMs : temperatureSum / count;
+            out.maxSpeed = maxSpeed;
+            out.samples = count;
+        }
+    }
+}
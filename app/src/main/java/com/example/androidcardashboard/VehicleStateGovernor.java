@@ -0,0 +1,191 @@
+package com.example.androidcardashboard;
+
+import android.os.Process;
+import android.os.SystemClock;
+import android.util.Log;
+
+/**
+ * Classifies the vehicle into parked / idle / driving / reversing from the
+ * live telemetry and decides how often the dashboard refreshes, how fast
+ * telemetry frames are dispatched to the UI and how much background work runs.
+ */
+public class VehicleStateGovernor {
+    private static final String TAG = "VehicleStateGovernor";
+    
+    public enum DriveState {
+        PARKED,    // No telemetry, or stopped with the engine off for a while
+        IDLE,      // Stopped with the engine running or stopped only briefly
+        DRIVING,   // Moving forward
+        REVERSING  // Reverse gear engaged
+    }
+    
+    public interface OnDriveStateChangeListener {
+        void onDriveStateChanged(DriveState oldState, DriveState newState);
+    }
+    
+    // Classification thresholds
+    private static final double MOVING_SPEED_KMH = 2.0;
+    private static final double ENGINE_RUNNING_RPM = 300;
+    private static final long PARK_AFTER_STOP_MS = 2 * 60 * 1000; // ESP32 does not send RPM, so fall back to stop time
+    private static final long STOP_CONFIRM_MS = 3000; // Ignore short dips below walking speed
+    
+    private DriveState state = DriveState.PARKED;
+    // Never moved yet; elapsedRealtime() starts at boot, so 0 would be recent
+    private long lastMovingTime = Long.MIN_VALUE / 2;
+    private long stoppedSince = -1;
+    private OnDriveStateChangeListener listener;
+    
+    // Time accounting per state
+    private final long[] cpuTimeMs = new long[DriveState.values().length];
+    private final long[] wallTimeMs = new long[DriveState.values().length];
+    private long stateEnteredWallMs;
+    private long stateEnteredCpuMs;
+    
+    public VehicleStateGovernor() {
+        stateEnteredWallMs = SystemClock.elapsedRealtime();
+        stateEnteredCpuMs = Process.getElapsedCpuTime();
+    }
+    
+    public void setOnDriveStateChangeListener(OnDriveStateChangeListener listener) {
+        this.listener = listener;
+    }
+    
+    /**
+     * Feed the latest signals; returns the (possibly new) drive state
+     */
+    public DriveState update(double speed, double rpm, boolean dataAvailable, boolean reverseGear) {
+        return update(speed, rpm, dataAvailable, reverseGear, SystemClock.elapsedRealtime());
+    }
+    
+    DriveState update(double speed, double rpm, boolean dataAvailable, boolean reverseGear, long now) {
+        DriveState newState = classify(speed, rpm, dataAvailable, reverseGear, now);
+        if (newState != state) {
+            changeState(newState, now);
+        }
+        return state;
+    }
+    
+    private DriveState classify(double speed, double rpm, boolean dataAvailable, boolean reverseGear, long now) {
+        if (!dataAvailable) {
+            stoppedSince = -1;
+            return DriveState.PARKED;
+        }
+        if (reverseGear) {
+            lastMovingTime = now;
+            stoppedSince = -1;
+            return DriveState.REVERSING;
+        }
+        if (speed >= MOVING_SPEED_KMH) {
+            lastMovingTime = now;
+            stoppedSince = -1;
+            return DriveState.DRIVING;
+        }
+        
+        if (stoppedSince < 0) {
+            stoppedSince = now;
+        }
+        // Stay in a moving state until the stop is confirmed
+        if ((state == DriveState.DRIVING || state == DriveState.REVERSING) && now - stoppedSince < STOP_CONFIRM_MS) {
+            return state;
+        }
+        if (rpm >= ENGINE_RUNNING_RPM || now - lastMovingTime < PARK_AFTER_STOP_MS) {
+            return DriveState.IDLE;
+        }
+        return DriveState.PARKED;
+    }
+    
+    private void changeState(DriveState newState, long now) {
+        accountTime(now);
+        DriveState oldState = state;
+        state = newState;
+        Log.i(TAG, "Drive state " + oldState + " -> " + newState);
+        
+        if (listener != null) {
+            listener.onDriveStateChanged(oldState, newState);
+        }
+    }
+    
+    private void accountTime(long now) {
+        long cpuNow = Process.getElapsedCpuTime();
+        wallTimeMs[state.ordinal()] += now - stateEnteredWallMs;
+        cpuTimeMs[state.ordinal()] += cpuNow - stateEnteredCpuMs;
+        stateEnteredWallMs = now;
+        stateEnteredCpuMs = cpuNow;
+    }
+    
+    public DriveState getState() {
+        return state;
+    }
+    
+    /**
+     * Interval of the periodic dashboard refresh loop
+     */
+    public long getRefreshIntervalMs() {
+        switch (state) {
+            case PARKED:
+                return 5000;
+            case IDLE:
+                return 2000;
+            default:
+                return 1000;
+        }
+    }
+    
+    /**
+     * Minimum time between telemetry frames dispatched to the UI thread.
+     * Frames arriving faster are coalesced, only the latest one is shown.
+     */
+    public long getIngestIntervalMs() {
+        switch (state) {
+            case PARKED:
+                return 1000;
+            case IDLE:
+                return 200;
+            default:
+                return 0; // Every frame while moving
+        }
+    }
+    
+    /**
+     * Interval for housekeeping work such as re-applying fullscreen mode
+     */
+    public long getBackgroundIntervalMs() {
+        switch (state) {
+            case PARKED:
+                return 10000;
+            case IDLE:
+                return 5000;
+            default:
+                return 2000;
+        }
+    }
+    
+    /**
+     * Whether the screen should be kept at full brightness
+     */
+    public boolean shouldKeepScreenBright() {
+        return state != DriveState.PARKED;
+    }
+    
+    /**
+     * CPU time spent in each state so far, in milliseconds
+     */
+    public long getCpuTimeMs(DriveState driveState) {
+        long total = cpuTimeMs[driveState.ordinal()];
+        if (driveState == state) {
+            total += Process.getElapsedCpuTime() - stateEnteredCpuMs;
+        }
+        return total;
+    }
+    
+    /**
+     * Wall-clock time spent in each state so far, in milliseconds
+     */
+    public long getWallTimeMs(DriveState driveState) {
+        long total = wallTimeMs[driveState.ordinal()];
+        if (driveState == state) {
+            total += SystemClock.elapsedRealtime() - stateEnteredWallMs;
+        }
+        return total;
+    }
+}
@@ -0,0 +1,141 @@
+package com.example.androidcardashboard;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+/**
+ * Allocation budgets of the per-frame paths, counted by AllocationTracker
+ * in bytes on the JVM. A path whose median frame allocates more than its
+ * budget fails here; single frames may pick up unrelated allocations.
+ */
+public class AllocationBudgetTest {
+    private static final int WARM_UP_FRAMES = 20000;
+    private static final int FRAMES = 2000;
+    private static final long MS = 1000000L;
+    
+    // Keeps test allocations reachable, so they can't be optimized away
+    private static Object sink;
+    
+    @BeforeClass
+    public static void enableCounting() {
+        assertTrue("JVM without per-thread allocation counts", AllocationTracker.isAvailable());
+        AllocationTracker.setEnabled(true);
+    }
+    
+    @AfterClass
+    public static void disableCounting() {
+        AllocationTracker.setEnabled(false);
+    }
+    
+    /**
+     * Run frame until compiled, then count its allocations frame by frame
+     * @return the median count per frame
+     */
+    private static long measure(AllocationTracker.Scope scope, Runnable frame) {
+        for (int i = 0; i < WARM_UP_FRAMES; i++) {
+            frame.run();
+        }
+        scope.reset();
+        long[] counts = new long[FRAMES];
+        for (int i = 0; i < FRAMES; i++) {
+            long mark = scope.begin();
+            frame.run();
+            scope.end(mark);
+            counts[i] = scope.getLast();
+        }
+        Arrays.sort(counts);
+        long median = counts[FRAMES / 2];
+        BenchmarkReport.print("Allocations: %s %d median, %d max %s per frame, budget %d",
+            scope.getName(), median, scope.getMax(), AllocationTracker.getUnit(), scope.getBudget());
+        return median;
+    }
+    
+    private static void assertWithinBudget(String name, long budget, Runnable frame) {
+        AllocationTracker.Scope scope = AllocationTracker.scope("test." + name, budget);
+        long median = measure(scope, frame);
+        assertTrue(name + " went over its budget of " + budget + " " + AllocationTracker.getUnit()
+            + ", median " + median, median <= budget);
+    }
+    
+    @Test
+    public void overBudgetFramesAreCounted() {
+        AllocationTracker.Scope scope = AllocationTracker.scope("test.allocating", 0);
+        long median = measure(scope, new Runnable() {
+            @Override
+            public void run() {
+                sink = new byte[64];
+            }
+        });
+        assertEquals(FRAMES, scope.getFrames());
+        assertTrue("median " + median, median >= 64);
+        assertTrue("over budget " + scope.getOverBudgetCount(), scope.getOverBudgetCount() >= FRAMES / 2);
+    }
+    
+    @Test
+    public void telemetryDecodeIsAllocationFree() {
+        final byte[] frame = TelemetryDecoderTest.frame(0x55, 1234, 905, 500, 138, "Antananarivo");
+        final TelemetryDecoder decoder = new TelemetryDecoder();
+        assertWithinBudget("tcp.decode", 0, new Runnable() {
+            @Override
+            public void run() {
+                frame[1]++; // A new speed every frame
+                decoder.decode(frame, frame.length);
+            }
+        });
+    }
+    
+    @Test
+    public void readoutFormattingIsAllocationFree() {
+        final TextBuffer speedText = new TextBuffer(8);
+        final TextBuffer rpmText = new TextBuffer(16);
+        final float[] rpm = {800};
+        assertWithinBudget("readouts", 0, new Runnable() {
+            @Override
+            public void run() {
+                rpm[0] = rpm[0] > 7000 ? 800 : rpm[0] + 13.7f;
+                speedText.clear().append((int) (rpm[0] / 50));
+                rpmText.clear().append(rpm[0] / 1000, 1).append("K RPM");
+            }
+        });
+    }
+    
+    @Test
+    public void perfHudFrameIsAllocationFree() {
+        final PerfStats stats = new PerfStats(60f);
+        final long[] now = {0};
+        // Per vsync: frame, draw and the window update, with the once a second formatting
+        assertWithinBudget("perfHud", 0, new Runnable() {
+            @Override
+            public void run() {
+                now[0] += 16666667L;
+                stats.onVsync(now[0]);
+                stats.onFrameDispatched(now[0] - 20 * MS);
+                stats.onDraw(now[0]);
+                stats.update(now[0], now[0] / MS, 0, 12L << 20, 64L << 20, 0);
+            }
+        });
+    }
+    
+    @Test
+    public void reusedJsonWriterIsAllocationFree() {
+        final JsonWriter json = new JsonWriter(true);
+        final long[] value = {0};
+        assertWithinBudget("json", 0, new Runnable() {
+            @Override
+            public void run() {
+                value[0]++;
+                json.reset().beginObject()
+                    .name("speed").value(value[0] / 10.0, 1)
+                    .name("frames").value(value[0])
+                    .name("connected").value(true)
+                    .endObject();
+            }
+        });
+    }
+}
@@ -0,0 +1,19 @@
+package com.example.androidcardashboard;
+
+/**
+ * Numbers measured by the benchmark tests. They are only printed with the
+ * benchmark.verbose system property, e.g. gradlew test -Pbenchmark.verbose,
+ * so a normal test run stays quiet.
+ */
+final class BenchmarkReport {
+    static final boolean VERBOSE = Boolean.getBoolean("benchmark.verbose");
+    
+    private BenchmarkReport() {
+    }
+    
+    static void print(String format, Object... args) {
+        if (VERBOSE) {
+            System.out.println(String.format(format, args));
+        }
+    }
+}
@@ -0,0 +1,167 @@
+package com.example.androidcardashboard;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Requests to each endpoint over loopback, with the telemetry written on a
+ * separate thread standing in for the main thread.
+ */
+public class DiagnosticsServerTest {
+    private File directory;
+    private EventLog eventLog;
+    private ExecutorService mainThread;
+    private DiagnosticsServer server;
+    private final AtomicInteger snapshots = new AtomicInteger();
+    
+    @Before
+    public void setUp() throws IOException {
+        directory = File.createTempFile("events", "");
+        assertTrue(directory.delete());
+        assertTrue(directory.mkdir());
+        eventLog = new EventLog(directory);
+        eventLog.open();
+        for (int i = 0; i < 150; i++) {
+            eventLog.append(1735689600000L + i * 1000L, EventManager.LEVEL_DATA, EventLog.SOURCE_TCP, "Data received | %d bytes", i);
+        }
+        eventLog.flush();
+        
+        mainThread = Executors.newSingleThreadExecutor();
+        server = new DiagnosticsServer(InetAddress.getByName("127.0.0.1"), 0, new DiagnosticsServer.TelemetrySource() {
+            @Override
+            public void writeTelemetry(JsonWriter json) {
+                json.beginObject().name("snapshot").value(snapshots.incrementAndGet()).name("speed").value(88.8, 1).endObject();
+            }
+        }, mainThread, eventLog);
+        server.start();
+    }
+    
+    @After
+    public void tearDown() {
+        server.stop();
+        mainThread.shutdown();
+        eventLog.close();
+        File[] files = directory.listFiles();
+        for (int i = 0; i < files.length; i++) {
+            files[i].delete();
+        }
+        directory.delete();
+    }
+    
+    private String get(String target) throws IOException {
+        Socket socket = new Socket("127.0.0.1", server.getPort());
+        try {
+            socket.setSoTimeout(5000);
+            OutputStream out = socket.getOutputStream();
+            out.write(("GET " + target + " HTTP/1.1\r\nHost: localhost\r\n\r\n").getBytes("US-ASCII"));
+            InputStream in = socket.getInputStream();
+            ByteArrayOutputStream response = new ByteArrayOutputStream();
+            byte[] buffer = new byte[4096];
+            int read;
+            while ((read = in.read(buffer)) >= 0) {
+                response.write(buffer, 0, read);
+            }
+            return response.toString("UTF-8");
+        } finally {
+            socket.close();
+        }
+    }
+    
+    private static String body(String response) {
+        return response.substring(response.indexOf("\r\n\r\n") + 4);
+    }
+    
+    @Test
+    public void servesTelemetryMetricsAndEvents() throws Exception {
+        String telemetry = get("/telemetry");
+        assertTrue(telemetry, telemetry.startsWith("HTTP/1.1 200 OK\r\n"));
+        assertTrue(telemetry.contains("Content-Length: " + body(telemetry).length() + "\r\n"));
+        assertTrue(body(telemetry), body(telemetry).matches("\\{\"snapshot\":\\d+,\"speed\":88.8\\}"));
+        
+        String metrics = body(get("/metrics"));
+        assertTrue(metrics, metrics.contains("\"heap.usedKb\":"));
+        
+        String events = body(get("/events"));
+        assertTrue(events, events.contains("{\"time\":1735689749000,\"level\":\"DATA\",\"source\":\"tcp\",\"message\":\"Data received | 149 bytes\"}"));
+        String next = events.substring(events.indexOf("\"next\":") + 7, events.indexOf(','));
+        String older = body(get("/events?before=" + next));
+        assertTrue(older, older.contains("\"message\":\"Data received | 0 bytes\"") || older.contains("\"next\":"));
+        assertTrue(!older.contains("\"Data received | 149 bytes\""));
+        
+        assertTrue(get("/nothing").startsWith("HTTP/1.1 404 Not Found\r\n"));
+        assertTrue(get("/").contains("\"/stream\""));
+    }
+    
+    @Test
+    public void idleConnectionsGiveTheirSlotsBack() throws Exception {
+        server.setRequestTimeoutMs(300);
+        // More than all the slots, like a browser's preconnects that never send anything
+        Socket[] idle = new Socket[10];
+        for (int i = 0; i < idle.length; i++) {
+            idle[i] = new Socket("127.0.0.1", server.getPort());
+            idle[i].setSoTimeout(5000);
+        }
+        long start = System.nanoTime();
+        for (Socket socket : idle) {
+            assertEquals(-1, socket.getInputStream().read());
+            socket.close();
+        }
+        double seconds = (System.nanoTime() - start) / 1e9;
+        assertTrue("closed after " + seconds + " s", seconds < 2);
+        assertTrue(get("/telemetry").startsWith("HTTP/1.1 200 OK"));
+    }
+    
+    @Test
+    public void streamsServerSentEvents() throws Exception {
+        Socket socket = new Socket("127.0.0.1", server.getPort());
+        try {
+            socket.setSoTimeout(5000);
+            socket.getOutputStream().write("GET /stream?hz=20 HTTP/1.1\r\n\r\n".getBytes("US-ASCII"));
+            BufferedReader in = new BufferedReader(new InputStreamReader(socket.getInputStream(), "UTF-8"));
+            assertEquals("HTTP/1.1 200 OK", in.readLine());
+            String line;
+            while (!(line = in.readLine()).isEmpty()) {
+                if (line.startsWith("Content-Type:")) {
+                    assertEquals("Content-Type: text/event-stream", line);
+                }
+            }
+            long start = System.nanoTime();
+            int events = 0;
+            int lastSnapshot = 0;
+            while (events < 10) {
+                line = in.readLine();
+                if (line.startsWith("data: ")) {
+                    int snapshot = Integer.parseInt(line.replaceAll("\\D*(\\d+).*", "$1"));
+                    assertTrue(snapshot > lastSnapshot);
+                    lastSnapshot = snapshot;
+                    events++;
+                } else {
+                    assertEquals("", line);
+                }
+            }
+            double seconds = (System.nanoTime() - start) / 1e9;
+            // 20 Hz is capped at 5 Hz: ten events take about two seconds
+            assertTrue("10 events in " + seconds + " s", seconds > 1.2 && seconds < 4);
+        } finally {
+            socket.close();
+        }
+        // The closed stream is dropped and the server keeps serving
+        assertTrue(get("/telemetry").startsWith("HTTP/1.1 200 OK"));
+    }
+}
@@ -0,0 +1,121 @@
+package com.example.androidcardashboard;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Random;
+import org.junit.Test;
+
+/**
+ * Error bound of the fast distance path against haversine, and a benchmark
+ * comparing the two kernels on 10 Hz tracks.
+ */
+public class DistanceKernelTest {
+    private static final double ABSOLUTE_TOLERANCE_KM = 1e-6; // 1 mm
+    
+    /**
+     * Simulated 10 Hz drive: speed and heading wander like city and highway
+     * driving, starting from the given point.
+     */
+    private static double[][] makeTrack(double startLat, double startLon, int samples, long seed) {
+        Random random = new Random(seed);
+        double[][] track = new double[samples][2];
+        double lat = startLat;
+        double lon = startLon;
+        double speedKmh = 30;
+        double heading = random.nextDouble() * 2 * Math.PI;
+        for (int i = 0; i < samples; i++) {
+            track[i][0] = lat;
+            track[i][1] = lon;
+            speedKmh = Math.max(0, Math.min(130, speedKmh + random.nextGaussian() * 2));
+            heading += random.nextGaussian() * 0.05;
+            double stepKm = speedKmh / 3600.0 / 10.0;
+            lat += Math.cos(heading) * stepKm / DistanceKernel.EARTH_RADIUS_KM * 180 / Math.PI;
+            lon += Math.sin(heading) * stepKm / DistanceKernel.EARTH_RADIUS_KM * 180 / Math.PI
+                / Math.cos(Math.toRadians(lat));
+        }
+        return track;
+    }
+    
+    private static void assertWithinBound(double expected, double actual) {
+        double error = Math.abs(expected - actual);
+        assertTrue("fast " + actual + " vs haversine " + expected,
+            error <= ABSOLUTE_TOLERANCE_KM || error <= expected * DistanceKernel.MAX_RELATIVE_ERROR);
+    }
+    
+    @Test
+    public void fastPathWithinBoundOnTracks() {
+        double[][] starts = {
+            {-18.8792, 47.5079},  // Antananarivo
+            {0.0, 9.0},           // Equator
+            {59.9139, 10.7522},   // Oslo
+            {69.6492, 18.9553},   // Tromso, near the fast path limit
+            {-33.8688, 151.2093}  // Sydney
+        };
+        for (int s = 0; s < starts.length; s++) {
+            double[][] track = makeTrack(starts[s][0], starts[s][1], 36000, s);
+            DistanceKernel kernel = new DistanceKernel();
+            for (int i = 1; i < track.length; i++) {
+                double fast = kernel.distanceKm(track[i - 1][0], track[i - 1][1], track[i][0], track[i][1]);
+                double exact = DistanceKernel.haversineKm(track[i - 1][0], track[i - 1][1], track[i][0], track[i][1]);
+                assertWithinBound(exact, fast);
+            }
+            assertEquals(0, kernel.getFallbackCount());
+        }
+    }
+    
+    @Test
+    public void fastPathWithinBoundUpToThreshold() {
+        Random random = new Random(42);
+        DistanceKernel kernel = new DistanceKernel();
+        for (int i = 0; i < 200000; i++) {
+            double lat = (random.nextDouble() * 2 - 1) * DistanceKernel.MAX_FAST_LATITUDE_DEG * 0.99;
+            double lon = (random.nextDouble() * 2 - 1) * 179;
+            double deltaLat = (random.nextDouble() * 2 - 1) * DistanceKernel.SMALL_DELTA_DEG;
+            double deltaLon = (random.nextDouble() * 2 - 1) * DistanceKernel.SMALL_DELTA_DEG;
+            double fast = kernel.distanceKm(lat, lon, lat + deltaLat, lon + deltaLon);
+            double exact = DistanceKernel.haversineKm(lat, lon, lat + deltaLat, lon + deltaLon);
+            assertWithinBound(exact, fast);
+        }
+    }
+    
+    @Test
+    public void largeDeltasAndPolesFallBackToHaversine() {
+        DistanceKernel kernel = new DistanceKernel();
+        assertEquals(DistanceKernel.haversineKm(-18.9, 47.5, -18.5, 47.9),
+            kernel.distanceKm(-18.9, 47.5, -18.5, 47.9), 0.0);
+        assertEquals(DistanceKernel.haversineKm(85.0, 10.0, 85.001, 10.001),
+            kernel.distanceKm(85.0, 10.0, 85.001, 10.001), 0.0);
+        assertEquals(DistanceKernel.haversineKm(10.0, 179.999, 10.0, -179.999),
+            kernel.distanceKm(10.0, 179.999, 10.0, -179.999), 0.0);
+        assertEquals(3, kernel.getFallbackCount());
+        assertEquals(0.0, kernel.distanceKm(-18.9, 47.5, -18.9, 47.5), 0.0);
+    }
+    
+    @Test
+    public void benchmarkFastVersusHaversine() {
+        double[][] track = makeTrack(-18.8792, 47.5079, 100000, 7);
+        DistanceKernel kernel = new DistanceKernel();
+        double sink = 0;
+        
+        for (int round = 0; round < 3; round++) {
+            long start = System.nanoTime();
+            for (int i = 1; i < track.length; i++) {
+                sink += DistanceKernel.haversineKm(track[i - 1][0], track[i - 1][1], track[i][0], track[i][1]);
+            }
+            long haversineNs = System.nanoTime() - start;
+            
+            start = System.nanoTime();
+            for (int i = 1; i < track.length; i++) {
+                sink += kernel.distanceKm(track[i - 1][0], track[i - 1][1], track[i][0], track[i][1]);
+            }
+            long fastNs = System.nanoTime() - start;
+            
+            if (round == 2) {
+                BenchmarkReport.print("DistanceKernel: haversine %.1f ns, fast %.1f ns per pair",
+                    haversineNs / (double) (track.length - 1), fastNs / (double) (track.length - 1));
+            }
+        }
+        assertTrue(sink > 0);
+    }
+}
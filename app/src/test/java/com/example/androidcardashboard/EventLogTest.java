@@ -0,0 +1,204 @@
+package com.example.androidcardashboard;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Round trip through the segment files, rotation under the size cap, paging
+ * with a level filter and recovery from a torn tail.
+ */
+public class EventLogTest {
+    private static final long START_MS = 1735689600000L; // 2025-01-01 UTC
+    private static final int PROBLEMS = (1 << EventManager.LEVEL_ERROR) | (1 << EventManager.LEVEL_WARNING);
+    
+    private File directory;
+    
+    @Before
+    public void setUp() throws IOException {
+        directory = File.createTempFile("events", "");
+        assertTrue(directory.delete());
+        assertTrue(directory.mkdir());
+    }
+    
+    @After
+    public void tearDown() {
+        File[] files = directory.listFiles();
+        for (int i = 0; i < files.length; i++) {
+            files[i].delete();
+        }
+        directory.delete();
+    }
+    
+    /**
+     * Every 37th event is an error, the others alternate between data and status
+     */
+    private static int levelOf(int i) {
+        return i % 37 == 0 ? EventManager.LEVEL_ERROR : i % 2 == 0 ? EventManager.LEVEL_DATA : EventManager.LEVEL_STATUS;
+    }
+    
+    private static void appendEvents(EventLog log, int first, int count) {
+        for (int i = first; i < first + count; i++) {
+            if (i % 37 == 0) {
+                log.append(START_MS + i * 1000L, levelOf(i), EventLog.SOURCE_GPS, "GPS fix lost");
+            } else {
+                log.append(START_MS + i * 1000L, levelOf(i), EventLog.SOURCE_TCP, "Data received | %d bytes", i);
+            }
+        }
+        log.flush();
+    }
+    
+    private static String messageOf(int i) {
+        return i % 37 == 0 ? "GPS fix lost" : "Data received | " + i + " bytes";
+    }
+    
+    private static void assertEvent(EventLog.Page page, int index, int event) {
+        assertEquals(START_MS + event * 1000L, page.timestamps[index]);
+        assertEquals(levelOf(event), page.levels[index]);
+        assertEquals(event % 37 == 0 ? EventLog.SOURCE_GPS : EventLog.SOURCE_TCP, page.sources[index]);
+        assertEquals(messageOf(event), page.messages[index]);
+    }
+    
+    @Test
+    public void eventsSurviveReopen() {
+        EventLog log = new EventLog(directory);
+        log.open();
+        appendEvents(log, 0, 1000);
+        log.append(START_MS + 1000 * 1000L, EventManager.LEVEL_WARNING, EventLog.SOURCE_TCP, "Sent %d of %d", 3, -7);
+        log.close();
+        
+        log = new EventLog(directory);
+        log.open();
+        assertEquals(3, log.getTemplateCount());
+        EventLog.Page page = new EventLog.Page(100);
+        log.readPage(EventLog.NEWEST, EventLog.ALL_LEVELS, page);
+        assertEquals(100, page.count);
+        assertEquals("Sent 3 of -7", page.messages[0]);
+        assertEquals(EventManager.LEVEL_WARNING, page.levels[0]);
+        for (int i = 1; i < page.count; i++) {
+            assertEvent(page, i, 1000 - i);
+        }
+        
+        // Appending continues the last segment
+        appendEvents(log, 1001, 10);
+        log.readPage(EventLog.NEWEST, EventLog.ALL_LEVELS, page);
+        assertEvent(page, 0, 1010);
+        assertEquals("Sent 3 of -7", page.messages[10]);
+        assertEquals(1, log.getSegmentCount());
+        log.close();
+    }
+    
+    @Test
+    public void textIsNotInterned() {
+        EventLog log = new EventLog(directory);
+        log.open();
+        for (int i = 0; i < 100; i++) {
+            log.appendText(START_MS + i * 1000L, EventManager.LEVEL_WARNING, EventLog.SOURCE_APP,
+                "Stalled in Runnable" + i + " | at Work.run(Work.java:" + i + ")");
+        }
+        log.flush();
+        assertEquals(0, log.getTemplateCount());
+        EventLog.Page page = new EventLog.Page(10);
+        log.readPage(EventLog.NEWEST, EventLog.ALL_LEVELS, page);
+        assertEquals("Stalled in Runnable99 | at Work.run(Work.java:99)", page.messages[0]);
+        assertEquals(EventLog.SOURCE_APP, page.sources[0]);
+        log.close();
+    }
+    
+    @Test
+    public void rotationKeepsDiskUseBounded() {
+        EventLog log = new EventLog(directory, 4096, 4);
+        log.open();
+        for (int i = 0; i < 20; i++) {
+            appendEvents(log, i * 500, 500);
+        }
+        assertEquals(4, log.getSegmentCount());
+        assertTrue(log.getDiskBytes() <= 4 * (4096 + 28 * 16));
+        
+        // The newest events are all there, the oldest were deleted
+        EventLog.Page page = new EventLog.Page(64);
+        long before = EventLog.NEWEST;
+        int expected = 9999;
+        do {
+            log.readPage(before, EventLog.ALL_LEVELS, page);
+            for (int i = 0; i < page.count; i++) {
+                assertEvent(page, i, expected--);
+            }
+            before = page.next;
+        } while (before >= 0);
+        int kept = 9999 - expected;
+        assertTrue(kept > 1000 && kept < 10000);
+        log.close();
+        BenchmarkReport.print("EventLog: %d of 10000 events kept in %d bytes, %.1f bytes per event",
+            kept, log.getDiskBytes(), log.getDiskBytes() / (double) kept);
+    }
+    
+    @Test
+    public void filteredPagesAcrossSegments() {
+        EventLog log = new EventLog(directory, 2048, 100);
+        log.open();
+        appendEvents(log, 0, 3000);
+        assertTrue(log.getSegmentCount() > 5);
+        
+        // Only the errors, newest first, in pages of 7
+        EventLog.Page page = new EventLog.Page(7);
+        long before = EventLog.NEWEST;
+        int expected = 2997; // Last multiple of 37
+        do {
+            log.readPage(before, PROBLEMS, page);
+            for (int i = 0; i < page.count; i++) {
+                assertEvent(page, i, expected);
+                expected -= 37;
+            }
+            before = page.next;
+        } while (before >= 0);
+        assertEquals(-37, expected);
+        
+        // Jump to a time, the page starts with the event just before it
+        page = new EventLog.Page(5);
+        log.readPage(log.positionAt(START_MS + 1234 * 1000L), EventLog.ALL_LEVELS, page);
+        assertEquals(5, page.count);
+        for (int i = 0; i < 5; i++) {
+            assertEvent(page, i, 1233 - i);
+        }
+        log.readPage(log.positionAt(START_MS + 1234 * 1000L - 500), EventLog.ALL_LEVELS, page);
+        assertEvent(page, 0, 1233);
+        log.close();
+    }
+    
+    @Test
+    public void tornTailIsDropped() throws IOException {
+        EventLog log = new EventLog(directory);
+        log.open();
+        appendEvents(log, 0, 200);
+        log.close();
+        
+        // Cut the last record in half and lose the index
+        File segment = new File(directory, "events-00000000.seg");
+        RandomAccessFile file = new RandomAccessFile(segment, "rw");
+        file.setLength(file.length() - 3);
+        file.close();
+        assertTrue(new File(directory, "events-00000000.idx").delete());
+        
+        log = new EventLog(directory);
+        log.open();
+        EventLog.Page page = new EventLog.Page(300);
+        log.readPage(EventLog.NEWEST, EventLog.ALL_LEVELS, page);
+        assertEquals(199, page.count);
+        assertEvent(page, 0, 198);
+        assertEvent(page, 198, 0);
+        
+        appendEvents(log, 200, 5);
+        log.readPage(EventLog.NEWEST, EventLog.ALL_LEVELS, page);
+        assertEquals(204, page.count);
+        assertEvent(page, 0, 204);
+        assertEvent(page, 5, 198);
+        log.close();
+    }
+}
@@ -0,0 +1,72 @@
+package com.example.androidcardashboard;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Locale;
+import java.util.TimeZone;
+
+/**
+ * Event times as shown in the history rows, and which events reach the
+ * persistent log.
+ */
+public class EventManagerTest {
+    // 2025-03-14 22:30 UTC
+    private static final long EVENING_UTC = 1741991400000L;
+    private static final long HOUR = 60 * 60 * 1000L;
+    
+    @Test
+    public void timeIsLocalWithTheDateWhenNotToday() {
+        TimeZone utc = TimeZone.getTimeZone("UTC");
+        TimeZone tokyo = TimeZone.getTimeZone("Asia/Tokyo");
+        
+        assertEquals("22:30", EventManager.formatTime(EVENING_UTC, EVENING_UTC + HOUR, utc, Locale.US));
+        // Already the next morning in Tokyo, and today there too
+        assertEquals("07:30", EventManager.formatTime(EVENING_UTC, EVENING_UTC + HOUR, tokyo, Locale.US));
+        // Past midnight in UTC the event was yesterday
+        assertEquals("Mar 14 22:30", EventManager.formatTime(EVENING_UTC, EVENING_UTC + 2 * HOUR, utc, Locale.US));
+        assertEquals("Mar 14 2025 22:30",
+            EventManager.formatTime(EVENING_UTC, EVENING_UTC + 365 * 24 * HOUR, utc, Locale.US));
+    }
+    
+    @Test
+    public void dataEventsStayOutOfThePersistentLog() throws IOException {
+        File directory = File.createTempFile("events", "");
+        assertTrue(directory.delete());
+        assertTrue(directory.mkdir());
+        EventLog log = new EventLog(directory);
+        log.open();
+        EventManager events = EventManager.getInstance();
+        events.setEventLog(log);
+        try {
+            for (int i = 0; i < 100; i++) {
+                events.addTcpEvent("Data received | %d bytes", 512, EventManager.LEVEL_DATA);
+            }
+            events.addTcpEvent("Connection lost", EventManager.LEVEL_ERROR);
+            events.addGpsEvent("GPS fix lost", EventManager.LEVEL_WARNING);
+            log.flush();
+            assertEquals(2, log.getWrittenCount());
+            
+            // The latest events in the status dialog still show them
+            int data = 0;
+            for (EventManager.TcpEvent event : events.getLatestTcpEvents()) {
+                if (event.getLevel() == EventManager.LEVEL_DATA) {
+                    data++;
+                }
+            }
+            assertEquals(9, data);
+        } finally {
+            events.setEventLog(null);
+            log.close();
+            File[] files = directory.listFiles();
+            for (int i = 0; i < files.length; i++) {
+                files[i].delete();
+            }
+            directory.delete();
+        }
+    }
+}
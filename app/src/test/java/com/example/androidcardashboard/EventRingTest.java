@@ -0,0 +1,183 @@
+package com.example.androidcardashboard;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicReference;
+import org.junit.Test;
+
+/**
+ * Ordering and wrap-around of the event ring, and snapshots taken while
+ * several threads write.
+ */
+public class EventRingTest {
+    @Test
+    public void snapshotIsNewestFirstAndBounded() {
+        EventRing ring = new EventRing(10);
+        assertEquals(16, ring.capacity());
+        long[] timestamps = new long[10];
+        int[] levels = new int[10];
+        String[] messages = new String[10];
+        assertEquals(0, ring.snapshot(timestamps, levels, messages));
+        
+        for (int i = 0; i < 3; i++) {
+            ring.add(i, EventManager.LEVEL_DATA, "event " + i);
+        }
+        assertEquals(3, ring.snapshot(timestamps, levels, messages));
+        assertEquals("event 2", messages[0]);
+        assertEquals("event 0", messages[2]);
+        
+        for (int i = 3; i < 100; i++) {
+            ring.add(i, i % 7, "event " + i);
+        }
+        assertEquals(10, ring.snapshot(timestamps, levels, messages));
+        for (int i = 0; i < 10; i++) {
+            assertEquals(99 - i, timestamps[i]);
+            assertEquals((99 - i) % 7, levels[i]);
+            assertEquals("event " + (99 - i), messages[i]);
+        }
+        assertEquals(100, ring.getAddedCount());
+    }
+    
+    @Test
+    public void snapshotSinceReturnsOnlyNewEvents() {
+        EventRing ring = new EventRing(10);
+        long[] timestamps = new long[16];
+        int[] levels = new int[16];
+        String[] messages = new String[16];
+        long[] args = new long[16];
+        for (int i = 0; i < 5; i++) {
+            ring.add(i, EventManager.LEVEL_DATA, "Data received | %d bytes", i * 10);
+        }
+        long seen = ring.getAddedCount();
+        assertEquals(0, ring.snapshot(seen, ring.getAddedCount(), timestamps, levels, messages, args));
+        
+        ring.add(5, EventManager.LEVEL_ERROR, "Connection lost");
+        ring.add(6, EventManager.LEVEL_DATA, "Data received | %d bytes", 60);
+        assertEquals(2, ring.snapshot(seen, ring.getAddedCount(), timestamps, levels, messages, args));
+        assertEquals(6, timestamps[0]);
+        assertEquals(60, args[0]);
+        assertEquals("Connection lost", messages[1]);
+        
+        // More new events than the ring holds: the newest ones
+        for (int i = 7; i < 50; i++) {
+            ring.add(i, EventManager.LEVEL_DATA, "event", i);
+        }
+        assertEquals(16, ring.snapshot(seen, ring.getAddedCount(), timestamps, levels, messages, args));
+        assertEquals(49, timestamps[0]);
+        assertEquals(34, timestamps[15]);
+    }
+    
+    @Test
+    public void pollingReaderSeesEveryEventOnce() throws Exception {
+        final int writers = 4;
+        final int eventsPerWriter = 20000;
+        // Large enough that nothing is overwritten, every event must arrive
+        final EventRing ring = new EventRing(writers * eventsPerWriter);
+        final CountDownLatch done = new CountDownLatch(writers);
+        for (int w = 0; w < writers; w++) {
+            final int writer = w;
+            new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    for (int i = 0; i < eventsPerWriter; i++) {
+                        ring.add(i, writer, "event");
+                    }
+                    done.countDown();
+                }
+            }).start();
+        }
+        
+        // Polls the way EventManager.getTcpEventsSince() does
+        long[] timestamps = new long[ring.capacity()];
+        int[] levels = new int[ring.capacity()];
+        String[] messages = new String[ring.capacity()];
+        long[] nextPerWriter = new long[writers];
+        long sequence = 0;
+        boolean finished = false;
+        while (!finished) {
+            finished = done.getCount() == 0;
+            long end = ring.firstIncomplete(sequence, ring.getAddedCount());
+            int count = ring.snapshot(sequence, end, timestamps, levels, messages, null);
+            assertEquals(end - sequence, count);
+            for (int i = count - 1; i >= 0; i--) {
+                assertEquals(nextPerWriter[levels[i]]++, timestamps[i]);
+            }
+            sequence = end;
+        }
+        for (int w = 0; w < writers; w++) {
+            assertEquals(eventsPerWriter, nextPerWriter[w]);
+        }
+    }
+    
+    @Test
+    public void concurrentWritersNeverTearEvents() throws Exception {
+        final int writers = 4;
+        final int eventsPerWriter = 200000;
+        final EventRing ring = new EventRing(16);
+        // Messages made up front, so the writers race on the ring only
+        final String[][] names = new String[writers][eventsPerWriter];
+        for (int w = 0; w < writers; w++) {
+            for (int i = 0; i < eventsPerWriter; i++) {
+                names[w][i] = w + ":" + i;
+            }
+        }
+        
+        final CountDownLatch start = new CountDownLatch(1);
+        final CountDownLatch done = new CountDownLatch(writers);
+        Thread[] threads = new Thread[writers];
+        for (int w = 0; w < writers; w++) {
+            final int writer = w;
+            threads[w] = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        start.await();
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                    for (int i = 0; i < eventsPerWriter; i++) {
+                        ring.add(i, writer, names[writer][i]);
+                    }
+                    done.countDown();
+                }
+            });
+            threads[w].start();
+        }
+        
+        final AtomicReference<String> failure = new AtomicReference<>();
+        long[] timestamps = new long[16];
+        int[] levels = new int[16];
+        String[] messages = new String[16];
+        int snapshots = 0;
+        start.countDown();
+        while (done.getCount() > 0 || snapshots == 0) {
+            int count = ring.snapshot(timestamps, levels, messages);
+            long[] lastPerWriter = {Long.MAX_VALUE, Long.MAX_VALUE, Long.MAX_VALUE, Long.MAX_VALUE};
+            for (int i = 0; i < count; i++) {
+                // All fields of an event come from the same add
+                if (!messages[i].equals(levels[i] + ":" + timestamps[i])) {
+                    failure.compareAndSet(null, "torn event " + messages[i] + " / " + levels[i] + " / " + timestamps[i]);
+                }
+                // Each writer's events appear newest first
+                if (timestamps[i] >= lastPerWriter[levels[i]]) {
+                    failure.compareAndSet(null, "out of order " + messages[i]);
+                }
+                lastPerWriter[levels[i]] = timestamps[i];
+            }
+            snapshots++;
+        }
+        for (int w = 0; w < writers; w++) {
+            threads[w].join();
+        }
+        assertEquals(null, failure.get());
+        assertEquals(writers * (long) eventsPerWriter, ring.getAddedCount());
+        
+        // Once the writers are done, every slot holds a complete event unless its write was dropped
+        int count = ring.snapshot(timestamps, levels, messages);
+        assertTrue(count > 0 && count + ring.getDroppedCount() >= 16);
+        BenchmarkReport.print("EventRing: %d snapshots during %d adds, %d dropped",
+            snapshots, ring.getAddedCount(), ring.getDroppedCount());
+    }
+}
@@ -0,0 +1,122 @@
+package com.example.androidcardashboard;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+/**
+ * Tier steps of the governor, driven with synthetic frame times against the
+ * default 8 ms budget and 30 frame window.
+ */
+public class FrameTimeGovernorTest {
+    private static final int WINDOW = 30;
+    private static final long SLOW_NS = 10000000L;
+    private static final long QUIET_NS = 3000000L;
+    // Under budget, but not by enough to step up
+    private static final long BUSY_NS = 6000000L;
+    
+    private final FrameTimeGovernor governor = new FrameTimeGovernor("test");
+    
+    /**
+     * @return how many of the frames changed the tier
+     */
+    private int frames(int count, long durationNs) {
+        int changes = 0;
+        for (int i = 0; i < count; i++) {
+            if (governor.recordFrame(durationNs)) {
+                changes++;
+            }
+        }
+        return changes;
+    }
+    
+    private void stepDownToReduced() {
+        assertEquals(1, frames(WINDOW, SLOW_NS));
+        assertEquals(FrameTimeGovernor.QualityTier.REDUCED, governor.getTier());
+    }
+    
+    @Test
+    public void stepsDownOncePerFullSlowWindow() {
+        assertEquals(0, frames(WINDOW - 1, SLOW_NS));
+        assertEquals(FrameTimeGovernor.QualityTier.FULL, governor.getTier());
+        assertTrue(governor.recordFrame(SLOW_NS));
+        assertEquals(FrameTimeGovernor.QualityTier.REDUCED, governor.getTier());
+        
+        // The new tier is judged on a fresh window
+        assertEquals(0, frames(WINDOW - 1, SLOW_NS));
+        assertTrue(governor.recordFrame(SLOW_NS));
+        assertEquals(FrameTimeGovernor.QualityTier.CACHED, governor.getTier());
+        
+        // Nothing below cached
+        assertEquals(0, frames(3 * WINDOW, SLOW_NS));
+        assertEquals(FrameTimeGovernor.QualityTier.CACHED, governor.getTier());
+        assertEquals(2, governor.getTierChangeCount());
+    }
+    
+    @Test
+    public void stepsUpAfterTwoQuietWindows() {
+        stepDownToReduced();
+        assertEquals(0, frames(WINDOW, QUIET_NS));
+        assertEquals(FrameTimeGovernor.QualityTier.REDUCED, governor.getTier());
+        assertEquals(1, frames(WINDOW, QUIET_NS));
+        assertEquals(FrameTimeGovernor.QualityTier.FULL, governor.getTier());
+    }
+    
+    @Test
+    public void busyWindowStaysAndRestartsTheQuietCount() {
+        stepDownToReduced();
+        assertEquals(0, frames(5 * WINDOW, BUSY_NS));
+        assertEquals(FrameTimeGovernor.QualityTier.REDUCED, governor.getTier());
+        
+        assertEquals(0, frames(WINDOW, QUIET_NS));
+        assertEquals(0, frames(WINDOW, BUSY_NS));
+        assertEquals(0, frames(WINDOW, QUIET_NS));
+        assertEquals(FrameTimeGovernor.QualityTier.REDUCED, governor.getTier());
+        assertEquals(1, frames(WINDOW, QUIET_NS));
+        assertEquals(FrameTimeGovernor.QualityTier.FULL, governor.getTier());
+    }
+    
+    @Test
+    public void steppingStraightBackDownDoublesTheQuietWindows() {
+        stepDownToReduced();
+        assertEquals(1, frames(2 * WINDOW, QUIET_NS));
+        assertEquals(FrameTimeGovernor.QualityTier.FULL, governor.getTier());
+        
+        // The first window after the step up is slow again
+        stepDownToReduced();
+        assertEquals(0, frames(3 * WINDOW, QUIET_NS));
+        assertEquals(FrameTimeGovernor.QualityTier.REDUCED, governor.getTier());
+        assertEquals(1, frames(WINDOW, QUIET_NS));
+        assertEquals(FrameTimeGovernor.QualityTier.FULL, governor.getTier());
+    }
+    
+    @Test
+    public void slowWindowLaterDoesNotDouble() {
+        stepDownToReduced();
+        assertEquals(1, frames(2 * WINDOW, QUIET_NS));
+        // A quiet window at full quality first, the step up held
+        assertEquals(0, frames(WINDOW, QUIET_NS));
+        // The sliding window crosses the budget before it is all slow frames
+        int slowFrames = 0;
+        while (!governor.recordFrame(SLOW_NS)) {
+            slowFrames++;
+        }
+        assertTrue(slowFrames < WINDOW);
+        assertEquals(FrameTimeGovernor.QualityTier.REDUCED, governor.getTier());
+        
+        assertEquals(1, frames(2 * WINDOW, QUIET_NS));
+        assertEquals(FrameTimeGovernor.QualityTier.FULL, governor.getTier());
+    }
+    
+    @Test
+    public void singleSpikeInTheWindowStepsDown() {
+        assertEquals(0, frames(WINDOW, QUIET_NS));
+        assertFalse(governor.recordFrame(QUIET_NS));
+        // Alone it lifts the average of the sliding window over budget
+        assertTrue(governor.recordFrame(WINDOW * SLOW_NS));
+        assertEquals(FrameTimeGovernor.QualityTier.REDUCED, governor.getTier());
+        assertEquals(0, governor.getAverageDrawUs());
+    }
+}
@@ -0,0 +1,88 @@
+package com.example.androidcardashboard;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.lang.management.ManagementFactory;
+import java.nio.ByteBuffer;
+import java.util.Locale;
+import org.junit.Test;
+
+/**
+ * Layout, number formatting, escaping and UTF-8 output of the JSON writer,
+ * and reuse without allocation.
+ */
+public class JsonWriterTest {
+    @Test
+    public void prettyLayoutMatchesTheDialog() {
+        JsonWriter json = new JsonWriter(true);
+        json.beginObject()
+            .name("speed").value(42.25, 1)
+            .name("states").beginObject()
+            .name("PARKED").beginInlineObject().name("cpu").value(1).name("wall").value(2).endObject()
+            .endObject()
+            .name("empty").beginObject().endObject()
+            .endObject();
+        assertEquals("{\n  \"speed\": 42.3,\n  \"states\": {\n    \"PARKED\": { \"cpu\": 1, \"wall\": 2 }\n  },\n"
+            + "  \"empty\": {}\n}", json.toString());
+    }
+    
+    @Test
+    public void compactNumbersAndStrings() {
+        Locale previous = Locale.getDefault();
+        Locale.setDefault(Locale.GERMANY);
+        try {
+            JsonWriter json = new JsonWriter(false);
+            json.beginArray()
+                .value(-0.04, 1).value(-1.5, 0).value(0.999, 2).value(Double.NaN, 1).value(1234567.891, 3)
+                .value(Long.MIN_VALUE).value(true).value((String) null)
+                .value("a\"b\\c\nd\u0001")
+                .endArray();
+            assertEquals("[0.0,-2,1.00,null,1234567.891,-9223372036854775808,true,null,\"a\\\"b\\\\c\\nd\\u0001\"]",
+                json.toString());
+        } finally {
+            Locale.setDefault(previous);
+        }
+    }
+    
+    @Test
+    public void utf8MatchesStringEncoding() throws Exception {
+        JsonWriter json = new JsonWriter(false);
+        json.beginObject().name("place").value("Antananarivo \u00e9 \u20ac \ud83d\ude97").endObject();
+        byte[] expected = json.toString().getBytes("UTF-8");
+        assertEquals(expected.length, json.utf8Length());
+        ByteBuffer out = ByteBuffer.allocate(json.utf8Length());
+        json.writeUtf8(out);
+        assertEquals(new String(expected, "UTF-8"), new String(out.array(), "UTF-8"));
+    }
+    
+    @Test
+    public void reuseDoesNotAllocate() {
+        JsonWriter json = new JsonWriter(false);
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long threadId = Thread.currentThread().getId();
+        for (int i = 0; i < 20000; i++) {
+            writeSample(json, i);
+        }
+        long allocatedBefore = threads.getThreadAllocatedBytes(threadId);
+        long start = System.nanoTime();
+        for (int i = 0; i < 200000; i++) {
+            writeSample(json, i);
+        }
+        long elapsedNs = System.nanoTime() - start;
+        long allocated = threads.getThreadAllocatedBytes(threadId) - allocatedBefore;
+        assertTrue("allocated " + allocated + " bytes", allocated < 1024);
+        BenchmarkReport.print("JsonWriter: %.0f ns per 20-field object, %d bytes allocated",
+            elapsedNs / 2e5, allocated);
+    }
+    
+    private static void writeSample(JsonWriter json, int i) {
+        json.reset().beginObject();
+        json.name("timestamp").value(1735689600000L + i);
+        for (int f = 0; f < 18; f++) {
+            json.name("field").value(i * 0.37 + f, 1);
+        }
+        json.name("state").value("DRIVING");
+        json.endObject();
+    }
+}
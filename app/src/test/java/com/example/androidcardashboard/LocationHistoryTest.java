@@ -0,0 +1,136 @@
+package com.example.androidcardashboard;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import org.junit.Test;
+
+/**
+ * Which samples the ring keeps, with every column of the vehicle state,
+ * across wrap-around, resize and clear.
+ */
+public class LocationHistoryTest {
+    /**
+     * Sample i has distinct values in each column, so a column read from
+     * the wrong slot shows up
+     */
+    private static void append(LocationHistory history, int i) {
+        history.append(-18.0 - i * 0.001, 47.0 + i * 0.001, 1000L * i, 10 + i, 80 + i * 0.5, 100 - i * 0.25);
+    }
+    
+    private static void assertSample(LocationHistory history, int index, int i) {
+        assertEquals(-18.0 - i * 0.001, history.getLatitude(index), 0.0);
+        assertEquals(47.0 + i * 0.001, history.getLongitude(index), 0.0);
+        assertEquals(1000L * i, history.getTimestamp(index));
+        assertEquals(10 + i, history.getSpeed(index), 0.0);
+        assertEquals(80 + i * 0.5, history.getTemperature(index), 0.0);
+        assertEquals(100 - i * 0.25, history.getFuelLevel(index), 0.0);
+    }
+    
+    @Test
+    public void keepsTheNewestSamplesOnceFull() {
+        LocationHistory history = new LocationHistory(5);
+        for (int i = 0; i < 3; i++) {
+            append(history, i);
+        }
+        assertEquals(3, history.size());
+        assertEquals(0, history.getEvictedCount());
+        assertSample(history, 0, 0);
+        
+        for (int i = 3; i < 12; i++) {
+            append(history, i);
+        }
+        assertEquals(5, history.size());
+        assertEquals(7, history.getEvictedCount());
+        for (int index = 0; index < 5; index++) {
+            assertSample(history, index, 7 + index);
+        }
+    }
+    
+    @Test
+    public void cursorWalksOldestToNewestAcrossTheWrap() {
+        LocationHistory history = new LocationHistory(4);
+        for (int i = 0; i < 6; i++) {
+            append(history, i);
+        }
+        LocationHistory.Cursor cursor = history.newCursor();
+        for (int i = 2; i < 6; i++) {
+            assertTrue(cursor.moveToNext());
+            assertEquals(1000L * i, cursor.getTimestamp());
+            assertEquals(10 + i, cursor.getSpeed(), 0.0);
+            assertEquals(80 + i * 0.5, cursor.getTemperature(), 0.0);
+            assertEquals(100 - i * 0.25, cursor.getFuelLevel(), 0.0);
+        }
+        assertFalse(cursor.moveToNext());
+        
+        // Reused from the start
+        assertFalse(cursor.moveToPosition(-1));
+        assertTrue(cursor.moveToNext());
+        assertEquals(0, cursor.getPosition());
+        assertEquals(-18.0 - 2 * 0.001, cursor.getLatitude(), 0.0);
+        assertEquals(47.0 + 2 * 0.001, cursor.getLongitude(), 0.0);
+    }
+    
+    @Test
+    public void shrinkKeepsTheNewestAndCountsTheRestEvicted() {
+        LocationHistory history = new LocationHistory(8);
+        for (int i = 0; i < 11; i++) {
+            append(history, i);
+        }
+        history.resize(3);
+        assertEquals(3, history.getCapacity());
+        assertEquals(3, history.size());
+        assertEquals(3 + 5, history.getEvictedCount());
+        for (int index = 0; index < 3; index++) {
+            assertSample(history, index, 8 + index);
+        }
+        
+        // Still a ring at the new size
+        append(history, 11);
+        assertEquals(3, history.size());
+        assertSample(history, 0, 9);
+        assertSample(history, 2, 11);
+    }
+    
+    @Test
+    public void growKeepsEverySample() {
+        LocationHistory history = new LocationHistory(4);
+        for (int i = 0; i < 6; i++) {
+            append(history, i);
+        }
+        history.resize(10);
+        assertEquals(4, history.size());
+        for (int i = 6; i < 12; i++) {
+            append(history, i);
+        }
+        assertEquals(10, history.size());
+        assertEquals(2, history.getEvictedCount());
+        for (int index = 0; index < 10; index++) {
+            assertSample(history, index, 2 + index);
+        }
+    }
+    
+    @Test
+    public void clearDropsEverything() {
+        LocationHistory history = new LocationHistory(4);
+        for (int i = 0; i < 6; i++) {
+            append(history, i);
+        }
+        history.clear();
+        assertTrue(history.isEmpty());
+        assertEquals(0, history.getEvictedCount());
+        assertFalse(history.newCursor().moveToNext());
+        try {
+            history.getSpeed(0);
+            fail("read past the end");
+        } catch (IndexOutOfBoundsException expected) {
+            // Cleared samples are gone, not just hidden
+        }
+        
+        append(history, 20);
+        assertEquals(1, history.size());
+        assertSample(history, 0, 20);
+    }
+}
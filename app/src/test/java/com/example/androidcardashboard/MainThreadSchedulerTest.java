@@ -0,0 +1,144 @@
+package com.example.androidcardashboard;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Wakeup times, run order, cancellation and deadlines a wheel turn or more
+ * apart, driven with explicit uptimes.
+ */
+public class MainThreadSchedulerTest {
+    private static final long START = 10000;
+    // WHEEL_SIZE ticks of TICK_MS
+    private static final long TURN_MS = 64 * 16;
+    
+    private final MainThreadScheduler scheduler = new MainThreadScheduler(START);
+    private final List<String> runs = new ArrayList<>();
+    
+    private MainThreadScheduler.Task task(final String name) {
+        return scheduler.newTask(name, new Runnable() {
+            @Override
+            public void run() {
+                runs.add(name);
+            }
+        });
+    }
+    
+    @Test
+    public void dueTasksRunInDeadlineOrder() {
+        MainThreadScheduler.Task late = task("late");
+        MainThreadScheduler.Task first = task("first");
+        MainThreadScheduler.Task second = task("second");
+        MainThreadScheduler.Task third = task("third");
+        scheduler.schedule(late, 300, 0, START);
+        scheduler.schedule(third, 140, 100, START);
+        // Same tick, scheduled in reverse
+        scheduler.schedule(second, 105, 200, START);
+        scheduler.schedule(first, 100, 50, START);
+        assertEquals(START + 150, scheduler.getNextWakeAt());
+        
+        scheduler.wake(START + 150);
+        assertEquals(Arrays.asList("first", "second", "third"), runs);
+        assertFalse(scheduler.isScheduled(first));
+        assertTrue(scheduler.isScheduled(late));
+        assertEquals(START + 300, scheduler.getNextWakeAt());
+        
+        scheduler.wake(START + 300);
+        assertEquals(Arrays.asList("first", "second", "third", "late"), runs);
+        assertEquals(Long.MAX_VALUE, scheduler.getNextWakeAt());
+    }
+    
+    @Test
+    public void cancelMovesTheWakeup() {
+        MainThreadScheduler.Task first = task("first");
+        MainThreadScheduler.Task sameSlot = task("sameSlot");
+        MainThreadScheduler.Task last = task("last");
+        scheduler.schedule(first, 100, 0, START);
+        scheduler.schedule(sameSlot, 101, 20, START);
+        scheduler.schedule(last, 500, 0, START);
+        assertEquals(START + 100, scheduler.getNextWakeAt());
+        
+        scheduler.cancel(first);
+        assertEquals(START + 121, scheduler.getNextWakeAt());
+        scheduler.cancel(sameSlot);
+        assertEquals(START + 500, scheduler.getNextWakeAt());
+        scheduler.cancel(last);
+        assertEquals(Long.MAX_VALUE, scheduler.getNextWakeAt());
+        
+        scheduler.wake(START + TURN_MS);
+        assertEquals(Collections.emptyList(), runs);
+    }
+    
+    @Test
+    public void taskCancelledByAnEarlierOneInThePassDoesNotRun() {
+        final MainThreadScheduler.Task victim = task("victim");
+        MainThreadScheduler.Task canceller = scheduler.newTask("canceller", new Runnable() {
+            @Override
+            public void run() {
+                runs.add("canceller");
+                scheduler.cancel(victim);
+            }
+        });
+        scheduler.schedule(canceller, 100, 0, START);
+        scheduler.schedule(victim, 110, 0, START);
+        
+        scheduler.wake(START + 110);
+        assertEquals(Arrays.asList("canceller"), runs);
+        assertFalse(scheduler.isScheduled(victim));
+    }
+    
+    @Test
+    public void laterTurnOfTheWheelWaits() {
+        MainThreadScheduler.Task now = task("now");
+        MainThreadScheduler.Task nextTurn = task("nextTurn");
+        // Both hash to the same slot
+        scheduler.schedule(nextTurn, 100 + TURN_MS, 0, START);
+        scheduler.schedule(now, 100, 0, START);
+        assertEquals(START + 100, scheduler.getNextWakeAt());
+        
+        scheduler.wake(START + 100);
+        assertEquals(Arrays.asList("now"), runs);
+        assertEquals(START + 100 + TURN_MS, scheduler.getNextWakeAt());
+        
+        scheduler.wake(START + 100 + TURN_MS);
+        assertEquals(Arrays.asList("now", "nextTurn"), runs);
+    }
+    
+    @Test
+    public void wakeupAfterSeveralTurnsRunsEverythingOverdue() {
+        MainThreadScheduler.Task a = task("a");
+        MainThreadScheduler.Task b = task("b");
+        MainThreadScheduler.Task c = task("c");
+        scheduler.schedule(c, 3 * TURN_MS, 0, START);
+        scheduler.schedule(a, 50, 0, START);
+        scheduler.schedule(b, 500, 0, START);
+        
+        scheduler.wake(START + 10 * TURN_MS);
+        assertEquals(Arrays.asList("a", "b", "c"), runs);
+        assertEquals(Long.MAX_VALUE, scheduler.getNextWakeAt());
+    }
+    
+    @Test
+    public void periodicTaskRepeatsAfterEachRun() {
+        MainThreadScheduler.Task tick = task("tick");
+        scheduler.schedulePeriodic(tick, 100, 200, 0, START);
+        
+        scheduler.wake(START + 100);
+        assertTrue(scheduler.isScheduled(tick));
+        // Fixed delay from the run, which takes well under a millisecond
+        long wakeAt = scheduler.getNextWakeAt();
+        assertTrue("wake at " + wakeAt, wakeAt >= START + 300 && wakeAt <= START + 305);
+        
+        scheduler.wake(wakeAt);
+        assertEquals(Arrays.asList("tick", "tick"), runs);
+        assertEquals(2, tick.getRunCount());
+    }
+}
@@ -0,0 +1,77 @@
+package com.example.androidcardashboard;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import org.junit.Test;
+
+/**
+ * Stalls of a watched executor thread, and naming the dispatched message
+ * from a stack.
+ */
+public class MainThreadWatchdogTest {
+    private static void stallHere(long ms) throws InterruptedException {
+        Thread.sleep(ms);
+    }
+    
+    @Test
+    public void reportsStallWithStack() throws Exception {
+        ExecutorService looper = Executors.newSingleThreadExecutor();
+        final Thread[] watched = new Thread[1];
+        looper.submit(new Runnable() {
+            @Override
+            public void run() {
+                watched[0] = Thread.currentThread();
+            }
+        }).get();
+        
+        MainThreadWatchdog watchdog = new MainThreadWatchdog(watched[0], looper, 100, 20);
+        long stallsBefore = watchdog.getStallCount();
+        watchdog.setActive(true);
+        watchdog.start();
+        try {
+            // Heartbeats answered in time are no stalls
+            Thread.sleep(200);
+            assertEquals(stallsBefore, watchdog.getStallCount());
+            
+            Future<?> stall = looper.submit(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        stallHere(500);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                }
+            });
+            stall.get();
+            Thread.sleep(100);
+            assertEquals(stallsBefore + 1, watchdog.getStallCount());
+            assertTrue(watchdog.getLastStall(), watchdog.getLastStall().contains("MainThreadWatchdogTest.stallHere"));
+        } finally {
+            watchdog.stop();
+            looper.shutdown();
+            looper.awaitTermination(1, TimeUnit.SECONDS);
+        }
+    }
+    
+    @Test
+    public void namesTheRunnableBeingDispatched() {
+        StackTraceElement[] stack = {
+            new StackTraceElement("java.lang.Thread", "sleep", "Thread.java", -2),
+            new StackTraceElement("com.example.androidcardashboard.TripJournal", "flush", "TripJournal.java", 120),
+            new StackTraceElement("com.example.androidcardashboard.MainActivity$5", "run", "MainActivity.java", 340),
+            new StackTraceElement("android.os.Handler", "handleCallback", "Handler.java", 615),
+            new StackTraceElement("android.os.Handler", "dispatchMessage", "Handler.java", 92),
+            new StackTraceElement("android.os.Looper", "loop", "Looper.java", 137),
+        };
+        assertEquals("MainActivity$5.run", MainThreadWatchdog.describeMessage(stack));
+        assertEquals("Thread.sleep < TripJournal.flush:120 < MainActivity$5.run:340 < Handler.handleCallback:615"
+            + " < Handler.dispatchMessage:92 < Looper.loop:137", MainThreadWatchdog.describeStack(stack));
+        assertEquals("unknown message", MainThreadWatchdog.describeMessage(new StackTraceElement[0]));
+    }
+}
@@ -0,0 +1,130 @@
+package com.example.androidcardashboard;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import android.content.ComponentCallbacks2;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Shedding order for trim levels and low headroom, and the trimmed track
+ * history.
+ */
+public class MemoryManagerTest {
+    private static final long MB = 1024 * 1024;
+    
+    private static MemoryManager.Cache recording(final List<String> trimmed, final String name, final long bytes) {
+        return new MemoryManager.Cache() {
+            @Override
+            public long trimCache() {
+                trimmed.add(name);
+                return bytes;
+            }
+            
+            @Override
+            public long getCacheBytes() {
+                return bytes;
+            }
+        };
+    }
+    
+    private static MemoryManager manager(List<String> trimmed) {
+        MemoryManager manager = new MemoryManager();
+        // Registered out of order, shedding goes by priority
+        manager.register("track", MemoryManager.PRIORITY_HISTORY, recording(trimmed, "track", 48000));
+        manager.register("fonts", MemoryManager.PRIORITY_FONTS, recording(trimmed, "fonts", 0));
+        manager.register("dial", MemoryManager.PRIORITY_BITMAPS, recording(trimmed, "dial", 1 * MB));
+        return manager;
+    }
+    
+    @Test
+    public void trimLevelsShedInPriorityOrder() {
+        List<String> trimmed = new ArrayList<>();
+        MemoryManager manager = manager(trimmed);
+        
+        manager.onTrimMemory(ComponentCallbacks2.TRIM_MEMORY_UI_HIDDEN);
+        assertEquals(Arrays.asList("dial"), trimmed);
+        
+        trimmed.clear();
+        manager.onTrimMemory(ComponentCallbacks2.TRIM_MEMORY_RUNNING_LOW);
+        assertEquals(Arrays.asList("dial", "fonts"), trimmed);
+        
+        trimmed.clear();
+        manager.onTrimMemory(ComponentCallbacks2.TRIM_MEMORY_RUNNING_CRITICAL);
+        assertEquals(Arrays.asList("dial", "fonts", "track"), trimmed);
+        
+        trimmed.clear();
+        manager.onLowMemory();
+        assertEquals(Arrays.asList("dial", "fonts", "track"), trimmed);
+        
+        assertEquals(4, manager.getShedCount());
+        assertEquals(4 * MB + 2 * 48000, manager.getFreedBytes());
+        
+        JsonWriter json = new JsonWriter(false);
+        manager.writeJson(json);
+        assertTrue(json.toString(), json.toString().contains(
+            "\"fonts\":{\"priority\":\"fonts\",\"sizeKb\":0,\"trims\":3,\"freedKb\":0}"));
+    }
+    
+    @Test
+    public void lowHeadroomShedsOnceUntilItRecovers() {
+        List<String> trimmed = new ArrayList<>();
+        MemoryManager manager = manager(trimmed);
+        
+        manager.check(0, 40 * MB, 64 * MB, 0);
+        assertTrue(trimmed.isEmpty());
+        
+        // 10% left: bitmaps and fonts, once
+        manager.check(10000, 58 * MB, 64 * MB, 5);
+        manager.check(20000, 58 * MB, 64 * MB, 10);
+        assertEquals(Arrays.asList("dial", "fonts"), trimmed);
+        assertEquals(30.0, manager.getGcsPerMinute(), 1e-9);
+        
+        // Worse: everything
+        trimmed.clear();
+        manager.check(30000, 62 * MB, 64 * MB, 10);
+        assertEquals(Arrays.asList("dial", "fonts", "track"), trimmed);
+        assertEquals(2 * MB, manager.getHeadroomBytes());
+        
+        // Recovered, then low again
+        trimmed.clear();
+        manager.check(40000, 30 * MB, 64 * MB, 10);
+        manager.check(50000, 58 * MB, 64 * MB, 10);
+        assertEquals(Arrays.asList("dial", "fonts"), trimmed);
+        assertEquals(3, manager.getShedCount());
+    }
+    
+    @Test
+    public void trackHistoryKeepsNewestPointsWhenTrimmed() {
+        LocationHistory history = new LocationHistory(8);
+        for (int i = 0; i < 11; i++) {
+            history.append(i, -i, i * 1000L, i, 90, 50);
+        }
+        history.resize(4);
+        assertEquals(4, history.getCapacity());
+        assertEquals(4, history.size());
+        assertEquals(7, history.getEvictedCount());
+        for (int i = 0; i < 4; i++) {
+            assertEquals(7 + i, history.getLatitude(i), 0);
+            assertEquals((7 + i) * 1000L, history.getTimestamp(i));
+        }
+        history.append(11, -11, 11000L, 11, 90, 50);
+        assertEquals(8, history.getLatitude(0), 0);
+        assertEquals(11, history.getLatitude(3), 0);
+        
+        TripCalculator calculator = new TripCalculator(1000);
+        assertEquals(500L * LocationHistory.BYTES_PER_SAMPLE, calculator.trimCache());
+        assertEquals(500, calculator.getLocationHistory().getCapacity());
+        while (calculator.trimCache() > 0) {
+            // Down to the floor
+        }
+        assertEquals(TripCalculator.MIN_TRIMMED_HISTORY, calculator.getLocationHistory().getCapacity());
+        calculator.resetTrip();
+        assertEquals(1000, calculator.getLocationHistory().getCapacity());
+    }
+}
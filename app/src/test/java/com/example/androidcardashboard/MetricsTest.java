@@ -0,0 +1,110 @@
+package com.example.androidcardashboard;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.lang.management.ManagementFactory;
+import org.junit.Test;
+
+/**
+ * Striped counters under contention, histogram percentiles, registration
+ * by name, and recording without allocation.
+ */
+public class MetricsTest {
+    @Test
+    public void stripedCounterSumsAllThreads() throws Exception {
+        final Metrics.Counter counter = Metrics.getInstance().counter("test.contended");
+        final int perThread = 200000;
+        Thread[] threads = new Thread[4];
+        for (int t = 0; t < threads.length; t++) {
+            threads[t] = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    for (int i = 0; i < perThread; i++) {
+                        counter.increment();
+                    }
+                }
+            });
+            threads[t].start();
+        }
+        for (int t = 0; t < threads.length; t++) {
+            threads[t].join();
+        }
+        assertEquals(threads.length * (long) perThread, counter.get());
+    }
+    
+    @Test
+    public void histogramPercentilesComeFromBuckets() {
+        Metrics metrics = Metrics.getInstance();
+        Metrics.Histogram histogram = metrics.histogram("test.latency");
+        for (int us = 1; us <= 1000; us++) {
+            histogram.record(us);
+        }
+        Metrics.Snapshot snapshot = new Metrics.Snapshot();
+        metrics.snapshot(snapshot);
+        int index = indexOf(snapshot, "test.latency");
+        assertEquals(Metrics.TYPE_HISTOGRAM, snapshot.types[index]);
+        assertEquals(1000, snapshot.values[index]);
+        assertEquals(500, snapshot.getAverageUs(index));
+        assertEquals(500, snapshot.getPercentileUs(index, 0.5));
+        assertEquals(1000, snapshot.getPercentileUs(index, 0.99));
+        assertEquals(1000, snapshot.maxesUs[index]);
+        
+        // Heap gauges are always registered
+        assertTrue(snapshot.values[indexOf(snapshot, "heap.usedKb")] > 0);
+        JsonWriter json = new JsonWriter(true);
+        snapshot.writeJson(json);
+        assertTrue(json.toString().indexOf("\"test.latency\": { \"count\": 1000, \"avgUs\": 500, \"p50Us\": 500") > 0);
+    }
+    
+    @Test
+    public void metricsAreRegisteredOnce() {
+        Metrics metrics = Metrics.getInstance();
+        assertSame(metrics.counter("test.once"), metrics.counter("test.once"));
+        try {
+            metrics.histogram("test.once");
+            assertTrue("registered twice with another type", false);
+        } catch (IllegalArgumentException e) {
+            // Expected
+        }
+    }
+    
+    @Test
+    public void recordingDoesNotAllocate() {
+        Metrics metrics = Metrics.getInstance();
+        Metrics.Counter counter = metrics.counter("test.allocations");
+        Metrics.Gauge gauge = metrics.gauge("test.gauge");
+        Metrics.Histogram histogram = metrics.histogram("test.recording");
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long threadId = Thread.currentThread().getId();
+        
+        // Warm up, so the measured loop runs compiled
+        for (int i = 0; i < 100000; i++) {
+            counter.add(i);
+            gauge.set(i);
+            histogram.recordNanos(i * 37L);
+        }
+        long allocatedBefore = threads.getThreadAllocatedBytes(threadId);
+        long start = System.nanoTime();
+        for (int i = 0; i < 1000000; i++) {
+            counter.add(i);
+            gauge.set(i);
+            histogram.recordNanos(i * 37L);
+        }
+        long elapsedNs = System.nanoTime() - start;
+        long allocated = threads.getThreadAllocatedBytes(threadId) - allocatedBefore;
+        assertTrue("allocated " + allocated + " bytes", allocated < 1024);
+        BenchmarkReport.print("Metrics: %.1f ns per counter + gauge + histogram record, %d bytes allocated",
+            elapsedNs / 1e6, allocated);
+    }
+    
+    private static int indexOf(Metrics.Snapshot snapshot, String name) {
+        for (int i = 0; i < snapshot.count; i++) {
+            if (snapshot.names[i].equals(name)) {
+                return i;
+            }
+        }
+        throw new AssertionError(name + " not in snapshot");
+    }
+}
@@ -0,0 +1,77 @@
+package com.example.androidcardashboard;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+/**
+ * Window values of the performance HUD and their formatted lines, driven by
+ * synthetic frame times.
+ */
+public class PerfStatsTest {
+    private static final long MS = 1000000L;
+    
+    private static String line(PerfStats stats, int line) {
+        return new String(stats.getLine(line), 0, stats.getLineLength(line));
+    }
+    
+    /**
+     * Run a 60 Hz display for some seconds with one 50 ms stall per second
+     * and a telemetry frame shown 20 ms after its read every 100 ms
+     * @return the time reached
+     */
+    private static long run(PerfStats stats, long startNs, int seconds, long[] ingest) {
+        long now = startNs;
+        for (int s = 0; s < seconds; s++) {
+            for (int frame = 0; frame < 57; frame++) {
+                now += frame == 0 ? 50 * MS : 16666667L;
+                stats.onVsync(now);
+                if (frame % 6 == 0) {
+                    ingest[0] += 2;
+                    stats.onFrameDispatched(now - 20 * MS);
+                }
+                stats.onDraw(now);
+                stats.update(now, ingest[0], ingest[0] / 2, 12L << 20, 64L << 20, s / 5);
+            }
+        }
+        return now;
+    }
+    
+    @Test
+    public void windowValuesCoverTheLastSeconds() {
+        PerfStats stats = new PerfStats(60f);
+        assertFalse(stats.update(0, 0, 0, 0, 0, 0));
+        long[] ingest = new long[1];
+        run(stats, 0, 12, ingest);
+        
+        // 57 frames a second, the stall counts as two missed vsyncs
+        assertTrue("fps " + stats.getFps(), stats.getFps() >= 56 && stats.getFps() <= 57);
+        assertEquals(50, stats.getWorstFrameMs());
+        assertTrue("dropped " + stats.getDroppedFrames(), stats.getDroppedFrames() >= 18 && stats.getDroppedFrames() <= 22);
+        assertTrue("ingest " + stats.getIngestPerSecond(), stats.getIngestPerSecond() >= 19 && stats.getIngestPerSecond() <= 20);
+        assertEquals(20, stats.getLatencyP99Ms());
+        assertTrue(stats.getCoalescedFrames() > 0);
+        assertEquals(2, stats.getGcCount());
+        
+        assertEquals("FPS " + stats.getFps() + "  worst 50 ms", line(stats, 0));
+        assertEquals("ingest " + stats.getIngestPerSecond() + "/s  p99 20 ms", line(stats, 1));
+        assertEquals("heap 12/64 MB  GC 2", line(stats, 3));
+    }
+    
+    @Test
+    public void latencyIsUnknownWithoutFrames() {
+        PerfStats stats = new PerfStats(60f);
+        long now = 0;
+        for (int i = 0; i < 130; i++) {
+            now += 16666667L;
+            stats.onVsync(now);
+            stats.onDraw(now);
+            stats.update(now, 0, 0, 0, 0, 0);
+        }
+        assertEquals(-1, stats.getLatencyP99Ms());
+        assertEquals("ingest 0/s  p99 --", line(stats, 1));
+        assertEquals(0, stats.getDroppedFrames());
+    }
+}
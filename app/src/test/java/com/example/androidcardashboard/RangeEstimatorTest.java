@@ -0,0 +1,99 @@
+package com.example.androidcardashboard;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Random;
+import org.junit.Test;
+
+/**
+ * Consumption and range on a simulated drive with fuel slosh, refuel
+ * detection, and the cost per sample.
+ */
+public class RangeEstimatorTest {
+    private static final double TANK_L = 50.0;
+    
+    /**
+     * Feed a 10 Hz drive at constant speed and consumption, with slosh noise
+     * on the fuel level
+     * @return the true fuel level at the end, in percent
+     */
+    private static double drive(RangeEstimator estimator, Random random, long startMs, double startFuel,
+                                int samples, double speedKmh, double consumption) {
+        double stepKm = speedKmh / 36000.0;
+        double fuel = startFuel;
+        for (int i = 0; i < samples; i++) {
+            double slosh = Math.sin(i * 0.05) * 1.5 + random.nextGaussian() * 0.7
+                + (random.nextInt(200) == 0 ? 8 : 0);
+            estimator.add(startMs + i * 100L, i == 0 ? 0 : stepKm, fuel + slosh);
+            fuel -= stepKm * consumption / 100.0 / TANK_L * 100.0;
+        }
+        return fuel;
+    }
+    
+    @Test
+    public void rangeFollowsConsumptionThroughSlosh() {
+        RangeEstimator estimator = new RangeEstimator(TANK_L);
+        Random random = new Random(3);
+        // 100 km at 90 km/h and 6 L/100km
+        double fuel = drive(estimator, random, 0, 90, 40000, 90, 6.0);
+        
+        assertEquals(6.0, estimator.getConsumption(), 0.6);
+        double expectedRange = fuel / 100.0 * TANK_L / 6.0 * 100.0;
+        assertEquals(expectedRange, estimator.getRangeKm(), expectedRange * 0.1);
+        
+        // Thirstier city driving pulls the estimate up within tens of kilometres
+        drive(estimator, random, 40000 * 100L, fuel, 72000, 30, 10.0);
+        assertEquals(10.0, estimator.getConsumption(), 1.0);
+    }
+    
+    @Test
+    public void refuelIsNotCountedAsConsumption() {
+        RangeEstimator estimator = new RangeEstimator(TANK_L);
+        Random random = new Random(4);
+        drive(estimator, random, 0, 40, 40000, 90, 6.0);
+        double consumption = estimator.getConsumption();
+        
+        // Parked at the pump for a minute, then full
+        long time = 40000 * 100L;
+        for (int i = 0; i < 600; i++) {
+            estimator.add(time + i * 100L, 0, 95 + random.nextGaussian() * 0.5);
+        }
+        assertEquals(95, estimator.getFuelLevel(), 1.0);
+        // Only the smoothing lag of the last minute before the refuel is lost
+        assertEquals(consumption, estimator.getConsumption(), consumption * 0.05);
+        
+        // A long dip from slosh is clamped to the band
+        for (int i = 0; i < 50; i++) {
+            estimator.add(time + 60000 + i * 100L, 0, i < 30 ? 40 : 95);
+        }
+        assertEquals(95, estimator.getFuelLevel(), 1.0);
+    }
+    
+    @Test
+    public void rangeIsNanBeforeFirstSample() {
+        RangeEstimator estimator = new RangeEstimator(TANK_L);
+        assertTrue(Double.isNaN(estimator.getRangeKm()));
+        estimator.add(0, 0, 50);
+        // Default consumption until there is driving
+        assertEquals(25.0 / RangeEstimator.DEFAULT_CONSUMPTION_L_PER_100KM * 100.0, estimator.getRangeKm(), 1e-6);
+        
+        estimator.setTankCapacity(60);
+        assertEquals(30.0 / RangeEstimator.DEFAULT_CONSUMPTION_L_PER_100KM * 100.0, estimator.getRangeKm(), 1e-6);
+    }
+    
+    @Test
+    public void updateCostIsConstant() {
+        RangeEstimator estimator = new RangeEstimator(TANK_L);
+        Random random = new Random(5);
+        for (int round = 0; round < 3; round++) {
+            long start = System.nanoTime();
+            drive(estimator, random, round * 100000000L, 80, 200000, 90, 6.0);
+            long elapsedNs = System.nanoTime() - start;
+            if (round == 2) {
+                BenchmarkReport.print("RangeEstimator: %.1f ns per sample", elapsedNs / 200000.0);
+            }
+        }
+        assertTrue(estimator.getRangeKm() > 0);
+    }
+}
@@ -0,0 +1,79 @@
+package com.example.androidcardashboard;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.Charset;
+
+/**
+ * Binary telemetry frames as the ESP32 sends them.
+ */
+public class TelemetryDecoderTest {
+    /**
+     * A full frame, values in tenths
+     */
+    static byte[] frame(int flags, int speed, int coolantTemp, int fuelLevel, int batteryVoltage, String location) {
+        ByteBuffer buffer = ByteBuffer.allocate(1 + 16 + TelemetryDecoder.LOCATION_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+        buffer.put((byte) flags);
+        buffer.putInt(speed).putInt(coolantTemp).putInt(fuelLevel).putInt(batteryVoltage);
+        buffer.put(location.getBytes(Charset.forName("UTF-8")));
+        return buffer.array();
+    }
+    
+    @Test
+    public void decodesFullFrame() {
+        TelemetryDecoder decoder = new TelemetryDecoder();
+        byte[] data = frame(0x81 | 0x08, 1234, -55, 500, 138, "Antananarivo");
+        decoder.decode(data, data.length);
+        
+        assertEquals(123.4, decoder.getSpeed(), 1e-9);
+        assertEquals(-5.5, decoder.getCoolantTemp(), 1e-9);
+        assertEquals(50.0, decoder.getFuelLevel(), 1e-9);
+        assertEquals(13.8, decoder.getBatteryVoltage(), 1e-9);
+        assertTrue(decoder.isReverseGear());
+        assertTrue(decoder.isLeftTurnSignal());
+        assertTrue(decoder.isOilWarning());
+        assertFalse(decoder.isHazardLights());
+        assertFalse(decoder.isDrlOn());
+        assertEquals("Antananarivo", decoder.getLocation());
+    }
+    
+    @Test
+    public void shortFrameLeavesMissingFieldsZero() {
+        TelemetryDecoder decoder = new TelemetryDecoder();
+        byte[] data = frame(0x02, 600, 900, 400, 120, "Toamasina");
+        decoder.decode(data, data.length);
+        
+        decoder.decode(data, 9);
+        assertEquals(60.0, decoder.getSpeed(), 1e-9);
+        assertEquals(90.0, decoder.getCoolantTemp(), 1e-9);
+        assertEquals(0.0, decoder.getFuelLevel(), 0);
+        assertEquals(0.0, decoder.getBatteryVoltage(), 0);
+        assertTrue(decoder.isHazardLights());
+        assertEquals("", decoder.getLocation());
+    }
+    
+    @Test
+    public void locationIsReusedUntilItChanges() {
+        TelemetryDecoder decoder = new TelemetryDecoder();
+        byte[] data = frame(0, 0, 0, 0, 0, "Antsirabe");
+        decoder.decode(data, data.length);
+        String first = decoder.getLocation();
+        
+        data[1] = 42;
+        decoder.decode(data, data.length);
+        assertSame(first, decoder.getLocation());
+        
+        data = frame(0, 0, 0, 0, 0, "Antsiranana");
+        decoder.decode(data, data.length);
+        assertNotSame(first, decoder.getLocation());
+        assertEquals("Antsiranana", decoder.getLocation());
+    }
+}
@@ -0,0 +1,75 @@
+package com.example.androidcardashboard;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+public class TimeWeightedStatsTest {
+    
+    @Test
+    public void burstOfFramesDoesNotSkewMean() {
+        TimeWeightedStats stats = new TimeWeightedStats(5000, 60 * 1000);
+        // 60 km/h for 10 s at 1 Hz, then 100 frames at a stop within one second
+        long t = 1000000;
+        for (int i = 0; i < 10; i++, t += 1000) {
+            stats.add(t, 60);
+        }
+        for (int i = 0; i < 100; i++, t += 10) {
+            stats.add(t, 0);
+        }
+        // 10 s at 60 and 0.99 s at 0, the plain sample mean would be about 5
+        assertEquals(60.0 * 10 / 10.99, stats.getMean(), 1e-9);
+        assertEquals(0.0, stats.getMin(), 0.0);
+        assertEquals(60.0, stats.getMax(), 0.0);
+    }
+    
+    @Test
+    public void varianceOfTwoLevels() {
+        TimeWeightedStats stats = new TimeWeightedStats(5000);
+        stats.add(0, 90);
+        stats.add(1000, 100);
+        stats.add(2000, 100);
+        assertEquals(95.0, stats.getMean(), 1e-12);
+        assertEquals(25.0, stats.getVariance(), 1e-9);
+        assertEquals(2000, stats.getDurationMs());
+    }
+    
+    @Test
+    public void gapsLongerThanHoldAreNotCounted() {
+        TimeWeightedStats stats = new TimeWeightedStats(5000);
+        stats.add(0, 10);
+        stats.add(60000, 20);
+        stats.add(61000, 20);
+        // Only 5 s of the first value and 1 s of the second
+        assertEquals(6000, stats.getDurationMs());
+        assertEquals((10.0 * 5 + 20.0) / 6, stats.getMean(), 1e-9);
+    }
+    
+    @Test
+    public void windowForgetsOldSamples() {
+        TimeWeightedStats stats = new TimeWeightedStats(5000, 60 * 1000);
+        long t = 0;
+        for (; t <= 120000; t += 1000) {
+            stats.add(t, t < 60000 ? 50 : 80);
+        }
+        assertEquals(80.0, stats.getWindowMean(0), 1e-9);
+        assertEquals(80.0, stats.getWindowMax(0), 0.0);
+        assertEquals(50.0, stats.getMin(), 0.0);
+        assertTrue(stats.getMean() > 50 && stats.getMean() < 80);
+        
+        stats.advanceTo(t + 10 * 60 * 1000);
+        assertTrue(Double.isNaN(stats.getWindowMean(0)));
+    }
+    
+    @Test
+    public void compensatedSumKeepsSmallTerms() {
+        TimeWeightedStats.CompensatedSum sum = new TimeWeightedStats.CompensatedSum();
+        sum.add(1e16);
+        for (int i = 0; i < 1000; i++) {
+            sum.add(1.0);
+        }
+        sum.add(-1e16);
+        assertEquals(1000.0, sum.value(), 0.0);
+    }
+}
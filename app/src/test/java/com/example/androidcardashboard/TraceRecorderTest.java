@@ -0,0 +1,134 @@
+package com.example.androidcardashboard;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.StringWriter;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import org.junit.After;
+import org.junit.Test;
+
+/**
+ * Export of nested markers from several threads, overwritten rings, and the
+ * cost of markers with tracing on and off.
+ */
+public class TraceRecorderTest {
+    private static final Pattern EVENT = Pattern.compile("\\{\"ph\":\"([BE])\",\"ts\":([0-9.]+),\"pid\":7,\"tid\":(\\d+)");
+    
+    @After
+    public void tearDown() {
+        TraceRecorder.stop();
+    }
+    
+    /**
+     * Check each thread's events nest and are in time order
+     * @return number of begin events per thread id
+     */
+    private static Map<Long, Integer> checkNesting(String json) {
+        Map<Long, Integer> depths = new HashMap<>();
+        Map<Long, Integer> begins = new HashMap<>();
+        Map<Long, Double> lastTimes = new HashMap<>();
+        Matcher matcher = EVENT.matcher(json);
+        while (matcher.find()) {
+            long tid = Long.parseLong(matcher.group(3));
+            double time = Double.parseDouble(matcher.group(2));
+            Double last = lastTimes.get(tid);
+            assertTrue("time went back on thread " + tid, last == null || time >= last);
+            lastTimes.put(tid, time);
+            int depth = depths.containsKey(tid) ? depths.get(tid) : 0;
+            if (matcher.group(1).equals("B")) {
+                depths.put(tid, depth + 1);
+                begins.put(tid, (begins.containsKey(tid) ? begins.get(tid) : 0) + 1);
+            } else {
+                assertTrue("end without begin on thread " + tid, depth > 0);
+                depths.put(tid, depth - 1);
+            }
+        }
+        return begins;
+    }
+    
+    private static void nestedWork(int iterations) {
+        for (int i = 0; i < iterations; i++) {
+            TraceRecorder.begin("outer");
+            TraceRecorder.begin("inner \"quoted\"");
+            TraceRecorder.end();
+            TraceRecorder.end();
+        }
+    }
+    
+    @Test
+    public void exportsNestedMarkersOfAllThreads() throws Exception {
+        TraceRecorder.start();
+        Thread worker = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                nestedWork(100);
+            }
+        }, "TraceWorker");
+        worker.start();
+        nestedWork(50);
+        worker.join();
+        TraceRecorder.stop();
+        
+        StringWriter out = new StringWriter();
+        int events = TraceRecorder.export(out, 7);
+        String json = out.toString();
+        assertTrue(json.startsWith("{\"displayTimeUnit\":\"ms\",\"traceEvents\":["));
+        assertTrue(json.contains("\"args\":{\"name\":\"TraceWorker\"}"));
+        assertTrue(json.contains("\"name\":\"inner \\\"quoted\\\"\""));
+        assertEquals(600, events);
+        Map<Long, Integer> begins = checkNesting(json);
+        assertEquals(Integer.valueOf(200), begins.get(worker.getId()));
+        assertEquals(Integer.valueOf(100), begins.get(Thread.currentThread().getId()));
+    }
+    
+    @Test
+    public void exportWhileRecordingDropsOverwrittenEvents() throws Exception {
+        TraceRecorder.start();
+        final AtomicBoolean running = new AtomicBoolean(true);
+        Thread worker = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                while (running.get()) {
+                    nestedWork(1000);
+                }
+            }
+        }, "TraceBusyWorker");
+        worker.start();
+        try {
+            for (int i = 0; i < 20; i++) {
+                StringWriter out = new StringWriter();
+                TraceRecorder.export(out, 7);
+                // The ring wrapped many times, the oldest ends lost their begins
+                checkNesting(out.toString());
+            }
+        } finally {
+            running.set(false);
+            worker.join();
+        }
+    }
+    
+    @Test
+    public void markersCostLittle() {
+        TraceRecorder.stop();
+        // Warm up, then time begin + end pairs with tracing off and on
+        nestedWork(200000);
+        long start = System.nanoTime();
+        nestedWork(5000000);
+        double offNs = (System.nanoTime() - start) / 1e7;
+        
+        TraceRecorder.start();
+        nestedWork(200000);
+        start = System.nanoTime();
+        nestedWork(1000000);
+        double onNs = (System.nanoTime() - start) / 2e6;
+        TraceRecorder.stop();
+        
+        assertTrue("disabled marker pair took " + offNs + " ns", offNs < 50);
+        BenchmarkReport.print("TraceRecorder: begin + end %.1f ns off, %.1f ns on", offNs, onNs);
+    }
+}
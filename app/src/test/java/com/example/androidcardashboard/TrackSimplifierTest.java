@@ -0,0 +1,115 @@
+package com.example.androidcardashboard;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Random;
+import org.junit.Test;
+
+/**
+ * Error bound and compression of the streaming simplifier on simulated
+ * 10 Hz drives.
+ */
+public class TrackSimplifierTest {
+    private static final double METRES_PER_DEG = DistanceKernel.EARTH_RADIUS_KM * 1000.0 * Math.PI / 180.0;
+    
+    /**
+     * Highway stretches with occasional bends, plus GPS noise
+     */
+    private static double[][] makeDrive(int samples, long seed) {
+        Random random = new Random(seed);
+        double[][] track = new double[samples][2];
+        double lat = -18.8792;
+        double lon = 47.5079;
+        double heading = 0.3;
+        double turnRate = 0;
+        for (int i = 0; i < samples; i++) {
+            track[i][0] = lat + random.nextGaussian() * 0.3 / METRES_PER_DEG;
+            track[i][1] = lon + random.nextGaussian() * 0.3 / METRES_PER_DEG;
+            if (i % 600 == 0) {
+                // New road section: straight most of the time, sometimes a bend
+                turnRate = random.nextInt(3) == 0 ? (random.nextDouble() - 0.5) * 0.02 : 0;
+            }
+            heading += turnRate;
+            double stepM = 25.0 / 10.0; // 90 km/h
+            lat += Math.cos(heading) * stepM / METRES_PER_DEG;
+            lon += Math.sin(heading) * stepM / METRES_PER_DEG / Math.cos(Math.toRadians(lat));
+        }
+        return track;
+    }
+    
+    private static double distanceToSegmentM(double lat, double lon, double lat1, double lon1, double lat2, double lon2) {
+        double cos = Math.cos(Math.toRadians(lat1));
+        double px = (lon - lon1) * cos * METRES_PER_DEG;
+        double py = (lat - lat1) * METRES_PER_DEG;
+        double sx = (lon2 - lon1) * cos * METRES_PER_DEG;
+        double sy = (lat2 - lat1) * METRES_PER_DEG;
+        double lengthSquared = sx * sx + sy * sy;
+        double t = lengthSquared > 0 ? Math.max(0, Math.min(1, (px * sx + py * sy) / lengthSquared)) : 0;
+        return Math.hypot(px - t * sx, py - t * sy);
+    }
+    
+    @Test
+    public void droppedPointsStayWithinTolerance() {
+        int samples = 36000; // An hour at 10 Hz
+        double[][] track = makeDrive(samples, 5);
+        LocationHistory kept = new LocationHistory(samples);
+        TrackSimplifier simplifier = new TrackSimplifier(kept, 5.0, 64);
+        for (int i = 0; i < samples; i++) {
+            simplifier.add(track[i][0], track[i][1], i, 90, 90, 50);
+        }
+        simplifier.flush();
+        
+        assertEquals(0, kept.getTimestamp(0));
+        assertEquals(samples - 1, kept.getTimestamp(kept.size() - 1));
+        assertEquals(kept.size(), simplifier.getOutputCount());
+        
+        // Every input point against the kept segment spanning its timestamp
+        double maxDeviation = 0;
+        int segment = 0;
+        for (int i = 0; i < samples; i++) {
+            while (kept.getTimestamp(segment + 1) < i) {
+                segment++;
+            }
+            maxDeviation = Math.max(maxDeviation, distanceToSegmentM(track[i][0], track[i][1],
+                kept.getLatitude(segment), kept.getLongitude(segment),
+                kept.getLatitude(segment + 1), kept.getLongitude(segment + 1)));
+        }
+        assertTrue("deviation " + maxDeviation, maxDeviation <= 5.0 + 1e-6);
+        assertEquals(maxDeviation, simplifier.getMaxDeviationM(), 0.01);
+        assertTrue(simplifier.getCompressionRatio() > 10);
+        
+        BenchmarkReport.print("TrackSimplifier: %d -> %d points (%.1fx), max deviation %.2f m",
+            samples, kept.size(), simplifier.getCompressionRatio(), simplifier.getMaxDeviationM());
+    }
+    
+    @Test
+    public void lookaheadIsBounded() {
+        LocationHistory kept = new LocationHistory(100);
+        TrackSimplifier simplifier = new TrackSimplifier(kept, 5.0, 8);
+        // Perfectly straight line, only the lookahead limit forces points out
+        for (int i = 0; i < 82; i++) {
+            simplifier.add(0.0, i * 0.0001, i, 50, 90, 50);
+        }
+        assertEquals(11, kept.size());
+        for (int i = 0; i < kept.size(); i++) {
+            assertEquals(i * 8, kept.getTimestamp(i));
+        }
+    }
+    
+    @Test
+    public void distanceUsesFullResolutionPath() {
+        double[][] track = makeDrive(6000, 9);
+        TripCalculator calculator = new TripCalculator();
+        double expected = 0;
+        DistanceKernel kernel = new DistanceKernel();
+        for (int i = 0; i < track.length; i++) {
+            calculator.updateSample(track[i][0], track[i][1], i * 100L, 90, 90, 50);
+            if (i > 0) {
+                expected += kernel.distanceKm(track[i - 1][0], track[i - 1][1], track[i][0], track[i][1]);
+            }
+        }
+        assertEquals(expected, calculator.getTotalDistance(), 1e-9);
+        assertTrue(calculator.getLocationHistory().size() < track.length / 5);
+    }
+}
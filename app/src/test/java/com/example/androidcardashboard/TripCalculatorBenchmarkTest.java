@@ -0,0 +1,90 @@
+package com.example.androidcardashboard;
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+
+/**
+ * Micro-benchmark for the per-update cost of TripCalculator, plus a check
+ * of the metrics against values computed here from the route itself.
+ */
+public class TripCalculatorBenchmarkTest {
+    private static final int WARMUP_UPDATES = 20000;
+    private static final int MEASURED_UPDATES = 200000;
+    private static final long START_TIME = 1735689600000L;
+    private static final long SAMPLE_INTERVAL_MS = 1000;
+    
+    /**
+     * Short hops heading north-east from Antananarivo, as latitude and
+     * longitude pairs, parsed up front so the loop only measures the update
+     */
+    private static double[][] makeRoute(int points) {
+        double[][] route = new double[points][2];
+        for (int i = 0; i < points; i++) {
+            route[i][0] = -18.8792 + i * 0.00001;
+            route[i][1] = 47.5079 + i * 0.00001;
+        }
+        return route;
+    }
+    
+    private static double speedAt(int i) {
+        return 50 + (i % 20);
+    }
+    
+    private static double fuelAt(int i) {
+        return 80 - (i % 1000) * 0.001;
+    }
+    
+    private static long runUpdates(TripCalculator calculator, TripCalculator.TripMetrics metrics,
+                                   double[][] route, int updates) {
+        long start = System.nanoTime();
+        for (int i = 0; i < updates; i++) {
+            double[] point = route[i % route.length];
+            calculator.updateSample(point[0], point[1], START_TIME + i * SAMPLE_INTERVAL_MS,
+                speedAt(i), 90, fuelAt(i));
+            calculator.fillMetrics(metrics);
+        }
+        return System.nanoTime() - start;
+    }
+    
+    @Test
+    public void updateAndSnapshotCost() {
+        double[][] route = makeRoute(4096);
+        TripCalculator calculator = new TripCalculator();
+        TripCalculator.TripMetrics metrics = new TripCalculator.TripMetrics();
+        
+        runUpdates(calculator, metrics, route, WARMUP_UPDATES);
+        calculator.resetTrip();
+        long elapsedNs = runUpdates(calculator, metrics, route, MEASURED_UPDATES);
+        
+        BenchmarkReport.print("TripCalculator: %.0f ns per update + snapshot (%d updates)",
+            elapsedNs / (double) MEASURED_UPDATES, MEASURED_UPDATES);
+    }
+    
+    @Test
+    public void snapshotMatchesMetrics() {
+        int points = 500;
+        double[][] route = makeRoute(points);
+        TripCalculator calculator = new TripCalculator();
+        TripCalculator.TripMetrics snapshot = new TripCalculator.TripMetrics();
+        runUpdates(calculator, snapshot, route, points);
+        
+        // Haversine over every hop, the fuel level only falls, and each
+        // speed holds for one interval until the next sample
+        double distance = 0;
+        double speedSum = 0;
+        for (int i = 1; i < points; i++) {
+            distance += DistanceKernel.haversineKm(route[i - 1][0], route[i - 1][1], route[i][0], route[i][1]);
+            speedSum += speedAt(i - 1);
+        }
+        double fuelLitres = (fuelAt(0) - fuelAt(points - 1)) * TripCalculator.DEFAULT_TANK_CAPACITY_L / 100.0;
+        
+        assertEquals(distance, snapshot.distance, distance * DistanceKernel.MAX_RELATIVE_ERROR);
+        assertEquals(fuelLitres / distance * 100.0, snapshot.fuelUsage,
+            snapshot.fuelUsage * 2 * DistanceKernel.MAX_RELATIVE_ERROR);
+        assertEquals(90.0, snapshot.avgTemperature, 1e-9);
+        assertEquals(speedSum / (points - 1), snapshot.avgSpeed, 1e-9);
+        assertEquals(90.0, snapshot.maxTemperature, 0.0);
+        assertEquals(69.0, snapshot.maxSpeed, 0.0);
+    }
+}
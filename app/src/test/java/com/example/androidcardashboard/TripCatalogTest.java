@@ -0,0 +1,215 @@
+package com.example.androidcardashboard;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Range queries against a plain scan, persistence and compaction, and a
+ * benchmark on a year of synthetic trips.
+ */
+public class TripCatalogTest {
+    private static final long DAY_MS = 24 * 60 * 60 * 1000L;
+    private static final long YEAR_START_MS = 1735689600000L; // 2025-01-01 UTC
+    
+    private File file;
+    
+    @Before
+    public void setUp() throws IOException {
+        file = File.createTempFile("trips", ".catalog");
+        assertTrue(file.delete());
+    }
+    
+    @After
+    public void tearDown() {
+        file.delete();
+    }
+    
+    /**
+     * Commutes, errands and weekend drives, split the way the app splits
+     * them: a trip starts after parking longer than NEW_TRIP_GAP_MS. Some
+     * errands are short hops after a stop shorter than MERGE_GAP_MS, which
+     * compaction merges.
+     */
+    private static List<TripCatalog.Summary> makeYear(long seed) {
+        Random random = new Random(seed);
+        List<TripCatalog.Summary> trips = new ArrayList<>();
+        long mergeWindow = TripCatalog.MERGE_GAP_MS - TripCatalog.NEW_TRIP_GAP_MS;
+        for (int day = 0; day < 365; day++) {
+            long time = YEAR_START_MS + day * DAY_MS + 7 * 60 * 60 * 1000L + random.nextInt(3600000);
+            int count = 2 + random.nextInt(5);
+            for (int i = 0; i < count; i++) {
+                boolean shortHop = i > 0 && random.nextInt(4) == 0;
+                if (i > 0) {
+                    // Parked since the previous trip ended
+                    time += TripCatalog.NEW_TRIP_GAP_MS + 1 + (long) (random.nextDouble()
+                        * (shortHop ? mergeWindow - 1 : 3600000));
+                }
+                TripCatalog.Summary trip = new TripCatalog.Summary();
+                trip.startMs = time;
+                trip.drivingMs = shortHop ? 60000 + random.nextInt(180000) : 600000 + random.nextInt(3600000);
+                trip.endMs = trip.startMs + trip.drivingMs + random.nextInt(300000);
+                trip.avgSpeed = shortHop ? 15 + random.nextDouble() * 10 : 30 + random.nextDouble() * 60;
+                trip.distanceKm = trip.avgSpeed * trip.drivingMs / 3600000.0;
+                trip.fuelUsed = trip.distanceKm * 0.12;
+                trip.maxSpeed = trip.avgSpeed * 1.5;
+                trip.avgTemperature = 85 + random.nextDouble() * 10;
+                trip.samples = (int) (trip.drivingMs / 100);
+                trips.add(trip);
+                time = trip.endMs;
+            }
+        }
+        return trips;
+    }
+    
+    private static TripCatalog.Totals scan(TripCatalog catalog, long fromMs, long toMs) {
+        TripCatalog.Totals totals = new TripCatalog.Totals();
+        TripCatalog.Summary trip = new TripCatalog.Summary();
+        double speedMs = 0;
+        for (int i = 0; i < catalog.size(); i++) {
+            catalog.getSummary(i, trip);
+            if (trip.startMs >= fromMs && trip.startMs < toMs) {
+                totals.trips++;
+                totals.distanceKm += trip.distanceKm;
+                totals.fuelUsed += trip.fuelUsed;
+                totals.drivingMs += trip.drivingMs;
+                speedMs += trip.avgSpeed * trip.drivingMs;
+            }
+        }
+        totals.avgSpeed = totals.drivingMs > 0 ? speedMs / totals.drivingMs : Double.NaN;
+        return totals;
+    }
+    
+    private static void assertTotals(TripCatalog.Totals expected, TripCatalog.Totals actual) {
+        assertEquals(expected.trips, actual.trips);
+        assertEquals(expected.drivingMs, actual.drivingMs);
+        assertEquals(expected.distanceKm, actual.distanceKm, 1e-6);
+        assertEquals(expected.fuelUsed, actual.fuelUsed, 1e-6);
+        if (expected.drivingMs > 0) {
+            assertEquals(expected.avgSpeed, actual.avgSpeed, 1e-6);
+        }
+    }
+    
+    @Test
+    public void rangeQueriesMatchScan() {
+        TripCatalog catalog = new TripCatalog(file);
+        List<TripCatalog.Summary> trips = makeYear(1);
+        // Insert a few out of order
+        for (int i = trips.size() - 1; i >= trips.size() - 10; i--) {
+            catalog.add(trips.get(i));
+        }
+        for (int i = 0; i < trips.size() - 10; i++) {
+            catalog.add(trips.get(i));
+        }
+        catalog.close();
+        
+        Random random = new Random(2);
+        TripCatalog.Totals totals = new TripCatalog.Totals();
+        for (int i = 0; i < 1000; i++) {
+            long from = YEAR_START_MS + (long) (random.nextDouble() * 380 * DAY_MS) - 5 * DAY_MS;
+            long to = from + (long) (random.nextDouble() * 60 * DAY_MS);
+            catalog.query(from, to, totals);
+            assertTotals(scan(catalog, from, to), totals);
+        }
+        
+        catalog.query(0, Long.MAX_VALUE, totals);
+        assertEquals(trips.size(), totals.trips);
+    }
+    
+    @Test
+    public void reloadAndCompaction() {
+        TripCatalog catalog = new TripCatalog(file);
+        List<TripCatalog.Summary> trips = makeYear(3);
+        for (TripCatalog.Summary trip : trips) {
+            catalog.add(trip);
+        }
+        catalog.close();
+        
+        TripCatalog reloaded = new TripCatalog(file);
+        assertEquals(trips.size(), reloaded.load());
+        TripCatalog.Totals before = new TripCatalog.Totals();
+        reloaded.query(0, Long.MAX_VALUE, before);
+        
+        // Every short hop follows a brief stop
+        int shortHops = 0;
+        for (TripCatalog.Summary trip : trips) {
+            if (trip.drivingMs < TripCatalog.SMALL_TRIP_MS) {
+                shortHops++;
+            }
+        }
+        int merged = reloaded.compact();
+        assertTrue(merged > 0);
+        assertEquals(shortHops, merged);
+        TripCatalog.Totals after = new TripCatalog.Totals();
+        reloaded.query(0, Long.MAX_VALUE, after);
+        assertEquals(trips.size() - merged, after.trips);
+        assertEquals(before.distanceKm, after.distanceKm, 1e-6);
+        assertEquals(before.drivingMs, after.drivingMs);
+        assertEquals(0, reloaded.compact());
+        reloaded.close();
+        
+        TripCatalog compacted = new TripCatalog(file);
+        assertEquals(trips.size() - merged, compacted.load());
+        compacted.close();
+        assertEquals(TripCatalog.HEADER_SIZE + (long) (trips.size() - merged) * TripCatalog.RECORD_SIZE, file.length());
+    }
+    
+    @Test
+    public void benchmarkYearOfTrips() {
+        List<TripCatalog.Summary> trips = makeYear(4);
+        TripCatalog catalog = new TripCatalog(file);
+        long start = System.nanoTime();
+        for (TripCatalog.Summary trip : trips) {
+            catalog.add(trip);
+        }
+        long addNs = System.nanoTime() - start;
+        catalog.close();
+        
+        TripCatalog loaded = new TripCatalog(file);
+        start = System.nanoTime();
+        loaded.load();
+        long loadNs = System.nanoTime() - start;
+        
+        // "Last 30 days" ending at every hour of the year
+        int queries = 365 * 24;
+        TripCatalog.Totals totals = new TripCatalog.Totals();
+        double sink = 0;
+        long queryNs = 0;
+        long scanNs = 0;
+        for (int round = 0; round < 3; round++) {
+            start = System.nanoTime();
+            for (int i = 0; i < queries; i++) {
+                long now = YEAR_START_MS + i * 3600000L;
+                loaded.query(now - 30 * DAY_MS, now, totals);
+                sink += totals.distanceKm;
+            }
+            queryNs = System.nanoTime() - start;
+            
+            start = System.nanoTime();
+            for (int i = 0; i < queries; i++) {
+                long now = YEAR_START_MS + i * 3600000L;
+                sink -= scan(loaded, now - 30 * DAY_MS, now).distanceKm;
+            }
+            scanNs = System.nanoTime() - start;
+        }
+        
+        start = System.nanoTime();
+        int merged = loaded.compact();
+        long compactNs = System.nanoTime() - start;
+        loaded.close();
+        
+        BenchmarkReport.print("TripCatalog: %d trips, add %.1f us, load %.2f ms, 30-day query %.0f ns"
+            + " (scan %.0f ns), compaction %.2f ms merging %d",
+            trips.size(), addNs / 1000.0 / trips.size(), loadNs / 1e6, queryNs / (double) queries,
+            scanNs / (double) queries, compactNs / 1e6, merged);
+        assertEquals(0.0, sink, 1e-3);
+    }
+}
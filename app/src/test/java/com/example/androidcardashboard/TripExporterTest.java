@@ -0,0 +1,175 @@
+package com.example.androidcardashboard;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.Locale;
+import java.util.Random;
+import java.util.TimeZone;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Number and time formatting, torn journals, and a streaming export of a
+ * 1-million-point trip from the journal.
+ */
+public class TripExporterTest {
+    // Budget for 1 million points per format; the tablet is several times slower than a desktop JVM
+    private static final long EXPORT_BUDGET_MS = 10000;
+    
+    private File journalFile;
+    private File output;
+    
+    @Before
+    public void setUp() throws IOException {
+        journalFile = File.createTempFile("trip", ".journal");
+        output = File.createTempFile("trip", ".export");
+        assertTrue(journalFile.delete());
+    }
+    
+    @After
+    public void tearDown() {
+        journalFile.delete();
+        output.delete();
+    }
+    
+    private void writeJournal(int samples, long startMs) {
+        TripCalculator calculator = new TripCalculator();
+        TripJournal journal = new TripJournal(journalFile, calculator, 2000, 60000);
+        journal.recover();
+        for (int i = 0; i < samples; i++) {
+            journal.onSample(-18.8792 + i * 1e-6, 47.5079 - i * 1e-6, startMs + i * 100L, 50 + i % 70, 90.5, 75.25);
+        }
+        journal.close();
+    }
+    
+    private static int countLines(File file) throws IOException {
+        BufferedReader reader = new BufferedReader(new FileReader(file));
+        try {
+            int lines = 0;
+            while (reader.readLine() != null) {
+                lines++;
+            }
+            return lines;
+        } finally {
+            reader.close();
+        }
+    }
+    
+    @Test
+    public void fixedDecimalsAreRoundedAndPadded() {
+        Random random = new Random(1);
+        TripExporter.LineBuilder line = new TripExporter.LineBuilder();
+        for (int i = 0; i < 100000; i++) {
+            double value = (random.nextDouble() - 0.5) * 360;
+            int decimals = random.nextInt(8);
+            line.clear();
+            line.append(value, decimals);
+            String text = line.toString();
+            assertEquals(value, Double.parseDouble(text), 0.5 / Math.pow(10, decimals) + 1e-9);
+            assertEquals(decimals, decimals == 0 ? 0 : text.length() - text.indexOf('.') - 1);
+        }
+        line.clear();
+        assertEquals("-0.5000000", line.append(-0.5, 7).toString());
+        line.clear();
+        assertEquals("0.0", line.append(-0.01, 1).toString());
+        line.clear();
+        assertEquals("12345678901", line.append(12345678901L).toString());
+    }
+    
+    @Test
+    public void isoTimeMatchesCalendar() {
+        SimpleDateFormat format = new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss.SSS'Z'", Locale.US);
+        format.setTimeZone(TimeZone.getTimeZone("UTC"));
+        TripExporter.LineBuilder line = new TripExporter.LineBuilder();
+        Random random = new Random(2);
+        for (int i = 0; i < 20000; i++) {
+            long time = (long) (random.nextDouble() * 4102444800000L); // 1970 to 2100
+            line.clear();
+            line.appendIsoTime(time);
+            assertEquals(format.format(new Date(time)), line.toString());
+        }
+    }
+    
+    @Test
+    public void csvAndGpxContainEverySample() throws IOException {
+        writeJournal(12345, 1735689600000L);
+        
+        TripExporter.Result result = TripExporter.exportToFile(journalFile, output, TripExporter.Format.CSV, null);
+        assertEquals(12345, result.points);
+        assertTrue(!result.truncated);
+        assertEquals(12345 + 1, countLines(output));
+        BufferedReader reader = new BufferedReader(new FileReader(output));
+        reader.readLine();
+        assertEquals("1735689600000,-18.8792000,47.5079000,50.0,90.5,75.25", reader.readLine());
+        reader.close();
+        
+        assertEquals(12345, TripExporter.exportToFile(journalFile, output, TripExporter.Format.GPX, null).points);
+        assertEquals(12345 + 5, countLines(output));
+        reader = new BufferedReader(new FileReader(output));
+        reader.readLine();
+        reader.readLine();
+        reader.readLine();
+        assertEquals("<trkpt lat=\"-18.8792000\" lon=\"47.5079000\"><time>2025-01-01T00:00:00.000Z</time></trkpt>",
+            reader.readLine());
+        reader.close();
+    }
+    
+    @Test
+    public void tornJournalIsReportedAndEstimateSkipsPreallocation() throws IOException {
+        writeJournal(12345, 1735689600000L);
+        TripJournal.Reader reader = new TripJournal.Reader(journalFile);
+        long records = reader.countRecords();
+        reader.close();
+        // Samples plus a checkpoint per 2000, the preallocated space would be 1 MB
+        assertTrue("estimate " + records, records >= 12345 && records < 12345 + 10);
+        
+        RandomAccessFile file = new RandomAccessFile(journalFile, "rw");
+        file.seek(TripJournal.HEADER_SIZE + 5000L * TripJournal.RECORD_SIZE + 20);
+        file.write(0x5A);
+        file.close();
+        TripExporter.Result result = TripExporter.exportToFile(journalFile, output, TripExporter.Format.CSV, null);
+        assertTrue(result.truncated);
+        assertTrue(result.points < 5000);
+    }
+    
+    @Test
+    public void exportMillionPointsWithinBudget() throws IOException {
+        int samples = 1000000;
+        writeJournal(samples, 1735689600000L);
+        
+        for (TripExporter.Format format : TripExporter.Format.values()) {
+            final long[] progressCalls = {0};
+            TripExporter.ExportListener listener = new TripExporter.ExportListener() {
+                @Override
+                public void onProgress(long points, long estimatedPoints) {
+                    assertTrue(points <= estimatedPoints);
+                    progressCalls[0]++;
+                }
+                
+                @Override
+                public void onFinished(File file, long points, long elapsedMs, boolean truncated) {
+                }
+                
+                @Override
+                public void onFailed(File file, IOException error) {
+                }
+            };
+            long start = System.nanoTime();
+            assertEquals(samples, TripExporter.exportToFile(journalFile, output, format, listener).points);
+            long elapsedMs = (System.nanoTime() - start) / 1000000;
+            assertEquals(samples / 20000, progressCalls[0]);
+            assertTrue(format + " took " + elapsedMs + " ms", elapsedMs < EXPORT_BUDGET_MS);
+            BenchmarkReport.print("TripExporter: %s, %d points, %.1f MB in %d ms",
+                format, samples, output.length() / (1024.0 * 1024.0), elapsedMs);
+        }
+    }
+}
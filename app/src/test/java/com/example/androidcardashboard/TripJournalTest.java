@@ -0,0 +1,183 @@
+package com.example.androidcardashboard;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Round trip through the journal file, torn tail handling, archive
+ * retention, and the recovery time of a 10-hour trip.
+ */
+public class TripJournalTest {
+    private File file;
+    
+    @Before
+    public void setUp() throws IOException {
+        file = File.createTempFile("trip", ".journal");
+        assertTrue(file.delete());
+    }
+    
+    @After
+    public void tearDown() {
+        file.delete();
+    }
+    
+    /**
+     * Feed a 10 Hz drive heading north-east from Antananarivo into the
+     * calculator and the journal, the way TripCalculator.updateLocation() does
+     */
+    private static void drive(TripCalculator calculator, TripJournal journal, long startMs, int samples) {
+        for (int i = 0; i < samples; i++) {
+            double latitude = -18.8792 + i * 0.000002;
+            double longitude = 47.5079 + i * 0.000002;
+            long timestamp = startMs + i * 100L;
+            double speed = 40 + (i % 600) / 10.0;
+            double temperature = 88 + (i % 50) / 10.0;
+            double fuelLevel = 80 - i * 0.00001;
+            calculator.updateSample(latitude, longitude, timestamp, speed, temperature, fuelLevel);
+            journal.onSample(latitude, longitude, timestamp, speed, temperature, fuelLevel);
+        }
+    }
+    
+    @Test
+    public void tripSurvivesRestart() {
+        TripCalculator original = new TripCalculator();
+        TripJournal journal = new TripJournal(file, original);
+        assertEquals(0, journal.recover());
+        drive(original, journal, 1000000, 1234);
+        journal.close();
+        
+        TripCalculator restored = new TripCalculator();
+        TripJournal reopened = new TripJournal(file, restored);
+        assertEquals(1234, reopened.recover());
+        assertEquals(original.getDataPoints(), restored.getDataPoints());
+        assertEquals(original.getTotalDistance(), restored.getTotalDistance(), 0.0);
+        assertEquals(original.getTotalFuelUsed(), restored.getTotalFuelUsed(), 1e-3);
+        assertEquals(original.getAvgSpeed(), restored.getAvgSpeed(), 1e-3);
+        assertEquals(original.getAvgTemperature(), restored.getAvgTemperature(), 1e-3);
+        
+        // New samples continue the same trip
+        drive(restored, reopened, 2000000, 10);
+        reopened.close();
+        assertEquals(1244, new TripJournal(file, new TripCalculator()).recover());
+    }
+    
+    @Test
+    public void tornTailIsDropped() throws IOException {
+        TripCalculator calculator = new TripCalculator();
+        TripJournal journal = new TripJournal(file, calculator, 10, 60000);
+        journal.recover();
+        drive(calculator, journal, 0, 100);
+        journal.close();
+        
+        // Ten batches of ten samples plus a checkpoint, then half a record of garbage
+        long end = TripJournal.HEADER_SIZE + 110L * TripJournal.RECORD_SIZE;
+        RandomAccessFile raw = new RandomAccessFile(file, "rw");
+        raw.seek(end);
+        raw.write(new byte[] {1, 0, 0, 0, 42, 42, 42, 42, 7, 7, 7, 7, 7, 7, 7, 7, 9, 9, 9, 9, 9, 9, 9, 9});
+        raw.close();
+        
+        TripCalculator restored = new TripCalculator();
+        TripJournal reopened = new TripJournal(file, restored, 10, 60000);
+        assertEquals(100, reopened.recover());
+        assertTrue(reopened.getDroppedBytes() > 0);
+        drive(restored, reopened, 100000, 5);
+        reopened.close();
+        
+        assertEquals(105, new TripJournal(file, new TripCalculator()).recover());
+    }
+    
+    @Test
+    public void resetStartsEmpty() {
+        TripCalculator calculator = new TripCalculator();
+        TripJournal journal = new TripJournal(file, calculator);
+        journal.recover();
+        drive(calculator, journal, 0, 200);
+        journal.reset();
+        drive(calculator, journal, 100000, 3);
+        journal.close();
+        
+        assertEquals(3, new TripJournal(file, new TripCalculator()).recover());
+    }
+    
+    @Test
+    public void failedArchiveKeepsTheSamples() throws IOException {
+        // A file where the archive directory should be, so it can't be made
+        File blocker = File.createTempFile("trips", "");
+        try {
+            TripJournal journal = new TripJournal(file, new TripCalculator());
+            assertEquals(0, journal.recover());
+            drive(new TripCalculator(), journal, 1000000, 500);
+            journal.archive(new File(blocker, "1000000.journal"));
+            drive(new TripCalculator(), journal, 2000000, 100);
+            journal.close();
+            
+            TripJournal reopened = new TripJournal(file, new TripCalculator());
+            assertEquals(600, reopened.recover());
+            reopened.close();
+        } finally {
+            blocker.delete();
+        }
+    }
+    
+    @Test
+    public void archiveKeepsTheNewestJournals() throws IOException {
+        File directory = File.createTempFile("trips", "");
+        assertTrue(directory.delete());
+        assertTrue(directory.mkdir());
+        try {
+            for (int i = 0; i < 10; i++) {
+                File name = new File(directory, (1735689600000L + i) + ".journal");
+                RandomAccessFile journal = new RandomAccessFile(name, "rw");
+                journal.setLength(1000);
+                journal.close();
+            }
+            assertTrue(new File(directory, "notes.txt").createNewFile());
+            
+            // Count first, then bytes; other files stay
+            assertEquals(2, TripJournal.pruneArchive(directory, 8, Long.MAX_VALUE));
+            assertEquals(3, TripJournal.pruneArchive(directory, 8, 5500));
+            assertEquals(6, directory.list().length);
+            assertTrue(new File(directory, "1735689600009.journal").exists());
+            assertTrue(new File(directory, "1735689600005.journal").exists());
+            assertTrue(!new File(directory, "1735689600004.journal").exists());
+            
+            // The newest is kept even when over the limit on its own
+            assertEquals(4, TripJournal.pruneArchive(directory, 8, 10));
+            assertTrue(new File(directory, "1735689600009.journal").exists());
+        } finally {
+            for (File left : directory.listFiles()) {
+                left.delete();
+            }
+            directory.delete();
+        }
+    }
+    
+    @Test
+    public void recoveryTimeOfTenHourTrip() {
+        int samples = 10 * 3600 * 10; // 10 hours at 10 Hz
+        TripCalculator calculator = new TripCalculator();
+        TripJournal journal = new TripJournal(file, calculator, 1000, 60000);
+        journal.recover();
+        drive(calculator, journal, 0, samples);
+        journal.close();
+        
+        // The first replay includes JIT warm-up, measure the second one
+        new TripJournal(file, new TripCalculator()).recover();
+        TripCalculator restored = new TripCalculator();
+        TripJournal reopened = new TripJournal(file, restored);
+        long start = System.nanoTime();
+        assertEquals(samples, reopened.recover());
+        long elapsedMs = (System.nanoTime() - start) / 1000000;
+        
+        assertEquals(calculator.getTotalDistance(), restored.getTotalDistance(), 0.0);
+        BenchmarkReport.print("TripJournal: recovered %d samples (%.1f MB) in %d ms",
+            samples, file.length() / (1024.0 * 1024.0), elapsedMs);
+    }
+}
@@ -0,0 +1,221 @@
+package com.example.androidcardashboard;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Chunked recomputation against TripCalculator, cancel and resume, and
+ * throughput with one worker against all cores.
+ */
+public class TripRecomputeJobTest {
+    private static final long TRIP_START_MS = 1735689600000L; // 2025-01-01 UTC
+    private static final long HOUR_MS = 60 * 60 * 1000L;
+    
+    private File directory;
+    private TripCatalog catalog;
+    
+    @Before
+    public void setUp() throws IOException {
+        directory = File.createTempFile("trips", "");
+        assertTrue(directory.delete());
+        assertTrue(directory.mkdir());
+        catalog = new TripCatalog(new File(directory, "trips.catalog"));
+        catalog.load();
+    }
+    
+    @After
+    public void tearDown() {
+        catalog.close();
+        File[] files = directory.listFiles();
+        for (int i = 0; i < files.length; i++) {
+            files[i].delete();
+        }
+        directory.delete();
+    }
+    
+    /**
+     * Write a 10 Hz trip with some data gaps and a refuel to a journal, and
+     * add it to the catalog
+     */
+    private void writeTrip(File journalFile, long startMs, int samples, long seed) {
+        Random random = new Random(seed);
+        TripCalculator calculator = new TripCalculator();
+        TripJournal journal = new TripJournal(journalFile, calculator, 2000, 60000);
+        journal.recover();
+        long time = startMs;
+        double lat = -18.8792;
+        double lon = 47.5079;
+        double fuel = 80;
+        for (int i = 0; i < samples; i++) {
+            double speed = 40 + random.nextInt(60);
+            double temperature = 85 + random.nextInt(10);
+            calculator.updateSample(lat, lon, time, speed, temperature, fuel);
+            journal.onSample(lat, lon, time, speed, temperature, fuel);
+            time += random.nextInt(500) == 0 ? 12000 : 100;
+            lat += random.nextGaussian() * 2e-5;
+            lon += random.nextGaussian() * 2e-5;
+            fuel = i == samples / 2 ? 95 : fuel - random.nextInt(50) * 1e-4;
+        }
+        journal.close();
+        
+        TripCatalog.Summary summary = new TripCatalog.Summary();
+        summary.fillFrom(calculator);
+        catalog.add(summary);
+    }
+    
+    /**
+     * The calculator fed with the journal's samples, which are stored as floats
+     */
+    private static TripCalculator replay(File journalFile, double tankCapacityLitres) throws IOException {
+        TripCalculator calculator = new TripCalculator();
+        calculator.setTankCapacity(tankCapacityLitres);
+        TripJournal.Reader reader = new TripJournal.Reader(journalFile);
+        try {
+            while (reader.next()) {
+                if (reader.isSample()) {
+                    calculator.updateSample(reader.getLatitude(), reader.getLongitude(), reader.getTimestamp(),
+                                            reader.getSpeed(), reader.getTemperature(), reader.getFuelLevel());
+                }
+            }
+        } finally {
+            reader.close();
+        }
+        return calculator;
+    }
+    
+    private File[] writeTrips(int trips, int samples) {
+        File[] journals = new File[trips];
+        for (int i = 0; i < trips; i++) {
+            journals[i] = new File(directory, (TRIP_START_MS + i * 3 * HOUR_MS) + ".journal");
+            writeTrip(journals[i], TRIP_START_MS + i * 3 * HOUR_MS, samples, i);
+        }
+        return journals;
+    }
+    
+    /**
+     * Run until finished or cancelled
+     */
+    private static void runJob(TripRecomputeJob job, final int cancelAfterChunks) throws InterruptedException {
+        final CountDownLatch done = new CountDownLatch(1);
+        final TripRecomputeJob cancellable = job;
+        job.start(new TripRecomputeJob.Listener() {
+            @Override
+            public void onProgress(int chunksDone, int chunks, double samplesPerSecond) {
+                if (chunksDone >= cancelAfterChunks) {
+                    cancellable.cancel();
+                }
+            }
+            
+            @Override
+            public void onFinished(int tripsUpdated, long samples, double samplesPerSecond) {
+                done.countDown();
+            }
+            
+            @Override
+            public void onCancelled(int chunksDone, int chunks) {
+                done.countDown();
+            }
+        });
+        assertTrue(done.await(60, TimeUnit.SECONDS));
+        // The job is done once the coordinator thread returns
+        while (job.isRunning()) {
+            Thread.sleep(1);
+        }
+    }
+    
+    private void assertTripMatches(TripCalculator expected, TripCatalog.Summary actual) {
+        assertEquals(expected.getFirstSampleTime(), actual.startMs);
+        assertEquals(expected.getLastSampleTime(), actual.endMs);
+        assertEquals(expected.getSpeedStats().getDurationMs(), actual.drivingMs);
+        assertEquals(expected.getTotalDistance(), actual.distanceKm, 1e-9);
+        assertEquals(expected.getTotalFuelUsedLitres(), actual.fuelUsed, 1e-9);
+        assertEquals(expected.getAvgSpeed(), actual.avgSpeed, 1e-3);
+        assertEquals(expected.getSpeedStats().getMax(), actual.maxSpeed, 1e-3);
+        assertEquals(expected.getAvgTemperature(), actual.avgTemperature, 1e-3);
+        assertEquals(expected.getDataPoints(), actual.samples);
+    }
+    
+    @Test
+    public void recomputeMatchesCalculator() throws Exception {
+        File[] journals = new File[3];
+        TripCalculator[] expected = new TripCalculator[3];
+        for (int i = 0; i < 3; i++) {
+            journals[i] = new File(directory, (TRIP_START_MS + i * 3 * HOUR_MS) + ".journal");
+            writeTrip(journals[i], TRIP_START_MS + i * 3 * HOUR_MS, 25000 + i * 3333, i);
+            expected[i] = replay(journals[i], 60);
+        }
+        
+        TripRecomputeJob job = new TripRecomputeJob(catalog, journals, 60, 1000, 4);
+        runJob(job, Integer.MAX_VALUE);
+        assertTrue(job.isFinished());
+        
+        TripCatalog.Summary summary = new TripCatalog.Summary();
+        for (int i = 0; i < 3; i++) {
+            catalog.getSummary(i, summary);
+            assertTripMatches(expected[i], summary);
+        }
+    }
+    
+    @Test
+    public void cancelledJobResumes() throws Exception {
+        File[] journals = writeTrips(2, 40000);
+        TripCalculator expected = replay(journals[1], 50);
+        
+        TripRecomputeJob job = new TripRecomputeJob(catalog, journals, 50, 500, 2);
+        runJob(job, 20);
+        assertTrue(!job.isFinished());
+        int chunksDone = job.getChunksDone();
+        assertTrue(chunksDone >= 20 && chunksDone < job.getChunkCount());
+        
+        runJob(job, Integer.MAX_VALUE);
+        assertTrue(job.isFinished());
+        assertEquals(job.getChunkCount(), job.getChunksDone());
+        TripCatalog.Summary summary = new TripCatalog.Summary();
+        catalog.getSummary(1, summary);
+        assertTripMatches(expected, summary);
+    }
+    
+    @Test
+    public void cancelledJobLeavesCatalogToItsSuccessor() throws Exception {
+        File[] journals = writeTrips(2, 5000);
+        TripRecomputeJob older = new TripRecomputeJob(catalog, journals, 40, 1000, 2);
+        runJob(older, Integer.MAX_VALUE);
+        TripRecomputeJob newer = new TripRecomputeJob(catalog, journals, 70, 1000, 2);
+        runJob(newer, Integer.MAX_VALUE);
+        TripCatalog.Summary expected = new TripCatalog.Summary();
+        catalog.getSummary(1, expected);
+        
+        // The older job, cancelled for the newer one, writes again
+        older.cancel();
+        assertEquals(-1, older.updateCatalog());
+        TripCatalog.Summary summary = new TripCatalog.Summary();
+        catalog.getSummary(1, summary);
+        assertEquals(expected.fuelUsed, summary.fuelUsed, 0);
+    }
+    
+    @Test
+    public void throughputWithOneAndAllWorkers() throws Exception {
+        File[] journals = writeTrips(4, 250000);
+        int cores = Runtime.getRuntime().availableProcessors();
+        
+        // Warm up, so neither run pays for compilation
+        runJob(new TripRecomputeJob(catalog, journals, 45, 16384, cores), Integer.MAX_VALUE);
+        TripRecomputeJob single = new TripRecomputeJob(catalog, journals, 45, 16384, 1);
+        runJob(single, Integer.MAX_VALUE);
+        TripRecomputeJob parallel = new TripRecomputeJob(catalog, journals, 45, 16384, cores);
+        runJob(parallel, Integer.MAX_VALUE);
+        
+        assertTrue(single.isFinished() && parallel.isFinished());
+        BenchmarkReport.print("TripRecomputeJob: 1M samples, 1 thread %.0f samples/s, %d threads %.0f samples/s",
+            single.getSamplesPerSecond(), cores, parallel.getSamplesPerSecond());
+    }
+}
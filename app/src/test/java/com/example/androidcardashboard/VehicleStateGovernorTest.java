@@ -0,0 +1,117 @@
+package com.example.androidcardashboard;
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Drive state classification and the intervals per state, driven with
+ * explicit elapsedRealtime() values.
+ */
+public class VehicleStateGovernorTest {
+    private static final long SECOND = 1000;
+    private static final long MINUTE = 60 * SECOND;
+    
+    private final VehicleStateGovernor governor = new VehicleStateGovernor();
+    
+    private VehicleStateGovernor.DriveState speed(double speed, long now) {
+        return governor.update(speed, 0, true, false, now);
+    }
+    
+    @Test
+    public void standingStillRightAfterBootIsParked() {
+        // The app starts seconds after boot, the car has not moved at all
+        assertEquals(VehicleStateGovernor.DriveState.PARKED, speed(0, 5 * SECOND));
+        assertEquals(VehicleStateGovernor.DriveState.PARKED, speed(0, 30 * SECOND));
+    }
+    
+    @Test
+    public void stopIsConfirmedThenParksAfterTwoMinutes() {
+        long start = 10 * MINUTE;
+        assertEquals(VehicleStateGovernor.DriveState.DRIVING, speed(50, start));
+        // A dip below walking speed is not a stop yet
+        assertEquals(VehicleStateGovernor.DriveState.DRIVING, speed(0, start + SECOND));
+        assertEquals(VehicleStateGovernor.DriveState.DRIVING, speed(1, start + 3 * SECOND));
+        assertEquals(VehicleStateGovernor.DriveState.IDLE, speed(0, start + 4 * SECOND));
+        
+        assertEquals(VehicleStateGovernor.DriveState.IDLE, speed(0, start + 2 * MINUTE - SECOND));
+        assertEquals(VehicleStateGovernor.DriveState.PARKED, speed(0, start + 2 * MINUTE));
+        assertEquals(VehicleStateGovernor.DriveState.DRIVING, speed(20, start + 3 * MINUTE));
+    }
+    
+    @Test
+    public void shortDipResetsTheStopConfirmation() {
+        long start = 10 * MINUTE;
+        speed(50, start);
+        speed(0, start + SECOND);
+        speed(30, start + 2 * SECOND);
+        // Stopped again, the three seconds start over
+        assertEquals(VehicleStateGovernor.DriveState.DRIVING, speed(0, start + 3 * SECOND));
+        assertEquals(VehicleStateGovernor.DriveState.DRIVING, speed(0, start + 5 * SECOND));
+        assertEquals(VehicleStateGovernor.DriveState.IDLE, speed(0, start + 6 * SECOND));
+    }
+    
+    @Test
+    public void engineRunningKeepsItIdle() {
+        long start = 10 * MINUTE;
+        speed(50, start);
+        governor.update(0, 800, true, false, start + 5 * SECOND);
+        assertEquals(VehicleStateGovernor.DriveState.IDLE,
+            governor.update(0, 800, true, false, start + 30 * MINUTE));
+        assertEquals(VehicleStateGovernor.DriveState.PARKED,
+            governor.update(0, 0, true, false, start + 31 * MINUTE));
+    }
+    
+    @Test
+    public void reverseGearWinsOverSpeed() {
+        long start = 10 * MINUTE;
+        assertEquals(VehicleStateGovernor.DriveState.REVERSING, governor.update(0, 0, true, true, start));
+        assertEquals(VehicleStateGovernor.DriveState.REVERSING, governor.update(5, 0, true, true, start + SECOND));
+        // Out of reverse and standing, confirmed like any stop
+        assertEquals(VehicleStateGovernor.DriveState.REVERSING, speed(0, start + 2 * SECOND));
+        assertEquals(VehicleStateGovernor.DriveState.IDLE, speed(0, start + 5 * SECOND));
+    }
+    
+    @Test
+    public void noTelemetryParksAtOnce() {
+        long start = 10 * MINUTE;
+        speed(80, start);
+        assertEquals(VehicleStateGovernor.DriveState.PARKED, governor.update(80, 0, false, false, start + SECOND));
+    }
+    
+    @Test
+    public void intervalsFollowTheState() {
+        final List<String> changes = new ArrayList<>();
+        governor.setOnDriveStateChangeListener(new VehicleStateGovernor.OnDriveStateChangeListener() {
+            @Override
+            public void onDriveStateChanged(VehicleStateGovernor.DriveState oldState,
+                                            VehicleStateGovernor.DriveState newState) {
+                changes.add(oldState + "->" + newState);
+            }
+        });
+        long start = 10 * MINUTE;
+        assertEquals(5000, governor.getRefreshIntervalMs());
+        assertEquals(1000, governor.getIngestIntervalMs());
+        assertEquals(10000, governor.getBackgroundIntervalMs());
+        
+        speed(50, start);
+        assertEquals(1000, governor.getRefreshIntervalMs());
+        assertEquals(0, governor.getIngestIntervalMs());
+        assertEquals(2000, governor.getBackgroundIntervalMs());
+        
+        speed(0, start + 5 * SECOND);
+        speed(0, start + 10 * SECOND);
+        assertEquals(2000, governor.getRefreshIntervalMs());
+        assertEquals(200, governor.getIngestIntervalMs());
+        assertEquals(5000, governor.getBackgroundIntervalMs());
+        
+        // The listener hears each change once
+        List<String> expected = new ArrayList<>();
+        expected.add("PARKED->DRIVING");
+        expected.add("DRIVING->IDLE");
+        assertEquals(expected, changes);
+    }
+}